@@ -0,0 +1,150 @@
+package dev.pig.stockpig.chess;
+
+import dev.pig.stockpig.chess.bitboard.Attack;
+import dev.pig.stockpig.chess.bitboard.Bitboard;
+
+import java.util.Arrays;
+
+/**
+ * Attack map stores the attacks of the piece on every square of a board, updated incrementally
+ * as moves are made and unmade rather than recomputed for every position.
+ * <p>
+ * A move only changes the occupancy of its from, to, captured and castling rook squares. The
+ * pieces on those squares are recomputed, along with any slider whose attacks reach one of them,
+ * as only those slides can have been lengthened or shortened. Knight, king and pawn attacks never
+ * depend on occupancy so are untouched unless the piece itself moved. Unmaking a move changes the
+ * same squares, so the same update restores the map.
+ */
+public final class AttackMap {
+
+    private final long[] attacksFrom = new long[64];
+
+
+    // ====================================================================================================
+    //                                  Accessors
+    // ====================================================================================================
+
+    /**
+     * Get the attacks of the piece on a square.
+     * @param sq square
+     * @return attack bitboard, empty if the square is unoccupied
+     */
+    public long attacksFrom(final byte sq) {
+        return this.attacksFrom[sq];
+    }
+
+    /**
+     * Get all squares attacked by a colour.
+     * @param board board
+     * @param c attacking colour
+     * @return attacked bitboard
+     */
+    public long attackedBy(final Board board, final boolean c) {
+        long attacked = Bitboard.EMPTY;
+        long pieces = board.pieces(c);
+        while (pieces != 0L) {
+            attacked |= this.attacksFrom[Long.numberOfTrailingZeros(pieces)];
+            pieces &= pieces - 1;
+        }
+        return attacked;
+    }
+
+
+    // ====================================================================================================
+    //                                  Build / Update
+    // ====================================================================================================
+
+    /**
+     * Recompute the attacks of every square from scratch.
+     * @param board board
+     */
+    public void build(final Board board) {
+        final long occupied = board.occupied();
+        for (byte sq = 0; sq < 64; sq++) {
+            this.attacksFrom[sq] = attacksOf(board, sq, occupied);
+        }
+    }
+
+    /**
+     * Update the map after a move has been made or unmade on the board.
+     * @param board board, with the move already made or unmade
+     * @param c colour of the side making the move
+     * @param move move
+     */
+    public void update(final Board board, final boolean c, final int move) {
+        final long changed  = changedSquares(c, move);
+        final long occupied = board.occupied();
+
+        // Sliders with a slide reaching a changed square, the changed squares themselves are recomputed below
+        long sliders = (board.pieces(PieceType.BISHOP) | board.pieces(PieceType.ROOK) | board.pieces(PieceType.QUEEN)) & ~changed;
+        while (sliders != 0L) {
+            final byte sq = (byte) Long.numberOfTrailingZeros(sliders);
+            if ((this.attacksFrom[sq] & changed) != 0L) this.attacksFrom[sq] = attacksOf(board, sq, occupied);
+            sliders &= sliders - 1;
+        }
+
+        long squares = changed;
+        while (squares != 0L) {
+            final byte sq = (byte) Long.numberOfTrailingZeros(squares);
+            this.attacksFrom[sq] = attacksOf(board, sq, occupied);
+            squares &= squares - 1;
+        }
+    }
+
+    /**
+     * Get the squares whose occupancy is changed by a move.
+     * @param c colour of the side making the move
+     * @param move move
+     * @return changed squares bitboard
+     */
+    static long changedSquares(final boolean c, final int move) {
+        final byte to = Move.to(move);
+        long changed = Bitboard.ofSquare(Move.from(move)) | Bitboard.ofSquare(to);
+        if (Move.isEnPassant(move)) changed |= Bitboard.ofSquare((byte) (to + Colour.backward(c).offset()));
+        if (Move.isCastle(move))    changed |= Bitboard.ofSquare(Castling.getRookFrom(c, to)) | Bitboard.ofSquare(Castling.getRookTo(c, to));
+        return changed;
+    }
+
+    /**
+     * Get the attacks of the piece on a square.
+     * @param board board
+     * @param sq square
+     * @param occupied occupied bitboard
+     * @return attack bitboard, empty if the square is unoccupied
+     */
+    private static long attacksOf(final Board board, final byte sq, final long occupied) {
+        return switch (board.pieceAt(sq)) {
+            case PieceType.KING   -> Attack.king(sq);
+            case PieceType.PAWN   -> Attack.pawn(board.colourAt(sq), sq);
+            case PieceType.KNIGHT -> Attack.knight(sq);
+            case PieceType.BISHOP -> Attack.bishop(sq, occupied);
+            case PieceType.ROOK   -> Attack.rook(sq, occupied);
+            case PieceType.QUEEN  -> Attack.queen(sq, occupied);
+            default -> Bitboard.EMPTY;
+        };
+    }
+
+
+    /**
+     * Copy the contents of this attack map into a preallocated attack map.
+     * @param target attack map to copy into
+     */
+    public void copyInto(final AttackMap target) {
+        System.arraycopy(this.attacksFrom, 0, target.attacksFrom, 0, this.attacksFrom.length);
+    }
+
+
+    // ====================================================================================================
+    //                                  Equality
+    // ====================================================================================================
+
+    @Override
+    public boolean equals(final Object o) {
+        return o instanceof AttackMap other && Arrays.equals(this.attacksFrom, other.attacksFrom);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.attacksFrom);
+    }
+}
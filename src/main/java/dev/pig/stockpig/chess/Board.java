@@ -16,6 +16,9 @@ public final class Board {
     private final byte[] squares = new byte[64];
 
     private long hash;
+    private long materialHash;
+    private long pawnHash;
+    private final long[] nonPawnHash = new long[2];
 
 
     // ====================================================================================================
@@ -36,6 +39,49 @@ public final class Board {
     }
 
 
+    // ====================================================================================================
+    //                                  Copy
+    // ====================================================================================================
+
+    /**
+     * Create an independent copy of the board.
+     * @return board copy
+     */
+    public Board copy() {
+        final Board copy = new Board();
+        copyInto(copy);
+        return copy;
+    }
+
+    /**
+     * Remove every piece from the board, leaving it as if newly created.
+     */
+    public void clear() {
+        Arrays.fill(this.pieceBBs, 0L);
+        Arrays.fill(this.colourBBs, 0L);
+        this.pieceBBs[PieceType.EMPTY] = Bitboard.ALL;
+        Arrays.fill(this.squares, PieceType.EMPTY);
+        this.hash = 0L;
+        this.materialHash = 0L;
+        this.pawnHash = 0L;
+        Arrays.fill(this.nonPawnHash, 0L);
+    }
+
+    /**
+     * Copy the contents of this board into a preallocated board.
+     * @param target board to copy into
+     */
+    public void copyInto(final Board target) {
+        System.arraycopy(this.pieceBBs, 0, target.pieceBBs, 0, this.pieceBBs.length);
+        System.arraycopy(this.colourBBs, 0, target.colourBBs, 0, this.colourBBs.length);
+        System.arraycopy(this.squares, 0, target.squares, 0, this.squares.length);
+        target.hash = this.hash;
+        target.materialHash = this.materialHash;
+        target.pawnHash = this.pawnHash;
+        System.arraycopy(this.nonPawnHash, 0, target.nonPawnHash, 0, this.nonPawnHash.length);
+    }
+
+
     // ====================================================================================================
     //                                  Add / Remove Pieces
     // ====================================================================================================
@@ -47,27 +93,62 @@ public final class Board {
      * @param sq square
      */
     public void addPiece(final boolean c, final byte pt, final byte sq) {
+        putPiece(c, pt, sq);
+        this.materialHash ^= Zobrist.material(c, pt, Bitboard.count(pieces(c, pt)) - 1);
+    }
+
+    /**
+     * Remove a piece from a square.
+     * @param c colour
+     * @param pt piece type
+     * @param sq square
+     */
+    public void removePiece(final boolean c, final byte pt, final byte sq) {
+        takePiece(c, pt, sq);
+        this.materialHash ^= Zobrist.material(c, pt, Bitboard.count(pieces(c, pt)));
+    }
+
+    /**
+     * Put a piece on a square without changing the material hash, for a piece moving within the board.
+     * @param c colour
+     * @param pt piece type
+     * @param sq square
+     */
+    private void putPiece(final boolean c, final byte pt, final byte sq) {
         final long bitboard = Bitboard.ofSquare(sq);
         this.squares[sq]                =   pt;
         this.colourBBs[c ? 1 : 0]       |=  bitboard;
         this.pieceBBs[pt]               |=  bitboard;
         this.pieceBBs[PieceType.EMPTY]  &=~ bitboard;
-        this.hash ^= Zobrist.pieceSquare(c, pt, sq);
+        updateHashes(c, pt, sq);
     }
 
     /**
-     * Remove a piece from a square.
+     * Take a piece off a square without changing the material hash, for a piece moving within the board.
      * @param c colour
      * @param pt piece type
      * @param sq square
      */
-    public void removePiece(final boolean c, final byte pt, final byte sq) {
+    private void takePiece(final boolean c, final byte pt, final byte sq) {
         final long bitboard = Bitboard.ofSquare(sq);
         this.squares[sq]                  =   PieceType.EMPTY;
         this.colourBBs[c ? 1 : 0]         &=~ bitboard;
         this.pieceBBs[pt]                 &=~ bitboard;
         this.pieceBBs[PieceType.EMPTY]    |=  bitboard;
-        this.hash ^= Zobrist.pieceSquare(c, pt, sq);
+        updateHashes(c, pt, sq);
+    }
+
+    /**
+     * Toggle a piece on a square in the full, pawn and non-pawn hashes.
+     * @param c colour
+     * @param pt piece type
+     * @param sq square
+     */
+    private void updateHashes(final boolean c, final byte pt, final byte sq) {
+        final long key = Zobrist.pieceSquare(c, pt, sq);
+        this.hash ^= key;
+        if (pt == PieceType.PAWN) this.pawnHash ^= key;
+        else this.nonPawnHash[c ? 1 : 0] ^= key;
     }
 
 
@@ -164,14 +245,19 @@ public final class Board {
             removePiece(Colour.flip(c), capture, Move.isEnPassant(move) ? (byte) (to + Colour.backward(c).offset()) : to);
         }
 
-        // Remove the moving piece from the start location and add it to the destination
-        removePiece(c, mover, from);
-        addPiece(c, promote == PieceType.EMPTY ? mover : promote, to);
+        // Remove the moving piece from the start location and add it to the destination (a promotion changes material)
+        if (promote == PieceType.EMPTY) {
+            takePiece(c, mover, from);
+            putPiece(c, mover, to);
+        } else {
+            removePiece(c, mover, from);
+            addPiece(c, promote, to);
+        }
 
         // If it's a castle move then move the rook
         if (Move.isCastle(move)) {
-            removePiece(c, PieceType.ROOK, Castling.getRookFrom(c, to));
-            addPiece(c, PieceType.ROOK, Castling.getRookTo(c, to));
+            takePiece(c, PieceType.ROOK, Castling.getRookFrom(c, to));
+            putPiece(c, PieceType.ROOK, Castling.getRookTo(c, to));
         }
     }
 
@@ -189,13 +275,18 @@ public final class Board {
 
         // If it's a castle move then move the rook
         if (Move.isCastle(move)) {
-            removePiece(c, PieceType.ROOK, Castling.getRookTo(c, to));
-            addPiece(c, PieceType.ROOK, Castling.getRookFrom(c, to));
+            takePiece(c, PieceType.ROOK, Castling.getRookTo(c, to));
+            putPiece(c, PieceType.ROOK, Castling.getRookFrom(c, to));
         }
 
         // Move the moving piece back to the source location (and un-promote if needed)
-        removePiece(c, promote == PieceType.EMPTY ? mover : promote, to);
-        addPiece(c, mover, from);
+        if (promote == PieceType.EMPTY) {
+            takePiece(c, mover, to);
+            putPiece(c, mover, from);
+        } else {
+            removePiece(c, promote, to);
+            addPiece(c, mover, from);
+        }
 
         // If this was a capture add that piece to the board
         if (capture != PieceType.EMPTY) {
@@ -257,6 +348,31 @@ public final class Board {
         return this.hash;
     }
 
+    /**
+     * Get the material hash of the board, depending only on the number of pieces of each colour and type.
+     * @return material Zobrist hash
+     */
+    public long materialHash() {
+        return this.materialHash;
+    }
+
+    /**
+     * Get the pawn hash of the board, the hash of the pawns of both colours.
+     * @return pawn Zobrist hash
+     */
+    public long pawnHash() {
+        return this.pawnHash;
+    }
+
+    /**
+     * Get the non-pawn hash of a colour, the hash of its pieces other than pawns (including the king).
+     * @param c colour
+     * @return non-pawn Zobrist hash
+     */
+    public long nonPawnHash(final boolean c) {
+        return this.nonPawnHash[c ? 1 : 0];
+    }
+
     /**
      * Get the hash code of the board, this is the 32 least significant bits
      * of the long Zobrist hash.
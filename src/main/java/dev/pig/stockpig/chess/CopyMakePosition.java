@@ -0,0 +1,229 @@
+package dev.pig.stockpig.chess;
+
+import dev.pig.stockpig.chess.bitboard.Square;
+import dev.pig.stockpig.chess.notation.Fen;
+
+/**
+ * Copy-make position is an alternative to the make/unmake {@link Position}. It holds a preallocated
+ * stack of position states, one per ply. Making a move copies the current state into the next slot
+ * and applies the move there, unmaking a move just steps back to the previous slot, so nothing has
+ * to be reversed and no history records are allocated.
+ * <p>
+ * The per-ply state is a board (piece and colour bitboards, squares and board hash) plus the side to
+ * move, castling rights, en passant target, clocks and position hash. Moves are generated by the same
+ * {@link MoveGenerator} as {@link Position}, so the two positions produce identical moves.
+ */
+public final class CopyMakePosition implements PositionState {
+
+    public static final int MAX_PLY = 256;
+
+    // State stack, indexed by ply
+    private final Board[] boards                = new Board[MAX_PLY + 1];
+    private final boolean[] sideToMove          = new boolean[MAX_PLY + 1];
+    private final byte[] castlingRights         = new byte[MAX_PLY + 1];
+    private final byte[] enPassantTarget        = new byte[MAX_PLY + 1];
+    private final int[] halfMoveClock           = new int[MAX_PLY + 1];
+    private final int[] turn                    = new int[MAX_PLY + 1];
+    private final long[] hash                   = new long[MAX_PLY + 1];
+    private int ply = 0;
+
+    // Moves (+ check, attack and pin information)
+    private final MoveGenerator moveGenerator = new MoveGenerator();
+    private final MoveList moves = new MoveList();
+
+
+    // ====================================================================================================
+    //                                  Constructors and Builders
+    // ====================================================================================================
+
+    /**
+     * Create a copy-make position starting from the current state of a position.
+     * The position history is not copied, the current state becomes ply 0.
+     * @param pos position
+     */
+    public CopyMakePosition(final Position pos) {
+        for (int i = 0; i < this.boards.length; i++) this.boards[i] = Board.empty();
+        pos.board().copyInto(this.boards[0]);
+        this.sideToMove[0]      = pos.sideToMove();
+        this.castlingRights[0]  = pos.castlingRights();
+        this.enPassantTarget[0] = pos.enPassantTarget();
+        this.halfMoveClock[0]   = pos.halfMoveClock();
+        this.turn[0]            = pos.turn();
+        this.hash[0]            = pos.zhash();
+        generateMoves();
+    }
+
+    /**
+     * Build a copy-make position from a FEN string.
+     * @param fen FEN string
+     * @return copy-make position
+     * @throws Fen.ParseException invalid FEN exception
+     */
+    public static CopyMakePosition fromFen(final String fen) throws Fen.ParseException {
+        return new CopyMakePosition(Fen.parse(fen));
+    }
+
+
+    // ====================================================================================================
+    //                                  Accessors
+    // ====================================================================================================
+
+    @Override
+    public Board board() {
+        return this.boards[this.ply];
+    }
+
+    @Override
+    public boolean sideToMove() {
+        return this.sideToMove[this.ply];
+    }
+
+    @Override
+    public byte castlingRights() {
+        return this.castlingRights[this.ply];
+    }
+
+    @Override
+    public byte enPassantTarget() {
+        return this.enPassantTarget[this.ply];
+    }
+
+    /**
+     * Get the half move clock, number of half-moves (plies) since last capture or pawn advance.
+     * @return half move clock
+     */
+    public int halfMoveClock() {
+        return this.halfMoveClock[this.ply];
+    }
+
+    /**
+     * Get the turn number.
+     * @return turn number
+     */
+    public int turn() {
+        return this.turn[this.ply];
+    }
+
+    /**
+     * Get the current ply, the number of moves made since the starting state.
+     * @return ply
+     */
+    public int ply() {
+        return this.ply;
+    }
+
+    /**
+     * Get the list of legal moves.
+     * @return legal move list
+     */
+    public MoveList moves() {
+        return this.moves;
+    }
+
+    /**
+     * Get the move generator, has check, attack and pin data.
+     * @return move generator
+     */
+    public MoveGenerator moveGenerator() {
+        return this.moveGenerator;
+    }
+
+    /**
+     * Get whether the current side's king is in check.
+     * @return is king in check
+     */
+    public boolean isCheck() {
+        return this.moveGenerator.isCheck();
+    }
+
+    /**
+     * Get the long Zobrist hash of the position.
+     * @return position Zobrist hash
+     */
+    public long zhash() {
+        return this.hash[this.ply];
+    }
+
+
+    // ====================================================================================================
+    //                                  Make / Unmake / Undo Moves
+    // ====================================================================================================
+
+    /**
+     * Generate moves for the current position.
+     */
+    public void generateMoves() {
+        this.moves.clear();
+        this.moveGenerator.resetCheck();
+        if (this.halfMoveClock[this.ply] >= 50 || this.boards[this.ply].isDeadPosition()) return;
+        this.moveGenerator.generate(this, this.moves);
+    }
+
+    /**
+     * Make the move by copying the current state into the next ply slot and applying it there. At most
+     * {@link #MAX_PLY} moves can be made from the starting state.
+     * @param move move
+     * @throws IllegalStateException if {@link #MAX_PLY} moves have already been made
+     */
+    public void makeMove(final int move) {
+        if (this.ply == MAX_PLY) throw new IllegalStateException("Cannot make a move past ply " + MAX_PLY);
+        final int prev = this.ply;
+        final int next = this.ply + 1;
+        final boolean us = this.sideToMove[prev];
+        final Board board = this.boards[next];
+
+        // Copy the board and make the move on the copy, updating the hash
+        this.boards[prev].copyInto(board);
+        long hash = this.hash[prev] ^ board.zhash();
+        board.makeMove(us, move);
+        hash ^= board.zhash();
+
+        // Update the hash from none board changes
+        hash ^= Zobrist.castlingRights(this.castlingRights[prev]);
+        hash ^= Zobrist.enPassantTarget(this.enPassantTarget[prev]);
+        hash ^= Zobrist.side(Colour.BLACK); // Flip the colour bits every move
+
+        // Write the next position state
+        this.castlingRights[next]   = Castling.update(this.castlingRights[prev], move);
+        this.enPassantTarget[next]  = Move.isDoublePush(move) ? (byte) (Move.from(move) + Colour.forward(us).offset()) : Square.EMPTY;
+        this.halfMoveClock[next]    = Move.isCapture(move) || Move.mover(move) == PieceType.PAWN ? 0 : this.halfMoveClock[prev] + 1;
+        this.sideToMove[next]       = Colour.flip(us);
+        this.turn[next]             = us == Colour.BLACK ? this.turn[prev] + 1 : this.turn[prev];
+        hash ^= Zobrist.castlingRights(this.castlingRights[next]);
+        hash ^= Zobrist.enPassantTarget(this.enPassantTarget[next]);
+        this.hash[next] = hash;
+        this.ply = next;
+
+        // Generate legal moves (analyse position)
+        generateMoves();
+    }
+
+    /**
+     * Undoes the last move and regenerates the legal move list.
+     */
+    public void undo() {
+        unmakeMove();
+        generateMoves();
+    }
+
+    /**
+     * Unmake the last move by stepping back to the previous ply slot - do not regenerate legal move list,
+     * useful for avoiding computation during search.
+     */
+    public void unmakeMove() {
+        if (this.ply > 0) this.ply--;
+    }
+
+
+    // ====================================================================================================
+    //                                  Fen Utils
+    // ====================================================================================================
+
+    /**
+     * Get a FEN string for the current position.
+     * @return FEN string.
+     */
+    public String toFen() {
+        return Fen.format(new Position(board().copy(), sideToMove(), castlingRights(), enPassantTarget(), halfMoveClock(), turn()));
+    }
+}
@@ -14,6 +14,16 @@ package dev.pig.stockpig.chess;
  * - Bit 21:        Double pawn push flag
  * - Bit 22:        Castle flag
  * - Bit 23:        En passant flag
+ * <p>
+ * Moves can also be packed into a compact 16-bit encoding for storage, such as in hash tables,
+ * opening books and PV arrays. Only the from/to squares, the promotion piece and a special move flag
+ * are kept, the rest is recovered from the board when unpacking.
+ * <p>
+ * Packed bit ranges:
+ * - Bits 0-5:      From square (0...63)
+ * - Bits 6-11:     To square (0...63)
+ * - Bits 12-13:    Promoted piece type (knight, bishop, rook, queen)
+ * - Bits 14-15:    Flag (normal, promotion, en passant, castle)
  */
 public final class Move {
 
@@ -37,6 +47,13 @@ public final class Move {
     private static final int CAPTURE_MASK = PIECE_MASK << CAPTURE_SHIFT;
     private static final int PROMOTE_MASK = PIECE_MASK << PROMOTE_SHIFT;
 
+    // Packed Shifts and Flags
+    private static final int PACKED_PROMOTE_SHIFT   = 12;
+    private static final int PACKED_FLAG_SHIFT      = 14;
+    private static final int PACKED_PROMOTION       = 1;
+    private static final int PACKED_EN_PASSANT      = 2;
+    private static final int PACKED_CASTLE          = 3;
+
 
     // ====================================================================================================
     //                                  Constructors and Builders
@@ -221,5 +238,47 @@ public final class Move {
     }
 
 
+
+    // ====================================================================================================
+    //                                  Compact Encoding
+    // ====================================================================================================
+
+    /**
+     * Pack a move into the compact 16-bit encoding. The empty move (0) packs to 0.
+     * @param move move
+     * @return packed move
+     */
+    public static short pack(final int move) {
+        final int flag = isCastle(move) ? PACKED_CASTLE : isEnPassant(move) ? PACKED_EN_PASSANT : isPromotion(move) ? PACKED_PROMOTION : 0;
+        final int promote = isPromotion(move) ? promote(move) - PieceType.KNIGHT : 0;
+        return (short) ((move & (SQUARE_MASK | SQUARE_MASK << TO_SHIFT)) | (promote << PACKED_PROMOTE_SHIFT) | (flag << PACKED_FLAG_SHIFT));
+    }
+
+    /**
+     * Unpack a compact 16-bit move into the full encoding, recovering the mover, captured piece and
+     * double push flag from the board the move is to be made on. The packed empty move (0) unpacks to 0.
+     * No validation is done, a stale packed move unpacks to a move that may not be legal.
+     * @param board board before the move is made
+     * @param packed packed move
+     * @return move
+     */
+    public static int unpack(final Board board, final short packed) {
+        if (packed == 0) return 0;
+
+        final byte from = (byte) (packed & SQUARE_MASK);
+        final byte to   = (byte) ((packed >>> TO_SHIFT) & SQUARE_MASK);
+        final int flag  = (packed >>> PACKED_FLAG_SHIFT) & 0b11;
+
+        if (flag == PACKED_CASTLE)     return castle(from, to);
+        if (flag == PACKED_EN_PASSANT) return enPassant(from, to);
+
+        final byte mover = board.pieceAt(from);
+        final int move   = capture(from, to, mover, board.pieceAt(to));
+        if (flag == PACKED_PROMOTION) return addPromotion(move, (byte) (PieceType.KNIGHT + ((packed >>> PACKED_PROMOTE_SHIFT) & 0b11)));
+        if (mover == PieceType.PAWN && Math.abs(to - from) == 16) return doublePush(from, to);
+        return move;
+    }
+
+
     private Move() {}
 }
@@ -8,9 +8,24 @@ import dev.pig.stockpig.chess.bitboard.Square;
 /**
  * Move Generator generates legal moves for a given chess position into a
  * move list. Also, calculates and caches check, attack and pin information.
+ * <p>
+ * Alternatively, pseudo-legal moves can be generated. These skip the full attack map and pin
+ * filtering, but may leave the king in check, so each move must be checked with
+ * {@link #isLegal(PositionState, int)} before it is made. This is cheaper when only the first few
+ * moves of a list are ever made, for example when a search cutoff occurs.
  */
 public final class MoveGenerator {
 
+    /**
+     * Move generation mode.
+     */
+    public enum Mode {
+        /** Generate only legal moves. */
+        LEGAL,
+        /** Generate pseudo-legal moves, legality is checked per move with {@link #isLegal(PositionState, int)}. */
+        PSEUDO_LEGAL
+    }
+
     private boolean isCheck;
     private boolean isDoubleCheck;
 
@@ -21,6 +36,11 @@ public final class MoveGenerator {
     private long pinners;
     private long target;
 
+    // Gives check information, calculated lazily
+    private boolean hasCheckInfo;
+    private final long[] checkSquares = new long[7];
+    private long discoveredCheckers;
+
 
     // ====================================================================================================
     //                                  Accessors
@@ -84,6 +104,25 @@ public final class MoveGenerator {
     }
 
 
+    /**
+     * Copy the cached analysis of this move generator into another move generator.
+     * @param target move generator to copy into
+     */
+    public void copyInto(final MoveGenerator target) {
+        target.isCheck              = this.isCheck;
+        target.isDoubleCheck        = this.isDoubleCheck;
+        target.attacked             = this.attacked;
+        target.checkers             = this.checkers;
+        target.checkRay             = this.checkRay;
+        target.pinned               = this.pinned;
+        target.pinners              = this.pinners;
+        target.target               = this.target;
+        target.hasCheckInfo         = this.hasCheckInfo;
+        target.discoveredCheckers   = this.discoveredCheckers;
+        System.arraycopy(this.checkSquares, 0, target.checkSquares, 0, this.checkSquares.length);
+    }
+
+
     // ====================================================================================================
     //                                  Checks, Attacks and Pins
     // ====================================================================================================
@@ -93,6 +132,7 @@ public final class MoveGenerator {
      */
     public void resetCheck() {
         this.isCheck = false;
+        this.hasCheckInfo = false;
     }
 
     /**
@@ -103,13 +143,14 @@ public final class MoveGenerator {
         this.checkRay = Bitboard.EMPTY;
         this.pinned   = Bitboard.EMPTY;
         this.pinners  = Bitboard.EMPTY;
+        this.hasCheckInfo = false;
     }
 
     /**
      * Analyse checks, attacks and pins, caching results for move generation.
      * @param pos position
      */
-    public void attackAnalysis(final Position pos) {
+    public void attackAnalysis(final PositionState pos) {
         reset();
 
         // Side to move variables
@@ -129,53 +170,134 @@ public final class MoveGenerator {
         final long eQueens              = pos.board().pieces(PieceType.QUEEN) & enemies;
         final long eDiagonals           = eQueens | eBishops;
         final long eOrthogonals         = eQueens | eRooks;
-        final Direction pawnAttackDir1  = Colour.pawnAttackDirection1(them);
-        final Direction pawnAttackDir2  = Colour.pawnAttackDirection2(them);
 
         // Board variables
         final long unoccupied           = pos.board().unoccupied();
-        final long occupied             = ~unoccupied;
-        final long occupiedWithoutKing  = occupied ^ king;
+        final long occupiedWithoutKing  = ~unoccupied ^ king;
 
 
         // Attacks
 
-        // King attacks
-        this.attacked = Attack.king(Square.ofBitboard(eKing));
+        final AttackMap attackMap = pos.attackMap();
+        this.attacked = attackMap != null ?
+                incrementalAttacks(attackMap, pos.board(), them, king, eDiagonals, eOrthogonals) :
+                attacks(eKing, ePawns, eKnights, eDiagonals, eOrthogonals, them, occupiedWithoutKing);
 
-        // Pawn attacks
-        final long p1Attacks = Bitboard.shift(ePawns, pawnAttackDir1);
-        final long p2Attacks = Bitboard.shift(ePawns, pawnAttackDir2);
-        this.attacked |= p1Attacks;
-        this.attacked |= p2Attacks;
-        if (Bitboard.intersects(p1Attacks, king)) this.checkers |= Bitboard.shiftRev(king, pawnAttackDir1);
-        if (Bitboard.intersects(p2Attacks, king)) this.checkers |= Bitboard.shiftRev(king, pawnAttackDir2);
+        // Pawn and knight checks, looked up from the king square
+        this.checkers |= pawnAttacks(us, king) & ePawns;
+        this.checkers |= Attack.knight(kingSq) & eKnights;
 
-        // Knight attacks
-        long knights = eKnights;
-        while (knights != 0L) {
-            final long knight = Bitboard.pop(knights);
-            final long attacks = Attack.knight(Square.ofBitboard(knight));
-            this.attacked |= attacks;
-            if (Bitboard.intersects(attacks, king)) this.checkers |= knight;
-            knights ^= knight;
-        }
+        // Sliding pins and checks
+        sliderAnalysis(kingSq, team, enemies, eDiagonals, eOrthogonals);
 
-        // Sliding Attacks
-        long sliders = eDiagonals;
-        while (sliders != 0L) {
-            final long slider = Bitboard.pop(sliders);
-            this.attacked |= Attack.bishop(Square.ofBitboard(slider), occupiedWithoutKing);
-            sliders ^= slider;
+        this.isCheck = !Bitboard.isEmpty(this.checkers);
+        this.isDoubleCheck = this.isCheck && !Bitboard.isSingle(this.checkers);
+
+        this.target = this.isCheck ? this.checkRay | this.checkers : enemies | unoccupied;
+    }
+
+    /**
+     * Calculate the squares attacked by the enemy from scratch, sliding through the king so that
+     * the king cannot step back along a checking ray.
+     * @param eKing enemy king bitboard
+     * @param ePawns enemy pawns bitboard
+     * @param eKnights enemy knights bitboard
+     * @param eDiagonals enemy diagonal sliders bitboard
+     * @param eOrthogonals enemy orthogonal sliders bitboard
+     * @param them enemy colour
+     * @param occupiedWithoutKing occupied bitboard without the side to move king
+     * @return attacked bitboard
+     */
+    private static long attacks(final long eKing, final long ePawns, long eKnights, long eDiagonals, long eOrthogonals,
+                                final boolean them, final long occupiedWithoutKing) {
+        long attacked = Attack.king(Square.ofBitboard(eKing)) | pawnAttacks(them, ePawns);
+        while (eKnights != 0L) {
+            attacked |= Attack.knight(Square.ofBitboard(eKnights));
+            eKnights &= eKnights - 1;
         }
-        sliders = eOrthogonals;
+        while (eDiagonals != 0L) {
+            attacked |= Attack.bishop(Square.ofBitboard(eDiagonals), occupiedWithoutKing);
+            eDiagonals &= eDiagonals - 1;
+        }
+        while (eOrthogonals != 0L) {
+            attacked |= Attack.rook(Square.ofBitboard(eOrthogonals), occupiedWithoutKing);
+            eOrthogonals &= eOrthogonals - 1;
+        }
+        return attacked;
+    }
+
+    /**
+     * Get the squares attacked by the enemy from an incrementally updated attack map. The map
+     * slides stop at the king, so only sliders attacking the king are recomputed through it.
+     * @param attackMap attack map
+     * @param board board
+     * @param them enemy colour
+     * @param king side to move king bitboard
+     * @param eDiagonals enemy diagonal sliders bitboard
+     * @param eOrthogonals enemy orthogonal sliders bitboard
+     * @return attacked bitboard
+     */
+    private static long incrementalAttacks(final AttackMap attackMap, final Board board, final boolean them, final long king,
+                                           final long eDiagonals, final long eOrthogonals) {
+        long attacked = attackMap.attackedBy(board, them);
+        if (Bitboard.disjoint(attacked, king)) return attacked;
+
+        final long occupiedWithoutKing = board.occupied() ^ king;
+        long sliders = eDiagonals | eOrthogonals;
         while (sliders != 0L) {
-            final long slider = Bitboard.pop(sliders);
-            this.attacked |= Attack.rook(Square.ofBitboard(slider), occupiedWithoutKing);
-            sliders ^= slider;
+            final byte sq = Square.ofBitboard(sliders);
+            if (Bitboard.intersects(attackMap.attacksFrom(sq), king)) {
+                if (Bitboard.intersects(eDiagonals, sliders & -sliders))   attacked |= Attack.bishop(sq, occupiedWithoutKing);
+                if (Bitboard.intersects(eOrthogonals, sliders & -sliders)) attacked |= Attack.rook(sq, occupiedWithoutKing);
+            }
+            sliders &= sliders - 1;
         }
+        return attacked;
+    }
+
+    /**
+     * Analyse checks and pins only, caching results for pseudo-legal move generation.
+     * The attacked bitboard is not calculated and is left empty.
+     * @param pos position
+     */
+    public void checkAnalysis(final PositionState pos) {
+        reset();
+        this.attacked = Bitboard.EMPTY;
+
+        // Side to move variables
+        final boolean us                = pos.sideToMove();
+        final long team                 = pos.board().pieces(us);
+        final long king                 = pos.board().pieces(PieceType.KING) & team;
+        final byte kingSq               = Square.ofBitboard(king);
+
+        // Enemy team variables
+        final long enemies              = pos.board().pieces(Colour.flip(us));
+        final long eQueens              = pos.board().pieces(PieceType.QUEEN) & enemies;
+        final long eDiagonals           = (pos.board().pieces(PieceType.BISHOP) & enemies) | eQueens;
+        final long eOrthogonals         = (pos.board().pieces(PieceType.ROOK) & enemies) | eQueens;
+
+        // Pawn and knight checks, looked up from the king square
+        this.checkers |= pawnAttacks(us, king) & pos.board().pieces(PieceType.PAWN) & enemies;
+        this.checkers |= Attack.knight(kingSq) & pos.board().pieces(PieceType.KNIGHT) & enemies;
 
         // Sliding pins and checks
+        sliderAnalysis(kingSq, team, enemies, eDiagonals, eOrthogonals);
+
+        this.isCheck = !Bitboard.isEmpty(this.checkers);
+        this.isDoubleCheck = this.isCheck && !Bitboard.isSingle(this.checkers);
+
+        this.target = this.isCheck ? this.checkRay | this.checkers : enemies | pos.board().unoccupied();
+    }
+
+    /**
+     * Find sliding pieces that pin a piece to, or check, the king.
+     * @param kingSq king square
+     * @param team team bitboard
+     * @param enemies enemies bitboard
+     * @param eDiagonals enemy diagonal sliders bitboard
+     * @param eOrthogonals enemy orthogonal sliders bitboard
+     */
+    private void sliderAnalysis(final byte kingSq, final long team, final long enemies, final long eDiagonals, final long eOrthogonals) {
         long pinners = (Attack.bishop(kingSq, enemies) & eDiagonals) | (Attack.rook(kingSq, enemies) & eOrthogonals);
         while (pinners != 0L) {
             final long pinner = Bitboard.pop(pinners);
@@ -197,11 +319,6 @@ public final class MoveGenerator {
                 this.pinned |= pinned;
             }
         }
-
-        this.isCheck = !Bitboard.isEmpty(this.checkers);
-        this.isDoubleCheck = this.isCheck && !Bitboard.isSingle(this.checkers);
-
-        this.target = this.isCheck ? this.checkRay | this.checkers : enemies | unoccupied;
     }
 
 
@@ -214,107 +331,530 @@ public final class MoveGenerator {
      * @param pos current position
      * @param moves move list
      */
-    public void generate(final Position pos, final MoveList moves) {
-        attackAnalysis(pos);
+    public void generate(final PositionState pos, final MoveList moves) {
+        generate(pos, moves, Mode.LEGAL);
+    }
+
+    /**
+     * Generate all legal or pseudo-legal moves into move list.
+     * Pseudo-legal moves never castle through check and, when in check, only king moves or moves
+     * that capture or block the checker are generated, but they may still leave the king in check.
+     * @param pos current position
+     * @param moves move list
+     * @param mode generation mode
+     */
+    public void generate(final PositionState pos, final MoveList moves, final Mode mode) {
+        final boolean legal = mode == Mode.LEGAL;
+        if (legal) attackAnalysis(pos);
+        else       checkAnalysis(pos);
 
+        final Board board           = pos.board();
         final boolean us            = pos.sideToMove();
-        final long unoccupied       = pos.board().unoccupied();
+        final long unoccupied       = board.unoccupied();
         final long occupied         = ~unoccupied;
-        final long team             = pos.board().pieces(us);
-        final long enemies          = pos.board().pieces(Colour.flip(us));
-        final long king             = pos.board().pieces(PieceType.KING) & team;
+        final long team             = board.pieces(us);
+        final long enemies          = board.pieces(Colour.flip(us));
+        final byte kingSq           = Square.ofBitboard(board.pieces(PieceType.KING) & team);
+        final long pinned           = legal ? this.pinned : Bitboard.EMPTY;
+        final long kingTargets      = legal ? ~this.attacked : Bitboard.ALL;
 
 
         // King moves - only king moves can get out of double check
 
-        final byte kFrom = Square.ofBitboard(king);
-        Bitboard.forEach(Attack.king(kFrom) & ~this.attacked & (unoccupied | enemies), (final long attack) -> {
-            final byte to = Square.ofBitboard(attack);
-            final int basic = Move.basic(kFrom, to, PieceType.KING);
-            moves.add(Bitboard.intersects(unoccupied, attack) ? basic : Move.addCapture(basic, pos.board().pieceAt(to)));
-        });
+        addMoves(board, moves, kingSq, Attack.king(kingSq) & kingTargets & (unoccupied | enemies), PieceType.KING, unoccupied);
 
         if (this.isDoubleCheck) return;
 
 
+        // Pawn moves - specialised per colour so that all shifts are constant
+
+        final long pawns            = board.pieces(PieceType.PAWN) & team;
+        final long enPassantTarget  = enPassantTargetOf(pos);
+        if (us) generateWhitePawnMoves(pos, moves, pawns, kingSq, pinned, unoccupied, enemies, enPassantTarget, legal);
+        else    generateBlackPawnMoves(pos, moves, pawns, kingSq, pinned, unoccupied, enemies, enPassantTarget, legal);
+
+
+        // Single check - only pieces that can reach the checker or the squares between may move
+
+        if (this.isCheck) {
+            generateEvasions(board, moves, team & ~pinned, occupied, unoccupied);
+            return;
+        }
+
+
         // All other moves (except castles)
 
-        final long pawns          = pos.board().pieces(PieceType.PAWN) & team;
-        final long queens         = pos.board().pieces(PieceType.QUEEN) & team;
-        final long knights        = pos.board().pieces(PieceType.KNIGHT) & team;
-        final long rooks          = pos.board().pieces(PieceType.ROOK) & team;
-        final long bishops        = pos.board().pieces(PieceType.BISHOP) & team;
+        long knights = board.pieces(PieceType.KNIGHT) & team;
+        while (knights != 0L) {
+            final byte from = Square.ofBitboard(knights);
+            addMoves(board, moves, from, Attack.knight(from) & targetsOf(from, kingSq, pinned), PieceType.KNIGHT, unoccupied);
+            knights &= knights - 1;
+        }
+
+        long queens = board.pieces(PieceType.QUEEN) & team;
+        while (queens != 0L) {
+            final byte from = Square.ofBitboard(queens);
+            addMoves(board, moves, from, Attack.queen(from, occupied) & targetsOf(from, kingSq, pinned), PieceType.QUEEN, unoccupied);
+            queens &= queens - 1;
+        }
+
+        long rooks = board.pieces(PieceType.ROOK) & team;
+        while (rooks != 0L) {
+            final byte from = Square.ofBitboard(rooks);
+            addMoves(board, moves, from, Attack.rook(from, occupied) & targetsOf(from, kingSq, pinned), PieceType.ROOK, unoccupied);
+            rooks &= rooks - 1;
+        }
+
+        long bishops = board.pieces(PieceType.BISHOP) & team;
+        while (bishops != 0L) {
+            final byte from = Square.ofBitboard(bishops);
+            addMoves(board, moves, from, Attack.bishop(from, occupied) & targetsOf(from, kingSq, pinned), PieceType.BISHOP, unoccupied);
+            bishops &= bishops - 1;
+        }
+
+
+        // Castle moves - never in check
+
+        final long attacked = legal ? this.attacked : castleAttacked(pos, occupied);
+        if (Castling.isKingSideAllowed(us, pos.castlingRights(), unoccupied, attacked)) moves.add(Castling.getKingSideMove(us));
+        if (Castling.isQueenSideAllowed(us, pos.castlingRights(), unoccupied, attacked)) moves.add(Castling.getQueenSideMove(us));
+    }
+
+    /**
+     * Generate the non-pawn, non-king moves out of a single check into the move list: captures of the checker
+     * and interpositions between the checker and the king. Rather than iterating every piece, the few
+     * target squares are looked up to find which pieces attack them. Pinned pieces can never resolve a
+     * check, so should be excluded from the movable pieces in legal mode. Moves are added in the same
+     * order as the non-evasion generator.
+     * @param board board
+     * @param moves move list
+     * @param movable pieces of the side to move that may move
+     * @param occupied occupied bitboard
+     * @param unoccupied unoccupied bitboard
+     */
+    private void generateEvasions(final Board board, final MoveList moves, final long movable, final long occupied, final long unoccupied) {
+        final long targets = this.target;
+
+        // Reverse lookup from the target squares, attacks are symmetric
+        long knightAttackers     = Bitboard.EMPTY;
+        long diagonalAttackers   = Bitboard.EMPTY;
+        long orthogonalAttackers = Bitboard.EMPTY;
+        long squares = targets;
+        while (squares != 0L) {
+            final byte sq = Square.ofBitboard(squares);
+            knightAttackers     |= Attack.knight(sq);
+            diagonalAttackers   |= Attack.bishop(sq, occupied);
+            orthogonalAttackers |= Attack.rook(sq, occupied);
+            squares &= squares - 1;
+        }
+
+        long knights = board.pieces(PieceType.KNIGHT) & movable & knightAttackers;
+        while (knights != 0L) {
+            final byte from = Square.ofBitboard(knights);
+            addMoves(board, moves, from, Attack.knight(from) & targets, PieceType.KNIGHT, unoccupied);
+            knights &= knights - 1;
+        }
+
+        long queens = board.pieces(PieceType.QUEEN) & movable & (diagonalAttackers | orthogonalAttackers);
+        while (queens != 0L) {
+            final byte from = Square.ofBitboard(queens);
+            addMoves(board, moves, from, Attack.queen(from, occupied) & targets, PieceType.QUEEN, unoccupied);
+            queens &= queens - 1;
+        }
+
+        long rooks = board.pieces(PieceType.ROOK) & movable & orthogonalAttackers;
+        while (rooks != 0L) {
+            final byte from = Square.ofBitboard(rooks);
+            addMoves(board, moves, from, Attack.rook(from, occupied) & targets, PieceType.ROOK, unoccupied);
+            rooks &= rooks - 1;
+        }
+
+        long bishops = board.pieces(PieceType.BISHOP) & movable & diagonalAttackers;
+        while (bishops != 0L) {
+            final byte from = Square.ofBitboard(bishops);
+            addMoves(board, moves, from, Attack.bishop(from, occupied) & targets, PieceType.BISHOP, unoccupied);
+            bishops &= bishops - 1;
+        }
+    }
+
+    /**
+     * Generate white pawn moves into the move list: pushes, double pushes, then captures to the
+     * north east and north west.
+     * @param pos current position
+     * @param moves move list
+     * @param pawns white pawns bitboard
+     * @param kingSq king square
+     * @param pinned pinned pieces bitboard, empty for pseudo-legal moves
+     * @param unoccupied unoccupied bitboard
+     * @param enemies enemies bitboard
+     * @param enPassantTarget en passant target bitboard
+     * @param legal whether to skip pinned en passant moves
+     */
+    private void generateWhitePawnMoves(final PositionState pos, final MoveList moves, final long pawns, final byte kingSq, final long pinned,
+                                        final long unoccupied, final long enemies, final long enPassantTarget, final boolean legal) {
+
+        // Pawns that can push forward one
+        final long onePushedPawns = ((pawns & (~pinned | Bitboard.fileOf(kingSq))) << 8) & unoccupied;
+        long destinations = onePushedPawns & this.target;
+        while (destinations != 0L) {
+            final byte to = Square.ofBitboard(destinations);
+            addPawnMove(moves, Move.basic((byte) (to - 8), to, PieceType.PAWN), to >= Square.A8);
+            destinations &= destinations - 1;
+        }
+
+        // Pawns that can double push
+        destinations = ((onePushedPawns & Bitboard.RANK_3) << 8) & unoccupied & this.target;
+        while (destinations != 0L) {
+            final byte to = Square.ofBitboard(destinations);
+            moves.add(Move.doublePush((byte) (to - 16), to));
+            destinations &= destinations - 1;
+        }
+
+        final long captureTargets = (enemies & this.target) | enPassantTarget;
+
+        // Pawns that can attack in the diagonal direction
+        destinations = ((pawns & (~pinned | Bitboard.diagonalOf(kingSq))) << 9) & Bitboard.NOT_FILE_A & captureTargets;
+        while (destinations != 0L) {
+            final byte to = Square.ofBitboard(destinations);
+            addPawnCapture(pos, moves, (byte) (to - 9), to, enPassantTarget, to >= Square.A8, legal);
+            destinations &= destinations - 1;
+        }
+
+        // Pawns that can attack in the anti-diagonal direction
+        destinations = ((pawns & (~pinned | Bitboard.antiDiagonalOf(kingSq))) << 7) & Bitboard.NOT_FILE_H & captureTargets;
+        while (destinations != 0L) {
+            final byte to = Square.ofBitboard(destinations);
+            addPawnCapture(pos, moves, (byte) (to - 7), to, enPassantTarget, to >= Square.A8, legal);
+            destinations &= destinations - 1;
+        }
+    }
 
-        final Direction forward     = Colour.forward(us);
-        final Direction attackDir1  = Colour.pawnAttackDirection1(us);
-        final Direction attackDir2  = Colour.pawnAttackDirection2(us);
-        final long thirdRank        = Colour.rank3(us);
-        final long promotionRank    = Colour.rank8(us);
-        final long enPassantTarget  = pos.enPassantTarget() == Square.EMPTY ? Bitboard.EMPTY : Bitboard.ofSquare(pos.enPassantTarget());
+    /**
+     * Generate black pawn moves into the move list: pushes, double pushes, then captures to the
+     * south west and south east.
+     * @param pos current position
+     * @param moves move list
+     * @param pawns black pawns bitboard
+     * @param kingSq king square
+     * @param pinned pinned pieces bitboard, empty for pseudo-legal moves
+     * @param unoccupied unoccupied bitboard
+     * @param enemies enemies bitboard
+     * @param enPassantTarget en passant target bitboard
+     * @param legal whether to skip pinned en passant moves
+     */
+    private void generateBlackPawnMoves(final PositionState pos, final MoveList moves, final long pawns, final byte kingSq, final long pinned,
+                                        final long unoccupied, final long enemies, final long enPassantTarget, final boolean legal) {
 
         // Pawns that can push forward one
-        final long onePushedPawns = Bitboard.shiftInto(pawns & (~this.pinned | Bitboard.fileOf(kFrom)), forward, unoccupied);
-        Bitboard.forEach(onePushedPawns & this.target, (final long destination) ->
-                explodePawnPromotions(moves, Move.basic(Square.ofBitboard(Bitboard.shiftRev(destination, forward)), Square.ofBitboard(destination), PieceType.PAWN), destination, promotionRank));
+        final long onePushedPawns = ((pawns & (~pinned | Bitboard.fileOf(kingSq))) >>> 8) & unoccupied;
+        long destinations = onePushedPawns & this.target;
+        while (destinations != 0L) {
+            final byte to = Square.ofBitboard(destinations);
+            addPawnMove(moves, Move.basic((byte) (to + 8), to, PieceType.PAWN), to <= Square.H1);
+            destinations &= destinations - 1;
+        }
 
         // Pawns that can double push
-        final long twoPushedPawns = Bitboard.shiftInto(onePushedPawns & thirdRank, forward, unoccupied);
-        Bitboard.forEach(twoPushedPawns & this.target, (final long destination) ->
-                moves.add(Move.doublePush(Square.ofBitboard(Bitboard.shift(destination, forward.offset()*-2)), Square.ofBitboard(destination))));
+        destinations = ((onePushedPawns & Bitboard.RANK_6) >>> 8) & unoccupied & this.target;
+        while (destinations != 0L) {
+            final byte to = Square.ofBitboard(destinations);
+            moves.add(Move.doublePush((byte) (to + 16), to));
+            destinations &= destinations - 1;
+        }
+
+        final long captureTargets = (enemies & this.target) | enPassantTarget;
 
         // Pawns that can attack in the diagonal direction
-        final long pawnAttacks1 = Bitboard.shiftInto(pawns & (~this.pinned | Bitboard.diagonalOf(kFrom)), attackDir1, (enemies & this.target) | enPassantTarget);
-        Bitboard.forEach(pawnAttacks1, (final long attack) ->
-                explodePawnCapture(pos, moves, attackDir1, attack, enPassantTarget, promotionRank));
+        destinations = ((pawns & (~pinned | Bitboard.diagonalOf(kingSq))) >>> 9) & Bitboard.NOT_FILE_H & captureTargets;
+        while (destinations != 0L) {
+            final byte to = Square.ofBitboard(destinations);
+            addPawnCapture(pos, moves, (byte) (to + 9), to, enPassantTarget, to <= Square.H1, legal);
+            destinations &= destinations - 1;
+        }
 
         // Pawns that can attack in the anti-diagonal direction
-        final long pawnAttacks2 = Bitboard.shiftInto(pawns & (~this.pinned | Bitboard.antiDiagonalOf(kFrom)), attackDir2, (enemies & this.target) | enPassantTarget);
-        Bitboard.forEach(pawnAttacks2, (final long attack) ->
-                explodePawnCapture(pos, moves, attackDir2, attack, enPassantTarget, promotionRank));
-
-        Bitboard.forEach(knights, (final long knight) -> {
-            final byte from = Square.ofBitboard(knight);
-            Bitboard.forEach(Attack.knight(from) & legalTargetsOf(knight, from, kFrom), (final long attack) -> {
-                final byte to = Square.ofBitboard(attack);
-                final int basic = Move.basic(from, to, PieceType.KNIGHT);
-                moves.add(Bitboard.intersects(unoccupied, attack) ? basic : Move.addCapture(basic, pos.board().pieceAt(to)));
-            });
-        });
-
-        Bitboard.forEach(queens, (final long queen) -> {
-            final byte from = Square.ofBitboard(queen);
-            Bitboard.forEach(Attack.queen(from, occupied) & legalTargetsOf(queen, from, kFrom), (final long attack) -> {
-                final byte to = Square.ofBitboard(attack);
-                final int basic = Move.basic(from, to, PieceType.QUEEN);
-                moves.add(Bitboard.intersects(unoccupied, attack) ? basic : Move.addCapture(basic, pos.board().pieceAt(to)));
-            });
-        });
-
-        Bitboard.forEach(rooks, (final long rook) -> {
-            final byte from = Square.ofBitboard(rook);
-            Bitboard.forEach(Attack.rook(from, occupied) & legalTargetsOf(rook, from, kFrom), (final long attack) -> {
-                final byte to = Square.ofBitboard(attack);
-                final int basic = Move.basic(from, to, PieceType.ROOK);
-                moves.add(Bitboard.intersects(unoccupied, attack) ? basic : Move.addCapture(basic, pos.board().pieceAt(to)));
-            });
-        });
-
-        Bitboard.forEach(bishops, (final long bishop) -> {
-            final byte from = Square.ofBitboard(bishop);
-            Bitboard.forEach(Attack.bishop(from, occupied) & legalTargetsOf(bishop, from, kFrom), (final long attack) -> {
-                final byte to = Square.ofBitboard(attack);
-                final int basic = Move.basic(from, to, PieceType.BISHOP);
-                moves.add(Bitboard.intersects(unoccupied, attack) ? basic : Move.addCapture(basic, pos.board().pieceAt(to)));
-            });
-        });
-
-        if (this.isCheck) return;
-
-
-        // Castle moves - only add if not in check
-
-        if (Castling.isKingSideAllowed(pos.sideToMove(), pos.castlingRights(), unoccupied, this.attacked)) moves.add(Castling.getKingSideMove(pos.sideToMove()));
-        if (Castling.isQueenSideAllowed(pos.sideToMove(), pos.castlingRights(), unoccupied, this.attacked)) moves.add(Castling.getQueenSideMove(pos.sideToMove()));
+        destinations = ((pawns & (~pinned | Bitboard.antiDiagonalOf(kingSq))) >>> 7) & Bitboard.NOT_FILE_A & captureTargets;
+        while (destinations != 0L) {
+            final byte to = Square.ofBitboard(destinations);
+            addPawnCapture(pos, moves, (byte) (to + 7), to, enPassantTarget, to <= Square.H1, legal);
+            destinations &= destinations - 1;
+        }
+    }
+
+
+    // ====================================================================================================
+    //                                  Legality
+    // ====================================================================================================
+
+    /**
+     * Check whether a pseudo-legal move, generated for the current analysed position, is legal.
+     * Uses the cached pinned bitboard, so it must be called before any other position has been
+     * analysed by this move generator.
+     * @param pos current position
+     * @param move pseudo-legal move
+     * @return is move legal
+     */
+    public boolean isLegal(final PositionState pos, final int move) {
+        final boolean us    = pos.sideToMove();
+        final long from     = Bitboard.ofSquare(Move.from(move));
+        final long to       = Bitboard.ofSquare(Move.to(move));
+
+        // King moves - castles are fully checked during generation, otherwise the destination must not be attacked
+        if (Move.mover(move) == PieceType.KING) {
+            return Move.isCastle(move) || !isAttacked(pos, Colour.flip(us), Move.to(move), pos.board().occupied() ^ from);
+        }
+
+        // Pinned pieces may only move along the pin line
+        final byte kingSq = Square.ofBitboard(pos.board().pieces(us, PieceType.KING));
+        if (Bitboard.intersects(this.pinned, from) && Bitboard.disjoint(Bitboard.line(kingSq, Move.from(move)), to)) return false;
+
+        // En passant may also reveal a check along the rank of both pawns
+        return !Move.isEnPassant(move) || !isPinnedEnPassant(pos, from);
+    }
+
+    /**
+     * Check whether an arbitrary move, for example from a transposition table, killer slot or opening
+     * book, is a pseudo-legal move of the analysed position without generating any moves. The move must
+     * match the board exactly, including the mover, capture and flag fields, and when in check it must
+     * be a king move or capture or block the single checker, just as the generator would produce.
+     * @param pos current position
+     * @param move move
+     * @return is move pseudo-legal
+     */
+    public boolean isPseudoLegal(final PositionState pos, final int move) {
+        final Board board   = pos.board();
+        final boolean us    = pos.sideToMove();
+        final byte from     = Move.from(move);
+        final byte to       = Move.to(move);
+        final byte mover    = Move.mover(move);
+        final long team     = board.pieces(us);
+        final long occupied = board.occupied();
+        final long toBB     = Bitboard.ofSquare(to);
+
+        // The mover must be ours and stand on the from square
+        if (mover == PieceType.EMPTY || board.pieceAt(from) != mover || Bitboard.disjoint(team, Bitboard.ofSquare(from))) return false;
+
+        // Castles are only valid as one of the castle moves, with rights, empty and unattacked squares
+        if (Move.isCastle(move)) {
+            if (this.isCheck) return false;
+            final long attacked = castleAttacked(pos, occupied);
+            return (move == Castling.getKingSideMove(us)  && Castling.isKingSideAllowed(us, pos.castlingRights(), ~occupied, attacked)) ||
+                   (move == Castling.getQueenSideMove(us) && Castling.isQueenSideAllowed(us, pos.castlingRights(), ~occupied, attacked));
+        }
+
+        // En passant must capture onto the en passant target, which resolves any check
+        if (Move.isEnPassant(move)) {
+            return move == Move.enPassant(from, to) && !this.isDoubleCheck &&
+                    Bitboard.intersects(Attack.pawn(us, from) & enPassantTargetOf(pos), toBB);
+        }
+
+        // The capture field must match the board, and the king can never be captured
+        final byte capture = board.pieceAt(to);
+        if (Move.capture(move) != capture || capture == PieceType.KING || Bitboard.intersects(team, toBB)) return false;
+
+        // The destination must be reachable, rebuild the move to check every field
+        int expected;
+        if (mover == PieceType.PAWN) {
+            final byte forward = (byte) Colour.forward(us).offset();
+            if (capture != PieceType.EMPTY) {
+                if (Bitboard.disjoint(Attack.pawn(us, from), toBB)) return false;
+                expected = Move.capture(from, to, PieceType.PAWN, capture);
+            } else if (to == from + forward) {
+                expected = Move.basic(from, to, PieceType.PAWN);
+            } else if (to == from + 2 * forward && board.pieceAt((byte) (from + forward)) == PieceType.EMPTY &&
+                    Bitboard.intersects(Colour.rank3(us), Bitboard.ofSquare((byte) (from + forward)))) {
+                expected = Move.doublePush(from, to);
+            } else {
+                return false;
+            }
+
+            if (Bitboard.intersects(Colour.rank8(us), toBB)) {
+                final byte promote = Move.promote(move);
+                if (promote != PieceType.QUEEN && promote != PieceType.KNIGHT && promote != PieceType.ROOK && promote != PieceType.BISHOP) return false;
+                expected = Move.addPromotion(expected, promote);
+            }
+        } else {
+            final long attacks = mover == PieceType.KING ? Attack.king(from) : attacksOf(mover, from, occupied);
+            if (Bitboard.disjoint(attacks, toBB)) return false;
+            expected = capture == PieceType.EMPTY ? Move.basic(from, to, mover) : Move.capture(from, to, mover, capture);
+        }
+        if (expected != move) return false;
+
+        // In check, only the king may move out of a double check, other pieces must capture or block
+        return mover == PieceType.KING || !this.isCheck || (!this.isDoubleCheck && Bitboard.intersects(this.target, toBB));
+    }
+
+    /**
+     * Check whether an arbitrary move is a legal move of the analysed position, without generating any moves.
+     * @param pos current position
+     * @param move move
+     * @return is move legal
+     */
+    public boolean isValid(final PositionState pos, final int move) {
+        return isPseudoLegal(pos, move) && isLegal(pos, move);
+    }
+
+    /**
+     * Check whether a square is attacked by a colour, given an occupancy for sliding attacks.
+     * @param pos current position
+     * @param by attacking colour
+     * @param sq square
+     * @param occupied occupied bitboard
+     * @return is square attacked
+     */
+    public static boolean isAttacked(final PositionState pos, final boolean by, final byte sq, final long occupied) {
+        final Board board       = pos.board();
+        final long attackers    = board.pieces(by);
+        final long queens       = board.pieces(PieceType.QUEEN);
+
+        return  Bitboard.intersects(Attack.knight(sq), board.pieces(PieceType.KNIGHT) & attackers) ||
+                Bitboard.intersects(Attack.king(sq), board.pieces(PieceType.KING) & attackers) ||
+                Bitboard.intersects(pawnAttacks(Colour.flip(by), Bitboard.ofSquare(sq)), board.pieces(PieceType.PAWN) & attackers) ||
+                Bitboard.intersects(Attack.bishop(sq, occupied), (board.pieces(PieceType.BISHOP) | queens) & attackers) ||
+                Bitboard.intersects(Attack.rook(sq, occupied), (board.pieces(PieceType.ROOK) | queens) & attackers);
+    }
+
+    /**
+     * Get the attacked squares that castling must not pass through, without a full attack map.
+     * Only squares the side to move could castle through are tested.
+     * @param pos current position
+     * @param occupied occupied bitboard
+     * @return attacked castle squares bitboard
+     */
+    private static long castleAttacked(final PositionState pos, final long occupied) {
+        final boolean us = pos.sideToMove();
+        long squares = us ?
+                ((pos.castlingRights() & Castling.W_KING_SIDE)  != 0 ? Castling.W_KING_CHECK_SQUARES  : 0L) |
+                ((pos.castlingRights() & Castling.W_QUEEN_SIDE) != 0 ? Castling.W_QUEEN_CHECK_SQUARES : 0L) :
+                ((pos.castlingRights() & Castling.B_KING_SIDE)  != 0 ? Castling.B_KING_CHECK_SQUARES  : 0L) |
+                ((pos.castlingRights() & Castling.B_QUEEN_SIDE) != 0 ? Castling.B_QUEEN_CHECK_SQUARES : 0L);
+
+        long attacked = Bitboard.EMPTY;
+        while (squares != 0L) {
+            final long sq = Bitboard.pop(squares);
+            if (isAttacked(pos, Colour.flip(us), Square.ofBitboard(sq), occupied)) attacked |= sq;
+            squares ^= sq;
+        }
+        return attacked;
+    }
+
+
+    // ====================================================================================================
+    //                                  Gives Check
+    // ====================================================================================================
+
+    /**
+     * Check whether a move of the analysed position gives check, without making it. The squares each
+     * piece type would check the enemy king from, and the pieces whose move could discover a check,
+     * are calculated on the first call for each analysed position.
+     * @param pos current position
+     * @param move move
+     * @return does move give check
+     */
+    public boolean givesCheck(final PositionState pos, final int move) {
+        if (!this.hasCheckInfo) checkInfoAnalysis(pos);
+
+        final Board board   = pos.board();
+        final boolean us    = pos.sideToMove();
+        final byte from     = Move.from(move);
+        final byte to       = Move.to(move);
+        final byte eKingSq  = Square.ofBitboard(board.pieces(Colour.flip(us), PieceType.KING));
+
+        // Direct checks, the mover cannot have been blocking its own line to the king
+        final byte piece = Move.isPromotion(move) ? Move.promote(move) : Move.mover(move);
+        if (!Move.isPromotion(move) && ((this.checkSquares[piece] >>> to) & 1L) != 0L) return true;
+
+        // Discovered checks, unless the piece stays on the line to the king
+        if (((this.discoveredCheckers >>> from) & 1L) != 0L && Bitboard.disjoint(Bitboard.line(from, eKingSq), Bitboard.ofSquare(to))) return true;
+
+        // Special moves change more than the from and to squares, so check against the resulting occupancy
+        final long occupied = board.occupied();
+        if (Move.isPromotion(move)) {
+            return Bitboard.intersects(attacksOf(piece, to, occupied ^ Bitboard.ofSquare(from)), Bitboard.ofSquare(eKingSq));
+        }
+        if (Move.isCastle(move)) {
+            final byte rookTo = Castling.getRookTo(us, to);
+            final long after = occupied ^ Bitboard.ofSquare(from) ^ Bitboard.ofSquare(to) ^ Bitboard.ofSquare(Castling.getRookFrom(us, to)) ^ Bitboard.ofSquare(rookTo);
+            return Bitboard.intersects(Attack.rook(rookTo, after), Bitboard.ofSquare(eKingSq));
+        }
+        if (Move.isEnPassant(move)) {
+            final long captured = Bitboard.shift(Bitboard.ofSquare(to), Colour.backward(us));
+            final long after    = occupied ^ Bitboard.ofSquare(from) ^ Bitboard.ofSquare(to) ^ captured;
+            final long queens   = board.pieces(us, PieceType.QUEEN);
+            return Bitboard.intersects(Attack.bishop(eKingSq, after), board.pieces(us, PieceType.BISHOP) | queens) ||
+                   Bitboard.intersects(Attack.rook(eKingSq, after), board.pieces(us, PieceType.ROOK) | queens);
+        }
+        return false;
+    }
+
+    /**
+     * Get the bitboard of the side to move pieces whose move could discover a check on the enemy king.
+     * @param pos current position
+     * @return discovered check candidates bitboard
+     */
+    public long discoveredCheckers(final PositionState pos) {
+        if (!this.hasCheckInfo) checkInfoAnalysis(pos);
+        return this.discoveredCheckers;
+    }
+
+    /**
+     * Get the squares from which a piece type of the side to move would check the enemy king.
+     * @param pos current position
+     * @param pt piece type
+     * @return check squares bitboard
+     */
+    public long checkSquares(final PositionState pos, final byte pt) {
+        if (!this.hasCheckInfo) checkInfoAnalysis(pos);
+        return this.checkSquares[pt];
+    }
+
+    /**
+     * Analyse the squares each piece type checks the enemy king from, and the pieces blocking a line
+     * from a friendly slider to the enemy king (applying the pin search from the enemy king).
+     * @param pos current position
+     */
+    private void checkInfoAnalysis(final PositionState pos) {
+        final Board board       = pos.board();
+        final boolean us        = pos.sideToMove();
+        final long team         = board.pieces(us);
+        final long enemies      = board.pieces(Colour.flip(us));
+        final long occupied     = team | enemies;
+        final byte eKingSq      = Square.ofBitboard(board.pieces(PieceType.KING) & enemies);
+
+        this.checkSquares[PieceType.PAWN]   = Attack.pawn(Colour.flip(us), eKingSq);
+        this.checkSquares[PieceType.KNIGHT] = Attack.knight(eKingSq);
+        this.checkSquares[PieceType.BISHOP] = Attack.bishop(eKingSq, occupied);
+        this.checkSquares[PieceType.ROOK]   = Attack.rook(eKingSq, occupied);
+        this.checkSquares[PieceType.QUEEN]  = this.checkSquares[PieceType.BISHOP] | this.checkSquares[PieceType.ROOK];
+
+        final long queens = board.pieces(PieceType.QUEEN) & team;
+        long snipers = (Attack.bishop(eKingSq, enemies) & ((board.pieces(PieceType.BISHOP) & team) | queens)) |
+                       (Attack.rook(eKingSq, enemies) & ((board.pieces(PieceType.ROOK) & team) | queens));
+        this.discoveredCheckers = Bitboard.EMPTY;
+        while (snipers != 0L) {
+            final long blockers = Bitboard.between(eKingSq, Square.ofBitboard(snipers)) & occupied;
+            if (Bitboard.isSingle(blockers) && Bitboard.intersects(blockers, team)) this.discoveredCheckers |= blockers;
+            snipers &= snipers - 1;
+        }
+
+        this.hasCheckInfo = true;
+    }
+
+    /**
+     * Get the attacks of a non-king piece type on a square.
+     * @param pt piece type
+     * @param sq square
+     * @param occupied occupied bitboard
+     * @return attack bitboard
+     */
+    private static long attacksOf(final byte pt, final byte sq, final long occupied) {
+        return switch (pt) {
+            case PieceType.KNIGHT -> Attack.knight(sq);
+            case PieceType.BISHOP -> Attack.bishop(sq, occupied);
+            case PieceType.ROOK   -> Attack.rook(sq, occupied);
+            case PieceType.QUEEN  -> Attack.queen(sq, occupied);
+            default -> Bitboard.EMPTY;
+        };
     }
 
 
@@ -331,34 +871,95 @@ public final class MoveGenerator {
      * @return legal piece targets
      */
     public long legalTargetsOf(final long piece, final byte pieceSq, final byte kingSq) {
-        return Bitboard.disjoint(this.pinned, piece) ? this.target : this.target & Bitboard.line(kingSq, pieceSq);
+        return targetsOf(pieceSq, kingSq, this.pinned);
+    }
+
+    /**
+     * Calculate the target squares for a given piece square, restricted by the pinned bitboard.
+     * @param pieceSq piece square
+     * @param kingSq king square
+     * @param pinned pinned pieces bitboard, empty for pseudo-legal targets
+     * @return piece targets
+     */
+    private long targetsOf(final byte pieceSq, final byte kingSq, final long pinned) {
+        return ((pinned >>> pieceSq) & 1L) == 0L ? this.target : this.target & Bitboard.line(kingSq, pieceSq);
     }
 
 
     // ====================================================================================================
-    //                                  Move Exploders
+    //                                  Pawn Helpers
     // ====================================================================================================
 
+    /**
+     * Get the squares attacked by pawns of a colour.
+     * @param c pawn colour
+     * @param pawns pawns bitboard
+     * @return attacked squares bitboard
+     */
+    private static long pawnAttacks(final boolean c, final long pawns) {
+        return c ?
+                ((pawns << 9) & Bitboard.NOT_FILE_A) | ((pawns << 7) & Bitboard.NOT_FILE_H) :
+                ((pawns >>> 9) & Bitboard.NOT_FILE_H) | ((pawns >>> 7) & Bitboard.NOT_FILE_A);
+    }
+
+    /**
+     * Get the en passant target bitboard, if an en passant capture could be legal. When in check
+     * the capture must either take the checking pawn or block the check on the target square.
+     * @param pos current position
+     * @return en passant target bitboard
+     */
+    private long enPassantTargetOf(final PositionState pos) {
+        if (pos.enPassantTarget() == Square.EMPTY) return Bitboard.EMPTY;
+
+        final long enPassantTarget = Bitboard.ofSquare(pos.enPassantTarget());
+        if (!this.isCheck) return enPassantTarget;
+
+        final long capturedPawn = Bitboard.shift(enPassantTarget, Colour.backward(pos.sideToMove()));
+        return Bitboard.intersects(this.target, enPassantTarget | capturedPawn) ? enPassantTarget : Bitboard.EMPTY;
+    }
+
+
+    // ====================================================================================================
+    //                                  Move Adders
+    // ====================================================================================================
+
+    /**
+     * Add a move from a square to each target square into the move list, as a capture if the target is occupied.
+     * @param board board
+     * @param moves move list
+     * @param from from square
+     * @param targets target squares bitboard
+     * @param mover moving piece type
+     * @param unoccupied unoccupied bitboard
+     */
+    private static void addMoves(final Board board, final MoveList moves, final byte from, long targets, final byte mover, final long unoccupied) {
+        while (targets != 0L) {
+            final byte to = Square.ofBitboard(targets);
+            final int basic = Move.basic(from, to, mover);
+            moves.add(((unoccupied >>> to) & 1L) != 0L ? basic : Move.addCapture(basic, board.pieceAt(to)));
+            targets &= targets - 1;
+        }
+    }
+
     /**
      * If the pawn capture is to the en passant target then add an en passant move to the list, otherwise
-     * check for promotions and add the capture to the move list.
+     * add the capture (exploding promotions) to the move list.
      * @param pos current position
      * @param moves move list
-     * @param attackDir attack direction
-     * @param attack attack bitboard
+     * @param from from square
+     * @param to to square
      * @param enPassantTarget en passant target bitboard
-     * @param promotionRank promotion rank bitboard.
-     */
-    private void explodePawnCapture(final Position pos, final MoveList moves, final Direction attackDir, final long attack, final long enPassantTarget, final long promotionRank) {
-        final long pawn = Bitboard.shiftRev(attack, attackDir);
-        final byte from = Square.ofBitboard(pawn);
-        final byte to = Square.ofBitboard(attack);
-        if (attack == enPassantTarget) {
-            if (isPinnedEnPassant(pos, pawn)) return;
+     * @param promotes whether the destination is on the promotion rank
+     * @param legal whether to skip pinned en passant moves
+     */
+    private void addPawnCapture(final PositionState pos, final MoveList moves, final byte from, final byte to, final long enPassantTarget,
+                                final boolean promotes, final boolean legal) {
+        if (((enPassantTarget >>> to) & 1L) != 0L) {
+            if (legal && isPinnedEnPassant(pos, Bitboard.ofSquare(from))) return;
             moves.add(Move.enPassant(from, to));
             return;
         }
-        explodePawnPromotions(moves, Move.capture(from, to, PieceType.PAWN, pos.board().pieceAt(to)), attack, promotionRank);
+        addPawnMove(moves, Move.capture(from, to, PieceType.PAWN, pos.board().pieceAt(to)), promotes);
     }
 
     /**
@@ -366,11 +967,10 @@ public final class MoveGenerator {
      * into the move list, otherwise just add the passed move.
      * @param moves move list
      * @param move basic move
-     * @param to destination bitboard
-     * @param promotionRank promotion rank bitboard
+     * @param promotes whether the destination is on the promotion rank
      */
-    private void explodePawnPromotions(final MoveList moves, final int move, final long to, final long promotionRank) {
-        if (Bitboard.contains(promotionRank, to)) {
+    private static void addPawnMove(final MoveList moves, final int move, final boolean promotes) {
+        if (promotes) {
             moves.add(Move.addPromotion(move, PieceType.QUEEN));
             moves.add(Move.addPromotion(move, PieceType.KNIGHT));
             moves.add(Move.addPromotion(move, PieceType.ROOK));
@@ -393,7 +993,7 @@ public final class MoveGenerator {
      * @param pawn moving pawn
      * @return is en passant illegal/pinned
      */
-    private boolean isPinnedEnPassant(final Position pos, final long pawn) {
+    private boolean isPinnedEnPassant(final PositionState pos, final long pawn) {
         final boolean us            = pos.sideToMove();
         final long king             = pos.board().pieces(us, PieceType.KING);
         final Direction backward    = Colour.backward(us);
@@ -32,6 +32,17 @@ public final class MoveList {
         return this.moves[i];
     }
 
+    /**
+     * Swaps the moves at the given indexes, for move ordering.
+     * @param i index
+     * @param j index
+     */
+    public void swap(final int i, final int j) {
+        final int move = this.moves[i];
+        this.moves[i] = this.moves[j];
+        this.moves[j] = move;
+    }
+
     /**
      * Returns the number of moves in the list.
      * @return size
@@ -12,7 +12,7 @@ import java.util.List;
  * Wraps a Board providing material data and a MoveGenerator providing checks,
  * attacks and pin data.
  */
-public final class Position {
+public final class Position implements PositionState {
 
     // State
     private final Board board;
@@ -29,6 +29,10 @@ public final class Position {
     // Moves (+ check, attack and pin information)
     private final MoveGenerator moveGenerator = new MoveGenerator();
     private final MoveList moves = new MoveList();
+    private MoveGenerator.Mode mode = MoveGenerator.Mode.LEGAL;
+
+    // Incremental attack map (null if disabled)
+    private AttackMap attackMap = null;
 
     // Zobrist Hash
     private long hash = 0L;
@@ -55,6 +59,14 @@ public final class Position {
         generateMoves();
     }
 
+    /**
+     * Create an empty position to copy into, without analysing it.
+     * @param board board
+     */
+    private Position(final Board board) {
+        this.board = board;
+    }
+
     /**
      * Get a standard starting position.
      * @return starting position
@@ -63,6 +75,83 @@ public final class Position {
         return Fen.startingPosition();
     }
 
+    /**
+     * Create an empty position, with no pieces and no legal moves, to be filled by {@link #reset}.
+     * @return empty position
+     */
+    public static Position empty() {
+        return new Position(Board.empty());
+    }
+
+    /**
+     * Reset the position in place around its current board, which the caller must already have filled.
+     * History is cleared, the hash and any attack map are rebuilt and legal moves are regenerated.
+     * The move generation mode is kept.
+     * @param sideToMove side to move
+     * @param castlingRights castling rights
+     * @param enPassantTarget en passant target square
+     * @param halfMoveClock half move clock
+     * @param turn turn number
+     */
+    public void reset(final boolean sideToMove, final byte castlingRights, final byte enPassantTarget,
+                      final int halfMoveClock, final int turn) {
+        this.sideToMove = sideToMove;
+        this.castlingRights = castlingRights;
+        this.enPassantTarget = enPassantTarget;
+        this.halfMoveClock = halfMoveClock;
+        this.turn = turn;
+        this.history.clear();
+        this.hash = Zobrist.side(sideToMove) ^ this.board.zhash() ^
+                Zobrist.castlingRights(castlingRights) ^ Zobrist.enPassantTarget(enPassantTarget);
+        if (this.attackMap != null) this.attackMap.build(this.board);
+        generateMoves();
+    }
+
+
+    // ====================================================================================================
+    //                                  Copy
+    // ====================================================================================================
+
+    /**
+     * Create an independent copy of the position, including the move history so that the copy can
+     * be undone, and the current move list and analysis so that no moves need to be regenerated.
+     * @return position copy
+     */
+    public Position copy() {
+        final Position copy = new Position(Board.empty());
+        copyInto(copy);
+        return copy;
+    }
+
+    /**
+     * Copy this position into a preallocated position, overwriting all of its state and history.
+     * History states are immutable so are shared rather than duplicated.
+     * @param target position to copy into
+     */
+    public void copyInto(final Position target) {
+        this.board.copyInto(target.board);
+        target.sideToMove       = this.sideToMove;
+        target.castlingRights   = this.castlingRights;
+        target.enPassantTarget  = this.enPassantTarget;
+        target.halfMoveClock    = this.halfMoveClock;
+        target.turn             = this.turn;
+        target.hash             = this.hash;
+        target.mode             = this.mode;
+
+        target.history.clear();
+        target.history.addAll(this.history);
+
+        this.moveGenerator.copyInto(target.moveGenerator);
+        this.moves.cloneInto(target.moves);
+
+        if (this.attackMap == null) {
+            target.attackMap = null;
+        } else {
+            if (target.attackMap == null) target.attackMap = new AttackMap();
+            this.attackMap.copyInto(target.attackMap);
+        }
+    }
+
 
     // ====================================================================================================
     //                                  Accessors
@@ -72,6 +161,7 @@ public final class Position {
      * Get the board, all material state.
      * @return board
      */
+    @Override
     public Board board() {
         return this.board;
     }
@@ -80,6 +170,7 @@ public final class Position {
      * Get the current team, the side to move.
      * @return side to move
      */
+    @Override
     public boolean sideToMove() {
         return this.sideToMove;
     }
@@ -88,6 +179,7 @@ public final class Position {
      * Get the castling rights of both teams.
      * @return castling rights
      */
+    @Override
     public byte castlingRights() {
         return this.castlingRights;
     }
@@ -96,6 +188,7 @@ public final class Position {
      * Get the en passant target, if any.
      * @return en passant target
      */
+    @Override
     public byte enPassantTarget() {
         return this.enPassantTarget;
     }
@@ -117,8 +210,8 @@ public final class Position {
     }
 
     /**
-     * Get the list of legal moves.
-     * @return legal move list
+     * Get the list of moves, legal or pseudo-legal depending on the generation mode.
+     * @return move list
      */
     public MoveList moves() {
         return this.moves;
@@ -132,6 +225,81 @@ public final class Position {
         return this.moveGenerator;
     }
 
+    /**
+     * Get the move generation mode.
+     * @return move generation mode
+     */
+    public MoveGenerator.Mode mode() {
+        return this.mode;
+    }
+
+    /**
+     * Set the move generation mode and regenerate the move list. In pseudo-legal mode,
+     * moves must be checked with {@link #isLegal(int)} before they are made.
+     * @param mode move generation mode
+     */
+    public void setMode(final MoveGenerator.Mode mode) {
+        this.mode = mode;
+        generateMoves();
+    }
+
+    /**
+     * Get whether an arbitrary move, for example from a transposition table, killer slot or opening book,
+     * is legal in the position. Constant time, no moves are generated or scanned.
+     * Only valid while the move list is current (not after {@link #unmakeMove()}).
+     * @param move move
+     * @return is move legal
+     */
+    public boolean isValid(final int move) {
+        if (this.halfMoveClock >= 50 || this.board.isDeadPosition()) return false;
+        return this.moveGenerator.isValid(this, move);
+    }
+
+    /**
+     * Get whether a move from the current move list gives check, without making it.
+     * Only valid while the move list is current (not after {@link #unmakeMove()}).
+     * @param move move from the move list
+     * @return does move give check
+     */
+    public boolean givesCheck(final int move) {
+        return this.moveGenerator.givesCheck(this, move);
+    }
+
+    /**
+     * Get the incrementally updated attack map, if enabled.
+     * @return attack map, null if disabled
+     */
+    @Override
+    public AttackMap attackMap() {
+        return this.attackMap;
+    }
+
+    /**
+     * Enable or disable the incrementally updated attack map. When enabled, the map is updated
+     * on every move make and unmake and used for attack analysis instead of recomputing all attacks.
+     * @param enabled whether to keep an incremental attack map
+     */
+    public void setIncrementalAttacks(final boolean enabled) {
+        if (enabled == (this.attackMap != null)) return;
+        if (enabled) {
+            this.attackMap = new AttackMap();
+            this.attackMap.build(this.board);
+        } else {
+            this.attackMap = null;
+        }
+        generateMoves();
+    }
+
+    /**
+     * Get whether a move from the current move list is legal, always true in legal mode.
+     * Only valid while the move list is current (not after {@link #unmakeMove()}).
+     * @param move move from the move list
+     * @return is move legal
+     */
+    public boolean isLegal(final int move) {
+        return this.mode == MoveGenerator.Mode.LEGAL || this.moveGenerator.isLegal(this, move);
+    }
+
 
     // ====================================================================================================
     //                                  Game States
@@ -142,7 +310,11 @@ public final class Position {
      * @return is game over
      */
     public boolean isGameOver() {
-        return this.moves.isEmpty();
+        if (this.mode == MoveGenerator.Mode.LEGAL) return this.moves.isEmpty();
+        for (int i = 0; i < this.moves.size(); i++) {
+            if (this.moveGenerator.isLegal(this, this.moves.get(i))) return false;
+        }
+        return true;
     }
 
     /**
@@ -150,7 +322,7 @@ public final class Position {
      * @return is checkmate
      */
     public boolean isCheckmate() {
-        return this.moves.isEmpty() && isCheck();
+        return isCheck() && isGameOver();
     }
 
     /**
@@ -181,7 +353,7 @@ public final class Position {
         this.moves.clear();
         this.moveGenerator.resetCheck();
         if (this.halfMoveClock >= 50 || this.board.isDeadPosition()) return;
-        this.moveGenerator.generate(this, this.moves);
+        this.moveGenerator.generate(this, this.moves, this.mode);
     }
 
     /**
@@ -195,6 +367,7 @@ public final class Position {
         this.hash ^= this.board.zhash();
         this.board.makeMove(this.sideToMove, move);
         this.hash ^= this.board.zhash();
+        if (this.attackMap != null) this.attackMap.update(this.board, this.sideToMove, move);
 
         // Update the hash from none board changes
         this.hash ^= Zobrist.castlingRights(this.castlingRights);
@@ -207,6 +380,8 @@ public final class Position {
         this.halfMoveClock   = Move.isCapture(move) || Move.mover(move) == PieceType.PAWN ? 0 : this.halfMoveClock + 1;
         this.sideToMove      = Colour.flip(this.sideToMove);
         if (this.sideToMove == Colour.WHITE) this.turn++;
+        this.hash ^= Zobrist.castlingRights(this.castlingRights);
+        this.hash ^= Zobrist.enPassantTarget(this.enPassantTarget);
 
         // Generate legal moves (analyse position)
         generateMoves();
@@ -230,6 +405,7 @@ public final class Position {
 
         this.sideToMove = Colour.flip(this.sideToMove);
         this.board.unmakeMove(this.sideToMove, prev.move);
+        if (this.attackMap != null) this.attackMap.update(this.board, this.sideToMove, prev.move);
         this.castlingRights = prev.castlingRights;
         this.enPassantTarget = prev.enPassantTarget;
         this.halfMoveClock = prev.halfMoveClock;
@@ -0,0 +1,41 @@
+package dev.pig.stockpig.chess;
+
+/**
+ * Position state is the read-only state of a chess position needed to analyse it and generate moves.
+ * It allows the move generator to be shared between position implementations, such as the make/unmake
+ * {@link Position} and the copy-make {@link CopyMakePosition}.
+ */
+public interface PositionState {
+
+    /**
+     * Get the board, all material state.
+     * @return board
+     */
+    Board board();
+
+    /**
+     * Get the current team, the side to move.
+     * @return side to move
+     */
+    boolean sideToMove();
+
+    /**
+     * Get the castling rights of both teams.
+     * @return castling rights
+     */
+    byte castlingRights();
+
+    /**
+     * Get the en passant target, if any.
+     * @return en passant target
+     */
+    byte enPassantTarget();
+
+    /**
+     * Get the incrementally updated attack map, if enabled.
+     * @return attack map, null if disabled
+     */
+    default AttackMap attackMap() {
+        return null;
+    }
+}
@@ -26,6 +26,18 @@ public final class Zobrist {
         return colour ? WHITE_PIECE_SQUARE_HASH[pieceType][sq] : BLACK_PIECE_SQUARE_HASH[pieceType][sq];
     }
 
+    /**
+     * Get the Zobrist material hash for the nth piece of a colour and type, the material hash of a board
+     * is the combination of the hashes of every count from 0 up to the number of pieces.
+     * @param colour colour
+     * @param pieceType piece type
+     * @param n piece number, 0 for the first piece
+     * @return material hash
+     */
+    static long material(final boolean colour, final byte pieceType, final int n) {
+        return colour ? WHITE_MATERIAL_HASH[pieceType][n] : BLACK_MATERIAL_HASH[pieceType][n];
+    }
+
     /**
      * Get the Zobrist hash for castling rights.
      * @param castlingRights castling rights
@@ -54,6 +66,8 @@ public final class Zobrist {
     private static final long[][] BLACK_PIECE_SQUARE_HASH = new long[7][64];
     private static final long[]   CASTLING_RIGHTS_HASH    = new long[16];
     private static final long[]   EN_PASSANT_FILE_HASH    = new long[8];
+    private static final long[][] WHITE_MATERIAL_HASH     = new long[7][64];
+    private static final long[][] BLACK_MATERIAL_HASH     = new long[7][64];
 
     static {
         final Random r = new Random(101L);
@@ -67,6 +81,12 @@ public final class Zobrist {
         }
         for (int i = 0; i < 16; i++) CASTLING_RIGHTS_HASH[i] = r.nextLong();
         for (int i = 0; i < 8; i++)  EN_PASSANT_FILE_HASH[i] = r.nextLong();
+        for (int i = 1; i < 7; i++) {
+            for (int j = 0; j < 64; j++) {
+                WHITE_MATERIAL_HASH[i][j] = r.nextLong();
+                BLACK_MATERIAL_HASH[i][j] = r.nextLong();
+            }
+        }
     }
 
 
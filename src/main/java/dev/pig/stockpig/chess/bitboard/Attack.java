@@ -15,6 +15,16 @@ public final class Attack {
         return KING_ATTACKS[sq];
     }
 
+    /**
+     * Get an attack bitboard for a pawn of a colour on a given square.
+     * @param c pawn colour
+     * @param sq pawn square
+     * @return pawn attack map
+     */
+    public static long pawn(final boolean c, final byte sq) {
+        return c ? WHITE_PAWN_ATTACKS[sq] : BLACK_PAWN_ATTACKS[sq];
+    }
+
     /**
      * Get an attack bitboard for a knight on a given square.
      * @param sq knight square
@@ -78,6 +88,16 @@ public final class Attack {
         }
     }
 
+    private static final long[] WHITE_PAWN_ATTACKS = new long[64];
+    private static final long[] BLACK_PAWN_ATTACKS = new long[64];
+    static {
+        for (byte i = 0; i < WHITE_PAWN_ATTACKS.length; i++) {
+            final long pawn = Bitboard.ofSquare(i);
+            WHITE_PAWN_ATTACKS[i] = Bitboard.shift(pawn, Direction.NE) | Bitboard.shift(pawn, Direction.NW);
+            BLACK_PAWN_ATTACKS[i] = Bitboard.shift(pawn, Direction.SE) | Bitboard.shift(pawn, Direction.SW);
+        }
+    }
+
     private static final long[] KNIGHT_ATTACKS = new long[64];
     static {
         for (byte i = 0; i < KNIGHT_ATTACKS.length; i++) {
@@ -0,0 +1,125 @@
+package dev.pig.stockpig.chess.notation;
+
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.perft.Suite;
+import dev.pig.stockpig.chess.perft.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Bench measures FEN parsing and formatting throughput in FENs per second, comparing the allocating
+ * parse/format against the in place parseInto/formatInto on reused positions and builders.
+ * The corpus is built from random games played out of the PERFT suite positions.
+ * The results of the first run are discarded in order to warmup the JVM and
+ * reduce noise from runtime/JIT eccentricities.
+ * <p>
+ * Usage: Bench [--fens N] [--iterations N]
+ */
+public final class Bench {
+
+    /**
+     * Run the FEN benchmark.
+     * @param args args
+     */
+    public static void main(final String[] args) throws Fen.ParseException {
+
+        // Arguments
+        int fenCount = 100_000;
+        int iterations = 5;
+        for (int i = 0; i < args.length; i++) {
+            if ("--fens".equals(args[i])) fenCount = Integer.parseInt(args[++i]);
+            else if ("--iterations".equals(args[i])) iterations = Integer.parseInt(args[++i]);
+        }
+
+        // Corpus, as strings and as a single ASCII buffer of newline separated FENs
+        final String[] fens = corpus(fenCount);
+        final StringBuilder joined = new StringBuilder();
+        for (final String fen : fens) joined.append(fen).append('\n');
+        final byte[] buffer = joined.toString().getBytes(StandardCharsets.US_ASCII);
+        final Position[] positions = new Position[fens.length];
+        for (int i = 0; i < fens.length; i++) positions[i] = Fen.parse(fens[i]);
+
+        System.out.println("-------------------- Starting FEN-BENCH --------------------");
+
+        for (int it = 0; it <= iterations; it++) {
+            final boolean warmup = it == 0;
+            long checksum = 0L;
+
+            long start = System.nanoTime();
+            for (final String fen : fens) checksum += Fen.parse(fen).zhash();
+            report(warmup, "parse", fens.length, System.nanoTime() - start);
+
+            final Position reused = Position.empty();
+            start = System.nanoTime();
+            for (final String fen : fens) {
+                Fen.parseInto(fen, reused);
+                checksum -= reused.zhash();
+            }
+            report(warmup, "parseInto(chars)", fens.length, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int from = 0, to = 0; to < buffer.length; to++) {
+                if (buffer[to] != '\n') continue;
+                Fen.parseInto(buffer, from, to - from, reused);
+                checksum += reused.zhash();
+                from = to + 1;
+            }
+            report(warmup, "parseInto(bytes)", fens.length, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (final Position pos : positions) checksum += Fen.format(pos).length();
+            report(warmup, "format", fens.length, System.nanoTime() - start);
+
+            final StringBuilder sb = new StringBuilder(128);
+            start = System.nanoTime();
+            for (final Position pos : positions) {
+                sb.setLength(0);
+                checksum -= Fen.formatInto(pos, sb).length();
+            }
+            report(warmup, "formatInto", fens.length, System.nanoTime() - start);
+
+            if (warmup) System.out.printf("FEN-BENCH warmup complete (checksum=%d)%n", checksum);
+        }
+
+        System.out.println("-------------------- Finished FEN-BENCH --------------------");
+    }
+
+    /**
+     * Print the throughput of a measured run.
+     * @param warmup whether the run was a warmup, warmups are not printed
+     * @param name run name
+     * @param fens number of FENs processed
+     * @param elapsed runtime (ns)
+     */
+    private static void report(final boolean warmup, final String name, final int fens, final long elapsed) {
+        if (warmup) return;
+        System.out.printf("FEN-BENCH %-16s %8d FENs in %5dms (%d FENs/s)%n",
+                name, fens, elapsed/1000000, Math.round(fens / (elapsed/1000000000d)));
+    }
+
+    /**
+     * Build a corpus of FENs from random games played out of the PERFT suite positions.
+     * @param count number of FENs
+     * @return FENs
+     */
+    private static String[] corpus(final int count) throws Fen.ParseException {
+        final Random random = new Random(11);
+        final List<String> fens = new ArrayList<>(count);
+        while (fens.size() < count) {
+            for (final TestCase test : Suite.TESTS) {
+                final Position pos = Fen.parse(test.fen());
+                for (int ply = 0; ply < 60 && !pos.moves().isEmpty() && fens.size() < count; ply++) {
+                    pos.makeMove(pos.moves().get(random.nextInt(pos.moves().size())));
+                    fens.add(pos.toFen());
+                }
+            }
+        }
+        return fens.toArray(new String[0]);
+    }
+
+
+    private Bench() {}
+}
@@ -4,6 +4,8 @@ import dev.pig.stockpig.chess.*;
 import dev.pig.stockpig.chess.bitboard.Bitboard;
 import dev.pig.stockpig.chess.bitboard.Square;
 
+import java.util.Objects;
+
 /**
  * Fen (Forsyth-Edwards Notation) provides functions for encoding and decoding FEN strings.
  */
@@ -37,98 +39,180 @@ public final class Fen {
 
     /**
      * Parse a FEN string and return a chess position.
-     * Invalid FENs do not always throw an exception.
+     * The FEN syntax is fully validated, but the position itself is not (e.g. kings may be missing).
      * @param fen FEN string
      * @return position
      * @throws ParseException invalid FEN exception
      */
     public static Position parse(final String fen) throws ParseException {
-        final String[] parts = fen.split(" ");
-        if (parts.length != 6) throw new ParseException("FEN must have 6 parts");
-
-        try {
-            return new Position(
-                    parseBoard(parts[0]),
-                    "w".equals(parts[1]) ? Colour.WHITE : Colour.BLACK,
-                    parseCastling(parts[2]),
-                    parseEnPassantTarget(parts[3]),
-                    Integer.parseInt(parts[4]),
-                    Integer.parseInt(parts[5])
-            );
-        } catch (final Exception e) {
-            throw new ParseException(e.getMessage());
-        }
+        final Position pos = Position.empty();
+        parseInto(fen, pos);
+        return pos;
     }
 
     /**
-     * Parse the board part of a FEN string and return a board.
-     * @param fen board part of FEN string
-     * @return board
+     * Parse a FEN into an existing position, resetting it in place without allocating.
+     * The position's board, state and history are overwritten; if parsing fails the position is left
+     * in an unspecified state and must be reset again before use.
+     * @param fen FEN characters
+     * @param pos position to reset
+     * @throws ParseException invalid FEN exception
      */
-    private static Board parseBoard(final String fen) {
-        final Board board = Board.empty();
-
-        byte sq = 56;
-        for (int i = 0; i < fen.length(); i++) {
-            final char c = fen.charAt(i);
-
-            if      (c == '/')              sq -= 16;
-            else if (Character.isDigit(c))  sq += (byte) Character.digit(c, 10);
-            else {
-                final byte pt = parsePieceType(Character.toString(c));
-                board.addPiece(Character.isUpperCase(c), pt, sq);
-                sq++;
-            }
-        }
-        return board;
+    public static void parseInto(final CharSequence fen, final Position pos) throws ParseException {
+        parseInto(fen, null, 0, fen.length(), pos);
     }
 
     /**
-     * Parse the castling rights part of a FEN string and return castling rights.
-     * @param s castling rights part of FEN string
-     * @return castling rights
+     * Parse an ASCII encoded FEN from a byte range into an existing position, resetting it in place
+     * without allocating, e.g. straight from a read buffer holding many FENs.
+     * The position's board, state and history are overwritten; if parsing fails the position is left
+     * in an unspecified state and must be reset again before use.
+     * @param fen FEN bytes
+     * @param offset offset of the first FEN byte
+     * @param length number of FEN bytes
+     * @param pos position to reset
+     * @throws ParseException invalid FEN exception
      */
-    private static byte parseCastling(final String s) {
-        return (byte) (
-                        (s.contains("K") ? Castling.W_KING_SIDE  : 0) |
-                        (s.contains("Q") ? Castling.W_QUEEN_SIDE : 0) |
-                        (s.contains("k") ? Castling.B_KING_SIDE  : 0) |
-                        (s.contains("q") ? Castling.B_QUEEN_SIDE : 0));
+    public static void parseInto(final byte[] fen, final int offset, final int length, final Position pos) throws ParseException {
+        Objects.checkFromIndexSize(offset, length, fen.length);
+        parseInto(null, fen, offset, offset + length, pos);
     }
 
     /**
-     * Parse the en passant target square part of a FEN string and return en passant target square.
-     * @param s en passant target part of FEN string
-     * @return en passant target
+     * Parse a FEN held in either a character sequence or a byte array, validating each field as it is read.
+     * @param chars FEN characters, null if parsing bytes
+     * @param bytes FEN bytes, null if parsing characters
+     * @param start index of the first character
+     * @param end index after the last character
+     * @param pos position to reset
+     * @throws ParseException invalid FEN exception
      */
-    private static byte parseEnPassantTarget(final String s) {
-        if ("-".equals(s)) return Square.EMPTY;
+    private static void parseInto(final CharSequence chars, final byte[] bytes, final int start, final int end, final Position pos) throws ParseException {
+        final Board board = pos.board();
+        board.clear();
+        int i = start;
+
+        // Board, ranks 8 to 1 separated by '/'
+        int rank = 7;
+        int file = 0;
+        for (char c = charAt(chars, bytes, i, end); c != ' '; c = charAt(chars, bytes, ++i, end)) {
+            if (c == '/') {
+                if (file != 8 || rank == 0) throw new ParseException("invalid board: rank " + (rank + 1) + " must have 8 files");
+                rank--;
+                file = 0;
+            } else if (c >= '1' && c <= '8') {
+                file += c - '0';
+                if (file > 8) throw new ParseException("invalid board: rank " + (rank + 1) + " must have 8 files");
+            } else {
+                final byte pt = parsePieceType(c);
+                if (pt == PieceType.EMPTY) throw new ParseException(c == 0 ? "FEN must have 6 parts" : "unknown piece type: " + c);
+                if (file == 8) throw new ParseException("invalid board: rank " + (rank + 1) + " must have 8 files");
+                board.addPiece(c < 'a', pt, (byte) (rank*8 + file));
+                file++;
+            }
+        }
+        if (rank != 0 || file != 8) throw new ParseException("invalid board: must have 8 ranks of 8 files");
+        i++;
+
+        // Side to move
+        final char side = charAt(chars, bytes, i++, end);
+        if (side != 'w' && side != 'b') throw new ParseException("unknown side to move: " + side);
+        i = skipSpace(chars, bytes, i, end);
+
+        // Castling rights
+        byte castlingRights = Castling.NONE;
+        if (charAt(chars, bytes, i, end) == '-') {
+            i++;
+        } else {
+            for (char c = charAt(chars, bytes, i, end); c != ' '; c = charAt(chars, bytes, ++i, end)) {
+                castlingRights |= switch (c) {
+                    case 'K' -> Castling.W_KING_SIDE;
+                    case 'Q' -> Castling.W_QUEEN_SIDE;
+                    case 'k' -> Castling.B_KING_SIDE;
+                    case 'q' -> Castling.B_QUEEN_SIDE;
+                    default  -> throw new ParseException(c == 0 ? "FEN must have 6 parts" : "unknown castling right: " + c);
+                };
+            }
+            if (castlingRights == Castling.NONE) throw new ParseException("castling rights must not be empty");
+        }
+        i = skipSpace(chars, bytes, i, end);
+
+        // En passant target
+        byte enPassantTarget = Square.EMPTY;
+        if (charAt(chars, bytes, i, end) == '-') {
+            i++;
+        } else {
+            final char f = charAt(chars, bytes, i++, end);
+            final char r = charAt(chars, bytes, i++, end);
+            if (f < 'a' || f > 'h') throw new ParseException("unknown file: " + f);
+            if (r != '3' && r != '6') throw new ParseException("invalid en passant rank: " + r);
+            enPassantTarget = (byte) ((r - '1')*8 + (f - 'a'));
+        }
+        i = skipSpace(chars, bytes, i, end);
 
-        if (s.length() != 2) throw new IllegalArgumentException("unknown square: " + s);
+        // Clocks
+        int halfMoveClock = 0;
+        final int halfMoveClockStart = i;
+        for (char c = charAt(chars, bytes, i, end); c >= '0' && c <= '9'; c = charAt(chars, bytes, ++i, end)) {
+            if (i - halfMoveClockStart == 9) throw new ParseException("half move clock out of range");
+            halfMoveClock = halfMoveClock*10 + (c - '0');
+        }
+        if (i == halfMoveClockStart) throw new ParseException("invalid half move clock");
+        i = skipSpace(chars, bytes, i, end);
 
-        final char file = s.toLowerCase().charAt(0);
-        final char rank = s.toLowerCase().charAt(1);
+        int turn = 0;
+        final int turnStart = i;
+        for (char c = charAt(chars, bytes, i, end); c >= '0' && c <= '9'; c = charAt(chars, bytes, ++i, end)) {
+            if (i - turnStart == 9) throw new ParseException("turn out of range");
+            turn = turn*10 + (c - '0');
+        }
+        if (i == turnStart) throw new ParseException("invalid turn");
+        if (i != end) throw new ParseException("FEN must have 6 parts");
 
-        if (file < 'a' || file > 'h') throw new IllegalArgumentException("unknown file: " + file);
-        if (rank < '1' || rank > '8') throw new IllegalArgumentException("unknown rank: " + rank);
+        pos.reset(side == 'w' ? Colour.WHITE : Colour.BLACK, castlingRights, enPassantTarget, halfMoveClock, turn);
+    }
 
-        return (byte) ((rank - '1')*8 + (file - 'a'));
+    /**
+     * Get a FEN character from either a character sequence or an ASCII byte array.
+     * @param chars FEN characters, null if reading bytes
+     * @param bytes FEN bytes, null if reading characters
+     * @param i index
+     * @param end index after the last character
+     * @return character, 0 if past the end
+     */
+    private static char charAt(final CharSequence chars, final byte[] bytes, final int i, final int end) {
+        if (i >= end) return 0;
+        return chars != null ? chars.charAt(i) : (char) (bytes[i] & 0xFF);
+    }
+
+    /**
+     * Skip the single space separating two FEN parts.
+     * @param chars FEN characters, null if reading bytes
+     * @param bytes FEN bytes, null if reading characters
+     * @param i index of the expected space
+     * @param end index after the last character
+     * @return index after the space
+     * @throws ParseException if there is no space
+     */
+    private static int skipSpace(final CharSequence chars, final byte[] bytes, final int i, final int end) throws ParseException {
+        if (charAt(chars, bytes, i, end) != ' ') throw new ParseException("FEN must have 6 parts");
+        return i + 1;
     }
 
     /**
-     * Parse a piece type from a piece character string.
-     * @param s piece type character string
-     * @return piece type
+     * Parse a piece type from a piece character.
+     * @param c piece character, either case
+     * @return piece type, empty if unknown
      */
-    private static byte parsePieceType(final String s) {
-        return switch (s.toLowerCase()) {
-            case "k" -> PieceType.KING;
-            case "p" -> PieceType.PAWN;
-            case "n" -> PieceType.KNIGHT;
-            case "b" -> PieceType.BISHOP;
-            case "r" -> PieceType.ROOK;
-            case "q" -> PieceType.QUEEN;
-            default -> throw new IllegalArgumentException("unknown piece type: " + s);
+    private static byte parsePieceType(final char c) {
+        return switch (c) {
+            case 'k', 'K' -> PieceType.KING;
+            case 'p', 'P' -> PieceType.PAWN;
+            case 'n', 'N' -> PieceType.KNIGHT;
+            case 'b', 'B' -> PieceType.BISHOP;
+            case 'r', 'R' -> PieceType.ROOK;
+            case 'q', 'Q' -> PieceType.QUEEN;
+            default -> PieceType.EMPTY;
         };
     }
 
@@ -143,23 +227,20 @@ public final class Fen {
      * @return FEN string
      */
     public static String format(final Position pos) {
-        return String.join(" ",
-                formatBoard(pos.board()),
-                pos.sideToMove() == Colour.WHITE ? "w" : "b",
-                formatCastling(pos.castlingRights()),
-                formatEnPassantTarget(pos.enPassantTarget()),
-                Integer.toString(pos.halfMoveClock()),
-                Integer.toString(pos.turn())
-        );
+        return formatInto(pos, new StringBuilder(90)).toString();
     }
 
     /**
-     * Format a board into a board FEN string.
-     * @param board board
-     * @return board part FEN string
+     * Format a chess position as a FEN, appending it to a reusable string builder without allocating
+     * (beyond growing the builder).
+     * @param pos position
+     * @param fen string builder to append to
+     * @return the string builder
      */
-    private static String formatBoard(final Board board) {
-        final StringBuilder fen = new StringBuilder();
+    public static StringBuilder formatInto(final Position pos, final StringBuilder fen) {
+        final Board board = pos.board();
+
+        // Board
         for (int rank = 7; rank >= 0; rank--) {
             int emptyRun = 0;
             for (int file = 0; file < 8; file++) {
@@ -169,67 +250,58 @@ public final class Fen {
                     emptyRun++;
                 } else {
                     if (emptyRun > 0) {
-                        fen.append(emptyRun);
+                        fen.append((char) ('0' + emptyRun));
                         emptyRun = 0;
                     }
-                    fen.append(
-                            Bitboard.intersects(Bitboard.ofSquare(sq), board.pieces(Colour.WHITE)) ?
-                                    formatPieceType(piece).toUpperCase() :
-                                    formatPieceType(piece)
-                    );
+                    fen.append(formatPieceType(piece, Bitboard.intersects(Bitboard.ofSquare(sq), board.pieces(Colour.WHITE))));
                 }
             }
             if (emptyRun > 0) {
-                fen.append(emptyRun);
+                fen.append((char) ('0' + emptyRun));
             }
             if (rank != 0) {
-                fen.append("/");
+                fen.append('/');
             }
         }
-        return fen.toString();
-    }
 
-    /**
-     * Format a square into an en passant target square FEN string.
-     * @param sq square
-     * @return en passant target FEN string
-     */
-    private static String formatEnPassantTarget(final byte sq) {
-        if (sq == Square.EMPTY) return "-";
+        // Side to move
+        fen.append(pos.sideToMove() == Colour.WHITE ? " w " : " b ");
 
-        final int file = sq & 7;
-        final int rank = (sq >> 3) + 1;
-        return (char) ('a' + file) + Integer.toString(rank);
-    }
+        // Castling rights
+        final byte rights = pos.castlingRights();
+        if (rights == Castling.NONE) fen.append('-');
+        if ((rights & Castling.W_KING_SIDE)  != 0) fen.append('K');
+        if ((rights & Castling.W_QUEEN_SIDE) != 0) fen.append('Q');
+        if ((rights & Castling.B_KING_SIDE)  != 0) fen.append('k');
+        if ((rights & Castling.B_QUEEN_SIDE) != 0) fen.append('q');
+        fen.append(' ');
 
-    /**
-     * Format castling rights into a castling rights FEN string.
-     * @param rights castling rights
-     * @return castling rights FEN string
-     */
-    private static String formatCastling(final byte rights) {
-        return rights == Castling.NONE ? "-" :
-                ((rights & Castling.W_KING_SIDE)     == 0 ? "" : "K") +
-                ((rights & Castling.W_QUEEN_SIDE)    == 0 ? "" : "Q") +
-                ((rights & Castling.B_KING_SIDE)     == 0 ? "" : "k") +
-                ((rights & Castling.B_QUEEN_SIDE)    == 0 ? "" : "q");
+        // En passant target
+        final byte sq = pos.enPassantTarget();
+        if (sq == Square.EMPTY) fen.append('-');
+        else fen.append((char) ('a' + (sq & 7))).append((char) ('1' + (sq >> 3)));
+
+        // Clocks
+        return fen.append(' ').append(pos.halfMoveClock()).append(' ').append(pos.turn());
     }
 
     /**
-     * Format a piece type to a piece type character string.
+     * Format a piece type to a piece character.
      * @param pt piece type
-     * @return piece type character string
+     * @param white whether the piece is white (upper case)
+     * @return piece character
      */
-    private static String formatPieceType(final byte pt) {
-        return switch (pt) {
-            case PieceType.KING   -> "k";
-            case PieceType.PAWN   -> "p";
-            case PieceType.KNIGHT -> "n";
-            case PieceType.BISHOP -> "b";
-            case PieceType.ROOK   -> "r";
-            case PieceType.QUEEN  -> "q";
-            default -> "";
+    private static char formatPieceType(final byte pt, final boolean white) {
+        final char c = switch (pt) {
+            case PieceType.KING   -> 'k';
+            case PieceType.PAWN   -> 'p';
+            case PieceType.KNIGHT -> 'n';
+            case PieceType.BISHOP -> 'b';
+            case PieceType.ROOK   -> 'r';
+            case PieceType.QUEEN  -> 'q';
+            default -> '?';
         };
+        return white ? Character.toUpperCase(c) : c;
     }
 
 
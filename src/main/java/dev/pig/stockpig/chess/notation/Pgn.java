@@ -0,0 +1,155 @@
+package dev.pig.stockpig.chess.notation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pgn (Portable Game Notation) provides a streaming reader of PGN game collections, one game at a time,
+ * so that collections of any size can be read in constant memory.
+ * <p>
+ * Only the main line is kept: comments, variations, numeric annotation glyphs and move numbers are
+ * skipped, moves are left in SAN for {@link San#parse}.
+ */
+public final class Pgn {
+
+    public static final String WHITE_WINS = "1-0";
+    public static final String BLACK_WINS = "0-1";
+    public static final String DRAW       = "1/2-1/2";
+    public static final String UNKNOWN    = "*";
+
+    /**
+     * Game is a single game of a PGN collection.
+     * @param tags tag pairs, e.g. "Event", "FEN"
+     * @param moves main line moves, in SAN
+     * @param result game result, one of the result constants
+     */
+    public record Game(Map<String, String> tags, List<String> moves, String result) {}
+
+    /**
+     * Reader reads the games of a PGN collection in order.
+     */
+    public static final class Reader implements Closeable {
+
+        private final PushbackReader in;
+        private final StringBuilder token = new StringBuilder();
+
+        public Reader(final java.io.Reader in) {
+            this.in = new PushbackReader(in);
+        }
+
+        /**
+         * Read the next game. A game with no result before the next game's tags or the end of the input is
+         * returned with an unknown result.
+         * @return game, null at the end of the input
+         * @throws IOException if the input cannot be read
+         */
+        public Game next() throws IOException {
+            final Map<String, String> tags = new HashMap<>();
+            final List<String> moves = new ArrayList<>();
+            int depth = 0;
+            boolean started = false;
+
+            int c;
+            while ((c = this.in.read()) != -1) {
+                switch (c) {
+                    case '[' -> {
+                        if (!moves.isEmpty()) {
+                            this.in.unread(c);
+                            return new Game(tags, moves, UNKNOWN);
+                        }
+                        readTag(tags);
+                        started = true;
+                    }
+                    case '{' -> skipUntil('}');
+                    case ';' -> skipUntil('\n');
+                    case '(' -> depth++;
+                    case ')' -> depth = Math.max(0, depth - 1);
+                    default -> {
+                        if (Character.isWhitespace(c)) continue;
+                        readToken(c);
+                        if (this.token.charAt(0) == '%') skipUntil('\n');
+                        if (depth > 0 || this.token.charAt(0) == '$' || this.token.charAt(0) == '%') continue;
+
+                        final String result = result(this.token);
+                        if (result != null) return new Game(tags, moves, result);
+
+                        final int move = skipMoveNumber(this.token);
+                        if (move < this.token.length()) moves.add(this.token.substring(move));
+                        started = true;
+                    }
+                }
+            }
+            return started ? new Game(tags, moves, UNKNOWN) : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+
+        private void readTag(final Map<String, String> tags) throws IOException {
+            final StringBuilder name = new StringBuilder();
+            final StringBuilder value = new StringBuilder();
+            int c;
+            while ((c = this.in.read()) != -1 && c != '"' && c != ']') {
+                if (!Character.isWhitespace(c)) name.append((char) c);
+            }
+            if (c == '"') {
+                while ((c = this.in.read()) != -1 && c != '"') {
+                    if (c == '\\') c = this.in.read();
+                    if (c != -1) value.append((char) c);
+                }
+                skipUntil(']');
+            }
+            tags.put(name.toString(), value.toString());
+        }
+
+        private void readToken(int c) throws IOException {
+            this.token.setLength(0);
+            do {
+                this.token.append((char) c);
+            } while ((c = this.in.read()) != -1 && !Character.isWhitespace(c) && "[]{}();".indexOf(c) < 0);
+            if (c != -1) this.in.unread(c);
+        }
+
+        private void skipUntil(final char end) throws IOException {
+            int c;
+            do {
+                c = this.in.read();
+            } while (c != -1 && c != end);
+        }
+    }
+
+
+    // ====================================================================================================
+    //                                  Utils
+    // ====================================================================================================
+
+    private static String result(final CharSequence token) {
+        for (final String result : new String[]{WHITE_WINS, BLACK_WINS, DRAW, UNKNOWN}) {
+            if (result.contentEquals(token)) return result;
+        }
+        return null;
+    }
+
+    /**
+     * Skip a leading move number, e.g. "12." or "12...", of a token.
+     * @param token token
+     * @return index of the first character after the move number
+     */
+    private static int skipMoveNumber(final CharSequence token) {
+        int i = 0;
+        while (i < token.length() && Character.isDigit(token.charAt(i))) i++;
+        if (i == 0 || i == token.length() || token.charAt(i) != '.') return i == token.length() ? i : 0;
+        while (i < token.length() && token.charAt(i) == '.') i++;
+        return i;
+    }
+
+
+    private Pgn() {}
+}
@@ -0,0 +1,156 @@
+package dev.pig.stockpig.chess.notation;
+
+import dev.pig.stockpig.chess.Castling;
+import dev.pig.stockpig.chess.Colour;
+import dev.pig.stockpig.chess.Move;
+import dev.pig.stockpig.chess.MoveList;
+import dev.pig.stockpig.chess.PieceType;
+import dev.pig.stockpig.chess.Position;
+
+/**
+ * San provides functions for decoding moves in standard algebraic notation, the notation of PGN movetext
+ * (e.g. "e4", "Nbd7", "exd6", "O-O", "e8=Q+").
+ */
+public final class San {
+
+    /**
+     * Parse a SAN move string into a legal move of the position. Check, mate and annotation suffixes
+     * ("+", "#", "!", "?") are ignored, as are missing capture marks.
+     * @param pos position
+     * @param s SAN move string
+     * @return legal move
+     * @throws IllegalArgumentException if the string is not a legal move in the position
+     */
+    public static int parse(final Position pos, final CharSequence s) {
+        int end = s.length();
+        while (end > 0 && "+#!?".indexOf(s.charAt(end - 1)) >= 0) end--;
+        if (end < 2) throw new IllegalArgumentException("invalid move: " + s);
+
+        // Castling, with letter O or digit 0
+        if (isCastle(s, end, 3)) return castle(pos, s, pos.sideToMove() == Colour.WHITE ? Castling.W_KING_SIDE_MOVE : Castling.B_KING_SIDE_MOVE);
+        if (isCastle(s, end, 5)) return castle(pos, s, pos.sideToMove() == Colour.WHITE ? Castling.W_QUEEN_SIDE_MOVE : Castling.B_QUEEN_SIDE_MOVE);
+
+        // Promotion, with or without "="
+        byte promote = PieceType.EMPTY;
+        if (piece(s.charAt(end - 1)) != PieceType.EMPTY) {
+            promote = piece(s.charAt(--end));
+            if (end > 0 && s.charAt(end - 1) == '=') end--;
+        }
+
+        // Destination square
+        if (end < 2) throw new IllegalArgumentException("invalid move: " + s);
+        final int toFile = s.charAt(end - 2) - 'a';
+        final int toRank = s.charAt(end - 1) - '1';
+        if (toFile < 0 || toFile > 7 || toRank < 0 || toRank > 7) throw new IllegalArgumentException("invalid move: " + s);
+        final byte to = (byte) (toRank * 8 + toFile);
+
+        // Moving piece and disambiguation
+        int i = 0;
+        byte mover = PieceType.PAWN;
+        if (piece(s.charAt(0)) != PieceType.EMPTY || s.charAt(0) == 'K') {
+            mover = s.charAt(0) == 'K' ? PieceType.KING : piece(s.charAt(0));
+            i++;
+        }
+        int fromFile = -1;
+        int fromRank = -1;
+        for (; i < end - 2; i++) {
+            final char c = s.charAt(i);
+            if      (c >= 'a' && c <= 'h') fromFile = c - 'a';
+            else if (c >= '1' && c <= '8') fromRank = c - '1';
+            else if (c != 'x' && c != ':' && c != '-') throw new IllegalArgumentException("invalid move: " + s);
+        }
+
+        final MoveList moves = pos.moves();
+        int found = 0;
+        for (int m = 0; m < moves.size(); m++) {
+            final int move = moves.get(m);
+            if (Move.to(move) != to || Move.mover(move) != mover || Move.promote(move) != promote || Move.isCastle(move)) continue;
+            if (fromFile >= 0 && (Move.from(move) & 7) != fromFile) continue;
+            if (fromRank >= 0 && (Move.from(move) >>> 3) != fromRank) continue;
+            if (found != 0) throw new IllegalArgumentException("ambiguous move: " + s);
+            found = move;
+        }
+        if (found == 0) throw new IllegalArgumentException("illegal move: " + s);
+        return found;
+    }
+
+    /**
+     * Format a legal move of the position into a SAN move string, with the fewest disambiguation
+     * characters and a check or mate suffix.
+     * @param pos position, the move is made and undone to find checks
+     * @param move legal move
+     * @return SAN move string
+     */
+    public static String format(final Position pos, final int move) {
+        final StringBuilder san = new StringBuilder();
+        final byte from = Move.from(move);
+        final byte to = Move.to(move);
+        final byte mover = Move.mover(move);
+
+        if (Move.isCastle(move)) {
+            san.append((to & 7) == 6 ? "O-O" : "O-O-O");
+        } else {
+            if (mover == PieceType.PAWN) {
+                if (Move.isCapture(move)) san.append((char) ('a' + (from & 7)));
+            } else {
+                san.append("?KPNBRQ".charAt(mover));
+
+                // Disambiguate by file, else by rank, else by both
+                boolean ambiguous = false, sameFile = false, sameRank = false;
+                final MoveList moves = pos.moves();
+                for (int m = 0; m < moves.size(); m++) {
+                    final int other = moves.get(m);
+                    if (other == move || Move.to(other) != to || Move.mover(other) != mover) continue;
+                    ambiguous = true;
+                    sameFile |= (Move.from(other) & 7) == (from & 7);
+                    sameRank |= (Move.from(other) >>> 3) == (from >>> 3);
+                }
+                if (ambiguous && (!sameFile || sameRank)) san.append((char) ('a' + (from & 7)));
+                if (ambiguous && sameFile) san.append((char) ('1' + (from >>> 3)));
+            }
+            if (Move.isCapture(move)) san.append('x');
+            san.append(Uci.formatSquare(to));
+            if (Move.isPromotion(move)) san.append('=').append("?KPNBRQ".charAt(Move.promote(move)));
+        }
+
+        pos.makeMove(move);
+        if (pos.isCheck()) san.append(pos.moves().isEmpty() ? '#' : '+');
+        pos.undo();
+        return san.toString();
+    }
+
+    private static boolean isCastle(final CharSequence s, final int end, final int length) {
+        if (end != length) return false;
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            if (i % 2 == 1 ? c != '-' : c != 'O' && c != '0') return false;
+        }
+        return true;
+    }
+
+    private static int castle(final Position pos, final CharSequence s, final int castle) {
+        final MoveList moves = pos.moves();
+        for (int m = 0; m < moves.size(); m++) {
+            if (moves.get(m) == castle) return castle;
+        }
+        throw new IllegalArgumentException("illegal move: " + s);
+    }
+
+    /**
+     * Get the piece type of a SAN piece letter, other than the king.
+     * @param c piece letter
+     * @return piece type, empty if not a piece letter
+     */
+    private static byte piece(final char c) {
+        return switch (c) {
+            case 'Q' -> PieceType.QUEEN;
+            case 'R' -> PieceType.ROOK;
+            case 'B' -> PieceType.BISHOP;
+            case 'N' -> PieceType.KNIGHT;
+            default  -> PieceType.EMPTY;
+        };
+    }
+
+
+    private San() {}
+}
@@ -0,0 +1,72 @@
+package dev.pig.stockpig.chess.notation;
+
+import dev.pig.stockpig.chess.Move;
+import dev.pig.stockpig.chess.MoveList;
+import dev.pig.stockpig.chess.PieceType;
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.bitboard.Square;
+
+/**
+ * Uci provides functions for encoding and decoding moves in UCI long algebraic notation,
+ * the from and to squares followed by the promotion piece if any (e.g. "e2e4", "e7e8q").
+ */
+public final class Uci {
+
+    /**
+     * Format a move into a UCI move string.
+     * @param move move
+     * @return UCI move string
+     */
+    public static String format(final int move) {
+        final String fromTo = formatSquare(Move.from(move)) + formatSquare(Move.to(move));
+        return switch (Move.promote(move)) {
+            case PieceType.QUEEN  -> fromTo + "q";
+            case PieceType.ROOK   -> fromTo + "r";
+            case PieceType.BISHOP -> fromTo + "b";
+            case PieceType.KNIGHT -> fromTo + "n";
+            default -> fromTo;
+        };
+    }
+
+    /**
+     * Format a line of moves into space separated UCI move strings.
+     * @param moves moves
+     * @return UCI line string
+     */
+    public static String format(final MoveList moves) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < moves.size(); i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(format(moves.get(i)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parse a UCI move string into a legal move of the position.
+     * @param pos position
+     * @param s UCI move string
+     * @return legal move
+     * @throws IllegalArgumentException if the string is not a legal move in the position
+     */
+    public static int parse(final Position pos, final String s) {
+        final MoveList moves = pos.moves();
+        for (int i = 0; i < moves.size(); i++) {
+            if (format(moves.get(i)).equals(s)) return moves.get(i);
+        }
+        throw new IllegalArgumentException("illegal move: " + s);
+    }
+
+    /**
+     * Format a square into a square string.
+     * @param sq square
+     * @return square string
+     */
+    public static String formatSquare(final byte sq) {
+        if (sq == Square.EMPTY) return "-";
+        return (char) ('a' + (sq & 7)) + Integer.toString((sq >> 3) + 1);
+    }
+
+
+    private Uci() {}
+}
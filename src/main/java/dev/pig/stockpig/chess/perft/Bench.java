@@ -1,69 +1,397 @@
 package dev.pig.stockpig.chess.perft;
 
+import dev.pig.stockpig.chess.MoveGenerator;
 import dev.pig.stockpig.chess.notation.Fen;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Bench is a runner for a suite of move enumeration PERFT tests.
  * The results of the first run are discarded in order to warmup the JVM and
  * reduce noise from runtime/JIT eccentricities.
+ * <p>
+ * The suite can be measured over several iterations, optionally spread across forked JVMs,
+ * and summarised per test case with median, minimum, standard deviation and a 95% confidence
+ * interval. Results can be compared against a previous JSON results file, exiting with status 2
+ * if the suite nps has regressed by more than the threshold percentage.
+ * <p>
+ * With --counters, an extra untimed pass gathers the per-category leaf counters of every test case.
+ * <p>
+ * With --epd, the built-in suite is replaced by an external EPD file streamed across worker threads,
+ * reporting every failing position and depth along with the aggregate nps.
+ * <p>
+ * With --pseudo-legal, the suite is measured with pseudo-legal move generation and per move legality checks.
+ * With --incremental-attacks, attacks are updated incrementally across make/unmake rather than recomputed.
+ * With --copy-make, the suite is measured on a copy-make position rather than make/unmake.
+ * <p>
+ * Usage: Bench [results.json] [--iterations N] [--forks N] [--baseline baseline.json] [--threshold PCT] [--counters]
+ * [--pseudo-legal] [--incremental-attacks] [--copy-make]
+ * <br>
+ * Usage: Bench --epd suite.epd [--max-depth N] [--threads N]
  */
 public final class Bench {
 
+    private static final String SAMPLE_PREFIX = "SAMPLE ";
+
+    /**
+     * Bench options parsed from the command line.
+     * @param resultsPath path to write the JSON results to, null if not writing results
+     * @param iterations measured iterations per JVM
+     * @param forks number of forked JVMs to measure in, 0 to measure in this JVM
+     * @param baselinePath path of a JSON results file to compare against, null if not comparing
+     * @param threshold allowed nps regression against the baseline (%)
+     * @param child whether this JVM is a forked child, reporting raw samples to the parent
+     * @param counters whether to gather and print leaf counters
+     * @param epdPath path of an EPD file to run instead of the built-in suite, null to run the built-in suite
+     * @param maxDepth maximum EPD depth
+     * @param threads EPD worker thread count
+     * @param mode move generation mode
+     * @param incrementalAttacks whether to update attacks incrementally
+     * @param copyMake whether to measure a copy-make position
+     */
+    private record Options(String resultsPath, int iterations, int forks, String baselinePath, double threshold, boolean child, boolean counters,
+                           String epdPath, int maxDepth, int threads, MoveGenerator.Mode mode, boolean incrementalAttacks,
+                           boolean copyMake) {
+
+        private static Options parse(final String[] args) {
+            String resultsPath = null;
+            String baselinePath = null;
+            int iterations = 1;
+            int forks = 0;
+            double threshold = 5;
+            boolean child = false;
+            boolean counters = false;
+            String epdPath = null;
+            int maxDepth = Integer.MAX_VALUE;
+            int threads = Runtime.getRuntime().availableProcessors();
+            MoveGenerator.Mode mode = MoveGenerator.Mode.LEGAL;
+            boolean incrementalAttacks = false;
+            boolean copyMake = false;
+
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--iterations"          -> iterations         = Integer.parseInt(args[++i]);
+                    case "--forks"               -> forks              = Integer.parseInt(args[++i]);
+                    case "--baseline"            -> baselinePath       = args[++i];
+                    case "--threshold"           -> threshold          = Double.parseDouble(args[++i]);
+                    case "--child"               -> child              = true;
+                    case "--counters"            -> counters           = true;
+                    case "--epd"                 -> epdPath            = args[++i];
+                    case "--max-depth"           -> maxDepth           = Integer.parseInt(args[++i]);
+                    case "--threads"             -> threads            = Integer.parseInt(args[++i]);
+                    case "--pseudo-legal"        -> mode               = MoveGenerator.Mode.PSEUDO_LEGAL;
+                    case "--incremental-attacks" -> incrementalAttacks = true;
+                    case "--copy-make"           -> copyMake           = true;
+                    default                      -> resultsPath        = args[i];
+                }
+            }
+            if (iterations < 1) throw new IllegalArgumentException("iterations must be positive");
+            return new Options(resultsPath, iterations, forks, baselinePath, threshold, child, counters, epdPath, maxDepth, threads, mode, incrementalAttacks, copyMake);
+        }
+    }
+
+    /**
+     * Raw measurements of the suite, runtimes are indexed by test case then sample.
+     * @param nodes visited node count per test case
+     * @param runtimes runtime samples per test case (ns)
+     */
+    private record Samples(long[] nodes, long[][] runtimes) {}
+
+
     /**
      * Run move enumeration PERFT benchmarking test suite.
      * @param args args
      */
-    public static void main(final String[] args) throws IOException, Fen.ParseException {
+    public static void main(final String[] args) throws IOException, InterruptedException, Fen.ParseException {
+        final Options options = Options.parse(args);
 
-        // Warmup
-        for (final TestCase test : Suite.TESTS) TestCase.run(test);
-        System.gc();
+        // EPD suites are only validated and reported, not measured in iterations
+        if (options.epdPath != null) {
+            if (!runEpd(options)) System.exit(1);
+            return;
+        }
+
+        // Forked children only measure and report raw samples
+        if (options.child) {
+            final Samples samples = measure(options);
+            for (int i = 0; i < Suite.TESTS.size(); i++) {
+                for (final long runtime : samples.runtimes[i]) {
+                    System.out.println(SAMPLE_PREFIX + i + " " + samples.nodes[i] + " " + runtime);
+                }
+            }
+            return;
+        }
+
+        final Samples samples = options.forks > 0 ? measureForked(options) : measure(options);
+        final int sampleCount = samples.runtimes[0].length;
 
         // Suite level results
         boolean pass = true;
         long totalNodes = 0L;
-        long totalRuntime = 0L;
+        final long[] suiteRuntimes = new long[sampleCount];
+        final List<Statistics> stats = new ArrayList<>(Suite.TESTS.size());
 
         System.out.println("-------------------- Starting ME-PERFTs --------------------");
 
-        for (final TestCase test : Suite.TESTS) {
-            final TestCase.Result result = TestCase.run(test);
+        for (int i = 0; i < Suite.TESTS.size(); i++) {
+            final TestCase test = Suite.TESTS.get(i);
+            final long nodes = samples.nodes[i];
+            final Statistics s = Statistics.of(samples.runtimes[i]);
+            stats.add(s);
 
-            if (result.nodes() == test.expectedNodes()) {
-                System.out.printf("ME-PERFT '%-10s' PASS: nodes=%-10s elapsed=%5sms%n",
-                        test.name(), result.nodes(), result.runtimeNs()/1000000);
+            if (nodes == test.expectedNodes()) {
+                System.out.printf("ME-PERFT '%-10s' PASS: nodes=%-10s median=%5dms min=%5dms rsd=%4.1f%% ci95=[%d, %d]ms%n",
+                        test.name(), nodes, ms(s.median()), ms(s.min()), s.rsd(), ms(s.ciLow()), ms(s.ciHigh()));
 
             } else {
-                System.out.printf("ME-PERFT '%-10s' FAIL: nodes=%-10s (expected=%-10s) elapsed=%5dms%n",
-                        test.name(), result.nodes(), test.expectedNodes(), result.runtimeNs()/1000000);
+                System.out.printf("ME-PERFT '%-10s' FAIL: nodes=%-10s (expected=%-10s) median=%5dms%n",
+                        test.name(), nodes, test.expectedNodes(), ms(s.median()));
                 pass = false;
             }
 
-            totalNodes   += result.nodes();
-            totalRuntime += result.runtimeNs();
+            totalNodes += nodes;
+            for (int j = 0; j < sampleCount; j++) suiteRuntimes[j] += samples.runtimes[i][j];
         }
 
+        final Statistics suite = Statistics.of(suiteRuntimes);
+        final long nps = nps(totalNodes, suite.median());
+
         System.out.println("-------------------- Finished ME-PERFTs --------------------");
-        System.out.printf("ME-PERFT Suite completed: %d nodes in %dms (%dnps)%n", totalNodes, totalRuntime/1000000, Math.round(totalNodes / (totalRuntime/1000000000d)));
+        System.out.printf("ME-PERFT Suite completed: %d nodes in %dms median over %d samples (%dnps, ci95=[%d, %d]nps)%n",
+                totalNodes, ms(suite.median()), sampleCount, nps, nps(totalNodes, suite.ciHigh()), nps(totalNodes, suite.ciLow()));
+
+        // If counters were requested then gather them in an untimed pass
+        if (options.counters) {
+            for (final TestCase test : Suite.TESTS) {
+                final TestCase.Counters c = TestCase.runWithCounters(test).counters();
+                System.out.printf("ME-PERFT '%-10s' captures=%d ep=%d castles=%d promotions=%d checks=%d checkmates=%d%n",
+                        test.name(), c.captures(), c.enPassants(), c.castles(), c.promotions(), c.checks(), c.checkmates());
+            }
+        }
 
         // If a test failed then exit now
         if (!pass) System.exit(1);
 
         // If a results file path was passed then print a json result there
-        if (args.length > 0) {
-            Files.writeString(Path.of(args[0]), String.format(
+        if (options.resultsPath != null) {
+            Files.writeString(Path.of(options.resultsPath), json(totalNodes, suite, samples.nodes, stats));
+        }
+
+        // If a baseline was passed then compare against it and fail on regression
+        if (options.baselinePath != null && !compare(Files.readString(Path.of(options.baselinePath)), nps, samples.nodes, stats, options.threshold)) {
+            System.exit(2);
+        }
+    }
+
+
+    /**
+     * Run an EPD suite, printing failures and the aggregate nps.
+     * @param options options
+     * @return whether all test cases passed
+     */
+    private static boolean runEpd(final Options options) throws IOException, InterruptedException {
+        System.out.printf("-------------------- Starting EPD ME-PERFTs (%d threads) --------------------%n", options.threads);
+
+        final Epd.Report report = Epd.run(Path.of(options.epdPath), options.maxDepth, options.threads);
+        for (final Epd.Failure f : report.failures()) {
+            System.out.printf("ME-PERFT line %d depth %d FAIL: nodes=%d (expected=%d) fen=%s%n",
+                    f.line(), f.depth(), f.nodes(), f.expectedNodes(), f.fen());
+        }
+
+        System.out.println("-------------------- Finished EPD ME-PERFTs --------------------");
+        System.out.printf("ME-PERFT EPD completed: %d positions, %d tests, %d failures, %d nodes in %dms (%dnps)%n",
+                report.positions(), report.tests(), report.failures().size(), report.nodes(), ms(report.runtimeNs()), report.nps());
+        return report.failures().isEmpty();
+    }
+
+
+    // ====================================================================================================
+    //                                  Measurement
+    // ====================================================================================================
+
+    /**
+     * Measure the suite in this JVM, after a single warmup iteration.
+     * @param options options
+     * @return samples
+     */
+    private static Samples measure(final Options options) throws Fen.ParseException {
+        final int iterations = options.iterations;
+
+        // Warmup
+        for (final TestCase test : Suite.TESTS) run(test, options);
+        System.gc();
+
+        final long[] nodes = new long[Suite.TESTS.size()];
+        final long[][] runtimes = new long[Suite.TESTS.size()][iterations];
+
+        for (int it = 0; it < iterations; it++) {
+            for (int i = 0; i < Suite.TESTS.size(); i++) {
+                final TestCase.Result result = run(Suite.TESTS.get(i), options);
+                nodes[i] = result.nodes();
+                runtimes[i][it] = result.runtimeNs();
+            }
+            System.gc();
+        }
+
+        return new Samples(nodes, runtimes);
+    }
+
+    /**
+     * Run a single test case with the position implementation and move generation options.
+     * @param test test case
+     * @param options options
+     * @return result
+     */
+    private static TestCase.Result run(final TestCase test, final Options options) throws Fen.ParseException {
+        return options.copyMake ? TestCase.runCopyMake(test) : TestCase.run(test, options.mode, options.incrementalAttacks);
+    }
+
+    /**
+     * Measure the suite in forked JVMs, run one after another with the same JVM arguments
+     * and class path as this JVM. Each fork warms up and measures independently, so JIT
+     * decisions that differ between JVMs are captured in the samples.
+     * @param options options
+     * @return samples from all forks
+     */
+    private static Samples measureForked(final Options options) throws IOException, InterruptedException {
+        final int tests = Suite.TESTS.size();
+        final long[] nodes = new long[tests];
+        final long[][] runtimes = new long[tests][options.forks * options.iterations];
+        final int[] counts = new int[tests];
+
+        final List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), Bench.class.getName(),
+                "--child", "--iterations", Integer.toString(options.iterations)));
+        if (options.mode == MoveGenerator.Mode.PSEUDO_LEGAL) command.add("--pseudo-legal");
+        if (options.incrementalAttacks) command.add("--incremental-attacks");
+        if (options.copyMake) command.add("--copy-make");
+
+        for (int f = 0; f < options.forks; f++) {
+            System.out.printf("ME-PERFT fork %d/%d%n", f + 1, options.forks);
+
+            final Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            try (final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.startsWith(SAMPLE_PREFIX)) continue;
+                    final String[] parts = line.substring(SAMPLE_PREFIX.length()).split(" ");
+                    final int i = Integer.parseInt(parts[0]);
+                    nodes[i] = Long.parseLong(parts[1]);
+                    runtimes[i][counts[i]++] = Long.parseLong(parts[2]);
+                }
+            }
+            if (process.waitFor() != 0) throw new IOException("forked bench exited with status " + process.exitValue());
+        }
+
+        return new Samples(nodes, runtimes);
+    }
+
+
+    // ====================================================================================================
+    //                                  Results and Baselines
+    // ====================================================================================================
+
+    /**
+     * Format the suite results as JSON. The suite runtime, nodes and nps come first so that the
+     * file remains compatible with earlier single run results files.
+     * @param totalNodes total suite nodes
+     * @param suite suite runtime statistics
+     * @param nodes nodes per test case
+     * @param stats runtime statistics per test case
+     * @return JSON string
+     */
+    private static String json(final long totalNodes, final Statistics suite, final long[] nodes, final List<Statistics> stats) {
+        final StringBuilder tests = new StringBuilder();
+        for (int i = 0; i < stats.size(); i++) {
+            final Statistics s = stats.get(i);
+            tests.append(String.format(
+        """
+                {
+                    "name": "%s",
+                    "nodes": %d,
+                    "median": %d,
+                    "min": %d,
+                    "stddev": %d,
+                    "ciLow": %d,
+                    "ciHigh": %d,
+                    "nps": %d
+                }%s
+        """, Suite.TESTS.get(i).name(), nodes[i], Math.round(s.median()), Math.round(s.min()), Math.round(s.stddev()),
+                    Math.round(s.ciLow()), Math.round(s.ciHigh()), nps(nodes[i], s.median()), i == stats.size() - 1 ? "" : ","));
+        }
+
+        return String.format(
         """
         {
             "runtime": %d,
             "nodes": %d,
-            "nps": %d
+            "nps": %d,
+            "samples": %d,
+            "stddev": %d,
+            "tests": [
+        %s    ]
         }
-        """, totalRuntime, totalNodes, Math.round(totalNodes / (totalRuntime/1000000000d)) ));
+        """, Math.round(suite.median()), totalNodes, nps(totalNodes, suite.median()), suite.samples(), Math.round(suite.stddev()), tests);
+    }
+
+    /**
+     * Compare results against a baseline JSON results file, printing the nps change of the suite
+     * and of every test case present in both.
+     * @param baseline baseline JSON
+     * @param nps suite nps
+     * @param nodes nodes per test case
+     * @param stats runtime statistics per test case
+     * @param threshold allowed suite nps regression (%)
+     * @return whether the suite is within the allowed regression
+     */
+    private static boolean compare(final String baseline, final long nps, final long[] nodes, final List<Statistics> stats, final double threshold) {
+        final Matcher suiteMatcher = Pattern.compile("\"nps\":\\s*(\\d+)").matcher(baseline);
+        if (!suiteMatcher.find()) throw new IllegalArgumentException("baseline has no nps");
+        final long baselineNps = Long.parseLong(suiteMatcher.group(1));
+
+        final Matcher testMatcher = Pattern.compile("\"name\":\\s*\"([^\"]*)\"[^}]*?\"nps\":\\s*(\\d+)").matcher(baseline);
+        while (testMatcher.find()) {
+            for (int i = 0; i < stats.size(); i++) {
+                if (!Suite.TESTS.get(i).name().equals(testMatcher.group(1))) continue;
+                System.out.printf("ME-PERFT '%-10s' %+.1f%% (%dnps -> %dnps)%n", testMatcher.group(1),
+                        change(Long.parseLong(testMatcher.group(2)), nps(nodes[i], stats.get(i).median())),
+                        Long.parseLong(testMatcher.group(2)), nps(nodes[i], stats.get(i).median()));
+            }
         }
+
+        final double change = change(baselineNps, nps);
+        final boolean pass = change >= -threshold;
+        System.out.printf("ME-PERFT Suite %s against baseline: %+.1f%% (%dnps -> %dnps, threshold=-%.1f%%)%n",
+                pass ? "PASS" : "REGRESSED", change, baselineNps, nps, threshold);
+        return pass;
+    }
+
+
+    // ====================================================================================================
+    //                                  Helpers
+    // ====================================================================================================
+
+    private static long ms(final double ns) {
+        return Math.round(ns / 1000000d);
+    }
+
+    private static long nps(final long nodes, final double ns) {
+        return Math.round(nodes / (ns / 1000000000d));
+    }
+
+    private static double change(final long before, final long after) {
+        return (after - before) * 100d / before;
     }
 
 
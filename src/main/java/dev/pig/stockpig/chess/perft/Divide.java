@@ -0,0 +1,42 @@
+package dev.pig.stockpig.chess.perft;
+
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.notation.Fen;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Divide runs a divide move enumeration PERFT on a single position, printing the node count
+ * after each root move. Comparing the output against a reference engine narrows a node count
+ * mismatch down to a single move, repeat with the move made to find the faulty position.
+ * <p>
+ * Usage: Divide depth fen
+ */
+public final class Divide {
+
+    /**
+     * Run a divide move enumeration PERFT.
+     * @param args depth followed by the FEN string (may be split across args)
+     */
+    public static void main(final String[] args) throws Fen.ParseException {
+        if (args.length < 2) {
+            System.out.println("Usage: Divide depth fen");
+            System.exit(1);
+        }
+
+        final int depth = Integer.parseInt(args[0]);
+        final Position pos = Position.fromFen(String.join(" ", Arrays.copyOfRange(args, 1, args.length)));
+
+        long total = 0L;
+        for (final Map.Entry<String, Long> entry : TestCase.divide(pos, depth).entrySet()) {
+            System.out.printf("%s: %d%n", entry.getKey(), entry.getValue());
+            total += entry.getValue();
+        }
+
+        System.out.printf("%nMoves: %d%nNodes: %d%n", pos.moves().size(), total);
+    }
+
+
+    private Divide() {}
+}
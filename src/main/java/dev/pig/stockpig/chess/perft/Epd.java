@@ -0,0 +1,189 @@
+package dev.pig.stockpig.chess.perft;
+
+import dev.pig.stockpig.chess.notation.Fen;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Epd provides a streaming move enumeration PERFT suite loaded from an EPD file.
+ * Each line holds a FEN (with or without the clock fields) followed by the expected node
+ * counts per depth, e.g. "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - ;D1 20 ;D2 400".
+ * <p>
+ * Lines are read lazily and handed to a pool of worker threads through a bounded window,
+ * so files with thousands of positions never have to be held in memory.
+ */
+public final class Epd {
+
+    /**
+     * Entry is a single parsed EPD line.
+     * @param line line number (1 indexed)
+     * @param fen FEN string, with clock fields
+     * @param expectedNodes expected node counts indexed by depth, 0 where unknown
+     */
+    public record Entry(int line, String fen, long[] expectedNodes) {
+
+        /**
+         * Get the move enumeration PERFT test cases of this entry, one per known depth.
+         * @param maxDepth maximum depth to include
+         * @return test cases, shallowest first
+         */
+        public List<TestCase> tests(final int maxDepth) {
+            final List<TestCase> tests = new ArrayList<>();
+            for (int d = 1; d < this.expectedNodes.length && d <= maxDepth; d++) {
+                if (this.expectedNodes[d] != 0) tests.add(new TestCase("line " + this.line, this.fen, d, this.expectedNodes[d]));
+            }
+            return tests;
+        }
+    }
+
+    /**
+     * Failure is a single failing depth of an EPD entry.
+     * @param line line number
+     * @param fen FEN string
+     * @param depth depth ply
+     * @param expectedNodes expected node count
+     * @param nodes visited node count, -1 if the line could not be parsed or the run failed
+     */
+    public record Failure(int line, String fen, int depth, long expectedNodes, long nodes) {}
+
+    /**
+     * Report is the result of running an EPD suite.
+     * @param positions positions run
+     * @param tests test cases (position and depth pairs) run
+     * @param nodes total visited nodes
+     * @param runtimeNs wall clock runtime (ns)
+     * @param failures failing test cases
+     */
+    public record Report(long positions, long tests, long nodes, long runtimeNs, List<Failure> failures) {
+
+        /**
+         * Get the aggregate nodes per second over all threads.
+         * @return nps
+         */
+        public long nps() {
+            return Math.round(this.nodes / (this.runtimeNs / 1000000000d));
+        }
+    }
+
+
+    // ====================================================================================================
+    //                                  Parsing
+    // ====================================================================================================
+
+    /**
+     * Parse an EPD line.
+     * @param line line number
+     * @param s EPD line
+     * @return entry, null if the line is blank or a comment
+     * @throws IllegalArgumentException if a depth op is malformed
+     */
+    public static Entry parse(final int line, final String s) {
+        final String trimmed = s.strip();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) return null;
+
+        final String[] parts = trimmed.split(";");
+        final String[] fields = parts[0].strip().split("\\s+");
+        final String fen = fields.length >= 6 ? String.join(" ", fields) : String.join(" ", fields) + " 0 1";
+
+        long[] expected = new long[0];
+        for (int i = 1; i < parts.length; i++) {
+            final String[] op = parts[i].strip().split("\\s+");
+            if (op.length != 2 || op[0].length() < 2 || op[0].charAt(0) != 'D') continue;
+            final int depth;
+            final long nodes;
+            try {
+                depth = Integer.parseInt(op[0].substring(1));
+                nodes = Long.parseLong(op[1]);
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("malformed op '" + parts[i].strip() + "' on line " + line, e);
+            }
+            if (depth < 0 || nodes < 0) throw new IllegalArgumentException("negative op '" + parts[i].strip() + "' on line " + line);
+            if (depth >= expected.length) expected = Arrays.copyOf(expected, depth + 1);
+            expected[depth] = nodes;
+        }
+
+        return new Entry(line, fen, expected);
+    }
+
+
+    // ====================================================================================================
+    //                                  Running
+    // ====================================================================================================
+
+    /**
+     * Run every entry of an EPD file up to a maximum depth, distributing positions across threads. Lines
+     * that cannot be parsed or fail to run are reported as failures rather than aborting the run.
+     * @param file EPD file
+     * @param maxDepth maximum depth to run
+     * @param threads worker thread count
+     * @return report
+     */
+    public static Report run(final Path file, final int maxDepth, final int threads) throws IOException, InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final Semaphore window = new Semaphore(threads * 4);
+
+        final AtomicLong positions = new AtomicLong();
+        final AtomicLong tests = new AtomicLong();
+        final AtomicLong nodes = new AtomicLong();
+        final List<Failure> failures = Collections.synchronizedList(new ArrayList<>());
+
+        final long start = System.nanoTime();
+        try (final BufferedReader reader = Files.newBufferedReader(file)) {
+            String s;
+            int line = 0;
+            while ((s = reader.readLine()) != null) {
+                final Entry entry;
+                try {
+                    entry = parse(++line, s);
+                } catch (final IllegalArgumentException e) {
+                    positions.incrementAndGet();
+                    failures.add(new Failure(line, s.strip(), 0, 0, -1));
+                    continue;
+                }
+                if (entry == null) continue;
+
+                window.acquire();
+                pool.execute(() -> {
+                    try {
+                        positions.incrementAndGet();
+                        for (final TestCase test : entry.tests(maxDepth)) {
+                            tests.incrementAndGet();
+                            final TestCase.Result result = TestCase.run(test);
+                            nodes.addAndGet(result.nodes());
+                            if (result.nodes() != test.expectedNodes()) {
+                                failures.add(new Failure(entry.line, entry.fen, test.depth(), test.expectedNodes(), result.nodes()));
+                            }
+                        }
+                    } catch (final Fen.ParseException | RuntimeException e) {
+                        failures.add(new Failure(entry.line, entry.fen, 0, 0, -1));
+                    } finally {
+                        window.release();
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        final List<Failure> sorted = new ArrayList<>(failures);
+        sorted.sort((a, b) -> a.line != b.line ? Integer.compare(a.line, b.line) : Integer.compare(a.depth, b.depth));
+        return new Report(positions.get(), tests.get(), nodes.get(), elapsed, sorted);
+    }
+
+
+    private Epd() {}
+}
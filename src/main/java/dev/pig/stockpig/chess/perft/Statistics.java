@@ -0,0 +1,62 @@
+package dev.pig.stockpig.chess.perft;
+
+import java.util.Arrays;
+
+/**
+ * Statistics summarises repeated runtime samples of a benchmark. The median and minimum are
+ * robust against noisy outliers on shared hardware, the standard deviation and 95% confidence
+ * interval of the mean indicate how far apart two runs must be to be a real difference.
+ * @param samples sample count
+ * @param median median (ns)
+ * @param min minimum (ns)
+ * @param mean mean (ns)
+ * @param stddev sample standard deviation (ns)
+ * @param ciLow lower bound of the 95% confidence interval of the mean (ns)
+ * @param ciHigh upper bound of the 95% confidence interval of the mean (ns)
+ */
+public record Statistics(int samples, double median, double min, double mean, double stddev, double ciLow, double ciHigh) {
+
+    /**
+     * Two-sided 95% Student's t critical values indexed by degrees of freedom (1...30).
+     */
+    private static final double[] T_95 = {
+            Double.NaN,
+            12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201,  2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080,  2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+    };
+
+    /**
+     * Summarise a set of samples.
+     * @param values samples, must not be empty
+     * @return statistics
+     */
+    public static Statistics of(final long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        final int n = sorted.length;
+
+        final double median = (n & 1) == 1 ? sorted[n/2] : (sorted[n/2 - 1] + sorted[n/2]) / 2d;
+
+        double sum = 0;
+        for (final long v : sorted) sum += v;
+        final double mean = sum / n;
+
+        double squares = 0;
+        for (final long v : sorted) squares += (v - mean) * (v - mean);
+        final double stddev = n > 1 ? Math.sqrt(squares / (n - 1)) : 0d;
+
+        final double t = n > 1 ? (n - 1 < T_95.length ? T_95[n - 1] : 1.960) : 0d;
+        final double margin = t * stddev / Math.sqrt(n);
+
+        return new Statistics(n, median, sorted[0], mean, stddev, mean - margin, mean + margin);
+    }
+
+    /**
+     * Get the relative standard deviation (coefficient of variation) as a percentage of the mean.
+     * @return relative standard deviation (%)
+     */
+    public double rsd() {
+        return this.mean == 0 ? 0 : this.stddev * 100 / this.mean;
+    }
+}
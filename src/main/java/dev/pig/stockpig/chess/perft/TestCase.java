@@ -1,8 +1,15 @@
 package dev.pig.stockpig.chess.perft;
 
+import dev.pig.stockpig.chess.CopyMakePosition;
+import dev.pig.stockpig.chess.Move;
+import dev.pig.stockpig.chess.MoveGenerator;
 import dev.pig.stockpig.chess.MoveList;
 import dev.pig.stockpig.chess.Position;
 import dev.pig.stockpig.chess.notation.Fen;
+import dev.pig.stockpig.chess.notation.Uci;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Test case represents a move enumeration PERFT test case. Move enumeration tests construct
@@ -20,8 +27,25 @@ public record TestCase(String name, String fen, int depth, long expectedNodes) {
      * Result is the result of a move enumeration PERFT test.
      * @param nodes visited node count
      * @param runtimeNs runtime (ns)
+     * @param counters leaf counters, null if counters were not gathered
+     */
+    public record Result(long nodes, long runtimeNs, Counters counters) {
+        public Result(final long nodes, final long runtimeNs) {
+            this(nodes, runtimeNs, null);
+        }
+    }
+
+    /**
+     * Counters are the per-category counts of the leaf nodes of a move enumeration PERFT,
+     * matching the categories of published PERFT results. Captures include en passant captures.
+     * @param captures captures
+     * @param enPassants en passant captures
+     * @param castles castles
+     * @param promotions promotions
+     * @param checks checks (including checkmates)
+     * @param checkmates checkmates
      */
-    public record Result(long nodes, long runtimeNs) {}
+    public record Counters(long captures, long enPassants, long castles, long promotions, long checks, long checkmates) {}
 
     /**
      * Run a move enumeration PERFT test and return a result.
@@ -38,6 +62,94 @@ public record TestCase(String name, String fen, int depth, long expectedNodes) {
         return new Result(nodes, elapsed);
     }
 
+    /**
+     * Run a move enumeration PERFT test with a move generation mode and return a result.
+     * In pseudo-legal mode each generated move is checked for legality before it is counted or made.
+     * @param test move enumeration PERFT test
+     * @param mode move generation mode
+     * @return result
+     */
+    public static Result run(final TestCase test, final MoveGenerator.Mode mode) throws Fen.ParseException {
+        return run(test, mode, false);
+    }
+
+    /**
+     * Run a move enumeration PERFT test with a move generation mode, optionally keeping an
+     * incrementally updated attack map, and return a result.
+     * @param test move enumeration PERFT test
+     * @param mode move generation mode
+     * @param incrementalAttacks whether to update attacks incrementally rather than recompute them
+     * @return result
+     */
+    public static Result run(final TestCase test, final MoveGenerator.Mode mode, final boolean incrementalAttacks) throws Fen.ParseException {
+        if (mode == MoveGenerator.Mode.LEGAL && !incrementalAttacks) return run(test);
+
+        final Position pos = Position.fromFen(test.fen);
+        pos.setMode(mode);
+        pos.setIncrementalAttacks(incrementalAttacks);
+
+        final long start = System.nanoTime();
+        final long nodes = mode == MoveGenerator.Mode.LEGAL ? perft(pos, test.depth) : perftPseudoLegal(pos, test.depth);
+        final long elapsed = System.nanoTime() - start;
+
+        return new Result(nodes, elapsed);
+    }
+
+    /**
+     * Run a move enumeration PERFT test on a copy-make position and return a result.
+     * @param test move enumeration PERFT test
+     * @return result
+     */
+    public static Result runCopyMake(final TestCase test) throws Fen.ParseException {
+        final CopyMakePosition pos = CopyMakePosition.fromFen(test.fen);
+
+        final long start = System.nanoTime();
+        final long nodes = perft(pos, test.depth);
+        final long elapsed = System.nanoTime() - start;
+
+        return new Result(nodes, elapsed);
+    }
+
+    /**
+     * Run a move enumeration PERFT test gathering leaf counters and return a result.
+     * Leaf moves must be made to find checks, so this is much slower than {@link #run(TestCase)}
+     * and should not be used for benchmarking.
+     * @param test move enumeration PERFT test
+     * @return result with counters
+     */
+    public static Result runWithCounters(final TestCase test) throws Fen.ParseException {
+        final Position pos = Position.fromFen(test.fen);
+        final CounterAccumulator acc = new CounterAccumulator();
+
+        final long start = System.nanoTime();
+        final long nodes = perft(pos, test.depth, acc);
+        final long elapsed = System.nanoTime() - start;
+
+        return new Result(nodes, elapsed, new Counters(acc.captures, acc.enPassants, acc.castles, acc.promotions, acc.checks, acc.checkmates));
+    }
+
+    /**
+     * Run a divide move enumeration PERFT, reporting the node count after each root move.
+     * Useful for finding the move that diverges from a reference implementation.
+     * @param pos position
+     * @param depth depth ply, at least 1
+     * @return node count per root move (UCI move string), in move generation order
+     */
+    public static Map<String, Long> divide(final Position pos, final int depth) {
+        final Map<String, Long> divide = new LinkedHashMap<>();
+        final MoveList moves = pos.moves().clone();
+
+        for (int i = 0; i < moves.size(); i++) {
+            final int move = moves.get(i);
+            pos.makeMove(move);
+            divide.put(Uci.format(move), perft(pos, depth - 1));
+            pos.unmakeMove();
+        }
+
+        pos.generateMoves();
+        return divide;
+    }
+
     /**
      * Move enumeration PERFT internal runner.
      * @param pos current position
@@ -60,4 +172,104 @@ public record TestCase(String name, String fen, int depth, long expectedNodes) {
 
         return nodes;
     }
-}
\ No newline at end of file
+
+    /**
+     * Move enumeration PERFT internal runner for a copy-make position.
+     * @param pos current position
+     * @param depth current remaining depth
+     * @return nodes visited
+     */
+    private static long perft(final CopyMakePosition pos, final int depth) {
+        if (depth == 0) return 1;
+        if (depth == 1) return pos.moves().size();
+
+        final MoveList moves = pos.moves().clone();
+        long nodes = 0;
+
+        for (int i = 0; i < moves.size(); i++) {
+            pos.makeMove(moves.get(i));
+            nodes += perft(pos, depth - 1);
+            pos.unmakeMove();
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Move enumeration PERFT internal runner for pseudo-legal move generation. Legality depends on the
+     * move generator state, which is stale after an unmake, so legal moves are collected before any are made.
+     * @param pos current position
+     * @param depth current remaining depth
+     * @return nodes visited
+     */
+    private static long perftPseudoLegal(final Position pos, final int depth) {
+        if (depth == 0) return 1;
+
+        final MoveList moves = new MoveList();
+        for (int i = 0; i < pos.moves().size(); i++) {
+            if (pos.isLegal(pos.moves().get(i))) moves.add(pos.moves().get(i));
+        }
+        if (depth == 1) return moves.size();
+
+        long nodes = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            pos.makeMove(moves.get(i));
+            nodes += perftPseudoLegal(pos, depth - 1);
+            pos.unmakeMove();
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Move enumeration PERFT internal runner, gathering leaf counters. Kept separate from the
+     * plain runner so that counting costs nothing when counters are not requested.
+     * @param pos current position
+     * @param depth current remaining depth
+     * @param acc leaf counter accumulator
+     * @return nodes visited
+     */
+    private static long perft(final Position pos, final int depth, final CounterAccumulator acc) {
+        if (depth == 0) return 1;
+
+        final MoveList moves = pos.moves().clone();
+        long nodes = 0;
+
+        for (int i = 0; i < moves.size(); i++) {
+            final int move = moves.get(i);
+            pos.makeMove(move);
+            if (depth == 1) {
+                acc.count(pos, move);
+                nodes++;
+            } else {
+                nodes += perft(pos, depth - 1, acc);
+            }
+            pos.unmakeMove();
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Mutable leaf counter accumulator.
+     */
+    private static final class CounterAccumulator {
+        private long captures, enPassants, castles, promotions, checks, checkmates;
+
+        /**
+         * Count a leaf move, the move must already have been made to the position.
+         * @param pos position after the move
+         * @param move leaf move
+         */
+        private void count(final Position pos, final int move) {
+            if (Move.isCapture(move))   captures++;
+            if (Move.isEnPassant(move)) enPassants++;
+            if (Move.isCastle(move))    castles++;
+            if (Move.isPromotion(move)) promotions++;
+            if (pos.moveGenerator().isCheck()) {
+                checks++;
+                if (pos.moves().isEmpty()) checkmates++;
+            }
+        }
+    }
+}
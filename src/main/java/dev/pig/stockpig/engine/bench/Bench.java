@@ -0,0 +1,111 @@
+package dev.pig.stockpig.engine.bench;
+
+import dev.pig.stockpig.chess.MoveGenerator;
+import dev.pig.stockpig.chess.notation.Fen;
+import dev.pig.stockpig.engine.search.TranspositionTable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Bench is a runner for a suite of fixed depth search benchmarks.
+ * The total node count is a deterministic signature of the search, it changes only when search
+ * behaviour changes, whereas the nps measures search speed.
+ * The results of the first run are discarded in order to warmup the JVM and
+ * reduce noise from runtime/JIT eccentricities.
+ * <p>
+ * With --pseudo-legal, the search uses pseudo-legal move generation and per move legality checks,
+ * the node count must match the legal move generation node count.
+ * With --incremental-attacks, attacks are updated incrementally across make/unmake rather than recomputed.
+ * With --mtdf, each test is also searched by the MTD(f) searcher, to the same depth and value, and the
+ * nodes and runtime of both are reported side by side.
+ * <p>
+ * Usage: Bench [results.json] [--depth N] [--pseudo-legal] [--incremental-attacks] [--mtdf]
+ */
+public final class Bench {
+
+    private static final int DEFAULT_DEPTH = 4;
+
+    /**
+     * Run search benchmarking test suite.
+     * @param args args
+     */
+    public static void main(final String[] args) throws IOException, Fen.ParseException {
+
+        // Arguments
+        String resultsPath = null;
+        int depth = DEFAULT_DEPTH;
+        MoveGenerator.Mode mode = MoveGenerator.Mode.LEGAL;
+        boolean incrementalAttacks = false;
+        boolean mtdf = false;
+        for (int i = 0; i < args.length; i++) {
+            if ("--depth".equals(args[i])) depth = Integer.parseInt(args[++i]);
+            else if ("--pseudo-legal".equals(args[i])) mode = MoveGenerator.Mode.PSEUDO_LEGAL;
+            else if ("--incremental-attacks".equals(args[i])) incrementalAttacks = true;
+            else if ("--mtdf".equals(args[i])) mtdf = true;
+            else resultsPath = args[i];
+        }
+
+        final TranspositionTable table = mtdf ? new TranspositionTable() : null;
+
+        // Warmup
+        for (final TestCase test : Suite.TESTS) {
+            TestCase.run(test, depth, mode, incrementalAttacks);
+            if (mtdf) TestCase.runMtdf(test, depth, mode, table);
+        }
+        System.gc();
+
+        // Suite level results
+        long totalNodes = 0L;
+        long totalRuntime = 0L;
+        long mtdfNodes = 0L;
+        long mtdfRuntime = 0L;
+
+        System.out.println("-------------------- Starting SEARCH-BENCH --------------------");
+
+        for (final TestCase test : Suite.TESTS) {
+            final TestCase.Result result = TestCase.run(test, depth, mode, incrementalAttacks);
+
+            totalNodes   += result.nodes();
+            totalRuntime += result.runtimeNs();
+
+            if (!mtdf) {
+                System.out.printf("SEARCH-BENCH '%-12s' nodes=%-10s score=%-9s elapsed=%5dms%n",
+                        test.name(), result.nodes(), result.score(), result.runtimeNs()/1000000);
+                continue;
+            }
+            final TestCase.Result mtdfResult = TestCase.runMtdf(test, depth, mode, table);
+            System.out.printf("SEARCH-BENCH '%-12s' score=%-9s alpha-beta nodes=%-10s elapsed=%5dms | mtdf nodes=%-10s elapsed=%5dms%n",
+                    test.name(), result.score(), result.nodes(), result.runtimeNs()/1000000, mtdfResult.nodes(), mtdfResult.runtimeNs()/1000000);
+            if (mtdfResult.score() != result.score()) System.out.printf("SEARCH-BENCH '%-12s' mtdf score mismatch: %d%n", test.name(), mtdfResult.score());
+
+            mtdfNodes   += mtdfResult.nodes();
+            mtdfRuntime += mtdfResult.runtimeNs();
+        }
+
+        System.out.println("-------------------- Finished SEARCH-BENCH --------------------");
+        System.out.printf("SEARCH-BENCH Suite completed (depth=%d): %d nodes in %dms (%dnps)%n",
+                depth, totalNodes, totalRuntime/1000000, Math.round(totalNodes / (totalRuntime/1000000000d)));
+        if (mtdf) {
+            System.out.printf("SEARCH-BENCH MTD(f) completed (depth=%d): %d nodes in %dms (%dnps)%n",
+                    depth, mtdfNodes, mtdfRuntime/1000000, Math.round(mtdfNodes / (mtdfRuntime/1000000000d)));
+        }
+
+        // If a results file path was passed then print a json result there
+        if (resultsPath != null) {
+            Files.writeString(Path.of(resultsPath), String.format(
+        """
+        {
+            "depth": %d,
+            "runtime": %d,
+            "nodes": %d,
+            "nps": %d
+        }
+        """, depth, totalRuntime, totalNodes, Math.round(totalNodes / (totalRuntime/1000000000d)) ));
+        }
+    }
+
+
+    private Bench() {}
+}
@@ -0,0 +1,84 @@
+package dev.pig.stockpig.engine.bench;
+
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.notation.Fen;
+import dev.pig.stockpig.chess.notation.Uci;
+import dev.pig.stockpig.engine.search.AlphaBetaSearcher;
+import dev.pig.stockpig.engine.search.MateSolver;
+
+import java.util.List;
+
+/**
+ * Mate bench is a runner for forced mate puzzles, solved by the proof-number mate solver. Like the
+ * search bench, node counts are deterministic (each puzzle starts from an empty table) and the first
+ * run is discarded to warmup the JVM.
+ * <p>
+ * With --alpha-beta, puzzles of up to {@link #ALPHA_BETA_MAX_MOVES} moves are also searched by
+ * alpha-beta at the equivalent depth (2N-1 plies) for comparison, longer mates are out of its reach.
+ * <p>
+ * Usage: MateBench [--alpha-beta]
+ */
+public final class MateBench {
+
+    private static final int MAX_MOVES = 16;
+    private static final int ALPHA_BETA_MAX_MOVES = 4;
+
+    /**
+     * List of forced mate puzzles.
+     */
+    public static final List<TestCase> PUZZLES = List.of(
+            new TestCase("legal mate",  "r2qkb1r/pp2nppp/3p4/2pNN1B1/2BnP3/3P4/PPP2PPP/R2bK2R w KQkq - 1 1"),
+            new TestCase("mate 2",      "r2r1n2/pp2bk2/2p1p2p/3q4/3PN1QP/2P3R1/P4PP1/5RK1 w - - 0 1"),
+            new TestCase("mate 1",      "6k1/3b3r/1p1p4/p1n2p2/1PPNpP1q/P3Q1p1/1R1RB1P1/5K2 b - - 0 1"),
+            new TestCase("KQvK",        "8/8/8/8/3k4/8/8/K6Q w - - 0 1"),
+            new TestCase("KRvK",        "8/8/8/3k4/8/8/8/K6R w - - 0 1")
+    );
+
+    /**
+     * Run mate benchmarking puzzles.
+     * @param args args
+     */
+    public static void main(final String[] args) throws Fen.ParseException {
+        final boolean alphaBeta = args.length > 0 && "--alpha-beta".equals(args[0]);
+
+        // Warmup
+        for (final TestCase test : PUZZLES) new MateSolver().solve(Position.fromFen(test.fen()), MAX_MOVES);
+        System.gc();
+
+        long totalNodes = 0L;
+        long totalRuntime = 0L;
+
+        System.out.println("-------------------- Starting MATE-BENCH --------------------");
+
+        for (final TestCase test : PUZZLES) {
+            final Position pos = Position.fromFen(test.fen());
+            final MateSolver solver = new MateSolver();
+            final long start = System.nanoTime();
+            final int mate = solver.solve(pos, MAX_MOVES);
+            final long elapsed = System.nanoTime() - start;
+
+            final StringBuilder line = new StringBuilder();
+            solver.line().forEach(move -> line.append(Uci.format(move)).append(' '));
+            System.out.printf("MATE-BENCH '%-12s' mate=%-3d nodes=%-10s elapsed=%5dms line=%s%n",
+                    test.name(), mate, solver.nodes(), elapsed/1000000, line.toString().trim());
+
+            totalNodes   += solver.nodes();
+            totalRuntime += elapsed;
+
+            if (alphaBeta && mate > 0 && mate <= ALPHA_BETA_MAX_MOVES) {
+                final AlphaBetaSearcher searcher = new AlphaBetaSearcher();
+                final long abStart = System.nanoTime();
+                searcher.search(pos, 2 * mate - 1);
+                System.out.printf("MATE-BENCH '%-12s' alpha-beta depth=%-2d nodes=%-10s elapsed=%5dms%n",
+                        test.name(), 2 * mate - 1, searcher.nodes(), (System.nanoTime() - abStart)/1000000);
+            }
+        }
+
+        System.out.println("-------------------- Finished MATE-BENCH --------------------");
+        System.out.printf("MATE-BENCH Suite completed: %d nodes in %dms (%dnps)%n",
+                totalNodes, totalRuntime/1000000, Math.round(totalNodes / (totalRuntime/1000000000d)));
+    }
+
+
+    private MateBench() {}
+}
@@ -0,0 +1,101 @@
+package dev.pig.stockpig.engine.bench;
+
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.notation.Fen;
+import dev.pig.stockpig.chess.notation.Uci;
+import dev.pig.stockpig.engine.search.MctsSearcher;
+
+/**
+ * MCTS bench measures the Monte Carlo tree searcher: the heap used per tree node, playout throughput
+ * over the search suite for increasing thread counts, and the nodes reused between the moves of a game.
+ * Playouts are not deterministic with more than one thread, so only throughput is compared.
+ * <p>
+ * Usage: MctsBench [--playouts N] [--max-nodes N] [--uct] [--rollout]
+ */
+public final class MctsBench {
+
+    private static final long DEFAULT_PLAYOUTS = 10_000L;
+    private static final int GAME_PLIES = 16;
+
+    /**
+     * Run MCTS benchmarks.
+     * @param args args
+     */
+    public static void main(final String[] args) throws Fen.ParseException {
+
+        // Arguments
+        long playouts = DEFAULT_PLAYOUTS;
+        int maxNodes = MctsSearcher.DEFAULT_MAX_NODES;
+        MctsSearcher.Selection selection = MctsSearcher.Selection.PUCT;
+        MctsSearcher.Leaf leaf = MctsSearcher.Leaf.EVAL;
+        for (int i = 0; i < args.length; i++) {
+            if ("--playouts".equals(args[i])) playouts = Long.parseLong(args[++i]);
+            else if ("--max-nodes".equals(args[i])) maxNodes = Integer.parseInt(args[++i]);
+            else if ("--uct".equals(args[i])) selection = MctsSearcher.Selection.UCT;
+            else if ("--rollout".equals(args[i])) leaf = MctsSearcher.Leaf.ROLLOUT;
+        }
+
+        // Memory per node, measured from the heap growth of a searcher once a search has reused its tree
+        // (after the same with a tiny searcher, so that classes and static tables are already loaded)
+        final Runtime runtime = Runtime.getRuntime();
+        reuseOnce(new MctsSearcher(64, 1, selection, leaf), playouts);
+        System.gc();
+        final long before = runtime.totalMemory() - runtime.freeMemory();
+        MctsSearcher searcher = new MctsSearcher(maxNodes, 1, selection, leaf);
+        reuseOnce(searcher, playouts);
+        System.gc();
+        final long after = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("MCTS-BENCH memory: %d nodes, %.1f bytes/node measured after reusing %d nodes, %d bytes/node by layout%n",
+                maxNodes, (after - before) / (double) maxNodes, searcher.reused(), MctsSearcher.BYTES_PER_NODE);
+
+        // Warmup
+        runSuite(searcher, playouts);
+
+        System.out.println("-------------------- Starting MCTS-BENCH --------------------");
+        final int processors = runtime.availableProcessors();
+        for (int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+            searcher = new MctsSearcher(maxNodes, threads, selection, leaf);
+            final long start = System.nanoTime();
+            final long total = runSuite(searcher, playouts);
+            final long elapsed = System.nanoTime() - start;
+            System.out.printf("MCTS-BENCH threads=%-3d playouts=%-9d elapsed=%6dms (%d playouts/s)%n",
+                    threads, total, elapsed/1000000, Math.round(total / (elapsed/1000000000d)));
+            if (threads == processors) break;
+        }
+
+        // Tree reuse over the moves of a self-played game
+        searcher = new MctsSearcher(maxNodes, processors, selection, leaf);
+        final Position pos = Position.starting();
+        for (int ply = 0; ply < GAME_PLIES && !pos.moves().isEmpty(); ply++) {
+            final int move = searcher.search(pos, playouts);
+            System.out.printf("MCTS-BENCH ply=%-3d move=%-6s reused=%-8d nodes=%-8d root visits=%d%n",
+                    ply, Uci.format(move), searcher.reused(), searcher.nodes(), searcher.rootVisits());
+            pos.makeMove(move);
+        }
+        System.out.println("-------------------- Finished MCTS-BENCH --------------------");
+    }
+
+    /**
+     * Search the starting position, then the position after the best move, reusing the tree.
+     * @param searcher searcher
+     * @param playouts playouts per search
+     */
+    private static void reuseOnce(final MctsSearcher searcher, final long playouts) {
+        final Position pos = Position.starting();
+        pos.makeMove(searcher.search(pos, playouts));
+        searcher.search(pos, playouts);
+    }
+
+    private static long runSuite(final MctsSearcher searcher, final long playouts) throws Fen.ParseException {
+        long total = 0L;
+        for (final TestCase test : Suite.TESTS) {
+            searcher.clear();
+            searcher.search(Position.fromFen(test.fen()), playouts);
+            total += searcher.playouts();
+        }
+        return total;
+    }
+
+
+    private MctsBench() {}
+}
@@ -0,0 +1,90 @@
+package dev.pig.stockpig.engine.bench;
+
+import dev.pig.stockpig.chess.MoveGenerator;
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.notation.Fen;
+import dev.pig.stockpig.engine.search.AlphaBetaSearcher;
+import dev.pig.stockpig.engine.search.MtdfSearcher;
+import dev.pig.stockpig.engine.search.TranspositionTable;
+
+/**
+ * Test case represents a fixed depth search benchmark test case. The position is searched to
+ * the given depth and the number of visited nodes is recorded. Node counts are deterministic,
+ * so they change only when search behaviour changes; monitoring time elapsed is a good way of
+ * benchmarking search speed.
+ * @param name test name
+ * @param fen FEN string of starting pos
+ */
+public record TestCase(String name, String fen) {
+
+    /**
+     * Result is the result of a fixed depth search benchmark test.
+     * @param move best move found
+     * @param score best move score
+     * @param nodes visited node count
+     * @param runtimeNs runtime (ns)
+     */
+    public record Result(int move, int score, long nodes, long runtimeNs) {}
+
+    /**
+     * Run a fixed depth search benchmark test and return a result.
+     * @param test search benchmark test
+     * @param depth depth ply
+     * @return result
+     */
+    public static Result run(final TestCase test, final int depth) throws Fen.ParseException {
+        return run(test, depth, MoveGenerator.Mode.LEGAL);
+    }
+
+    /**
+     * Run a fixed depth search benchmark test with a move generation mode and return a result.
+     * @param test search benchmark test
+     * @param depth depth ply
+     * @param mode move generation mode
+     * @return result
+     */
+    public static Result run(final TestCase test, final int depth, final MoveGenerator.Mode mode) throws Fen.ParseException {
+        return run(test, depth, mode, false);
+    }
+
+    /**
+     * Run a fixed depth search benchmark test with a move generation mode, optionally keeping an
+     * incrementally updated attack map, and return a result.
+     * @param test search benchmark test
+     * @param depth depth ply
+     * @param mode move generation mode
+     * @param incrementalAttacks whether to update attacks incrementally rather than recompute them
+     * @return result
+     */
+    public static Result run(final TestCase test, final int depth, final MoveGenerator.Mode mode, final boolean incrementalAttacks) throws Fen.ParseException {
+        final Position pos = Position.fromFen(test.fen);
+        pos.setIncrementalAttacks(incrementalAttacks);
+        final AlphaBetaSearcher searcher = new AlphaBetaSearcher(mode);
+
+        final long start = System.nanoTime();
+        final int move = searcher.search(pos, depth);
+        final long elapsed = System.nanoTime() - start;
+
+        return new Result(move, searcher.score(), searcher.nodes(), elapsed);
+    }
+
+    /**
+     * Run a fixed depth search benchmark test with the MTD(f) searcher, which searches every depth up to
+     * the given depth, and return a result.
+     * @param test search benchmark test
+     * @param depth depth ply
+     * @param mode move generation mode
+     * @param table transposition table, cleared before the search
+     * @return result
+     */
+    public static Result runMtdf(final TestCase test, final int depth, final MoveGenerator.Mode mode, final TranspositionTable table) throws Fen.ParseException {
+        final Position pos = Position.fromFen(test.fen);
+        final MtdfSearcher searcher = new MtdfSearcher(mode, table);
+
+        final long start = System.nanoTime();
+        final int move = searcher.search(pos, depth);
+        final long elapsed = System.nanoTime() - start;
+
+        return new Result(move, searcher.score(), searcher.nodes(), elapsed);
+    }
+}
@@ -0,0 +1,344 @@
+package dev.pig.stockpig.engine.book;
+
+import dev.pig.stockpig.chess.Colour;
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.notation.Fen;
+import dev.pig.stockpig.chess.notation.Pgn;
+import dev.pig.stockpig.chess.notation.San;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * BookBuilder builds Polyglot opening books from PGN game collections.
+ * <p>
+ * Games are streamed and replayed, and every (position, move) of the first plies is counted as a win,
+ * draw or loss for the side playing it in a {@link MoveCounts} map of bounded size. Whenever the map is full
+ * it is spilled to disk as a sorted run, and once every game is read the runs are merged into the book, so
+ * collections far larger than memory can be built.
+ * <p>
+ * A move's weight is its score in half points (2 per win, 1 per draw), scaled down per position to fit
+ * 16 bits. Moves played fewer than the minimum number of games or with no score are left out.
+ * <p>
+ * Usage: BookBuilder book.bin random64-file games.pgn... [--max-ply N] [--min-games N] [--max-entries N]
+ */
+public final class BookBuilder {
+
+    public static final int DEFAULT_MAX_PLY     = 40;
+    public static final int DEFAULT_MIN_GAMES   = 1;
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 21;
+
+    private static final int MAX_WEIGHT = 0xFFFF;
+
+    private final PolyglotKey keys;
+    private final int maxPly;
+    private final int minGames;
+    private final MoveCounts counts;
+    private final Path tmp;
+    private final List<Path> runs = new ArrayList<>();
+    private final Position pos = Position.empty();
+
+    // Stats
+    private long games;
+    private long positions;
+    private long skipped;
+    private long entries;
+    private int spills;
+
+
+    // ====================================================================================================
+    //                                  Constructors and Builders
+    // ====================================================================================================
+
+    /**
+     * Create a book builder.
+     * @param keys Polyglot key
+     * @param maxPly number of plies of each game to add
+     * @param minGames minimum number of games a move must be played in
+     * @param maxEntries maximum number of (position, move) entries held in memory before spilling
+     * @param tmp directory to spill runs to
+     */
+    public BookBuilder(final PolyglotKey keys, final int maxPly, final int minGames, final int maxEntries, final Path tmp) {
+        this.keys = keys;
+        this.maxPly = maxPly;
+        this.minGames = minGames;
+        this.counts = new MoveCounts(maxEntries);
+        this.tmp = tmp;
+    }
+
+    /**
+     * Build a book from the command line.
+     * @param args args
+     */
+    public static void main(final String[] args) throws IOException {
+        final List<String> positional = new ArrayList<>();
+        int maxPly = DEFAULT_MAX_PLY, minGames = DEFAULT_MIN_GAMES, maxEntries = DEFAULT_MAX_ENTRIES;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--max-ply"     -> maxPly = Integer.parseInt(args[++i]);
+                case "--min-games"   -> minGames = Integer.parseInt(args[++i]);
+                case "--max-entries" -> maxEntries = Integer.parseInt(args[++i]);
+                default              -> positional.add(args[i]);
+            }
+        }
+        if (positional.size() < 3) {
+            System.out.println("Usage: BookBuilder book.bin random64-file games.pgn... [--max-ply N] [--min-games N] [--max-entries N]");
+            System.exit(1);
+        }
+
+        final long start = System.nanoTime();
+        final Path book = Path.of(positional.get(0));
+        final Path tmp = Files.createTempDirectory(book.toAbsolutePath().getParent(), "book");
+        final BookBuilder builder = new BookBuilder(PolyglotKey.load(Path.of(positional.get(1))), maxPly, minGames, maxEntries, tmp);
+        for (final String pgn : positional.subList(2, positional.size())) builder.add(Path.of(pgn));
+        builder.write(book);
+        Files.delete(tmp);
+
+        System.out.printf("BOOK games=%d skipped=%d positions=%d runs=%d entries=%d elapsed=%dms%n",
+                builder.games, builder.skipped, builder.positions, builder.runs(), builder.entries, (System.nanoTime() - start) / 1000000);
+    }
+
+
+    // ====================================================================================================
+    //                                  Accessors
+    // ====================================================================================================
+
+    /**
+     * Get the number of games added.
+     * @return game count
+     */
+    public long games() {
+        return this.games;
+    }
+
+    /**
+     * Get the number of positions added, counting repeats.
+     * @return position count
+     */
+    public long positions() {
+        return this.positions;
+    }
+
+    /**
+     * Get the number of games skipped, for an unknown result or a bad start position.
+     * @return skipped game count
+     */
+    public long skipped() {
+        return this.skipped;
+    }
+
+    /**
+     * Get the number of runs spilled to disk so far.
+     * @return run count
+     */
+    public int runs() {
+        return this.spills;
+    }
+
+    /**
+     * Get the number of book entries written.
+     * @return entry count
+     */
+    public long entries() {
+        return this.entries;
+    }
+
+
+    // ====================================================================================================
+    //                                  Building
+    // ====================================================================================================
+
+    /**
+     * Add every game of a PGN file.
+     * @param pgn PGN file
+     * @throws IOException if the file cannot be read or a run cannot be written
+     */
+    public void add(final Path pgn) throws IOException {
+        try (final Reader in = Files.newBufferedReader(pgn, StandardCharsets.ISO_8859_1)) {
+            add(in);
+        }
+    }
+
+    /**
+     * Add every game of a PGN collection.
+     * @param in PGN input
+     * @throws IOException if the input cannot be read or a run cannot be written
+     */
+    public void add(final Reader in) throws IOException {
+        final Pgn.Reader reader = new Pgn.Reader(in);
+        Pgn.Game game;
+        while ((game = reader.next()) != null) add(game);
+    }
+
+    /**
+     * Add the first plies of a game, up to the first move that cannot be parsed.
+     * @param game game
+     * @throws IOException if a run cannot be written
+     */
+    public void add(final Pgn.Game game) throws IOException {
+        final int whiteResult = switch (game.result()) {
+            case Pgn.WHITE_WINS -> 1;
+            case Pgn.BLACK_WINS -> -1;
+            case Pgn.DRAW       -> 0;
+            default             -> Integer.MIN_VALUE;
+        };
+        if (whiteResult == Integer.MIN_VALUE) {
+            this.skipped++;
+            return;
+        }
+        try {
+            Fen.parseInto(game.tags().getOrDefault("FEN", Fen.STARTING), this.pos);
+        } catch (final Fen.ParseException e) {
+            this.skipped++;
+            return;
+        }
+        this.games++;
+
+        for (int ply = 0; ply < this.maxPly && ply < game.moves().size(); ply++) {
+            final int move;
+            try {
+                move = San.parse(this.pos, game.moves().get(ply));
+            } catch (final IllegalArgumentException e) {
+                return;
+            }
+            if (this.counts.isFull()) spill();
+            this.counts.add(this.keys.key(this.pos), OpeningBook.encode(move), this.pos.sideToMove() == Colour.WHITE ? whiteResult : -whiteResult);
+            this.positions++;
+            this.pos.makeMove(move);
+        }
+    }
+
+    /**
+     * Write the book, merging every run. The runs are deleted once merged.
+     * @param book book file
+     * @throws IOException if the runs cannot be read or the book cannot be written
+     */
+    public void write(final Path book) throws IOException {
+        spill();
+
+        final PriorityQueue<Run> queue = new PriorityQueue<>();
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(book), 1 << 16))) {
+            for (final Path run : this.runs) {
+                final Run r = new Run(run);
+                if (r.next()) queue.add(r);
+                else r.close();
+            }
+
+            // Merge equal (key, move) records across runs, and collect the moves of each key
+            long key = 0L;
+            final List<long[]> group = new ArrayList<>();
+            while (!queue.isEmpty()) {
+                final Run run = queue.poll();
+                if (!group.isEmpty() && run.key != key) writeGroup(out, key, group);
+                key = run.key;
+
+                final long[] last = group.isEmpty() ? null : group.get(group.size() - 1);
+                if (last != null && last[0] == run.move) {
+                    last[1] += run.wins;
+                    last[2] += run.draws;
+                    last[3] += run.losses;
+                } else {
+                    group.add(new long[]{run.move, run.wins, run.draws, run.losses});
+                }
+
+                if (run.next()) queue.add(run);
+                else run.close();
+            }
+            if (!group.isEmpty()) writeGroup(out, key, group);
+        } finally {
+            for (final Run run : queue) run.close();
+            for (final Path run : this.runs) Files.deleteIfExists(run);
+            this.runs.clear();
+        }
+    }
+
+    /**
+     * Spill the counts in memory to a new sorted run.
+     */
+    private void spill() throws IOException {
+        if (this.counts.size() == 0) return;
+        final Path run = this.tmp.resolve("run-" + this.runs.size());
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+            this.counts.writeRun(out);
+        }
+        this.runs.add(run);
+        this.spills++;
+    }
+
+    /**
+     * Write the book entries of a key, highest weight first, and clear the group.
+     * @param out book output
+     * @param key Polyglot key
+     * @param group move, wins, draws and losses of each move
+     */
+    private void writeGroup(final DataOutputStream out, final long key, final List<long[]> group) throws IOException {
+        long max = 0L;
+        for (final long[] move : group) max = Math.max(max, 2 * move[1] + move[2]);
+        for (final long[] move : group) {
+            final long score = 2 * move[1] + move[2];
+            move[1] = move[1] + move[2] + move[3] < this.minGames ? 0 : max > MAX_WEIGHT ? score * MAX_WEIGHT / max : score;
+        }
+        group.sort((a, b) -> Long.compare(b[1], a[1]));
+
+        for (final long[] move : group) {
+            if (move[1] == 0) break;
+            out.writeLong(key);
+            out.writeShort((int) move[0]);
+            out.writeShort((int) move[1]);
+            out.writeInt(0);
+            this.entries++;
+        }
+        group.clear();
+    }
+
+    /**
+     * Run is a sorted run being merged, positioned on its current record.
+     */
+    private static final class Run implements Comparable<Run> {
+
+        private final DataInputStream in;
+        private long key;
+        private int move;
+        private int wins;
+        private int draws;
+        private int losses;
+
+        private Run(final Path file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        }
+
+        private boolean next() throws IOException {
+            try {
+                this.key    = this.in.readLong();
+            } catch (final EOFException e) {
+                return false;
+            }
+            this.move   = this.in.readUnsignedShort();
+            this.wins   = this.in.readInt();
+            this.draws  = this.in.readInt();
+            this.losses = this.in.readInt();
+            return true;
+        }
+
+        private void close() throws IOException {
+            this.in.close();
+        }
+
+        @Override
+        public int compareTo(final Run other) {
+            final int c = Long.compareUnsigned(this.key, other.key);
+            return c != 0 ? c : Integer.compare(this.move, other.move);
+        }
+    }
+}
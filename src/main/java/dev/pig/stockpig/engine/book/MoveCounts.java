@@ -0,0 +1,154 @@
+package dev.pig.stockpig.engine.book;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * MoveCounts is an open addressing hash map from (Polyglot key, Polyglot move) to win, draw and loss
+ * counts, held in primitive arrays of a fixed capacity so that its memory is bounded and nothing is
+ * allocated per entry. Once full it is written out as a run sorted by key then move, and cleared.
+ */
+final class MoveCounts {
+
+    // Run record: key, move, wins, draws, losses
+    static final int RECORD_SIZE = 8 + 2 + 4 + 4 + 4;
+
+    private final long[] keys;
+    private final short[] moves;
+    private final int[] wins;
+    private final int[] draws;
+    private final int[] losses;
+    private final boolean[] used;
+    private final int mask;
+    private final int maxSize;
+    private int size;
+
+
+    // ====================================================================================================
+    //                                  Constructors and Builders
+    // ====================================================================================================
+
+    /**
+     * Create a map holding a maximum number of entries, the table is sized to stay at most half full.
+     * @param maxSize maximum number of entries
+     */
+    MoveCounts(final int maxSize) {
+        final int capacity = Integer.highestOneBit(Math.max(2, maxSize) * 2 - 1) << 1;
+        this.keys   = new long[capacity];
+        this.moves  = new short[capacity];
+        this.wins   = new int[capacity];
+        this.draws  = new int[capacity];
+        this.losses = new int[capacity];
+        this.used   = new boolean[capacity];
+        this.mask = capacity - 1;
+        this.maxSize = maxSize;
+    }
+
+
+    // ====================================================================================================
+    //                                  Accessors
+    // ====================================================================================================
+
+    int size() {
+        return this.size;
+    }
+
+    boolean isFull() {
+        return this.size >= this.maxSize;
+    }
+
+    /**
+     * Count a game result for a move of a position.
+     * @param key Polyglot key
+     * @param move Polyglot move
+     * @param result 1 for a win, 0 for a draw and -1 for a loss, for the side playing the move
+     */
+    void add(final long key, final short move, final int result) {
+        int i = index(key, move);
+        while (this.used[i] && (this.keys[i] != key || this.moves[i] != move)) i = (i + 1) & this.mask;
+        if (!this.used[i]) {
+            this.used[i] = true;
+            this.keys[i] = key;
+            this.moves[i] = move;
+            this.size++;
+        }
+        if      (result > 0) this.wins[i]++;
+        else if (result < 0) this.losses[i]++;
+        else                 this.draws[i]++;
+    }
+
+    /**
+     * Write every entry as a run sorted by unsigned key then move, and clear the map.
+     * @param out run output
+     * @throws IOException if the run cannot be written
+     */
+    void writeRun(final DataOutputStream out) throws IOException {
+        // Compact the entries to the front, the hash layout is not needed again
+        int n = 0;
+        for (int i = 0; i <= this.mask; i++) {
+            if (!this.used[i]) continue;
+            swap(i, n++);
+            this.used[i] = false;
+        }
+        sort(0, n - 1);
+
+        for (int i = 0; i < n; i++) {
+            out.writeLong(this.keys[i]);
+            out.writeShort(this.moves[i]);
+            out.writeInt(this.wins[i]);
+            out.writeInt(this.draws[i]);
+            out.writeInt(this.losses[i]);
+            this.wins[i] = this.draws[i] = this.losses[i] = 0;
+        }
+        this.size = 0;
+    }
+
+    private int index(final long key, final short move) {
+        long h = (key ^ move) * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & this.mask;
+    }
+
+
+    // ====================================================================================================
+    //                                  Sorting
+    // ====================================================================================================
+
+    /**
+     * Quicksort the parallel arrays by unsigned key then move.
+     */
+    private void sort(int lo, int hi) {
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final long pivotKey = this.keys[mid];
+            final short pivotMove = this.moves[mid];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (compare(i, pivotKey, pivotMove) < 0) i++;
+                while (compare(j, pivotKey, pivotMove) > 0) j--;
+                if (i <= j) swap(i++, j--);
+            }
+            // Recurse into the smaller side to bound the stack
+            if (j - lo < hi - i) {
+                sort(lo, j);
+                lo = i;
+            } else {
+                sort(i, hi);
+                hi = j;
+            }
+        }
+    }
+
+    private int compare(final int i, final long key, final short move) {
+        final int c = Long.compareUnsigned(this.keys[i], key);
+        return c != 0 ? c : Integer.compare(this.moves[i] & 0xFFFF, move & 0xFFFF);
+    }
+
+    private void swap(final int i, final int j) {
+        if (i == j) return;
+        final long key = this.keys[i];    this.keys[i] = this.keys[j];       this.keys[j] = key;
+        final short move = this.moves[i]; this.moves[i] = this.moves[j];     this.moves[j] = move;
+        final int w = this.wins[i];       this.wins[i] = this.wins[j];       this.wins[j] = w;
+        final int d = this.draws[i];      this.draws[i] = this.draws[j];     this.draws[j] = d;
+        final int l = this.losses[i];     this.losses[i] = this.losses[j];   this.losses[j] = l;
+    }
+}
@@ -0,0 +1,209 @@
+package dev.pig.stockpig.engine.book;
+
+import dev.pig.stockpig.chess.Move;
+import dev.pig.stockpig.chess.MoveList;
+import dev.pig.stockpig.chess.PieceType;
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.bitboard.Square;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * OpeningBook reads Polyglot (.bin) opening books. The book is memory-mapped and its 16-byte entries
+ * (big-endian key, move, weight and learn fields), sorted by key, are binary searched, so a probe costs a
+ * handful of page reads and no heap.
+ * <p>
+ * Book moves are matched against the position's legal moves, entries that are not legal (from key
+ * collisions or broken books) are ignored. Polyglot encodes castling as the king taking its own rook.
+ */
+public final class OpeningBook {
+
+    static final int ENTRY_SIZE = 16;
+
+    private static final byte[] PROMOTIONS = {PieceType.EMPTY, PieceType.KNIGHT, PieceType.BISHOP, PieceType.ROOK, PieceType.QUEEN};
+
+    private final MappedByteBuffer entries;
+    private final int size;
+    private final PolyglotKey keys;
+
+
+    // ====================================================================================================
+    //                                  Constructors and Builders
+    // ====================================================================================================
+
+    private OpeningBook(final MappedByteBuffer entries, final PolyglotKey keys) {
+        this.entries = entries;
+        this.size = entries.capacity() / ENTRY_SIZE;
+        this.keys = keys;
+    }
+
+    /**
+     * Memory-map a Polyglot opening book.
+     * @param file book file
+     * @param keys Polyglot key
+     * @return opening book
+     * @throws IOException if the file cannot be read or is not a whole number of entries
+     */
+    public static OpeningBook open(final Path file, final PolyglotKey keys) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() % ENTRY_SIZE != 0 || channel.size() > Integer.MAX_VALUE) throw new IOException("unexpected size: " + file);
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), keys);
+        }
+    }
+
+
+    // ====================================================================================================
+    //                                  Accessors
+    // ====================================================================================================
+
+    /**
+     * Get the number of entries in the book.
+     * @return entry count
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Get the Polyglot key the book is probed with.
+     * @return Polyglot key
+     */
+    public PolyglotKey keys() {
+        return this.keys;
+    }
+
+
+    // ====================================================================================================
+    //                                  Probing
+    // ====================================================================================================
+
+    /**
+     * Get the book move with the highest weight, the first in the book on ties.
+     * @param pos position
+     * @return move, 0 if the position is not in the book
+     */
+    public int bestMove(final Position pos) {
+        final long key = this.keys.key(pos);
+        int best = 0;
+        int bestWeight = -1;
+        for (int i = lowerBound(key); i < this.size && key(i) == key; i++) {
+            final int move = legalMove(pos, i);
+            if (move != 0 && weight(i) > bestWeight) {
+                best = move;
+                bestWeight = weight(i);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Get a random book move, chosen with probability proportional to its weight. Moves with no weight
+     * are never chosen.
+     * @param pos position
+     * @param random random source
+     * @return move, 0 if the position is not in the book
+     */
+    public int weightedMove(final Position pos, final Random random) {
+        final long key = this.keys.key(pos);
+        final int first = lowerBound(key);
+
+        int total = 0;
+        for (int i = first; i < this.size && key(i) == key; i++) {
+            if (legalMove(pos, i) != 0) total += weight(i);
+        }
+        if (total == 0) return 0;
+
+        int pick = random.nextInt(total);
+        for (int i = first; ; i++) {
+            final int move = legalMove(pos, i);
+            if (move == 0) continue;
+            pick -= weight(i);
+            if (pick < 0) return move;
+        }
+    }
+
+    /**
+     * Get every legal book move of a position, in book order.
+     * @param pos position
+     * @param moves move list to fill
+     */
+    public void moves(final Position pos, final MoveList moves) {
+        moves.clear();
+        final long key = this.keys.key(pos);
+        for (int i = lowerBound(key); i < this.size && key(i) == key; i++) {
+            final int move = legalMove(pos, i);
+            if (move != 0) moves.add(move);
+        }
+    }
+
+    /**
+     * Find the first entry with a key not less than the given key, keys are compared unsigned.
+     * @param key Polyglot key
+     * @return entry index, size if every key is less
+     */
+    private int lowerBound(final long key) {
+        int lo = 0;
+        int hi = this.size;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(key(mid), key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private long key(final int i) {
+        return this.entries.getLong(i * ENTRY_SIZE);
+    }
+
+    private int weight(final int i) {
+        return this.entries.getShort(i * ENTRY_SIZE + 10) & 0xFFFF;
+    }
+
+    /**
+     * Encode a move in the Polyglot move format, castling as the king taking its own rook.
+     * @param move move
+     * @return Polyglot move
+     */
+    static short encode(final int move) {
+        final byte from = Move.from(move);
+        byte to = Move.to(move);
+        if (Move.isCastle(move)) to = (byte) ((to & 7) == 6 ? to + 1 : to - 2);
+        final int promotion = Move.isPromotion(move) ? Move.promote(move) - PieceType.KNIGHT + 1 : 0;
+        return (short) ((promotion << 12) | (from << 6) | to);
+    }
+
+    /**
+     * Decode the move of an entry and match it to a legal move of the position.
+     * @param pos position
+     * @param i entry index
+     * @return legal move, 0 if the entry's move is not legal
+     */
+    private int legalMove(final Position pos, final int i) {
+        final int entry = this.entries.getShort(i * ENTRY_SIZE + 8) & 0xFFFF;
+        final byte from = (byte) ((entry >>> 6) & 63);
+        byte to = (byte) (entry & 63);
+        final int promotion = (entry >>> 12) & 7;
+        if (promotion >= PROMOTIONS.length) return 0;
+
+        // Castling is encoded as the king taking its own rook
+        if (pos.board().pieceAt(from) == PieceType.KING) {
+            if      (from == Square.E1 && to == Square.H1) to = Square.G1;
+            else if (from == Square.E1 && to == Square.A1) to = Square.C1;
+            else if (from == Square.E8 && to == Square.H8) to = Square.G8;
+            else if (from == Square.E8 && to == Square.A8) to = Square.C8;
+        }
+
+        final MoveList moves = pos.moves();
+        for (int m = 0; m < moves.size(); m++) {
+            final int move = moves.get(m);
+            if (Move.from(move) == from && Move.to(move) == to && Move.promote(move) == PROMOTIONS[promotion]) return move;
+        }
+        return 0;
+    }
+}
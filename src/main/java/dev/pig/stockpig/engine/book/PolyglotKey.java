@@ -0,0 +1,126 @@
+package dev.pig.stockpig.engine.book;
+
+import dev.pig.stockpig.chess.Board;
+import dev.pig.stockpig.chess.Castling;
+import dev.pig.stockpig.chess.Colour;
+import dev.pig.stockpig.chess.PieceType;
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.PositionState;
+import dev.pig.stockpig.chess.bitboard.Attack;
+import dev.pig.stockpig.chess.bitboard.Square;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * PolyglotKey computes the Polyglot hash of a position, the key opening book entries are stored under.
+ * This is a different hash to the {@link Position#zhash()} Zobrist hash, it is built from the fixed Random64
+ * table of the Polyglot format (781 64-bit values: 768 piece squares, 4 castling rights, 8 en passant files
+ * and the side to move) so that books built by any tool can be read.
+ * <p>
+ * The table is loaded from any text file that lists it in hex, such as the Polyglot source (pg_key.c),
+ * and is only accepted if it hashes the starting position to the published key.
+ */
+public final class PolyglotKey {
+
+    public static final long STARTING_POSITION_KEY = 0x463B96181691FC9CL;
+
+    static final int RANDOM_COUNT   = 781;
+    static final int CASTLE_OFFSET  = 768;
+    static final int EP_OFFSET      = 772;
+    static final int TURN_OFFSET    = 780;
+
+    private static final Pattern HEX = Pattern.compile("0[xX]([0-9a-fA-F]{16})");
+
+    // Polyglot piece kind per piece type: black pawn 0, white pawn 1, black knight 2 ... white king 11
+    private static final int[] KIND = new int[PieceType.QUEEN + 1];
+    static {
+        KIND[PieceType.PAWN]   = 0;
+        KIND[PieceType.KNIGHT] = 2;
+        KIND[PieceType.BISHOP] = 4;
+        KIND[PieceType.ROOK]   = 6;
+        KIND[PieceType.QUEEN]  = 8;
+        KIND[PieceType.KING]   = 10;
+    }
+
+    private final long[] random;
+
+
+    // ====================================================================================================
+    //                                  Constructors and Builders
+    // ====================================================================================================
+
+    PolyglotKey(final long[] random) {
+        if (random.length != RANDOM_COUNT) throw new IllegalArgumentException("expected " + RANDOM_COUNT + " random values, got " + random.length);
+        this.random = random.clone();
+    }
+
+    /**
+     * Load the Polyglot Random64 table from a file listing it as hex literals, in order.
+     * @param file Random64 table source
+     * @return Polyglot key
+     * @throws IOException if the file cannot be read or does not hold the Polyglot table
+     */
+    public static PolyglotKey load(final Path file) throws IOException {
+        final long[] random = new long[RANDOM_COUNT];
+        int count = 0;
+        final Matcher matcher = HEX.matcher(Files.readString(file));
+        while (matcher.find()) {
+            if (count == RANDOM_COUNT) throw new IOException("more than " + RANDOM_COUNT + " random values: " + file);
+            random[count++] = Long.parseUnsignedLong(matcher.group(1), 16);
+        }
+        if (count != RANDOM_COUNT) throw new IOException("expected " + RANDOM_COUNT + " random values, got " + count + ": " + file);
+
+        final PolyglotKey key = new PolyglotKey(random);
+        if (key.key(Position.starting()) != STARTING_POSITION_KEY) throw new IOException("not the Polyglot Random64 table: " + file);
+        return key;
+    }
+
+
+    // ====================================================================================================
+    //                                  Hashing
+    // ====================================================================================================
+
+    /**
+     * Get the Polyglot key of a position. The en passant file is only hashed if a pawn of the side to
+     * move can take en passant, as the Polyglot format requires.
+     * @param pos position
+     * @return Polyglot key
+     */
+    public long key(final PositionState pos) {
+        final Board board = pos.board();
+        long key = 0L;
+
+        for (byte pt = PieceType.KING; pt <= PieceType.QUEEN; pt++) {
+            key ^= pieces(board.pieces(Colour.BLACK, pt), KIND[pt] * 64);
+            key ^= pieces(board.pieces(Colour.WHITE, pt), (KIND[pt] + 1) * 64);
+        }
+
+        final byte rights = pos.castlingRights();
+        if ((rights & Castling.W_KING_SIDE)  != 0) key ^= this.random[CASTLE_OFFSET];
+        if ((rights & Castling.W_QUEEN_SIDE) != 0) key ^= this.random[CASTLE_OFFSET + 1];
+        if ((rights & Castling.B_KING_SIDE)  != 0) key ^= this.random[CASTLE_OFFSET + 2];
+        if ((rights & Castling.B_QUEEN_SIDE) != 0) key ^= this.random[CASTLE_OFFSET + 3];
+
+        final byte ep = pos.enPassantTarget();
+        final boolean sideToMove = pos.sideToMove();
+        if (ep != Square.EMPTY && (Attack.pawn(Colour.flip(sideToMove), ep) & board.pieces(sideToMove, PieceType.PAWN)) != 0L) {
+            key ^= this.random[EP_OFFSET + (ep & 7)];
+        }
+
+        if (sideToMove == Colour.WHITE) key ^= this.random[TURN_OFFSET];
+        return key;
+    }
+
+    private long pieces(long bb, final int offset) {
+        long key = 0L;
+        while (bb != 0L) {
+            key ^= this.random[offset + Long.numberOfTrailingZeros(bb)];
+            bb &= bb - 1;
+        }
+        return key;
+    }
+}
@@ -5,6 +5,7 @@ import dev.pig.stockpig.chess.PieceType;
 import dev.pig.stockpig.chess.Position;
 import dev.pig.stockpig.chess.bitboard.Bitboard;
 import dev.pig.stockpig.chess.bitboard.Square;
+import dev.pig.stockpig.engine.tablebase.Tablebases;
 
 public final class PositionEvaluator {
 
@@ -53,4 +54,19 @@ public final class PositionEvaluator {
         }
         return materialScore;
     }
+
+    /**
+     * Score a tablebase position on the same scale as checkmates found by search: the mate is dtm plies
+     * beyond the position, so it scores as a checkmate at depth - dtm.
+     * @param pos position
+     * @param wdl tablebase win/draw/loss for the side to move
+     * @param dtm tablebase distance to mate (plies)
+     * @param depth remaining depth
+     * @return score
+     */
+    public static int tablebase(final Position pos, final int wdl, final int dtm, final int depth) {
+        if (wdl == Tablebases.DRAW) return DRAW;
+        final boolean whiteWins = (wdl == Tablebases.WIN) == (pos.sideToMove() == Colour.WHITE);
+        return whiteWins ? WHITE_WIN + depth - dtm : BLACK_WIN - depth + dtm;
+    }
 }
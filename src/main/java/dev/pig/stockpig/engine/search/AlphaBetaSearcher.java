@@ -1,97 +1,610 @@
 package dev.pig.stockpig.engine.search;
 
 import dev.pig.stockpig.chess.Colour;
+import dev.pig.stockpig.chess.MoveGenerator;
 import dev.pig.stockpig.chess.MoveList;
 import dev.pig.stockpig.chess.Position;
 import dev.pig.stockpig.engine.evaluation.PositionEvaluator;
+import dev.pig.stockpig.engine.tablebase.Tablebases;
 
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Alpha-beta searcher finds the best move for the side to move by searching the game
+ * tree to a fixed depth, pruning branches that cannot change the result.
+ * Visited nodes are counted per search so that searches can be compared and benchmarked.
+ * <p>
+ * Depths are searched in turn (iterative deepening), each depth searching the previous depth's principal
+ * variation first. The principal variation is built in a preallocated triangular table as the search
+ * unwinds: the row of each ply holds the best line from that ply, the move that raised alpha followed by
+ * the row of the next ply.
+ * <p>
+ * The searcher can run with pseudo-legal move generation, where each move is checked for
+ * legality only once it is about to be searched, so moves after a cutoff are never checked.
+ * <p>
+ * With tablebases, positions below the root that are in a table are scored exactly rather than searched.
+ * <p>
+ * With a transposition table, positions already searched to the same depth are not searched again, and the
+ * best move found for a position at any depth is searched first. Multi-PV search finds the best few root
+ * moves with their lines, the table being shared by every line so that each line after the first is cheap.
+ * <p>
+ * A search can be stopped, or given a time limit, from another thread while it runs. The stop and the
+ * time manager's hard limit are polled every {@link #POLL_NODES} nodes, and a stopped depth is discarded,
+ * so the result is that of the last depth completed. The first depth is always completed. After each depth,
+ * the time manager decides whether there is time for the next.
+ */
 public final class AlphaBetaSearcher {
 
-    public static int search(final Position pos) {
-        return pos.sideToMove() == Colour.WHITE ? searchMax(pos, 6) : searchMin(pos, 6);
+    public static final int DEFAULT_DEPTH = 6;
+    public static final int MAX_DEPTH = 64;
+    public static final int POLL_NODES = 1024;
+
+    private static final int NO_CUTOFF = -1;
+
+    private final MoveGenerator.Mode mode;
+    private Tablebases tablebases;
+    private TranspositionTable table;
+
+    private long nodes;
+    private int score;
+    private int depth;
+
+    // Limits, set from any thread
+    private volatile boolean stopped;
+    private volatile TimeManager time;
+    private boolean aborted;
+
+    // Triangular principal variation table, row ply starts at row(ply) and holds at most MAX_DEPTH-ply moves
+    private final int[] pvTable = new int[MAX_DEPTH * (MAX_DEPTH + 1) / 2];
+    private final int[] pvLength = new int[MAX_DEPTH + 1];
+    private final MoveList pv = new MoveList();
+    private int rootDepth;
+    private boolean following;
+
+
+    // ====================================================================================================
+    //                                  Constructors
+    // ====================================================================================================
+
+    public AlphaBetaSearcher() {
+        this(MoveGenerator.Mode.LEGAL);
+    }
+
+    public AlphaBetaSearcher(final MoveGenerator.Mode mode) {
+        this.mode = mode;
+    }
+
+
+    // ====================================================================================================
+    //                                  Accessors
+    // ====================================================================================================
+
+    /**
+     * Get the number of nodes visited by the last search.
+     * @return visited node count
+     */
+    public long nodes() {
+        return this.nodes;
+    }
+
+    /**
+     * Get the score of the best move found by the last search.
+     * @return best move score
+     */
+    public int score() {
+        return this.score;
+    }
+
+    /**
+     * Get the depth of the last depth completed by the last search.
+     * @return completed depth ply
+     */
+    public int depth() {
+        return this.depth;
+    }
+
+    /**
+     * Get the principal variation found by the last search, starting with the best move.
+     * @return principal variation
+     */
+    public MoveList pv() {
+        return this.pv.clone();
+    }
+
+
+    /**
+     * Set the tablebases to probe during search.
+     * @param tablebases tablebases, null to disable probing
+     */
+    public void setTablebases(final Tablebases tablebases) {
+        this.tablebases = tablebases;
+    }
+
+    /**
+     * Set the transposition table to use during search. Multi-PV search uses a table of its own for the one
+     * search if none is set.
+     * @param table transposition table, null to disable
+     */
+    public void setTranspositionTable(final TranspositionTable table) {
+        this.table = table;
     }
 
-    private static int searchMax(final Position pos, final int depth) {
+    /**
+     * Stop the running search, which returns the result of its last completed depth. Can be called from any thread.
+     */
+    public void stop() {
+        this.stopped = true;
+    }
+
+    /**
+     * Limit the running search to a time from now, after which it returns the result of its last completed
+     * depth. Can be called from any thread.
+     * @param millis time limit in milliseconds
+     */
+    public void setTimeLimit(final long millis) {
+        setTimeManager(TimeManager.fixed(millis));
+    }
+
+    /**
+     * Limit the running search by a time manager. Can be called from any thread.
+     * @param time time manager, started when created
+     */
+    public void setTimeManager(final TimeManager time) {
+        this.time = time;
+    }
+
+    /**
+     * Line is one principal variation of a multi-PV search.
+     * @param depth depth ply searched
+     * @param score score of the line's first move
+     * @param pv principal variation, starting with the line's root move
+     */
+    public record Line(int depth, int score, MoveList pv) {}
+
+
+    // ====================================================================================================
+    //                                  Search
+    // ====================================================================================================
+
+    /**
+     * Search the position to the default depth and return the best move.
+     * @param pos position
+     * @return best move, 0 if there are no legal moves
+     */
+    public int search(final Position pos) {
+        return search(pos, DEFAULT_DEPTH);
+    }
+
+    /**
+     * Search the position to a fixed depth, by iterative deepening, and return the best move.
+     * @param pos position
+     * @param depth depth ply, at most {@link #MAX_DEPTH}
+     * @return best move, 0 if there are no legal moves
+     */
+    public int search(final Position pos, final int depth) {
+        resetLimits();
+        return iterate(pos, depth);
+    }
+
+    /**
+     * Search the position for a time, by iterative deepening, and return the best move.
+     * @param pos position
+     * @param millis time limit in milliseconds
+     * @return best move, 0 if there are no legal moves
+     */
+    public int searchFor(final Position pos, final long millis) {
+        return search(pos, TimeManager.fixed(millis));
+    }
+
+    /**
+     * Search the position, by iterative deepening, for as long as the time manager allows and return the best move.
+     * @param pos position
+     * @param time time manager, started when created
+     * @return best move, 0 if there are no legal moves
+     */
+    public int search(final Position pos, final TimeManager time) {
+        resetLimits();
+        setTimeManager(time);
+        return iterate(pos, MAX_DEPTH);
+    }
+
+    /**
+     * Clear the stop and time limit, before a search starts, on the thread starting it.
+     */
+    void resetLimits() {
+        this.stopped = false;
+        this.time = null;
+    }
+
+    /**
+     * Search the position by iterative deepening, to a depth or until stopped, and return the best move.
+     * @param pos position
+     * @param depth depth ply, at most {@link #MAX_DEPTH}
+     * @return best move, 0 if there are no legal moves
+     */
+    int iterate(final Position pos, final int depth) {
+        if (depth > MAX_DEPTH) throw new IllegalArgumentException("Depth " + depth + " exceeds " + MAX_DEPTH);
+        this.nodes = 0L;
+        this.depth = 0;
+        this.aborted = false;
+        this.pv.clear();
+        final MoveGenerator.Mode previous = pos.mode();
+        if (previous != this.mode) pos.setMode(this.mode);
+        try {
+            if (pos.isGameOver() || depth < 1) {
+                this.score = PositionEvaluator.eval(pos, depth);
+                return 0;
+            }
+            final MoveList moves = rootMoves(pos);
+            final boolean white = pos.sideToMove() == Colour.WHITE;
+            for (int d = 1; d <= depth; d++) {
+                this.rootDepth = d;
+                this.following = !this.pv.isEmpty();
+                if (white) searchMax(pos, moves, d);
+                else       searchMin(pos, moves, d);
+                if (this.aborted) break;
+                principalVariation(0, this.pv);
+                this.depth = d;
+
+                final TimeManager time = this.time;
+                if (time != null && time.stopAfter(this.pv.get(0), white ? this.score : -this.score)) break;
+            }
+            pos.generateMoves();
+            return this.pv.get(0);
+        } finally {
+            if (previous != this.mode) pos.setMode(previous);
+        }
+    }
+
+    /**
+     * Get the legal root moves. Root moves are unmade without regenerating the move list, so
+     * legality has to be checked up front rather than before each move.
+     * @param pos position
+     * @return legal root moves
+     */
+    private static MoveList rootMoves(final Position pos) {
+        final MoveList moves = new MoveList();
+        for (int i = 0; i < pos.moves().size(); i++) {
+            if (pos.isLegal(pos.moves().get(i))) moves.add(pos.moves().get(i));
+        }
+        return moves;
+    }
+
+    /**
+     * Search the position for its best few moves, each with its score and principal variation. Every depth
+     * up to the given depth is searched in turn, each line being the best root move not already in an earlier
+     * line of the same depth, and the previous depth's lines being searched first, each following its own
+     * principal variation.
+     * @param pos position
+     * @param depth depth ply, at most {@link #MAX_DEPTH}
+     * @param lines maximum number of lines
+     * @return lines of the final depth, best first, empty if there are no legal moves
+     */
+    public List<Line> searchMultiPv(final Position pos, final int depth, final int lines) {
+        if (depth > MAX_DEPTH) throw new IllegalArgumentException("Depth " + depth + " exceeds " + MAX_DEPTH);
+        resetLimits();
+        this.nodes = 0L;
+        this.depth = 0;
+        this.aborted = false;
+        this.pv.clear();
+        final TranspositionTable set = this.table;
+        if (set == null) this.table = new TranspositionTable();
+        final MoveGenerator.Mode previous = pos.mode();
+        if (previous != this.mode) pos.setMode(this.mode);
+        try {
+            List<Line> result = new ArrayList<>();
+            if (pos.isGameOver() || lines < 1) return result;
+            final MoveList moves = rootMoves(pos);
+            final boolean white = pos.sideToMove() == Colour.WHITE;
+
+            for (int d = 1; d <= depth; d++) {
+                this.rootDepth = d;
+
+                // Previous lines first, in order
+                final List<Line> previousLines = result;
+                for (int k = 0; k < previousLines.size(); k++) {
+                    for (int i = k; i < moves.size(); i++) {
+                        if (moves.get(i) == previousLines.get(k).pv().get(0)) moves.swap(k, i);
+                    }
+                }
+
+                result = new ArrayList<>();
+                for (int k = 0; k < lines && k < moves.size(); k++) {
+                    int bestScore = white ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+                    int best = k;
+                    MoveList bestPv = null;
+                    for (int i = k; i < moves.size(); i++) {
+                        this.following = false;
+                        for (int j = 0; j < previousLines.size() && !this.following; j++) {
+                            if (previousLines.get(j).pv().get(0) == moves.get(i)) {
+                                previousLines.get(j).pv().cloneInto(this.pv);
+                                this.following = true;
+                            }
+                        }
+
+                        pos.makeMove(moves.get(i));
+                        final int score = white ? minimise(pos, d-1, bestScore, Integer.MAX_VALUE) : maximise(pos, d-1, Integer.MIN_VALUE, bestScore);
+                        pos.unmakeMove();
+                        if (this.aborted) {
+                            result = previousLines;
+                            break;
+                        }
+                        if (i == k || (white ? score > bestScore : score < bestScore)) {
+                            bestScore = score;
+                            best = i;
+                            this.pvTable[row(0)] = moves.get(i);
+                            System.arraycopy(this.pvTable, row(1), this.pvTable, row(0) + 1, this.pvLength[1]);
+                            this.pvLength[0] = this.pvLength[1] + 1;
+                            bestPv = new MoveList();
+                            principalVariation(0, bestPv);
+                        }
+                    }
+                    if (this.aborted) break;
+                    moves.swap(k, best);
+                    result.add(new Line(d, bestScore, bestPv));
+                }
+                if (this.aborted) break;
+                this.depth = d;
+            }
+            this.score = result.get(0).score();
+            result.get(0).pv().cloneInto(this.pv);
+            pos.generateMoves();
+            return result;
+        } finally {
+            this.table = set;
+            if (previous != this.mode) pos.setMode(previous);
+        }
+    }
+
+    private void searchMax(final Position pos, final MoveList moves, final int depth) {
         int alpha = Integer.MIN_VALUE;
-        int best = 0;
+        this.pvLength[0] = 0;
+        if (this.following) followPv(moves, 0);
 
-        final MoveList moves = pos.moves().clone();
         for (int i = 0; i < moves.size(); i ++) {
             final int move = moves.get(i);
 
             pos.makeMove(move);
             final int score = minimise(pos, depth-1, alpha, Integer.MAX_VALUE);
             pos.unmakeMove();
+            this.following = false;
+            if (this.aborted) return;
 
             if (score > alpha) {
                 alpha = score;
-                best = move;
+                updatePv(0, move);
             }
         }
-        return best;
+        this.score = alpha;
     }
 
-    private static int searchMin(final Position pos, final int depth) {
+    private void searchMin(final Position pos, final MoveList moves, final int depth) {
         int beta = Integer.MAX_VALUE;
-        int best = 0;
+        this.pvLength[0] = 0;
+        if (this.following) followPv(moves, 0);
 
-        final MoveList moves = pos.moves().clone();
         for (int i = 0; i < moves.size(); i ++) {
             final int move = moves.get(i);
 
             pos.makeMove(move);
             final int score = maximise(pos, depth-1, Integer.MIN_VALUE, beta);
             pos.unmakeMove();
+            this.following = false;
+            if (this.aborted) return;
 
             if (score < beta) {
                 beta = score;
-                best = move;
+                updatePv(0, move);
             }
         }
-        return best;
+        this.score = beta;
     }
 
-    private static int maximise(final Position pos, final int depth, int alpha, final int beta) {
-        if (depth == 0 || pos.isGameOver()) return PositionEvaluator.eval(pos, depth);
+    private int maximise(final Position pos, final int depth, int alpha, final int beta) {
+        this.nodes++;
+        if ((this.nodes & (POLL_NODES - 1)) == 0 && this.rootDepth > 1) poll();
+        if (this.aborted) return 0;
+        final int ply = this.rootDepth - depth;
+        this.pvLength[ply] = 0;
+        if (pos.isGameOver()) return PositionEvaluator.eval(pos, depth);
+        if (this.tablebases != null) {
+            final int probe = this.tablebases.probe(pos);
+            if (probe != Tablebases.UNKNOWN) return PositionEvaluator.tablebase(pos, Tablebases.wdl(probe), Tablebases.dtm(probe), depth);
+        }
+        if (depth == 0) return PositionEvaluator.eval(pos, depth);
 
         final MoveList moves = pos.moves().clone();
+        final int entry = probe(pos, moves, depth);
+        if (entry != NO_CUTOFF) {
+            final int score = this.table.score(entry);
+            final byte bound = this.table.bound(entry);
+            if (bound == TranspositionTable.EXACT) return exact(ply, entry, Math.max(alpha, Math.min(beta, score)));
+            if (bound == TranspositionTable.LOWER && score >= beta) return beta;
+            if (bound == TranspositionTable.UPPER && score <= alpha) return alpha;
+        }
+
+        if (this.following) followPv(moves, ply);
+
+        final int alphaOrig = alpha;
+        int best = 0;
         for (int i = 0; i < moves.size(); i ++) {
             final int move = moves.get(i);
+            if (!pos.isLegal(move)) continue;
 
             pos.makeMove(move);
             final int score = minimise(pos, depth-1, alpha, beta);
             pos.undo();
+            this.following = false;
+            if (this.aborted) return 0;
 
             if (score >= beta) {
+                store(pos, depth, beta, TranspositionTable.LOWER, move);
                 return beta;
             }
 
             if (score > alpha) {
                 alpha = score;
+                best = move;
+                updatePv(ply, move);
             }
         }
+        store(pos, depth, alpha, alpha > alphaOrig ? TranspositionTable.EXACT : TranspositionTable.UPPER, best);
         return alpha;
     }
 
-    private static int minimise(final Position pos, final int depth, final int alpha, int beta) {
-        if (depth == 0 || pos.isGameOver()) return PositionEvaluator.eval(pos, depth);
+    private int minimise(final Position pos, final int depth, final int alpha, int beta) {
+        this.nodes++;
+        if ((this.nodes & (POLL_NODES - 1)) == 0 && this.rootDepth > 1) poll();
+        if (this.aborted) return 0;
+        final int ply = this.rootDepth - depth;
+        this.pvLength[ply] = 0;
+        if (pos.isGameOver()) return PositionEvaluator.eval(pos, depth);
+        if (this.tablebases != null) {
+            final int probe = this.tablebases.probe(pos);
+            if (probe != Tablebases.UNKNOWN) return PositionEvaluator.tablebase(pos, Tablebases.wdl(probe), Tablebases.dtm(probe), depth);
+        }
+        if (depth == 0) return PositionEvaluator.eval(pos, depth);
 
         final MoveList moves = pos.moves().clone();
+        final int entry = probe(pos, moves, depth);
+        if (entry != NO_CUTOFF) {
+            final int score = this.table.score(entry);
+            final byte bound = this.table.bound(entry);
+            if (bound == TranspositionTable.EXACT) return exact(ply, entry, Math.max(alpha, Math.min(beta, score)));
+            if (bound == TranspositionTable.UPPER && score <= alpha) return alpha;
+            if (bound == TranspositionTable.LOWER && score >= beta) return beta;
+        }
+
+        if (this.following) followPv(moves, ply);
+
+        final int betaOrig = beta;
+        int best = 0;
         for (int i = 0; i < moves.size(); i ++) {
             final int move = moves.get(i);
+            if (!pos.isLegal(move)) continue;
 
             pos.makeMove(move);
             final int score = maximise(pos, depth-1, alpha, beta);
             pos.undo();
+            this.following = false;
+            if (this.aborted) return 0;
 
             if (score <= alpha) {
+                store(pos, depth, alpha, TranspositionTable.UPPER, move);
                 return alpha;
             }
 
             if (score < beta) {
                 beta = score;
+                best = move;
+                updatePv(ply, move);
             }
         }
+        store(pos, depth, beta, beta < betaOrig ? TranspositionTable.EXACT : TranspositionTable.LOWER, best);
         return beta;
     }
+
+    /**
+     * Probe the transposition table, if any, moving the table's best move to the front of the moves.
+     * @param pos position
+     * @param moves moves of the position, reordered
+     * @param depth depth ply
+     * @return table entry searched to the same depth, {@link #NO_CUTOFF} if none
+     */
+    private int probe(final Position pos, final MoveList moves, final int depth) {
+        if (this.table == null) return NO_CUTOFF;
+        final int entry = this.table.probe(pos.zhash());
+        if (entry < 0) return NO_CUTOFF;
+        final int hashMove = this.table.move(entry);
+        for (int i = 1; hashMove != 0 && i < moves.size(); i++) {
+            if (moves.get(i) == hashMove) {
+                moves.swap(0, i);
+                break;
+            }
+        }
+        return this.table.depth(entry) == depth ? entry : NO_CUTOFF;
+    }
+
+    /**
+     * Abort the search if it has been stopped or has reached its hard time limit.
+     */
+    private void poll() {
+        final TimeManager time = this.time;
+        this.aborted = this.stopped || time != null && time.hardLimitReached();
+    }
+
+    private void store(final Position pos, final int depth, final int score, final byte bound, final int move) {
+        if (this.table != null) this.table.store(pos.zhash(), depth, score, bound, move);
+    }
+
+    /**
+     * Cut off on an exact table score, the principal variation from the ply being the table's best move.
+     * @param ply ply
+     * @param entry table entry
+     * @param score score to return
+     * @return score
+     */
+    private int exact(final int ply, final int entry, final int score) {
+        final int move = this.table.move(entry);
+        if (move != 0) {
+            this.pvTable[row(ply)] = move;
+            this.pvLength[ply] = 1;
+        }
+        return score;
+    }
+
+
+    // ====================================================================================================
+    //                                  Principal Variation
+    // ====================================================================================================
+
+    /**
+     * Get the start of a ply's row in the triangular principal variation table.
+     * @param ply ply
+     * @return row start index
+     */
+    private static int row(final int ply) {
+        return ply * (2 * MAX_DEPTH - ply + 1) / 2;
+    }
+
+    /**
+     * Set the principal variation of a ply to a move followed by the principal variation of the next ply.
+     * @param ply ply
+     * @param move move that raised the bound
+     */
+    private void updatePv(final int ply, final int move) {
+        this.pvTable[row(ply)] = move;
+        System.arraycopy(this.pvTable, row(ply + 1), this.pvTable, row(ply) + 1, this.pvLength[ply + 1]);
+        this.pvLength[ply] = this.pvLength[ply + 1] + 1;
+    }
+
+    /**
+     * Copy the principal variation of a ply into a move list.
+     * @param ply ply
+     * @param moves move list, cleared first
+     */
+    private void principalVariation(final int ply, final MoveList moves) {
+        moves.clear();
+        for (int i = 0; i < this.pvLength[ply]; i++) moves.add(this.pvTable[row(ply) + i]);
+    }
+
+    /**
+     * Move the previous principal variation's move at a ply to the front, while the search is still on it.
+     * The variation is no longer followed once the ply is past its end or its move is not in the list.
+     * Other moves keep their order, so that legal and pseudo-legal searches visit the same nodes.
+     * @param moves moves of the position, reordered
+     * @param ply ply
+     */
+    private void followPv(final MoveList moves, final int ply) {
+        this.following = false;
+        if (ply >= this.pv.size()) return;
+        for (int i = 0; i < moves.size(); i++) {
+            if (moves.get(i) == this.pv.get(ply)) {
+                for (int j = i; j > 0; j--) moves.swap(j, j - 1);
+                this.following = true;
+                return;
+            }
+        }
+    }
 }
@@ -0,0 +1,339 @@
+package dev.pig.stockpig.engine.search;
+
+import dev.pig.stockpig.chess.MoveList;
+import dev.pig.stockpig.chess.Position;
+
+import java.util.Random;
+
+/**
+ * Mate solver proves forced mates for the side to move with depth-first proof-number search (df-pn).
+ * <p>
+ * Every node holds a proof number (how many leaves must still be shown to be mates to prove the node)
+ * and a disproof number (how many to disprove it). Nodes where the attacker is to move are proven by any
+ * one child, nodes where the defender is to move by every child. The search always expands the most-proving
+ * node, so it follows forcing lines deep and ignores quiet ones, rather than searching every line to the same
+ * depth as alpha-beta does. Proof and disproof numbers are kept in a fixed size transposition table.
+ * <p>
+ * The search is depth-limited: a node is keyed by its position and the plies left to mate in, so the
+ * search graph has no cycles and repetitions need no special handling. Searching for a mate in 1, 2, 3...
+ * moves in turn finds the shortest mate, the table is kept between depths. The solution line follows the
+ * fastest proven mate for the attacker and the longest proven defence for the defender.
+ */
+public final class MateSolver {
+
+    public static final int DEFAULT_TABLE_BITS = 21;
+    public static final int MAX_MOVES = 127;
+
+    private static final int INF = 1 << 28;
+
+    // Node keys per plies left and per attacker, combined with the position hash
+    private static final long[] REMAINING_HASH = new long[2 * MAX_MOVES];
+    private static final long BLACK_ATTACKER_HASH;
+    static {
+        final Random random = new Random(211);
+        for (int i = 0; i < REMAINING_HASH.length; i++) REMAINING_HASH[i] = random.nextLong();
+        BLACK_ATTACKER_HASH = random.nextLong();
+    }
+
+    private final Table table;
+    private final MoveList line = new MoveList();
+    private long maxNodes = Long.MAX_VALUE;
+    private boolean attacker;
+    private long nodes;
+
+
+    // ====================================================================================================
+    //                                  Constructors
+    // ====================================================================================================
+
+    public MateSolver() {
+        this(DEFAULT_TABLE_BITS);
+    }
+
+    /**
+     * Create a solver with a transposition table of 2^bits entries (22 bytes each).
+     * @param bits table size bits
+     */
+    public MateSolver(final int bits) {
+        this.table = new Table(bits);
+    }
+
+
+    // ====================================================================================================
+    //                                  Accessors
+    // ====================================================================================================
+
+    /**
+     * Get the number of nodes visited by the last solve.
+     * @return visited node count
+     */
+    public long nodes() {
+        return this.nodes;
+    }
+
+    /**
+     * Get the solution line of the last solve, attacker and defender moves ending in mate.
+     * @return solution line, empty if no mate was found
+     */
+    public MoveList line() {
+        return this.line;
+    }
+
+    /**
+     * Set the maximum number of nodes a solve may visit before giving up.
+     * @param maxNodes node limit
+     */
+    public void setMaxNodes(final long maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+
+    // ====================================================================================================
+    //                                  Solve
+    // ====================================================================================================
+
+    /**
+     * Find the shortest forced mate for the side to move.
+     * @param pos position, left unchanged
+     * @param maxMoves longest mate to search for, in moves of the side to move
+     * @return mate in N moves, 0 if there is no mate within the maximum moves or the node limit was reached
+     */
+    public int solve(final Position pos, final int maxMoves) {
+        if (maxMoves > MAX_MOVES) throw new IllegalArgumentException("at most " + MAX_MOVES + " moves");
+        this.nodes = 0L;
+        this.line.clear();
+        this.attacker = pos.sideToMove();
+
+        for (int n = 1; n <= maxMoves && this.nodes < this.maxNodes; n++) {
+            final int plies = 2 * n - 1;
+            mid(pos, plies, INF, INF);
+            pos.generateMoves();
+            final int slot = this.table.find(key(pos, plies));
+            if (slot >= 0 && this.table.pn[slot] == 0) {
+                extractLine(pos, plies);
+                return n;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Multiple iterative deepening: search a node until its proof number reaches the proof threshold or its
+     * disproof number reaches the disproof threshold, then store it.
+     * @param pos position
+     * @param remaining plies left for the attacker to mate in
+     * @param thPn proof number threshold
+     * @param thDn disproof number threshold
+     */
+    private void mid(final Position pos, final int remaining, final int thPn, final int thDn) {
+        final long key = key(pos, remaining);
+        final long start = this.nodes;
+        final boolean or = pos.sideToMove() == this.attacker;
+
+        // Terminal nodes are normally resolved by their parent, but may have been replaced in the table since
+        if (remaining == 0 || pos.moves().isEmpty()) {
+            if (!or && isMate(pos)) this.table.store(key, 0, INF, 0, 0);
+            else                    this.table.store(key, INF, 0, 0, 0);
+            return;
+        }
+
+        // Expand the children, resolving terminal ones, and estimate the rest by mobility: a defender
+        // with fewer replies is easier to mate, an attacker with fewer moves is easier to refute.
+        // Child numbers are kept here as well as in the table, so that a child replaced in the table by
+        // a sibling keeps its last numbers rather than falling back to its estimate
+        final MoveList moves = pos.moves().clone();
+        final long[] children = new long[moves.size()];
+        final int[] pns = new int[moves.size()];
+        final int[] dns = new int[moves.size()];
+        final int[] dists = new int[moves.size()];
+        for (int i = 0; i < moves.size(); i++) {
+            pos.makeMove(moves.get(i));
+            this.nodes++;
+            children[i] = key(pos, remaining - 1);
+            final int estimate = Math.max(1, pos.moves().size());
+            if (or && pos.moves().isEmpty() && isMate(pos)) {
+                // Checkmate proves
+                pns[i] = 0;
+                dns[i] = INF;
+                this.table.store(children[i], 0, INF, 0, 0);
+            } else if (remaining == 1 || pos.moves().isEmpty()) {
+                // Stalemate, an attacker mated or stalemated, and no plies left to mate in all disprove
+                pns[i] = INF;
+                dns[i] = 0;
+                this.table.store(children[i], INF, 0, 0, 0);
+            } else {
+                pns[i] = or ? estimate : 1;
+                dns[i] = or ? 1 : estimate;
+            }
+            pos.unmakeMove();
+        }
+
+        while (true) {
+            // Proof and disproof numbers from the children, with the best and second best child
+            int pn = or ? INF : 0;
+            int dn = or ? 0 : INF;
+            int best = -1;
+            int second = INF;
+            int dist = or ? Integer.MAX_VALUE : 0;
+            for (int i = 0; i < children.length; i++) {
+                final int slot = this.table.find(children[i]);
+                if (slot >= 0) {
+                    pns[i] = this.table.pn[slot];
+                    dns[i] = this.table.dn[slot];
+                    dists[i] = this.table.dist[slot];
+                }
+                final int value = or ? pns[i] : dns[i];
+                if (best < 0 || value < (or ? pn : dn)) {
+                    second = best < 0 ? INF : (or ? pn : dn);
+                    best = i;
+                } else if (value < second) {
+                    second = value;
+                }
+                if (or) {
+                    pn = Math.min(pn, pns[i]);
+                    dn = sum(dn, dns[i]);
+                    if (pns[i] == 0) dist = Math.min(dist, dists[i] + 1);
+                } else {
+                    pn = sum(pn, pns[i]);
+                    dn = Math.min(dn, dns[i]);
+                    dist = Math.max(dist, dists[i] + 1);
+                }
+            }
+
+            if (pn >= thPn || dn >= thDn || pn == 0 || dn == 0 || this.nodes >= this.maxNodes) {
+                this.table.store(key, pn, dn, pn == 0 ? dist : 0, this.nodes - start);
+                return;
+            }
+
+            final int childThPn = or ? Math.min(thPn, epsilon(second)) : sum(thPn - pn, pns[best]);
+            final int childThDn = or ? sum(thDn - dn, dns[best]) : Math.min(thDn, epsilon(second));
+
+            pos.makeMove(moves.get(best));
+            mid(pos, remaining - 1, childThPn, childThDn);
+            pos.unmakeMove();
+        }
+    }
+
+    /**
+     * Follow a proven node to mate: the attacker plays the fastest proven mate, the defender the longest.
+     * Nodes evicted from the table on the way are proven again.
+     * @param pos proven position
+     * @param remaining plies left
+     */
+    private void extractLine(final Position pos, int remaining) {
+        int made = 0;
+        while (!pos.moves().isEmpty() && remaining > 0) {
+            final boolean or = pos.sideToMove() == this.attacker;
+            final MoveList moves = pos.moves().clone();
+            int best = 0;
+            int bestDist = or ? Integer.MAX_VALUE : -1;
+            for (int i = 0; i < moves.size(); i++) {
+                pos.makeMove(moves.get(i));
+                int slot = this.table.find(key(pos, remaining - 1));
+                if (slot < 0 && (!or || remaining == 1 || pos.moves().isEmpty())) {
+                    mid(pos, remaining - 1, INF, INF);
+                    pos.generateMoves();
+                    slot = this.table.find(key(pos, remaining - 1));
+                }
+                final int dist = slot >= 0 && this.table.pn[slot] == 0 ? this.table.dist[slot] : -1;
+                pos.undo();
+                if (dist >= 0 && (or ? dist < bestDist : dist > bestDist)) {
+                    best = moves.get(i);
+                    bestDist = dist;
+                }
+            }
+            if (best == 0) {
+                // Every proven attacker move was evicted, prove this node again
+                mid(pos, remaining, INF, INF);
+                pos.generateMoves();
+                continue;
+            }
+            pos.makeMove(best);
+            this.line.add(best);
+            made++;
+            remaining--;
+        }
+        for (int i = 0; i < made; i++) pos.undo();
+    }
+
+    /**
+     * Get whether a position with no legal moves is checkmate, rather than a draw by the fifty move rule
+     * or a dead position (which also have no moves).
+     * @param pos position with no legal moves
+     * @return is checkmate
+     */
+    private static boolean isMate(final Position pos) {
+        return pos.isCheck() && pos.halfMoveClock() < 50 && !pos.isDeadPosition();
+    }
+
+    private long key(final Position pos, final int remaining) {
+        return pos.zhash() ^ REMAINING_HASH[remaining] ^ (this.attacker ? 0L : BLACK_ATTACKER_HASH);
+    }
+
+    /**
+     * Get the threshold for the best child from the second best child's number. Letting the best child
+     * run a quarter past the second best (the 1+epsilon trick) saves switching between close siblings.
+     * @param second second best child's proof or disproof number
+     * @return child threshold
+     */
+    private static int epsilon(final int second) {
+        return sum(second, (second >> 2) + 1);
+    }
+
+    private static int sum(final int a, final int b) {
+        return (int) Math.min(INF, (long) a + b);
+    }
+
+
+    // ====================================================================================================
+    //                                  Transposition Table
+    // ====================================================================================================
+
+    /**
+     * Table is a fixed size transposition table of proof numbers, disproof numbers, and the distance to
+     * mate of proven nodes. Entries are kept in buckets of two, the entry that took less work to search is
+     * replaced first.
+     */
+    private static final class Table {
+
+        private final long[] keys;
+        private final int[] pn;
+        private final int[] dn;
+        private final short[] dist;
+        private final int[] work;
+        private final int mask;
+
+        private Table(final int bits) {
+            final int size = 1 << bits;
+            this.keys = new long[size];
+            this.pn   = new int[size];
+            this.dn   = new int[size];
+            this.dist = new short[size];
+            this.work = new int[size];
+            this.mask = size - 2;
+        }
+
+        private int find(final long key) {
+            final int i = bucket(key);
+            if (this.keys[i] == key && this.work[i] != 0) return i;
+            if (this.keys[i + 1] == key && this.work[i + 1] != 0) return i + 1;
+            return -1;
+        }
+
+        private void store(final long key, final int pn, final int dn, final int dist, final long work) {
+            final int i = bucket(key);
+            final int slot = this.keys[i] == key ? i
+                    : this.keys[i + 1] == key ? i + 1
+                    : this.work[i] <= this.work[i + 1] ? i : i + 1;
+            this.keys[slot] = key;
+            this.pn[slot]   = pn;
+            this.dn[slot]   = dn;
+            this.dist[slot] = (short) dist;
+            this.work[slot] = (int) Math.min(Integer.MAX_VALUE, work + 1);
+        }
+
+        private int bucket(final long key) {
+            return (int) (key >>> 32) & this.mask;
+        }
+    }
+}
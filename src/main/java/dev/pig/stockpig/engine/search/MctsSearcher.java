@@ -0,0 +1,568 @@
+package dev.pig.stockpig.engine.search;
+
+import dev.pig.stockpig.chess.Colour;
+import dev.pig.stockpig.chess.Move;
+import dev.pig.stockpig.chess.MoveGenerator;
+import dev.pig.stockpig.chess.MoveList;
+import dev.pig.stockpig.chess.PieceType;
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.engine.evaluation.PositionEvaluator;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monte Carlo tree search (MCTS) searcher finds the best move for the side to move by repeatedly playing
+ * out from the root: select a path down the tree, expand the leaf, value it (by random rollout or by the
+ * static evaluation) and back the value up the path. The most visited root move is played.
+ * <p>
+ * Selection is UCT (upper confidence bound on the mean value) or PUCT (the bound weighted by a move prior,
+ * here from captures, promotions and checks). Values are expected scores in [0, 1], the evaluation is
+ * mapped onto them with a logistic curve.
+ * <p>
+ * Nodes are stored in primitive arrays rather than objects ({@value #BYTES_PER_NODE} bytes each), the
+ * children of a node in one contiguous block. Playouts run in parallel, each thread with its own copy of the
+ * position: visits and values are updated atomically, and a virtual loss is added along a path on the way
+ * down so that other threads spread over different lines, then removed on the way back up.
+ * <p>
+ * The tree is limited to a node budget, the search stops once it is full. Between searches, the subtree
+ * of the new position (up to two plies below the last root) is kept and compacted in place, so a game reuses
+ * the playouts of its previous moves without a second tree.
+ */
+public final class MctsSearcher {
+
+    public static final int DEFAULT_MAX_NODES = 1 << 20;
+    public static final long DEFAULT_PLAYOUTS = 200_000L;
+
+    // Move, first child, child count, visits, value sum and prior per node (plus a compaction bit and
+    // a 4 byte count per 64 nodes)
+    public static final int BYTES_PER_NODE = 4 + 4 + 2 + 4 + 8 + 4;
+
+    private static final int UNEXPANDED = -1;
+    private static final int EXPANDING  = -2;
+
+    private static final int VIRTUAL_LOSS = 3;
+    private static final double VALUE_SCALE = 1 << 16; // Fixed point value sums
+    private static final double UCT_C = 1.4;
+    private static final double PUCT_C = 2.0;
+    private static final double EVAL_SCALE = 2000.0;   // Evaluation per logistic unit, a pawn is 1000
+    private static final double PRIOR_SCALE = 2000.0;  // Move heuristic per softmax unit
+    private static final int ROLLOUT_PLIES = 40;
+    private static final int MAX_PATH = 1024;
+    private static final long SEED = 31L;
+
+    private static final VarHandle INTS  = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * Selection policy.
+     */
+    public enum Selection {
+        UCT,
+        PUCT
+    }
+
+    /**
+     * Leaf valuation.
+     */
+    public enum Leaf {
+        EVAL,
+        ROLLOUT
+    }
+
+    private final int threads;
+    private final Selection selection;
+    private final Leaf leaf;
+    private final Tree tree;
+
+    private Position root;
+    private volatile boolean full;
+    private long playouts;
+    private int reused;
+
+
+    // ====================================================================================================
+    //                                  Constructors
+    // ====================================================================================================
+
+    public MctsSearcher() {
+        this(DEFAULT_MAX_NODES, 1, Selection.PUCT, Leaf.EVAL);
+    }
+
+    /**
+     * Create an MCTS searcher.
+     * @param maxNodes node budget
+     * @param threads playout thread count
+     * @param selection selection policy
+     * @param leaf leaf valuation
+     */
+    public MctsSearcher(final int maxNodes, final int threads, final Selection selection, final Leaf leaf) {
+        this.threads = threads;
+        this.selection = selection;
+        this.leaf = leaf;
+        this.tree = new Tree(maxNodes);
+    }
+
+
+    // ====================================================================================================
+    //                                  Accessors
+    // ====================================================================================================
+
+    /**
+     * Get the number of nodes in the tree after the last search.
+     * @return tree node count
+     */
+    public int nodes() {
+        return this.tree.size();
+    }
+
+    /**
+     * Get the number of playouts run by the last search.
+     * @return playout count
+     */
+    public long playouts() {
+        return this.playouts;
+    }
+
+    /**
+     * Get the number of nodes kept from the previous search's tree by the last search.
+     * @return reused node count
+     */
+    public int reused() {
+        return this.reused;
+    }
+
+    /**
+     * Get the number of visits of the root, including those of reused playouts.
+     * @return root visit count
+     */
+    public int rootVisits() {
+        return this.tree.visits[0];
+    }
+
+    /**
+     * Get the expected score of the best move found by the last search, for the side to move.
+     * @return expected score in [0, 1], 0.5 if there are no legal moves
+     */
+    public double value() {
+        final int best = bestChild();
+        return best < 0 ? 0.5 : this.tree.mean(best);
+    }
+
+    /**
+     * Drop the tree, so that the next search starts from scratch.
+     */
+    public void clear() {
+        this.root = null;
+        this.tree.size.set(0);
+    }
+
+
+    // ====================================================================================================
+    //                                  Search
+    // ====================================================================================================
+
+    /**
+     * Search the position with the default number of playouts and return the best move.
+     * @param pos position
+     * @return best move, 0 if there are no legal moves
+     */
+    public int search(final Position pos) {
+        return search(pos, DEFAULT_PLAYOUTS);
+    }
+
+    /**
+     * Search the position and return the most visited move. The search ends after the number of playouts,
+     * or earlier once the tree is full.
+     * @param pos position, left unchanged
+     * @param playouts number of playouts
+     * @return best move, 0 if there are no legal moves
+     */
+    public int search(final Position pos, final long playouts) {
+        reuse(pos);
+        this.full = false;
+        final AtomicLong remaining = new AtomicLong(playouts);
+
+        if (this.threads == 1) {
+            new Worker(pos, 0).run(remaining);
+        } else {
+            final ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+            final List<Future<?>> futures = new ArrayList<>(this.threads);
+            try {
+                for (int t = 0; t < this.threads; t++) {
+                    final Worker worker = new Worker(pos, t);
+                    futures.add(pool.submit(() -> worker.run(remaining)));
+                }
+                for (final Future<?> future : futures) future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.full = true;
+            } catch (final ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        }
+        this.playouts = playouts - Math.max(0L, remaining.get());
+
+        final int best = bestChild();
+        return best < 0 ? 0 : this.tree.move[best];
+    }
+
+    /**
+     * Get the most visited child of the root.
+     * @return child node, -1 if the root has no children
+     */
+    private int bestChild() {
+        final Tree t = this.tree;
+        if (t.size() == 0 || t.first[0] < 0) return -1;
+        int best = -1;
+        for (int c = t.first[0]; c < t.first[0] + t.count[0]; c++) {
+            if (best < 0 || t.visits[c] > t.visits[best]) best = c;
+        }
+        return best;
+    }
+
+
+    // ====================================================================================================
+    //                                  Tree Reuse
+    // ====================================================================================================
+
+    /**
+     * Make the position the root of the tree: keep it if it is the last root, keep and compact its subtree
+     * if it is a child or grandchild of the last root, otherwise start a new tree.
+     * @param pos new root position
+     */
+    private void reuse(final Position pos) {
+        final int node = this.root == null || this.tree.size() == 0 ? -1 : find(pos);
+        if (node < 0) {
+            this.tree.size.set(1);
+            this.tree.init(0, 0, 1f);
+            this.reused = 0;
+        } else if (node > 0) {
+            this.tree.compact(node);
+            this.reused = this.tree.size();
+        } else {
+            this.reused = this.tree.size();
+        }
+        this.root = pos.copy();
+    }
+
+    /**
+     * Find the node of a position up to two plies below the root.
+     * @param pos position
+     * @return node, -1 if not found
+     */
+    private int find(final Position pos) {
+        if (this.root.zhash() == pos.zhash()) return 0;
+        final Tree t = this.tree;
+        for (int c = t.first[0]; c >= 0 && c < t.first[0] + t.count[0]; c++) {
+            this.root.makeMove(t.move[c]);
+            int found = this.root.zhash() == pos.zhash() ? c : -1;
+            for (int g = t.first[c]; found < 0 && g >= 0 && g < t.first[c] + t.count[c]; g++) {
+                this.root.makeMove(t.move[g]);
+                if (this.root.zhash() == pos.zhash()) found = g;
+                this.root.unmakeMove();
+            }
+            this.root.undo();
+            if (found >= 0) return found;
+        }
+        return -1;
+    }
+
+
+    // ====================================================================================================
+    //                                  Playouts
+    // ====================================================================================================
+
+    /**
+     * Worker runs playouts on its own copy of the root position.
+     */
+    private final class Worker {
+
+        private final Position pos;
+        private final Random random;
+        private final int[] path = new int[MAX_PATH];
+
+        private Worker(final Position root, final int index) {
+            this.pos = root.copy();
+            if (this.pos.mode() != MoveGenerator.Mode.LEGAL) this.pos.setMode(MoveGenerator.Mode.LEGAL);
+            this.random = new Random(SEED + index);
+        }
+
+        private void run(final AtomicLong remaining) {
+            while (!MctsSearcher.this.full && remaining.getAndDecrement() > 0) playout();
+        }
+
+        /**
+         * Play out once from the root: select down to a leaf adding virtual loss, expand and value it,
+         * then back the value up replacing the virtual loss.
+         */
+        private void playout() {
+            final Tree t = MctsSearcher.this.tree;
+            int length = 0;
+            int node = 0;
+            this.path[length++] = node;
+            INTS.getAndAdd(t.visits, node, VIRTUAL_LOSS);
+
+            while (length < MAX_PATH) {
+                final int first = (int) INTS.getAcquire(t.first, node);
+                if (first == UNEXPANDED) {
+                    if (INTS.compareAndSet(t.first, node, UNEXPANDED, EXPANDING)) expand(t, node);
+                    break;
+                }
+                if (first == EXPANDING || t.count[node] == 0) break;
+
+                node = select(t, node, first);
+                this.pos.makeMove(t.move[node]);
+                this.path[length++] = node;
+                INTS.getAndAdd(t.visits, node, VIRTUAL_LOSS);
+            }
+
+            // Value for white, then for the side that moved into each node up the path
+            final double white = value();
+            boolean mover = Colour.flip(this.pos.sideToMove());
+            for (int i = length - 1; i >= 0; i--) {
+                final double v = mover == Colour.WHITE ? white : 1.0 - white;
+                LONGS.getAndAdd(t.value, this.path[i], Math.round(v * VALUE_SCALE));
+                INTS.getAndAdd(t.visits, this.path[i], 1 - VIRTUAL_LOSS);
+                mover = Colour.flip(mover);
+            }
+
+            for (int i = 1; i < length; i++) this.pos.unmakeMove();
+            if (length > 1) this.pos.generateMoves();
+        }
+
+        /**
+         * Select the child with the highest UCT or PUCT score, counting virtual losses as visits with no value.
+         * @param t tree
+         * @param node expanded node
+         * @param first first child
+         * @return child node
+         */
+        private int select(final Tree t, final int node, final int first) {
+            final int parentVisits = Math.max(1, t.visits[node]);
+            final double explore = MctsSearcher.this.selection == Selection.UCT
+                    ? UCT_C * Math.sqrt(Math.log(parentVisits))
+                    : PUCT_C * Math.sqrt(parentVisits);
+            final double fpu = 1.0 - t.mean(node);
+
+            int best = first;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int c = first; c < first + t.count[node]; c++) {
+                final int visits = t.visits[c];
+                final double score;
+                if (MctsSearcher.this.selection == Selection.UCT) {
+                    if (visits == 0) return c;
+                    score = t.mean(c) + explore / Math.sqrt(visits);
+                } else {
+                    score = (visits == 0 ? fpu : t.mean(c)) + explore * t.prior[c] / (1 + visits);
+                }
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = c;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Expand a node claimed by this thread: allocate and publish its children, with priors. A node with
+         * no moves is published with no children. If the tree is full the node is left unexpanded.
+         * @param t tree
+         * @param node node to expand
+         */
+        private void expand(final Tree t, final int node) {
+            final MoveList moves = this.pos.moves();
+            final int start = t.allocate(moves.size());
+            if (start < 0) {
+                MctsSearcher.this.full = true;
+                INTS.setRelease(t.first, node, UNEXPANDED);
+                return;
+            }
+
+            double sum = 0.0;
+            for (int i = 0; i < moves.size(); i++) {
+                final double weight = Math.exp(heuristic(moves.get(i)) / PRIOR_SCALE);
+                t.init(start + i, moves.get(i), (float) weight);
+                sum += weight;
+            }
+            for (int i = 0; i < moves.size(); i++) t.prior[start + i] /= (float) sum;
+
+            t.count[node] = (short) moves.size();
+            INTS.setRelease(t.first, node, start);
+        }
+
+        /**
+         * Score a move for its prior: material won, promotions and checks.
+         * @param move move from the current move list
+         * @return heuristic score, on the evaluation scale
+         */
+        private double heuristic(final int move) {
+            double score = 0.0;
+            if (Move.isCapture(move)) score += material(Move.capture(move)) - material(Move.mover(move)) / 10.0;
+            if (Move.isPromotion(move)) score += material(Move.promote(move));
+            if (this.pos.givesCheck(move)) score += 500.0;
+            return score;
+        }
+
+        /**
+         * Value the leaf position for white, by the evaluation of the position or of the end of a random rollout.
+         * @return expected score for white in [0, 1]
+         */
+        private double value() {
+            int plies = 0;
+            if (MctsSearcher.this.leaf == Leaf.ROLLOUT) {
+                while (plies < ROLLOUT_PLIES && !this.pos.moves().isEmpty()) {
+                    this.pos.makeMove(this.pos.moves().get(this.random.nextInt(this.pos.moves().size())));
+                    plies++;
+                }
+            }
+            final int eval = PositionEvaluator.eval(this.pos, 0);
+            for (int i = 0; i < plies; i++) this.pos.unmakeMove();
+            if (plies > 0) this.pos.generateMoves();
+            return 1.0 / (1.0 + Math.exp(-eval / EVAL_SCALE));
+        }
+    }
+
+    private static int material(final byte pt) {
+        return switch (pt) {
+            case PieceType.QUEEN  -> 9000;
+            case PieceType.ROOK   -> 5000;
+            case PieceType.BISHOP,
+                 PieceType.KNIGHT -> 3000;
+            case PieceType.PAWN   -> 1000;
+            default               -> 0;
+        };
+    }
+
+
+    // ====================================================================================================
+    //                                  Tree
+    // ====================================================================================================
+
+    /**
+     * Tree stores nodes in primitive arrays, node 0 is the root. The children of a node are a contiguous
+     * block starting at its first child, which is also its expansion state: unexpanded, being expanded by
+     * a thread, or expanded (possibly with no children).
+     */
+    private static final class Tree {
+
+        private final int capacity;
+        private final int[] move;
+        private final int[] first;
+        private final short[] count;
+        private final int[] visits;
+        private final long[] value;
+        private final float[] prior;
+        private final AtomicInteger size = new AtomicInteger();
+
+        // Compaction scratch, a subtree membership bit per node and the members before each 64 nodes
+        private final long[] members;
+        private final int[] ranks;
+
+        private Tree(final int capacity) {
+            this.capacity = capacity;
+            this.move   = new int[capacity];
+            this.first  = new int[capacity];
+            this.count  = new short[capacity];
+            this.visits = new int[capacity];
+            this.value  = new long[capacity];
+            this.prior  = new float[capacity];
+            this.members = new long[(capacity + 63) >>> 6];
+            this.ranks   = new int[(capacity + 63) >>> 6];
+        }
+
+        private int size() {
+            return Math.min(this.size.get(), this.capacity);
+        }
+
+        /**
+         * Allocate a block of nodes.
+         * @param n node count
+         * @return first node, -1 if the tree is full
+         */
+        private int allocate(final int n) {
+            final int start = this.size.getAndAdd(n);
+            return start + n <= this.capacity ? start : -1;
+        }
+
+        private void init(final int node, final int move, final float prior) {
+            this.move[node]   = move;
+            this.first[node]  = UNEXPANDED;
+            this.count[node]  = 0;
+            this.visits[node] = 0;
+            this.value[node]  = 0L;
+            this.prior[node]  = prior;
+        }
+
+        /**
+         * Get the mean value of a node, for the side that moved into it.
+         * @param node node
+         * @return mean value, 0.5 if unvisited
+         */
+        private double mean(final int node) {
+            final int visits = this.visits[node];
+            return visits <= 0 ? 0.5 : (long) LONGS.getOpaque(this.value, node) / (VALUE_SCALE * visits);
+        }
+
+        /**
+         * Compact the subtree of a node in place, making it the root. A node's descendants all come after
+         * it and its children are one block, so moving each subtree node down to its rank among the subtree
+         * nodes, in index order, keeps children contiguous and never overwrites a node not yet moved.
+         * @param node subtree root
+         */
+        private void compact(final int node) {
+            final int size = size();
+            final int words = (size + 63) >>> 6;
+            Arrays.fill(this.members, 0, words, 0L);
+
+            // Mark the subtree, parents come before their children
+            this.members[node >>> 6] |= 1L << node;
+            for (int i = node; i < size; i++) {
+                if (!isMember(i) || this.first[i] < 0) continue;
+                for (int c = this.first[i]; c < this.first[i] + this.count[i]; c++) this.members[c >>> 6] |= 1L << c;
+            }
+            int members = 0;
+            for (int w = 0; w < words; w++) {
+                this.ranks[w] = members;
+                members += Long.bitCount(this.members[w]);
+            }
+
+            for (int i = node; i < size; i++) {
+                if (!isMember(i)) continue;
+                final int to = rank(i);
+                this.move[to]   = this.move[i];
+                this.first[to]  = this.first[i] < 0 ? UNEXPANDED : this.count[i] == 0 ? 0 : rank(this.first[i]);
+                this.count[to]  = this.count[i];
+                this.visits[to] = this.visits[i];
+                this.value[to]  = this.value[i];
+                this.prior[to]  = this.prior[i];
+            }
+            this.size.set(members);
+        }
+
+        private boolean isMember(final int node) {
+            return (this.members[node >>> 6] & (1L << node)) != 0L;
+        }
+
+        /**
+         * Get the index of a subtree node once compacted, the number of subtree nodes before it.
+         * @param node marked node
+         * @return compacted index
+         */
+        private int rank(final int node) {
+            return this.ranks[node >>> 6] + Long.bitCount(this.members[node >>> 6] & ((1L << node) - 1));
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package dev.pig.stockpig.engine.search;
+
+import dev.pig.stockpig.chess.Colour;
+import dev.pig.stockpig.chess.MoveGenerator;
+import dev.pig.stockpig.chess.MoveList;
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.engine.evaluation.PositionEvaluator;
+
+/**
+ * MTD(f) searcher finds the best move for the side to move by converging on the minimax value with a
+ * series of null-window alpha-beta searches: each search only answers whether the value is above or below
+ * a guess, and moves the bounds of the value until they meet. The searches are cheap because a null window
+ * cuts off as early as possible, and they repeat one another, so bounds are kept in a transposition table.
+ * <p>
+ * Depths are searched in turn (iterative deepening), each depth's value being the first guess for the
+ * next and each position's best move at the previous depth being searched first. Table bounds are used only
+ * at the depth they were searched to, so the value found is exactly the value of a fixed depth alpha-beta
+ * search, which makes the two comparable node for node.
+ */
+public final class MtdfSearcher {
+
+    public static final int DEFAULT_DEPTH = 6;
+
+    private final MoveGenerator.Mode mode;
+    private final TranspositionTable table;
+
+    private long nodes;
+    private int passes;
+    private int score;
+    private int rootMove;
+
+
+    // ====================================================================================================
+    //                                  Constructors
+    // ====================================================================================================
+
+    public MtdfSearcher() {
+        this(MoveGenerator.Mode.LEGAL, new TranspositionTable());
+    }
+
+    public MtdfSearcher(final MoveGenerator.Mode mode, final TranspositionTable table) {
+        this.mode = mode;
+        this.table = table;
+    }
+
+
+    // ====================================================================================================
+    //                                  Accessors
+    // ====================================================================================================
+
+    /**
+     * Get the number of nodes visited by the last search, over every depth and pass.
+     * @return visited node count
+     */
+    public long nodes() {
+        return this.nodes;
+    }
+
+    /**
+     * Get the number of null-window searches run by the last search, over every depth.
+     * @return null-window search count
+     */
+    public int passes() {
+        return this.passes;
+    }
+
+    /**
+     * Get the score of the best move found by the last search.
+     * @return best move score
+     */
+    public int score() {
+        return this.score;
+    }
+
+
+    // ====================================================================================================
+    //                                  Search
+    // ====================================================================================================
+
+    /**
+     * Search the position to the default depth and return the best move.
+     * @param pos position
+     * @return best move, 0 if there are no legal moves
+     */
+    public int search(final Position pos) {
+        return search(pos, DEFAULT_DEPTH);
+    }
+
+    /**
+     * Search the position to a fixed depth, by iterative deepening, and return the best move.
+     * @param pos position
+     * @param depth depth ply
+     * @return best move, 0 if there are no legal moves
+     */
+    public int search(final Position pos, final int depth) {
+        this.nodes = 0L;
+        this.passes = 0;
+        this.table.clear();
+        final MoveGenerator.Mode previous = pos.mode();
+        if (previous != this.mode) pos.setMode(this.mode);
+        try {
+            if (pos.isGameOver()) {
+                this.score = PositionEvaluator.eval(pos, depth);
+                return 0;
+            }
+            int guess = PositionEvaluator.eval(pos, 0);
+            int best = 0;
+            for (int d = 1; d <= depth; d++) {
+                guess = mtdf(pos, guess, d);
+                best = this.rootMove;
+            }
+            this.score = guess;
+            return best;
+        } finally {
+            if (previous != this.mode) pos.setMode(previous);
+        }
+    }
+
+    /**
+     * Converge on the value of the position at a depth with null-window searches around a guess. The best
+     * root move is the one that set the bound the value converged to: the last lower bound for white,
+     * the last upper bound for black.
+     * @param pos position
+     * @param guess first guess of the value
+     * @param depth depth ply
+     * @return value
+     */
+    private int mtdf(final Position pos, final int guess, final int depth) {
+        final boolean white = pos.sideToMove() == Colour.WHITE;
+        int value = guess;
+        int lower = Integer.MIN_VALUE;
+        int upper = Integer.MAX_VALUE;
+        while (lower < upper) {
+            final int beta = value == lower ? value + 1 : value;
+            value = white ? maximise(pos, depth, beta - 1, beta) : minimise(pos, depth, beta - 1, beta);
+            this.passes++;
+
+            final int entry = this.table.probe(pos.zhash());
+            if (value < beta) {
+                upper = value;
+                if (!white && entry >= 0) this.rootMove = this.table.move(entry);
+            } else {
+                lower = value;
+                if (white && entry >= 0) this.rootMove = this.table.move(entry);
+            }
+        }
+        return value;
+    }
+
+    private int maximise(final Position pos, final int depth, final int alpha, final int beta) {
+        this.nodes++;
+        if (pos.isGameOver()) return PositionEvaluator.eval(pos, depth);
+        if (depth == 0) return PositionEvaluator.eval(pos, depth);
+
+        final long key = pos.zhash();
+        final int entry = this.table.probe(key);
+        if (entry >= 0 && this.table.depth(entry) == depth) {
+            final int score = this.table.score(entry);
+            final byte bound = this.table.bound(entry);
+            if (bound == TranspositionTable.EXACT
+                    || bound == TranspositionTable.LOWER && score >= beta
+                    || bound == TranspositionTable.UPPER && score <= alpha) return score;
+        }
+
+        final MoveList moves = ordered(pos, entry);
+        int best = Integer.MIN_VALUE;
+        int bestMove = 0;
+        int a = alpha;
+        for (int i = 0; i < moves.size(); i++) {
+            final int move = moves.get(i);
+            if (!pos.isLegal(move)) continue;
+
+            pos.makeMove(move);
+            final int score = minimise(pos, depth-1, a, beta);
+            pos.undo();
+
+            if (score > best) {
+                best = score;
+                bestMove = move;
+            }
+            if (score > a) a = score;
+            if (score >= beta) break;
+        }
+
+        this.table.store(key, depth, best, best >= beta ? TranspositionTable.LOWER : best <= alpha ? TranspositionTable.UPPER : TranspositionTable.EXACT, bestMove);
+        return best;
+    }
+
+    private int minimise(final Position pos, final int depth, final int alpha, final int beta) {
+        this.nodes++;
+        if (pos.isGameOver()) return PositionEvaluator.eval(pos, depth);
+        if (depth == 0) return PositionEvaluator.eval(pos, depth);
+
+        final long key = pos.zhash();
+        final int entry = this.table.probe(key);
+        if (entry >= 0 && this.table.depth(entry) == depth) {
+            final int score = this.table.score(entry);
+            final byte bound = this.table.bound(entry);
+            if (bound == TranspositionTable.EXACT
+                    || bound == TranspositionTable.LOWER && score >= beta
+                    || bound == TranspositionTable.UPPER && score <= alpha) return score;
+        }
+
+        final MoveList moves = ordered(pos, entry);
+        int best = Integer.MAX_VALUE;
+        int bestMove = 0;
+        int b = beta;
+        for (int i = 0; i < moves.size(); i++) {
+            final int move = moves.get(i);
+            if (!pos.isLegal(move)) continue;
+
+            pos.makeMove(move);
+            final int score = maximise(pos, depth-1, alpha, b);
+            pos.undo();
+
+            if (score < best) {
+                best = score;
+                bestMove = move;
+            }
+            if (score < b) b = score;
+            if (score <= alpha) break;
+        }
+
+        this.table.store(key, depth, best, best <= alpha ? TranspositionTable.UPPER : best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT, bestMove);
+        return best;
+    }
+
+    /**
+     * Get a copy of the move list with the table's best move, from any depth, moved to the front.
+     * @param pos position
+     * @param entry table entry of the position, -1 if none
+     * @return ordered moves
+     */
+    private MoveList ordered(final Position pos, final int entry) {
+        final MoveList moves = pos.moves().clone();
+        final int hashMove = entry >= 0 ? this.table.move(entry) : 0;
+        if (hashMove == 0) return moves;
+        for (int i = 1; i < moves.size(); i++) {
+            if (moves.get(i) == hashMove) {
+                moves.swap(0, i);
+                break;
+            }
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,142 @@
+package dev.pig.stockpig.engine.search;
+
+import dev.pig.stockpig.chess.Position;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Ponderer searches during the opponent's time: after a best move is played, the position after the
+ * expected reply (the second move of the principal variation) is searched in the background, without a limit.
+ * <p>
+ * If the opponent plays the expected reply, the search carries on as a timed search from that point
+ * (ponderhit), keeping the depths already completed, rather than starting again. Otherwise it is stopped,
+ * which takes at most {@link AlphaBetaSearcher#POLL_NODES} nodes. Either way the searcher's transposition
+ * table, if any, keeps what was learnt for the next search.
+ * <p>
+ * The searcher must not be used by anyone else while pondering.
+ */
+public final class Ponderer {
+
+    private final AlphaBetaSearcher searcher;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, "stockpig-ponder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Future<Integer> search;
+    private long key;
+    private int reply;
+
+
+    // ====================================================================================================
+    //                                  Constructors
+    // ====================================================================================================
+
+    public Ponderer(final AlphaBetaSearcher searcher) {
+        this.searcher = searcher;
+    }
+
+
+    // ====================================================================================================
+    //                                  Accessors
+    // ====================================================================================================
+
+    /**
+     * Get whether a search is pondering.
+     * @return whether pondering
+     */
+    public boolean isPondering() {
+        return this.search != null;
+    }
+
+    /**
+     * Get whether a search is pondering the position, that is whether the expected reply was played.
+     * @param pos position
+     * @return whether pondering the position
+     */
+    public boolean isPondering(final Position pos) {
+        return this.search != null && pos.zhash() == this.key;
+    }
+
+    /**
+     * Get the expected reply being pondered.
+     * @return expected reply, 0 if not pondering
+     */
+    public int reply() {
+        return this.search != null ? this.reply : 0;
+    }
+
+
+    // ====================================================================================================
+    //                                  Pondering
+    // ====================================================================================================
+
+    /**
+     * Start pondering the position after an expected reply, stopping any previous pondering.
+     * @param pos position, after the best move, left unchanged
+     * @param reply expected reply
+     * @return whether pondering started, not if the reply is not valid or ends the game
+     */
+    public boolean ponder(final Position pos, final int reply) {
+        miss();
+        if (reply == 0 || !pos.isValid(reply)) return false;
+        final Position expected = pos.copy();
+        expected.makeMove(reply);
+        if (expected.isGameOver()) return false;
+
+        // Limits are reset here rather than on the ponder thread, so that a stop is never lost
+        this.searcher.resetLimits();
+        this.key = expected.zhash();
+        this.reply = reply;
+        this.search = this.executor.submit(() -> this.searcher.iterate(expected, AlphaBetaSearcher.MAX_DEPTH));
+        return true;
+    }
+
+    /**
+     * The expected reply was played: turn the pondering search into a timed search and wait for its best move.
+     * @param millis time limit from now in milliseconds
+     * @return best move, 0 if not pondering
+     */
+    public int ponderhit(final long millis) {
+        return ponderhit(TimeManager.fixed(millis));
+    }
+
+    /**
+     * The expected reply was played: turn the pondering search into a search limited by a time manager, and
+     * wait for its best move. The time manager sees only the depths completed from now.
+     * @param time time manager, started when created
+     * @return best move, 0 if not pondering
+     */
+    public int ponderhit(final TimeManager time) {
+        if (this.search == null) return 0;
+        this.searcher.setTimeManager(time);
+        return await();
+    }
+
+    /**
+     * The expected reply was not played: stop the pondering search and wait for it to return.
+     */
+    public void miss() {
+        if (this.search == null) return;
+        this.searcher.stop();
+        await();
+    }
+
+    private int await() {
+        try {
+            return this.search.get();
+        } catch (final InterruptedException e) {
+            this.searcher.stop();
+            Thread.currentThread().interrupt();
+            return 0;
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            this.search = null;
+        }
+    }
+}
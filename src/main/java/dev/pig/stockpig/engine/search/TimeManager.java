@@ -0,0 +1,139 @@
+package dev.pig.stockpig.engine.search;
+
+/**
+ * Time manager decides how long a search may run, from the clock: the remaining time, the increment and
+ * the moves to go until the next time control.
+ * <p>
+ * The soft limit is the time planned for the move, checked after each depth of iterative deepening. It is
+ * scaled for how settled the search is: shortened once the best move has been the same for several depths,
+ * lengthened when the best move changes or the score drops. A depth takes longer than all the depths before
+ * it, so the next depth is not started once part of the scaled soft limit has gone. The hard limit is a
+ * multiple of the soft limit that the search never runs past, checked while searching every
+ * {@link AlphaBetaSearcher#POLL_NODES} nodes.
+ * <p>
+ * Time is measured on the monotonic clock from when the manager is created.
+ */
+public final class TimeManager {
+
+    public static final int DEFAULT_MOVES_TO_GO = 30;
+    public static final long MOVE_OVERHEAD_MS = 20L;
+    public static final int HARD_RATIO = 4;
+
+    public static final int STABLE_DEPTHS = 4;
+    public static final double STABLE_SCALE = 0.5;
+    public static final double FLIP_SCALE = 1.5;
+    public static final int SCORE_DROP = 250;
+    public static final double DROP_SCALE = 1.5;
+    public static final double NEXT_DEPTH_FRACTION = 0.5;
+
+    private final long start = System.nanoTime();
+    private final long soft;
+    private final long hard;
+    private final boolean adaptive;
+
+    private int previousMove;
+    private int previousScore;
+    private int stable;
+
+
+    // ====================================================================================================
+    //                                  Constructors
+    // ====================================================================================================
+
+    /**
+     * Create a time manager for a move from the clock.
+     * @param remaining remaining time in milliseconds
+     * @param increment increment per move in milliseconds
+     * @param movesToGo moves until the next time control, 0 if none (sudden death)
+     */
+    public TimeManager(final long remaining, final long increment, final int movesToGo) {
+        final long available = Math.max(1L, remaining - MOVE_OVERHEAD_MS);
+        final long soft = Math.min(available, available / (movesToGo > 0 ? movesToGo : DEFAULT_MOVES_TO_GO) + increment * 3 / 4);
+        this.soft = soft * 1000000L;
+        this.hard = Math.min(available, soft * HARD_RATIO) * 1000000L;
+        this.adaptive = true;
+    }
+
+    private TimeManager(final long millis) {
+        this.soft = millis * 1000000L;
+        this.hard = this.soft;
+        this.adaptive = false;
+    }
+
+    /**
+     * Create a time manager for a fixed time per move, which is always used in full.
+     * @param millis time in milliseconds
+     * @return time manager
+     */
+    public static TimeManager fixed(final long millis) {
+        return new TimeManager(millis);
+    }
+
+
+    // ====================================================================================================
+    //                                  Accessors
+    // ====================================================================================================
+
+    /**
+     * Get the time planned for the move, before scaling.
+     * @return soft limit in milliseconds
+     */
+    public long softLimit() {
+        return this.soft / 1000000L;
+    }
+
+    /**
+     * Get the time the move must not exceed.
+     * @return hard limit in milliseconds
+     */
+    public long hardLimit() {
+        return this.hard / 1000000L;
+    }
+
+    /**
+     * Get the time since the manager was created.
+     * @return elapsed time in nanoseconds
+     */
+    public long elapsed() {
+        return System.nanoTime() - this.start;
+    }
+
+
+    // ====================================================================================================
+    //                                  Limits
+    // ====================================================================================================
+
+    /**
+     * Get whether the hard limit has been reached, polled during search.
+     * @return whether to abort the search
+     */
+    public boolean hardLimitReached() {
+        return elapsed() >= this.hard;
+    }
+
+    /**
+     * Record a completed depth and get whether the search should stop rather than start the next depth.
+     * @param move best move of the depth
+     * @param score score of the depth, for the side to move
+     * @return whether to stop
+     */
+    public boolean stopAfter(final int move, final int score) {
+        return stopAfter(move, score, elapsed());
+    }
+
+    boolean stopAfter(final int move, final int score, final long elapsed) {
+        if (!this.adaptive) return elapsed >= this.hard;
+
+        final boolean first = this.previousMove == 0;
+        final boolean flipped = !first && move != this.previousMove;
+        final boolean dropped = !first && score <= this.previousScore - SCORE_DROP;
+        this.stable = first || flipped ? 0 : this.stable + 1;
+        this.previousMove = move;
+        this.previousScore = score;
+
+        double scale = this.stable >= STABLE_DEPTHS ? STABLE_SCALE : 1.0;
+        if (flipped) scale *= FLIP_SCALE;
+        if (dropped) scale *= DROP_SCALE;
+        return elapsed >= Math.min(this.hard, (long) (this.soft * scale * NEXT_DEPTH_FRACTION));
+    }
+}
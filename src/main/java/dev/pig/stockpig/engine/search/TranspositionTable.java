@@ -0,0 +1,138 @@
+package dev.pig.stockpig.engine.search;
+
+import java.util.Arrays;
+
+/**
+ * Transposition table is a fixed size hash table of search results keyed by Zobrist hash. Each entry
+ * holds the depth searched, the score and whether it is exact or only a lower or upper bound (after a
+ * cutoff), and the best move found, which is worth searching first whatever the depth.
+ * <p>
+ * Entries are indexed by the upper bits of the key and the whole key is kept to detect collisions.
+ * A new entry always replaces the old one: the most recent results are the most useful to the next search.
+ */
+public final class TranspositionTable {
+
+    public static final int DEFAULT_BITS = 20;
+
+    public static final byte EXACT = 1;
+    public static final byte LOWER = 2;
+    public static final byte UPPER = 3;
+
+    private final long[] keys;
+    private final int[] scores;
+    private final int[] moves;
+    private final byte[] depths;
+    private final byte[] bounds;
+    private final int shift;
+
+
+    // ====================================================================================================
+    //                                  Constructors
+    // ====================================================================================================
+
+    public TranspositionTable() {
+        this(DEFAULT_BITS);
+    }
+
+    /**
+     * Create a table of 2^bits entries (18 bytes each).
+     * @param bits table size bits
+     */
+    public TranspositionTable(final int bits) {
+        final int size = 1 << bits;
+        this.keys   = new long[size];
+        this.scores = new int[size];
+        this.moves  = new int[size];
+        this.depths = new byte[size];
+        this.bounds = new byte[size];
+        this.shift  = 64 - bits;
+    }
+
+
+    // ====================================================================================================
+    //                                  Accessors
+    // ====================================================================================================
+
+    /**
+     * Get the number of entries.
+     * @return table capacity
+     */
+    public int capacity() {
+        return this.keys.length;
+    }
+
+    /**
+     * Remove every entry.
+     */
+    public void clear() {
+        Arrays.fill(this.bounds, (byte) 0);
+    }
+
+
+    // ====================================================================================================
+    //                                  Probe / Store
+    // ====================================================================================================
+
+    /**
+     * Find the entry of a position.
+     * @param key Zobrist hash
+     * @return entry index, -1 if there is no entry for the key
+     */
+    public int probe(final long key) {
+        final int i = (int) (key >>> this.shift);
+        return this.keys[i] == key && this.bounds[i] != 0 ? i : -1;
+    }
+
+    /**
+     * Get the score of an entry.
+     * @param entry entry index
+     * @return score
+     */
+    public int score(final int entry) {
+        return this.scores[entry];
+    }
+
+    /**
+     * Get the depth an entry was searched to.
+     * @param entry entry index
+     * @return depth ply
+     */
+    public int depth(final int entry) {
+        return this.depths[entry];
+    }
+
+    /**
+     * Get the bound type of an entry's score.
+     * @param entry entry index
+     * @return {@link #EXACT}, {@link #LOWER} or {@link #UPPER}
+     */
+    public byte bound(final int entry) {
+        return this.bounds[entry];
+    }
+
+    /**
+     * Get the best move of an entry.
+     * @param entry entry index
+     * @return best move, 0 if none was found
+     */
+    public int move(final int entry) {
+        return this.moves[entry];
+    }
+
+    /**
+     * Store a search result.
+     * @param key Zobrist hash
+     * @param depth depth ply
+     * @param score score
+     * @param bound bound type of the score
+     * @param move best move, 0 if none
+     */
+    public void store(final long key, final int depth, final int score, final byte bound, final int move) {
+        final int i = (int) (key >>> this.shift);
+        this.keys[i]   = key;
+        this.scores[i] = score;
+        this.moves[i]  = move;
+        this.depths[i] = (byte) depth;
+        this.bounds[i] = bound;
+    }
+}
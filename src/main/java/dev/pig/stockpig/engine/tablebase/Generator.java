@@ -0,0 +1,476 @@
+package dev.pig.stockpig.engine.tablebase;
+
+import dev.pig.stockpig.chess.Castling;
+import dev.pig.stockpig.chess.Colour;
+import dev.pig.stockpig.chess.Move;
+import dev.pig.stockpig.chess.MoveGenerator;
+import dev.pig.stockpig.chess.MoveList;
+import dev.pig.stockpig.chess.PieceType;
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.bitboard.Attack;
+import dev.pig.stockpig.chess.bitboard.Bitboard;
+import dev.pig.stockpig.chess.bitboard.Square;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generator builds endgame tablebases by retrograde analysis.
+ * <p>
+ * Every index of a table is first decoded and analysed with the {@link MoveGenerator}: checkmates are
+ * losses in 0, stalemates are draws, and moves that change material (captures and promotions) are resolved
+ * by probing the already generated smaller tables. All remaining moves stay within the table.
+ * <p>
+ * Positions are then resolved one ply at a time. The predecessors of every position resolved at ply n are
+ * found by un-moving the side that just moved: a predecessor of a loss is a win in n+1, a predecessor of a win
+ * has one fewer move left that does not lose, and becomes a loss once none are left. Positions never resolved
+ * are draws.
+ * <p>
+ * A double pawn push that an opponent pawn can take en passant leads to a position outside the table, as tables
+ * hold no en passant target. Such a child is expanded one ply when it is initialised: the en passant captures
+ * are probed in the smaller tables, and every other reply is a move of the same position without the target,
+ * which is in the table. The child is resolved during the retrograde pass once either side is known, and is
+ * skipped when un-moving double pushes.
+ * <p>
+ * Tables are generated fewest pieces first then fewest pawns first, so that every capture and promotion leads
+ * into a table that already exists. Existing tables are kept, so generation can be resumed.
+ * <p>
+ * Usage: Generator dir [--max-pieces N] [--material KQvKR]
+ */
+public final class Generator {
+
+    private static final int DEFAULT_MAX_PIECES = 4;
+    private static final byte UNDECIDED = -1;
+
+    private final Material material;
+    private final Tablebases subtables;
+    private final int count;
+
+    // Per position state, value is a table WDL value or undecided
+    private final byte[] value;
+    private final byte[] dtm;
+    private final byte[] remaining;   // moves not yet known to lose
+    private final byte[] maxChild;    // longest loss through the moves known to lose, plies
+    private final byte[] exitWin;     // shortest win through a capture or promotion, plies (0 if none)
+
+    // Double pushes that can be taken en passant, not yet resolved
+    private final List<EnPassantChild> enPassant = new ArrayList<>();
+
+    /**
+     * A double push that the opponent can take en passant, seen from the opponent who replies.
+     * @param parent position index before the double push
+     * @param child position index after the double push, without the en passant target
+     * @param win shortest win through an en passant capture, plies (0 if none)
+     * @param loss longest loss if every en passant capture loses, plies (0 if there are none, -1 if one does not lose)
+     * @param others whether there are replies other than en passant captures
+     */
+    private record EnPassantChild(int parent, int child, int win, int loss, boolean others) {}
+
+    // Scratch
+    private final Position pos = Position.empty();
+    private final MoveList moves = new MoveList();
+    private final MoveList replies = new MoveList();
+    private final byte[] squares;
+    private final byte[] scratch;
+
+
+    // ====================================================================================================
+    //                                  Constructors and Builders
+    // ====================================================================================================
+
+    private Generator(final Material material, final Tablebases subtables) {
+        this.material   = material;
+        this.subtables  = subtables;
+        this.count      = Table.positions(material);
+        this.value      = new byte[this.count];
+        this.dtm        = new byte[this.count];
+        this.remaining  = new byte[this.count];
+        this.maxChild   = new byte[this.count];
+        this.exitWin    = new byte[this.count];
+        this.squares    = new byte[material.pieceCount()];
+        this.scratch    = new byte[material.pieceCount()];
+    }
+
+    /**
+     * Generate tablebases from the command line.
+     * @param args args
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: Generator dir [--max-pieces N] [--material KQvKR]");
+            System.exit(1);
+        }
+
+        final Path dir = Path.of(args[0]);
+        int maxPieces = DEFAULT_MAX_PIECES;
+        String material = null;
+        for (int i = 1; i < args.length; i++) {
+            if ("--max-pieces".equals(args[i])) maxPieces = Integer.parseInt(args[++i]);
+            else if ("--material".equals(args[i])) material = args[++i];
+        }
+
+        Files.createDirectories(dir);
+        if (material != null) generate(dir, Material.parse(material));
+        else generate(dir, maxPieces);
+    }
+
+    /**
+     * Generate every table up to a number of pieces that is not already in the directory.
+     * @param dir tablebase directory
+     * @param maxPieces maximum number of pieces, including kings
+     * @throws IOException if a table cannot be read or written
+     */
+    public static void generate(final Path dir, final int maxPieces) throws IOException {
+        if (maxPieces > 4) throw new IllegalArgumentException("at most 4 pieces are supported");
+        for (final Material material : Material.all(maxPieces)) {
+            if (!Files.exists(dir.resolve(material.name() + Table.DTM_SUFFIX))) generate(dir, material);
+        }
+    }
+
+    /**
+     * Generate a single table, every table it captures or promotes into must already be in the directory.
+     * @param dir tablebase directory
+     * @param material material configuration
+     * @throws IOException if a table cannot be read or written
+     */
+    public static void generate(final Path dir, final Material material) throws IOException {
+        final long start = System.nanoTime();
+        final Generator generator = new Generator(material, Tablebases.open(dir));
+        final int plies = generator.run();
+        Table.write(dir, material, generator.wdl(), generator.dtm);
+
+        int wins = 0, draws = 0, losses = 0;
+        for (final byte v : generator.value) {
+            if      (v == Table.WIN)  wins++;
+            else if (v == Table.LOSS) losses++;
+            else if (v == Table.DRAW) draws++;
+        }
+        System.out.printf("TABLEBASE %-6s positions=%-9d wins=%-9d draws=%-9d losses=%-9d max-dtm=%-3d elapsed=%5dms%n",
+                material, wins + draws + losses, wins, draws, losses, plies, (System.nanoTime() - start) / 1000000);
+    }
+
+
+    // ====================================================================================================
+    //                                  Generation
+    // ====================================================================================================
+
+    /**
+     * Resolve every position of the table.
+     * @return the longest distance to mate (plies)
+     */
+    private int run() {
+        int pending = 0;
+        for (int i = 0; i < this.count; i++) pending = Math.max(pending, initialise(i));
+
+        int longest = 0;
+        for (int n = 0; ; n++) {
+            boolean decided = false;
+            for (int i = 0; i < this.count; i++) {
+                final byte v = this.value[i];
+                if (v == UNDECIDED) {
+                    if (this.exitWin[i] != 0 && (this.exitWin[i] & 0xFF) == n) {
+                        this.value[i] = Table.WIN;
+                    } else if (this.remaining[i] == 0 && this.exitWin[i] == 0 && (this.maxChild[i] & 0xFF) == n) {
+                        this.value[i] = Table.LOSS;
+                    } else {
+                        continue;
+                    }
+                    this.dtm[i] = (byte) n;
+                } else if ((v != Table.WIN && v != Table.LOSS) || (this.dtm[i] & 0xFF) != n) {
+                    continue;
+                }
+                decided = true;
+                propagate(i, n);
+            }
+            if (decided) longest = n;
+            if (!resolveEnPassant(n) && !decided && n >= pending) break;
+        }
+
+        for (int i = 0; i < this.count; i++) {
+            if (this.value[i] == UNDECIDED) this.value[i] = Table.DRAW;
+        }
+        return longest;
+    }
+
+    /**
+     * Analyse a position index with the move generator.
+     * @param index position index
+     * @return the ply at which the position may be resolved through captures and promotions, 0 if none
+     */
+    private int initialise(final int index) {
+        final boolean sideToMove = Table.decode(this.material, index, this.squares);
+        if (!isLegal(index, sideToMove)) {
+            this.value[index] = Table.ILLEGAL;
+            return 0;
+        }
+        this.value[index] = UNDECIDED;
+
+        this.pos.board().clear();
+        for (int i = 0; i < this.squares.length; i++) this.pos.board().addPiece(colourOf(i), pieceOf(i), this.squares[i]);
+        if (MoveGenerator.isAttacked(this.pos, sideToMove, kingOf(Colour.flip(sideToMove)), this.pos.board().occupied())) {
+            this.value[index] = Table.ILLEGAL;
+            return 0;
+        }
+        this.pos.reset(sideToMove, Castling.NONE, Square.EMPTY, 0, 1);
+
+        // Checkmate and stalemate (including dead positions, which have no moves)
+        if (this.pos.moves().isEmpty()) {
+            this.value[index] = (byte) (this.pos.isCheck() ? Table.LOSS : Table.DRAW);
+            return 0;
+        }
+
+        int remaining = 0;
+        int maxChild = 0;
+        int exitWin = 0;
+        int pending = 0;
+        final long theirPawns = this.pos.board().pieces(Colour.flip(sideToMove), PieceType.PAWN);
+        this.pos.moves().cloneInto(this.moves);
+        for (int i = 0; i < this.moves.size(); i++) {
+            final int move = this.moves.get(i);
+            if (Move.isDoublePush(move) && isTakeable(sideToMove, Move.to(move), theirPawns)) {
+                remaining++;
+                pending = Math.max(pending, expand(index, move));
+                continue;
+            }
+            if (!Move.isCapture(move) && !Move.isPromotion(move)) {
+                remaining++;
+                continue;
+            }
+
+            this.pos.makeMove(move);
+            final int probe = this.subtables.probe(this.pos);
+            if (probe == Tablebases.UNKNOWN) throw new IllegalStateException("missing table for " + this.pos.toFen());
+            this.pos.unmakeMove();
+            final int wdl = Tablebases.wdl(probe);
+            final int dtm = Tablebases.dtm(probe);
+
+            if (wdl == Tablebases.WIN) {
+                maxChild = Math.max(maxChild, dtm + 1);
+            } else {
+                remaining++;
+                if (wdl == Tablebases.LOSS && (exitWin == 0 || dtm + 1 < exitWin)) exitWin = dtm + 1;
+            }
+        }
+
+        this.remaining[index] = (byte) remaining;
+        this.maxChild[index] = (byte) maxChild;
+        this.exitWin[index] = (byte) exitWin;
+        return Math.max(pending, Math.max(maxChild, exitWin));
+    }
+
+    /**
+     * Expand a double push that the opponent can take en passant, probing the en passant captures.
+     * @param index position index before the double push
+     * @param move double push
+     * @return the ply at which the child may be resolved through en passant captures, 0 if none
+     */
+    private int expand(final int index, final int move) {
+        int win = 0;
+        int loss = 0;
+        boolean others = false;
+        this.pos.makeMove(move);
+        this.pos.moves().cloneInto(this.replies);
+        for (int i = 0; i < this.replies.size(); i++) {
+            final int reply = this.replies.get(i);
+            if (!Move.isEnPassant(reply)) {
+                others = true;
+                continue;
+            }
+
+            this.pos.makeMove(reply);
+            final int probe = this.subtables.probe(this.pos);
+            if (probe == Tablebases.UNKNOWN) throw new IllegalStateException("missing table for " + this.pos.toFen());
+            this.pos.unmakeMove();
+            final int wdl = Tablebases.wdl(probe);
+            final int dtm = Tablebases.dtm(probe);
+
+            // Values are for the side that pushed, which is to move again after the capture
+            if (wdl == Tablebases.LOSS) {
+                if (win == 0 || dtm + 1 < win) win = dtm + 1;
+            } else if (wdl == Tablebases.DRAW) {
+                loss = -1;
+            } else if (loss >= 0) {
+                loss = Math.max(loss, dtm + 1);
+            }
+        }
+        this.pos.unmakeMove();
+
+        System.arraycopy(this.squares, 0, this.scratch, 0, this.squares.length);
+        for (int i = 0; i < this.scratch.length; i++) {
+            if (this.scratch[i] == Move.from(move)) this.scratch[i] = Move.to(move);
+        }
+        final int child = Table.encode(this.material, this.scratch, Colour.flip(this.pos.sideToMove()));
+        this.enPassant.add(new EnPassantChild(index, child, win, loss, others));
+        return Math.max(win, loss);
+    }
+
+    /**
+     * Resolve the double pushes that can be taken en passant whose child is known at ply n, a child is won by the
+     * opponent through the first winning reply and lost once every reply loses. Replies other than en passant
+     * captures have the value of the child without the en passant target.
+     * @param n distance to mate
+     * @return whether any double push was resolved
+     */
+    private boolean resolveEnPassant(final int n) {
+        boolean resolved = false;
+        for (int k = this.enPassant.size() - 1; k >= 0; k--) {
+            final EnPassantChild e = this.enPassant.get(k);
+
+            // Without other replies or captures the child is checkmate or stalemate either way
+            final boolean table = e.others() || e.loss() == 0;
+            final byte v = this.value[e.child()];
+            final int d = this.dtm[e.child()] & 0xFF;
+            final boolean win = (e.win() != 0 && e.win() == n) || (table && v == Table.WIN && d == n);
+            final boolean loss = !win && e.win() == 0 && e.loss() >= 0 && (!table || v == Table.LOSS)
+                    && Math.max(e.loss(), table ? d : 0) == n;
+            if (!win && !loss) continue;
+
+            final int prev = e.parent();
+            if (this.value[prev] == UNDECIDED) {
+                if (loss) {
+                    this.value[prev] = Table.WIN;
+                    this.dtm[prev] = (byte) (n + 1);
+                } else {
+                    this.remaining[prev]--;
+                    if ((this.maxChild[prev] & 0xFF) < n + 1) this.maxChild[prev] = (byte) (n + 1);
+                }
+            }
+            this.enPassant.set(k, this.enPassant.get(this.enPassant.size() - 1));
+            this.enPassant.remove(this.enPassant.size() - 1);
+            resolved = true;
+        }
+        return resolved;
+    }
+
+    /**
+     * Resolve the predecessors of a position resolved at ply n, by un-moving the side that just moved.
+     * @param index position index
+     * @param n distance to mate of the position
+     */
+    private void propagate(final int index, final int n) {
+        if (n + 1 > 255) throw new IllegalStateException("distance to mate out of range");
+        final boolean us = Colour.flip(Table.decode(this.material, index, this.squares));
+        final boolean loss = this.value[index] == Table.LOSS;
+
+        long occupied = 0L;
+        long theirPawns = 0L;
+        for (int i = 0; i < this.squares.length; i++) {
+            occupied |= Bitboard.ofSquare(this.squares[i]);
+            if (colourOf(i) != us && pieceOf(i) == PieceType.PAWN) theirPawns |= Bitboard.ofSquare(this.squares[i]);
+        }
+
+        for (int i = 0; i < this.squares.length; i++) {
+            if (colourOf(i) != us) continue;
+
+            long origins = origins(us, pieceOf(i), this.squares[i], occupied);
+            // A double push that can be taken en passant did not lead here, see resolveEnPassant
+            if (pieceOf(i) == PieceType.PAWN && isTakeable(us, this.squares[i], theirPawns)) {
+                origins &= ~Bitboard.ofSquare((byte) (this.squares[i] + (us == Colour.WHITE ? -16 : 16)));
+            }
+            while (origins != 0L) {
+                System.arraycopy(this.squares, 0, this.scratch, 0, this.squares.length);
+                this.scratch[i] = (byte) Long.numberOfTrailingZeros(origins);
+                origins &= origins - 1;
+
+                final int prev = Table.encode(this.material, this.scratch, us);
+                if (this.value[prev] != UNDECIDED) continue;
+                if (loss) {
+                    this.value[prev] = Table.WIN;
+                    this.dtm[prev] = (byte) (n + 1);
+                } else {
+                    this.remaining[prev]--;
+                    if ((this.maxChild[prev] & 0xFF) < n + 1) this.maxChild[prev] = (byte) (n + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the squares a piece could have moved from without capturing or promoting.
+     * @param c colour of the piece
+     * @param pt piece type
+     * @param sq square the piece is on
+     * @param occupied occupied bitboard
+     * @return origin squares bitboard
+     */
+    private static long origins(final boolean c, final byte pt, final byte sq, final long occupied) {
+        final long unoccupied = ~occupied;
+        return switch (pt) {
+            case PieceType.KING   -> Attack.king(sq) & unoccupied;
+            case PieceType.KNIGHT -> Attack.knight(sq) & unoccupied;
+            case PieceType.BISHOP -> Attack.bishop(sq, occupied) & unoccupied;
+            case PieceType.ROOK   -> Attack.rook(sq, occupied) & unoccupied;
+            case PieceType.QUEEN  -> Attack.queen(sq, occupied) & unoccupied;
+            case PieceType.PAWN   -> {
+                final int back = c == Colour.WHITE ? -8 : 8;
+                final int rank = c == Colour.WHITE ? sq >>> 3 : 7 - (sq >>> 3);
+                final long single = rank >= 2 ? Bitboard.ofSquare((byte) (sq + back)) & unoccupied : 0L;
+                final long twice = rank == 3 && single != 0L ? Bitboard.ofSquare((byte) (sq + 2*back)) & unoccupied : 0L;
+                yield single | twice;
+            }
+            default -> 0L;
+        };
+    }
+
+    /**
+     * Get whether a double push to a square leaves an en passant target that an opponent pawn attacks.
+     * @param c colour of the pawn
+     * @param to square the pawn pushed to
+     * @param theirPawns opponent pawns bitboard
+     * @return is takeable
+     */
+    private static boolean isTakeable(final boolean c, final byte to, final long theirPawns) {
+        final int rank = c == Colour.WHITE ? to >>> 3 : 7 - (to >>> 3);
+        if (rank != 3) return false;
+        final byte target = (byte) (to + (c == Colour.WHITE ? -8 : 8));
+        return (Attack.pawn(c, target) & theirPawns) != 0L;
+    }
+
+    /**
+     * Get whether a position index is a legal, canonical position, ignoring checks.
+     * @param index position index
+     * @param sideToMove side to move
+     * @return is legal
+     */
+    private boolean isLegal(final int index, final boolean sideToMove) {
+        long occupied = 0L;
+        for (int i = 0; i < this.squares.length; i++) {
+            final long bb = Bitboard.ofSquare(this.squares[i]);
+            if ((occupied & bb) != 0L) return false;
+            occupied |= bb;
+            if (pieceOf(i) == PieceType.PAWN && ((this.squares[i] >>> 3) == 0 || (this.squares[i] >>> 3) == 7)) return false;
+        }
+        System.arraycopy(this.squares, 0, this.scratch, 0, this.squares.length);
+        return Table.encode(this.material, this.scratch, sideToMove) == index;
+    }
+
+    /**
+     * Get the WDL values to write, undecided positions have already been resolved as draws.
+     * @return WDL value per position
+     */
+    private byte[] wdl() {
+        return this.value;
+    }
+
+
+    // ====================================================================================================
+    //                                  Material Order
+    // ====================================================================================================
+
+    private boolean colourOf(final int i) {
+        return i == 0 || (i >= 2 && i < 2 + this.material.white().length) ? Colour.WHITE : Colour.BLACK;
+    }
+
+    private byte pieceOf(final int i) {
+        if (i < 2) return PieceType.KING;
+        final int w = this.material.white().length;
+        return i < 2 + w ? this.material.white()[i - 2] : this.material.black()[i - 2 - w];
+    }
+
+    private byte kingOf(final boolean c) {
+        return this.squares[c == Colour.WHITE ? 0 : 1];
+    }
+}
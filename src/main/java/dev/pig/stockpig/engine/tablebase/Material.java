@@ -0,0 +1,171 @@
+package dev.pig.stockpig.engine.tablebase;
+
+import dev.pig.stockpig.chess.Board;
+import dev.pig.stockpig.chess.Colour;
+import dev.pig.stockpig.chess.PieceType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Material is a tablebase material configuration, the pieces of each side besides the kings.
+ * Configurations are named by their pieces in descending value, e.g. "KQvKR", white is always the side
+ * named first. Tables are only built for one colouring of each configuration, positions with the colours
+ * reversed are probed by flipping the board.
+ * @param name configuration name
+ * @param white white non-king piece types, descending value
+ * @param black black non-king piece types, descending value
+ */
+public record Material(String name, byte[] white, byte[] black) {
+
+    private static final byte[] PIECES = {PieceType.QUEEN, PieceType.ROOK, PieceType.BISHOP, PieceType.KNIGHT, PieceType.PAWN};
+
+
+    // ====================================================================================================
+    //                                  Constructors and Builders
+    // ====================================================================================================
+
+    /**
+     * Parse a material configuration from its name, e.g. "KQvKR".
+     * @param name configuration name
+     * @return material
+     * @throws IllegalArgumentException if the name is not a valid configuration
+     */
+    public static Material parse(final String name) {
+        final int v = name.indexOf('v');
+        if (v < 1 || name.charAt(0) != 'K' || v + 1 >= name.length() || name.charAt(v + 1) != 'K') {
+            throw new IllegalArgumentException("invalid material: " + name);
+        }
+        return new Material(name, parsePieces(name, 1, v), parsePieces(name, v + 2, name.length()));
+    }
+
+    /**
+     * Get every material configuration with at least 3 and at most a number of pieces (including kings),
+     * in generation order: fewer pieces first then fewer pawns, so that every capture and promotion
+     * leads into an earlier configuration.
+     * @param maxPieces maximum number of pieces
+     * @return material configurations
+     */
+    public static List<Material> all(final int maxPieces) {
+        final List<Material> all = new ArrayList<>();
+        for (int extra = 1; extra <= maxPieces - 2; extra++) {
+            for (int whiteCount = extra; whiteCount * 2 >= extra; whiteCount--) {
+                for (final byte[] white : combinations(whiteCount)) {
+                    for (final byte[] black : combinations(extra - whiteCount)) {
+                        // Only one colouring of each configuration, the stronger (or equal) side is white
+                        if (whiteCount == extra - whiteCount && compare(white, black) < 0) continue;
+                        all.add(new Material(name(white, black), white, black));
+                    }
+                }
+            }
+        }
+        all.sort(Comparator.comparingInt(Material::pieceCount).thenComparingInt(Material::pawnCount));
+        return all;
+    }
+
+
+    // ====================================================================================================
+    //                                  Accessors
+    // ====================================================================================================
+
+    /**
+     * Get the number of pieces, including the kings.
+     * @return piece count
+     */
+    public int pieceCount() {
+        return 2 + this.white.length + this.black.length;
+    }
+
+    /**
+     * Get the number of pawns of both colours.
+     * @return pawn count
+     */
+    public int pawnCount() {
+        int pawns = 0;
+        for (final byte pt : this.white) if (pt == PieceType.PAWN) pawns++;
+        for (final byte pt : this.black) if (pt == PieceType.PAWN) pawns++;
+        return pawns;
+    }
+
+    /**
+     * Get the material hash of positions with this configuration, optionally with the colours reversed.
+     * @param flip whether to reverse the colours
+     * @return material hash, as {@link Board#materialHash()}
+     */
+    long materialHash(final boolean flip) {
+        final Board board = Board.empty();
+        byte sq = 0;
+        board.addPiece(Colour.WHITE, PieceType.KING, sq++);
+        board.addPiece(Colour.BLACK, PieceType.KING, sq++);
+        for (final byte pt : this.white) board.addPiece(!flip, pt, sq++);
+        for (final byte pt : this.black) board.addPiece(flip, pt, sq++);
+        return board.materialHash();
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+
+
+    // ====================================================================================================
+    //                                  Utils
+    // ====================================================================================================
+
+    private static byte[] parsePieces(final String name, final int from, final int to) {
+        final byte[] pieces = new byte[to - from];
+        for (int i = from; i < to; i++) {
+            pieces[i - from] = switch (name.charAt(i)) {
+                case 'Q' -> PieceType.QUEEN;
+                case 'R' -> PieceType.ROOK;
+                case 'B' -> PieceType.BISHOP;
+                case 'N' -> PieceType.KNIGHT;
+                case 'P' -> PieceType.PAWN;
+                default  -> throw new IllegalArgumentException("invalid material: " + name);
+            };
+            if (i > from && pieces[i - from] > pieces[i - from - 1]) throw new IllegalArgumentException("pieces must be in descending value: " + name);
+        }
+        return pieces;
+    }
+
+    /**
+     * Get every multiset of non-king piece types of a size, each in descending value.
+     * @param count number of pieces
+     * @return piece type combinations
+     */
+    private static List<byte[]> combinations(final int count) {
+        final List<byte[]> combinations = new ArrayList<>();
+        combinations(new byte[count], 0, 0, combinations);
+        return combinations;
+    }
+
+    private static void combinations(final byte[] pieces, final int i, final int first, final List<byte[]> out) {
+        if (i == pieces.length) {
+            out.add(pieces.clone());
+            return;
+        }
+        for (int p = first; p < PIECES.length; p++) {
+            pieces[i] = PIECES[p];
+            combinations(pieces, i + 1, p, out);
+        }
+    }
+
+    /**
+     * Compare two equally sized piece lists by value, the first differing piece decides.
+     */
+    private static int compare(final byte[] a, final byte[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) return Byte.compare(a[i], b[i]);
+        }
+        return 0;
+    }
+
+    private static String name(final byte[] white, final byte[] black) {
+        final StringBuilder name = new StringBuilder("K");
+        for (final byte pt : white) name.append("?KPNBRQ".charAt(pt));
+        name.append("vK");
+        for (final byte pt : black) name.append("?KPNBRQ".charAt(pt));
+        return name.toString();
+    }
+}
@@ -0,0 +1,213 @@
+package dev.pig.stockpig.engine.tablebase;
+
+import dev.pig.stockpig.chess.Colour;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Table is a single material configuration of a tablebase, a WDL file with 2 bits per position and a
+ * DTM file with 1 byte (plies to mate, 0 for draws) per position, both memory-mapped read only.
+ * <p>
+ * Positions are indexed by their piece squares in material order: white king, black king, white pieces
+ * then black pieces. The board is mirrored left to right so that the white king is on files a-d, giving 32
+ * white king squares, every other piece takes 64. Both sides to move are stored, white to move first.
+ * The index is perfect but not minimal, indices of illegal positions, of mirrored positions and of identical
+ * pieces out of square order are stored as illegal.
+ */
+final class Table {
+
+    static final int DRAW       = 0;
+    static final int WIN        = 1;
+    static final int LOSS       = 2;
+    static final int ILLEGAL    = 3;
+
+    static final int MAGIC      = 0x53505442; // SPTB
+    static final int HEADER     = 8;          // magic + position count
+
+    static final String WDL_SUFFIX = ".wdl";
+    static final String DTM_SUFFIX = ".dtm";
+
+    private final Material material;
+    private final MappedByteBuffer wdl;
+    private final MappedByteBuffer dtm;
+
+
+    // ====================================================================================================
+    //                                  Constructors and Builders
+    // ====================================================================================================
+
+    private Table(final Material material, final MappedByteBuffer wdl, final MappedByteBuffer dtm) {
+        this.material = material;
+        this.wdl = wdl;
+        this.dtm = dtm;
+    }
+
+    /**
+     * Memory-map the WDL and DTM files of a material configuration.
+     * @param dir tablebase directory
+     * @param material material configuration
+     * @return table
+     * @throws IOException if the files cannot be read or are malformed
+     */
+    static Table open(final Path dir, final Material material) throws IOException {
+        final int count = positions(material);
+        return new Table(material,
+                map(dir.resolve(material.name() + WDL_SUFFIX), count, (count + 3) / 4),
+                map(dir.resolve(material.name() + DTM_SUFFIX), count, count));
+    }
+
+    private static MappedByteBuffer map(final Path file, final int count, final int bytes) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != HEADER + bytes) throw new IOException("unexpected size: " + file);
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != count) throw new IOException("bad header: " + file);
+            return buffer;
+        }
+    }
+
+    /**
+     * Write the WDL and DTM files of a material configuration.
+     * @param dir tablebase directory
+     * @param material material configuration
+     * @param wdl WDL value per position
+     * @param dtm plies to mate per position
+     * @throws IOException if the files cannot be written
+     */
+    static void write(final Path dir, final Material material, final byte[] wdl, final byte[] dtm) throws IOException {
+        final int count = positions(material);
+
+        final ByteBuffer packed = ByteBuffer.allocate(HEADER + (count + 3) / 4).putInt(MAGIC).putInt(count);
+        for (int i = 0; i < count; i += 4) {
+            int b = 0;
+            for (int j = 0; j < 4 && i + j < count; j++) b |= wdl[i + j] << (j * 2);
+            packed.put((byte) b);
+        }
+        write(dir.resolve(material.name() + WDL_SUFFIX), packed.flip());
+        write(dir.resolve(material.name() + DTM_SUFFIX), ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(count).flip(), ByteBuffer.wrap(dtm));
+    }
+
+    private static void write(final Path file, final ByteBuffer... buffers) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (final ByteBuffer buffer : buffers) {
+                while (buffer.hasRemaining()) channel.write(buffer);
+            }
+        }
+    }
+
+
+    // ====================================================================================================
+    //                                  Accessors
+    // ====================================================================================================
+
+    /**
+     * Get the material configuration of the table.
+     * @return material
+     */
+    Material material() {
+        return this.material;
+    }
+
+    /**
+     * Get the WDL value of a position, from the side to move's point of view.
+     * @param index position index
+     * @return draw, win, loss or illegal
+     */
+    int wdl(final int index) {
+        return (this.wdl.get(HEADER + (index >>> 2)) >>> ((index & 3) * 2)) & 3;
+    }
+
+    /**
+     * Get the distance to mate of a position.
+     * @param index position index
+     * @return plies to mate, 0 for draws
+     */
+    int dtm(final int index) {
+        return this.dtm.get(HEADER + index) & 0xFF;
+    }
+
+
+    // ====================================================================================================
+    //                                  Indexing
+    // ====================================================================================================
+
+    /**
+     * Get the number of positions with one side to move.
+     * @param material material configuration
+     * @return position count per side to move
+     */
+    static int positionsPerSide(final Material material) {
+        return 32 << (6 * (material.pieceCount() - 1));
+    }
+
+    /**
+     * Get the number of positions, for both sides to move.
+     * @param material material configuration
+     * @return position count
+     */
+    static int positions(final Material material) {
+        return 2 * positionsPerSide(material);
+    }
+
+    /**
+     * Get the index of a position, the squares are normalised (mirrored and sorted) in place.
+     * @param material material configuration
+     * @param squares piece squares in material order
+     * @param sideToMove side to move
+     * @return position index
+     */
+    static int encode(final Material material, final byte[] squares, final boolean sideToMove) {
+        final int n = material.pieceCount();
+
+        // Mirror the white king onto files a-d
+        if ((squares[0] & 7) >= 4) {
+            for (int i = 0; i < n; i++) squares[i] ^= 7;
+        }
+
+        // Order identical pieces by square
+        sortIdentical(squares, 2, material.white());
+        sortIdentical(squares, 2 + material.white().length, material.black());
+
+        int index = (squares[0] >>> 3) * 4 + (squares[0] & 7);
+        for (int i = 1; i < n; i++) index = (index << 6) | squares[i];
+        return sideToMove == Colour.WHITE ? index : index + positionsPerSide(material);
+    }
+
+    /**
+     * Get the piece squares of a position index.
+     * @param material material configuration
+     * @param index position index
+     * @param squares piece squares in material order, to fill
+     * @return side to move
+     */
+    static boolean decode(final Material material, final int index, final byte[] squares) {
+        final int perSide = positionsPerSide(material);
+        int rest = index < perSide ? index : index - perSide;
+        for (int i = material.pieceCount() - 1; i > 0; i--) {
+            squares[i] = (byte) (rest & 63);
+            rest >>>= 6;
+        }
+        squares[0] = (byte) ((rest / 4) * 8 + rest % 4);
+        return index < perSide ? Colour.WHITE : Colour.BLACK;
+    }
+
+    /**
+     * Insertion sort the squares of runs of identical piece types.
+     * @param squares piece squares
+     * @param offset offset of the first piece of the side
+     * @param pieces piece types of the side
+     */
+    private static void sortIdentical(final byte[] squares, final int offset, final byte[] pieces) {
+        for (int i = 1; i < pieces.length; i++) {
+            for (int j = i; j > 0 && pieces[j] == pieces[j - 1] && squares[offset + j] < squares[offset + j - 1]; j--) {
+                final byte sq = squares[offset + j];
+                squares[offset + j] = squares[offset + j - 1];
+                squares[offset + j - 1] = sq;
+            }
+        }
+    }
+}
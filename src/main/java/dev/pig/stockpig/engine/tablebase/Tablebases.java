@@ -0,0 +1,242 @@
+package dev.pig.stockpig.engine.tablebase;
+
+import dev.pig.stockpig.chess.Board;
+import dev.pig.stockpig.chess.Castling;
+import dev.pig.stockpig.chess.Colour;
+import dev.pig.stockpig.chess.PieceType;
+import dev.pig.stockpig.chess.PositionState;
+import dev.pig.stockpig.chess.bitboard.Attack;
+import dev.pig.stockpig.chess.bitboard.Bitboard;
+import dev.pig.stockpig.chess.bitboard.Square;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tablebases probes endgame tablebases built by the {@link Generator}. Tables are memory-mapped, so they
+ * cost no heap and are available as soon as they are opened, the operating system pages them in as
+ * they are probed.
+ * <p>
+ * Tables do not hold castling rights or en passant targets, positions with either are not probed (unless
+ * no pawn can take the en passant target). The
+ * fifty move rule is ignored, the distance to mate is the distance with perfect play from both sides.
+ * Positions with only the two kings are always draws and need no table.
+ * <p>
+ * Probing normalises the piece squares in a preallocated array, so tablebases must only be probed from one
+ * thread at a time.
+ */
+public final class Tablebases {
+
+    public static final int WIN     = 1;
+    public static final int DRAW    = 0;
+    public static final int LOSS    = -1;
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private static final long NOT_FOUND  = -1L;
+    private static final long KINGS_ONLY = -2L;
+
+    // Lookup by material hash, each table is present for both colourings
+    private final long[] keys;
+    private final Table[] tables;
+    private final boolean[] flipped;
+    private final int maxPieces;
+    private final byte[] squares;
+
+
+    // ====================================================================================================
+    //                                  Constructors and Builders
+    // ====================================================================================================
+
+    private Tablebases(final List<Table> tables) {
+        final List<Long> keys = new ArrayList<>();
+        final List<Table> slots = new ArrayList<>();
+        final List<Boolean> flipped = new ArrayList<>();
+        int maxPieces = 2;
+        for (final Table table : tables) {
+            final long key = table.material().materialHash(false);
+            final long flippedKey = table.material().materialHash(true);
+            keys.add(key);
+            slots.add(table);
+            flipped.add(false);
+            if (flippedKey != key) {
+                keys.add(flippedKey);
+                slots.add(table);
+                flipped.add(true);
+            }
+            maxPieces = Math.max(maxPieces, table.material().pieceCount());
+        }
+
+        this.keys = keys.stream().mapToLong(Long::longValue).toArray();
+        this.tables = slots.toArray(new Table[0]);
+        this.flipped = new boolean[flipped.size()];
+        for (int i = 0; i < this.flipped.length; i++) this.flipped[i] = flipped.get(i);
+        this.maxPieces = maxPieces;
+        this.squares = new byte[maxPieces];
+    }
+
+    /**
+     * Open every table in a directory.
+     * @param dir tablebase directory
+     * @return tablebases
+     * @throws IOException if a table cannot be read or is malformed
+     */
+    public static Tablebases open(final Path dir) throws IOException {
+        final List<Table> tables = new ArrayList<>();
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + Table.WDL_SUFFIX)) {
+            for (final Path file : files) {
+                final String name = file.getFileName().toString();
+                tables.add(Table.open(dir, Material.parse(name.substring(0, name.length() - Table.WDL_SUFFIX.length()))));
+            }
+        }
+        return new Tablebases(tables);
+    }
+
+
+    // ====================================================================================================
+    //                                  Accessors
+    // ====================================================================================================
+
+    /**
+     * Get the largest number of pieces (including kings) of any table.
+     * @return maximum piece count, 2 if there are no tables
+     */
+    public int maxPieces() {
+        return this.maxPieces;
+    }
+
+    /**
+     * Get the number of tables.
+     * @return table count
+     */
+    public int size() {
+        int size = 0;
+        for (final boolean flipped : this.flipped) if (!flipped) size++;
+        return size;
+    }
+
+
+    // ====================================================================================================
+    //                                  Probing
+    // ====================================================================================================
+
+    /**
+     * Probe the win/draw/loss value and distance to mate of a position together, the position being located
+     * in its table once.
+     * @param pos position
+     * @return probe result, read with {@link #wdl(int)} and {@link #dtm(int)}, unknown if there is no table for the position
+     */
+    public int probe(final PositionState pos) {
+        final long location = locate(pos);
+        if (location == NOT_FOUND) return UNKNOWN;
+        if (location == KINGS_ONLY) return result(DRAW, 0);
+        final Table table = this.tables[(int) (location >>> 32)];
+        return switch (table.wdl((int) location)) {
+            case Table.WIN  -> result(WIN, table.dtm((int) location));
+            case Table.LOSS -> result(LOSS, table.dtm((int) location));
+            case Table.DRAW -> result(DRAW, 0);
+            default         -> UNKNOWN;
+        };
+    }
+
+    /**
+     * Probe the win/draw/loss value of a position.
+     * @param pos position
+     * @return win, draw or loss for the side to move, unknown if there is no table for the position
+     */
+    public int probeWdl(final PositionState pos) {
+        final int probe = probe(pos);
+        return probe == UNKNOWN ? UNKNOWN : wdl(probe);
+    }
+
+    /**
+     * Probe the distance to mate of a position, combine with {@link #probeWdl} to know who is mated.
+     * @param pos position
+     * @return plies to mate with perfect play, 0 for draws and for checkmate, unknown if there is no table for the position
+     */
+    public int probeDtm(final PositionState pos) {
+        final int probe = probe(pos);
+        return probe == UNKNOWN ? UNKNOWN : dtm(probe);
+    }
+
+    /**
+     * Get the win/draw/loss value of a known probe result.
+     * @param probe probe result, not unknown
+     * @return win, draw or loss for the side to move
+     */
+    public static int wdl(final int probe) {
+        return (probe & 3) - 1;
+    }
+
+    /**
+     * Get the distance to mate of a known probe result.
+     * @param probe probe result, not unknown
+     * @return plies to mate with perfect play, 0 for draws and for checkmate
+     */
+    public static int dtm(final int probe) {
+        return probe >>> 2;
+    }
+
+    private static int result(final int wdl, final int dtm) {
+        return (dtm << 2) | (wdl + 1);
+    }
+
+    /**
+     * Find the table slot and position index of a position.
+     * @param pos position
+     * @return slot in the upper 32 bits and index in the lower 32 bits, {@link #KINGS_ONLY} or {@link #NOT_FOUND}
+     */
+    private long locate(final PositionState pos) {
+        final Board board = pos.board();
+        if (pos.castlingRights() != Castling.NONE) return NOT_FOUND;
+
+        // An en passant target only matters if a pawn can capture it
+        final byte ep = pos.enPassantTarget();
+        if (ep != Square.EMPTY && (Attack.pawn(!pos.sideToMove(), ep) & board.pieces(pos.sideToMove(), PieceType.PAWN)) != 0) return NOT_FOUND;
+
+        final int count = Bitboard.count(board.occupied());
+        if (count == 2) return KINGS_ONLY;
+        if (count > this.maxPieces) return NOT_FOUND;
+
+        final long key = board.materialHash();
+        int slot = 0;
+        while (slot < this.keys.length && this.keys[slot] != key) slot++;
+        if (slot == this.keys.length) return NOT_FOUND;
+
+        // The table's white is the position's black when flipped, the board is then flipped vertically
+        final Material material = this.tables[slot].material();
+        final boolean flip = this.flipped[slot];
+        final boolean white = !flip;
+        final int mirror = flip ? 56 : 0;
+
+        final byte[] squares = this.squares;
+        squares[0] = (byte) (Long.numberOfTrailingZeros(board.pieces(white, PieceType.KING)) ^ mirror);
+        squares[1] = (byte) (Long.numberOfTrailingZeros(board.pieces(!white, PieceType.KING)) ^ mirror);
+        fill(board, white, material.white(), squares, 2, mirror);
+        fill(board, !white, material.black(), squares, 2 + material.white().length, mirror);
+
+        final boolean sideToMove = flip ? Colour.flip(pos.sideToMove()) : pos.sideToMove();
+        return ((long) slot << 32) | Table.encode(material, squares, sideToMove);
+    }
+
+    /**
+     * Fill the squares of one side's pieces in material order.
+     * @param board board
+     * @param c colour of the pieces on the board
+     * @param pieces piece types, identical types adjacent
+     * @param squares squares to fill
+     * @param offset offset of the first piece
+     * @param mirror square mirror mask
+     */
+    private static void fill(final Board board, final boolean c, final byte[] pieces, final byte[] squares, final int offset, final int mirror) {
+        long bb = 0L;
+        for (int i = 0; i < pieces.length; i++) {
+            if (i == 0 || pieces[i] != pieces[i - 1]) bb = board.pieces(c, pieces[i]);
+            squares[offset + i] = (byte) (Long.numberOfTrailingZeros(bb) ^ mirror);
+            bb &= bb - 1;
+        }
+    }
+}
@@ -3,24 +3,67 @@ package dev.pig.stockpig.gui.model;
 import dev.pig.stockpig.chess.*;
 import dev.pig.stockpig.chess.bitboard.Square;
 import dev.pig.stockpig.chess.notation.Fen;
+import dev.pig.stockpig.chess.notation.Uci;
+import dev.pig.stockpig.engine.book.OpeningBook;
+import dev.pig.stockpig.engine.book.PolyglotKey;
 import dev.pig.stockpig.engine.evaluation.PositionEvaluator;
 import dev.pig.stockpig.engine.search.AlphaBetaSearcher;
-
+import dev.pig.stockpig.engine.search.MctsSearcher;
+import dev.pig.stockpig.engine.search.Ponderer;
+import dev.pig.stockpig.engine.search.TranspositionTable;
+import dev.pig.stockpig.engine.tablebase.Tablebases;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Chess model for storing and interacting with a chess position from the GUI.
+ * The bot probes endgame tablebases from the directory passed with -Dstockpig.tablebases=dir, if any.
+ * It plays from a Polyglot opening book passed with -Dstockpig.book=file before searching, if any, which
+ * also needs the Polyglot Random64 table passed with -Dstockpig.book.keys=file (e.g. pg_key.c).
+ * With -Dstockpig.search=mcts, the bot searches with Monte Carlo tree search on every processor instead.
+ * With -Dstockpig.ponder=ms, the bot searches for ms per move with a transposition table, and ponders the
+ * expected reply during the player's turn.
  */
 public final class ChessModel {
 
     private Position position = Position.starting();
+    private final AlphaBetaSearcher searcher = new AlphaBetaSearcher();
+    private final MctsSearcher mcts = "mcts".equals(System.getProperty("stockpig.search"))
+            ? new MctsSearcher(MctsSearcher.DEFAULT_MAX_NODES, Runtime.getRuntime().availableProcessors(), MctsSearcher.Selection.PUCT, MctsSearcher.Leaf.EVAL)
+            : null;
+    private final Ponderer ponderer;
+    private final long moveTime;
+    private final OpeningBook book;
+    private final Random random = new Random();
 
     private final MoveList legalMoves = new MoveList();
     private byte selected = Square.EMPTY;
     private byte from     = Square.EMPTY;
     private byte to       = Square.EMPTY;
     private int promotionMove;
+    private String principalVariation = "";
+
+    public ChessModel() {
+        final String tablebases = System.getProperty("stockpig.tablebases");
+        final String book = System.getProperty("stockpig.book");
+        final String keys = System.getProperty("stockpig.book.keys");
+        final String ponder = System.getProperty("stockpig.ponder");
+        if (book != null && keys == null) throw new IllegalStateException("-Dstockpig.book needs -Dstockpig.book.keys");
+        try {
+            if (tablebases != null) this.searcher.setTablebases(Tablebases.open(Path.of(tablebases)));
+            this.book = book == null ? null : OpeningBook.open(Path.of(book), PolyglotKey.load(Path.of(keys)));
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.moveTime = ponder == null ? 0L : Long.parseLong(ponder);
+        this.ponderer = ponder == null ? null : new Ponderer(this.searcher);
+        if (this.ponderer != null) this.searcher.setTranspositionTable(new TranspositionTable());
+    }
 
     /**
      * Get the position.
@@ -49,6 +92,7 @@ public final class ChessModel {
      * Start a new game from the starting position.
      */
     public void startingPosition() {
+        stopPondering();
         this.position = Position.starting();
         clear();
     }
@@ -58,7 +102,9 @@ public final class ChessModel {
      * @param fen FEN string
      */
     public void fromFen(final String fen) throws Fen.ParseException {
-        this.position = Position.fromFen(fen);
+        final Position pos = Position.fromFen(fen);
+        stopPondering();
+        this.position = pos;
         clear();
     }
 
@@ -74,10 +120,18 @@ public final class ChessModel {
      * Undo the last move.
      */
     public void undo() {
+        stopPondering();
         this.position.undo();
         clear();
     }
 
+    /**
+     * Stop pondering, if pondering, once the position the expected reply was pondered from is gone.
+     */
+    private void stopPondering() {
+        if (this.ponderer != null) this.ponderer.miss();
+    }
+
     /**
      * Attempt to select the square. If a square is already selected, attempt to make the move.
      * If a move is not made, select the square.
@@ -159,13 +213,33 @@ public final class ChessModel {
     }
 
     /**
-     * Make a move using the default evaluator and searcher.
+     * Get the principal variation of the bot's last searched move, in UCI notation.
+     * @return principal variation, empty if the last bot move was not searched
+     */
+    public String principalVariation() {
+        return this.principalVariation;
+    }
+
+    /**
+     * Make a move from the opening book, or using the default evaluator and searcher once out of book.
      * @return type of game event triggered by the move
      */
     public GameEvent botMove() {
-        final int move = AlphaBetaSearcher.search(this.position);
+        final int bookMove = this.book == null ? 0 : this.book.weightedMove(this.position, this.random);
+        final boolean searched = bookMove == 0 && this.mcts == null;
+        if (this.ponderer != null && !(searched && this.ponderer.isPondering(this.position))) this.ponderer.miss();
+        final int move = bookMove != 0 ? bookMove
+                : this.mcts != null ? this.mcts.search(this.position)
+                : this.ponderer == null ? this.searcher.search(this.position)
+                : this.ponderer.isPondering() ? this.ponderer.ponderhit(this.moveTime)
+                : this.searcher.searchFor(this.position, this.moveTime);
+        this.principalVariation = searched ? Uci.format(this.searcher.pv()) : "";
         if (move == 0) return GameEvent.SELECTION_CHANGE;
         this.position.makeMove(move);
+        if (this.ponderer != null && searched) {
+            final MoveList pv = this.searcher.pv();
+            if (pv.size() > 1) this.ponderer.ponder(this.position, pv.get(1));
+        }
         clear();
         this.from = Move.from(move);
         this.to = Move.to(move);
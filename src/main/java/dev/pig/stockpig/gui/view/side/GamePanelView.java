@@ -16,6 +16,7 @@ public final class GamePanelView extends JPanel {
     private final JLabel  score   = new JLabel("", SwingConstants.CENTER);
     private final JButton aiMove  = new JButton("AI Move");
     private final JLabel  hash    = new JLabel("Hash: ");
+    private final JLabel  line    = new JLabel("PV: ");
 
     public GamePanelView() {
         super(new GridLayout(8, 1, 0, 15));
@@ -34,6 +35,10 @@ public final class GamePanelView extends JPanel {
         final JPanel hashPanel = new JPanel();
         hashPanel.add(this.hash);
         add(hashPanel);
+
+        final JPanel linePanel = new JPanel();
+        linePanel.add(this.line);
+        add(linePanel);
     }
 
     /**
@@ -58,5 +63,6 @@ public final class GamePanelView extends JPanel {
     public void redraw(final StockpigModel model) {
         this.score.setText(String.format("%d", model.chess.score()));
         this.hash.setText(String.format("Hash: %d", model.chess.zhash()));
+        this.line.setText(String.format("PV: %s", model.chess.principalVariation()));
     }
 }
@@ -0,0 +1,50 @@
+package dev.pig.stockpig.chess;
+
+import dev.pig.stockpig.chess.notation.Fen;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Incremental attack map tests, comparing the incrementally updated map against a map built from
+ * scratch along random games, both as moves are made and as they are unmade.
+ */
+public final class AttackMapTest {
+
+    private static final String[] FENS = {
+            Fen.STARTING,
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+    };
+
+    @Test
+    public void randomGames() throws Fen.ParseException {
+        final Random random = new Random(42);
+        for (final String fen : FENS) {
+            for (int game = 0; game < 20; game++) {
+                final Position pos = Position.fromFen(fen);
+                pos.setIncrementalAttacks(true);
+
+                int plies = 0;
+                while (plies < 80 && !pos.isGameOver()) {
+                    pos.makeMove(pos.moves().get(random.nextInt(pos.moves().size())));
+                    plies++;
+                    assertEquals(built(pos), pos.attackMap(), pos.toFen());
+                }
+                while (plies-- > 0) {
+                    pos.undo();
+                    assertEquals(built(pos), pos.attackMap(), pos.toFen());
+                }
+            }
+        }
+    }
+
+    private static AttackMap built(final Position pos) {
+        final AttackMap map = new AttackMap();
+        map.build(pos.board());
+        return map;
+    }
+}
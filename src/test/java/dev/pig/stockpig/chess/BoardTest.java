@@ -2,8 +2,15 @@ package dev.pig.stockpig.chess;
 
 import dev.pig.stockpig.chess.bitboard.Bitboard;
 import dev.pig.stockpig.chess.bitboard.Square;
+import dev.pig.stockpig.chess.notation.Fen;
+import dev.pig.stockpig.chess.perft.Suite;
+import dev.pig.stockpig.chess.perft.TestCase;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -212,4 +219,77 @@ public final class BoardTest {
         board.addPiece(Colour.BLACK, PieceType.KING, Square.E8);
         assertFalse(board.isDeadPosition());
     }
+
+    @Test
+    public void hashes_RandomGames() throws Fen.ParseException {
+        final Random random = new Random(13);
+        for (final TestCase test : Suite.TESTS) {
+            final Position pos = Position.fromFen(test.fen());
+            final Deque<Long> materialHashes = new ArrayDeque<>();
+            assertHashes(pos.board());
+
+            for (int ply = 0; ply < 100 && !pos.moves().isEmpty(); ply++) {
+                materialHashes.push(pos.board().materialHash());
+                pos.makeMove(pos.moves().get(random.nextInt(pos.moves().size())));
+                assertHashes(pos.board());
+            }
+            while (!materialHashes.isEmpty()) {
+                pos.unmakeMove();
+                assertHashes(pos.board());
+                assertEquals(materialHashes.pop(), pos.board().materialHash());
+            }
+        }
+    }
+
+    @Test
+    public void hashes_MaterialIndependentOfSquares() {
+        final Board a = Board.empty();
+        a.addPiece(Colour.WHITE, PieceType.KING, Square.E1);
+        a.addPiece(Colour.WHITE, PieceType.ROOK, Square.A1);
+        a.addPiece(Colour.BLACK, PieceType.KING, Square.E8);
+        a.addPiece(Colour.BLACK, PieceType.PAWN, Square.D7);
+
+        final Board b = Board.empty();
+        b.addPiece(Colour.BLACK, PieceType.PAWN, Square.H5);
+        b.addPiece(Colour.BLACK, PieceType.KING, Square.A8);
+        b.addPiece(Colour.WHITE, PieceType.ROOK, Square.H1);
+        b.addPiece(Colour.WHITE, PieceType.KING, Square.B1);
+
+        assertEquals(a.materialHash(), b.materialHash());
+        assertNotEquals(a.zhash(), b.zhash());
+        assertNotEquals(a.pawnHash(), b.pawnHash());
+
+        // Colour matters
+        b.removePiece(Colour.WHITE, PieceType.ROOK, Square.H1);
+        b.addPiece(Colour.BLACK, PieceType.ROOK, Square.H1);
+        assertNotEquals(a.materialHash(), b.materialHash());
+    }
+
+    /**
+     * Assert that the incrementally updated hashes of a board match hashes recomputed from scratch.
+     * @param board board
+     */
+    private static void assertHashes(final Board board) {
+        long hash = 0L;
+        long material = 0L;
+        long pawn = 0L;
+        final long[] nonPawn = new long[2];
+        for (final boolean c : new boolean[]{Colour.WHITE, Colour.BLACK}) {
+            for (byte pt = PieceType.KING; pt <= PieceType.QUEEN; pt++) {
+                final long pieces = board.pieces(c, pt);
+                for (int n = 0; n < Bitboard.count(pieces); n++) material ^= Zobrist.material(c, pt, n);
+                for (long bb = pieces; bb != 0L; bb &= bb - 1) {
+                    final long key = Zobrist.pieceSquare(c, pt, (byte) Long.numberOfTrailingZeros(bb));
+                    hash ^= key;
+                    if (pt == PieceType.PAWN) pawn ^= key;
+                    else nonPawn[c ? 1 : 0] ^= key;
+                }
+            }
+        }
+        assertEquals(hash, board.zhash());
+        assertEquals(material, board.materialHash());
+        assertEquals(pawn, board.pawnHash());
+        assertEquals(nonPawn[1], board.nonPawnHash(Colour.WHITE));
+        assertEquals(nonPawn[0], board.nonPawnHash(Colour.BLACK));
+    }
 }
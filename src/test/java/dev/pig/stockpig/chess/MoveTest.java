@@ -1,12 +1,13 @@
 package dev.pig.stockpig.chess;
 
 import dev.pig.stockpig.chess.bitboard.Square;
+import dev.pig.stockpig.chess.notation.Fen;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
- * Move tests, only tests encoding not application to a position.
+ * Move tests, only tests encoding not application to a position (except to recover packed moves).
  */
 public final class MoveTest {
 
@@ -121,4 +122,25 @@ public final class MoveTest {
         assertTrue(Move.isCapture(m));
         assertFalse(Move.isPromotion(m));
     }
+
+    @Test
+    public void packed() throws Fen.ParseException {
+        assertEquals(0, Move.pack(0));
+        assertEquals(0, Move.unpack(Board.empty(), (short) 0));
+
+        final String[] fens = {
+                Fen.STARTING,
+                "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+                "rnbqkb1r/pp1p1pPp/8/2p1pP2/1P1P4/3P3P/P1P1P3/RNBQKBNR w KQkq e6 0 1",
+        };
+        for (final String fen : fens) {
+            final Position pos = Position.fromFen(fen);
+            for (int i = 0; i < pos.moves().size(); i++) {
+                final int move = pos.moves().get(i);
+                assertEquals(move, Move.unpack(pos.board(), Move.pack(move)), fen + " " + move);
+            }
+        }
+    }
 }
@@ -1,11 +1,22 @@
 package dev.pig.stockpig.chess;
 
 import dev.pig.stockpig.chess.notation.Fen;
+import dev.pig.stockpig.chess.perft.Epd;
 import dev.pig.stockpig.chess.perft.Suite;
 import dev.pig.stockpig.chess.perft.TestCase;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * PERFT move enumeration tests.
@@ -23,4 +34,103 @@ public final class PerftTest {
         }
     }
 
+    @Test
+    public void PerftSuitePseudoLegal() throws Fen.ParseException {
+        for (final TestCase test: Suite.TESTS) {
+            final TestCase.Result result = TestCase.run(test, MoveGenerator.Mode.PSEUDO_LEGAL);
+            assertEquals(test.expectedNodes(), result.nodes(), test.name());
+        }
+    }
+
+    @Test
+    public void PerftSuiteIncrementalAttacks() throws Fen.ParseException {
+        for (final TestCase test: Suite.TESTS) {
+            if (test.expectedNodes() > 10_000_000L) continue;
+            final TestCase.Result result = TestCase.run(test, MoveGenerator.Mode.LEGAL, true);
+            assertEquals(test.expectedNodes(), result.nodes(), test.name());
+        }
+    }
+
+    @Test
+    public void PerftSuiteCopyMake() throws Fen.ParseException {
+        for (final TestCase test: Suite.TESTS) {
+            final TestCase.Result result = TestCase.runCopyMake(test);
+            assertEquals(test.expectedNodes(), result.nodes(), test.name());
+        }
+    }
+
+    @Test
+    public void PerftEnPassantInCheck() throws Fen.ParseException {
+        // En passant can neither block nor capture the bishop check
+        assertEquals(4L, TestCase.run(new TestCase("ep no evasion", "4K3/8/8/1b1pP3/8/8/8/7k w - d6 0 1", 1, 4L)).nodes());
+        // En passant captures the checking pawn
+        assertEquals(9L, TestCase.run(new TestCase("ep evasion", "8/8/8/2k5/3Pp3/8/8/4K3 b - d3 0 1", 1, 9L)).nodes());
+    }
+
+    /**
+     * Runs the bundled EPD suite, or an external EPD file passed with -Dperft.epd=path
+     * (optionally limited with -Dperft.maxDepth=N).
+     */
+    @Test
+    public void PerftEpd() throws IOException, InterruptedException, URISyntaxException {
+        final String external = System.getProperty("perft.epd");
+        final Path file = external != null ? Path.of(external) : Path.of(PerftTest.class.getResource("/perft.epd").toURI());
+        final int maxDepth = Integer.getInteger("perft.maxDepth", Integer.MAX_VALUE);
+
+        final Epd.Report report = Epd.run(file, maxDepth, Runtime.getRuntime().availableProcessors());
+        assertTrue(report.positions() > 0);
+        assertEquals(List.of(), report.failures());
+    }
+
+    @Test
+    public void PerftEpdMalformed(@TempDir final Path dir) throws IOException, InterruptedException {
+        final Path file = dir.resolve("malformed.epd");
+        Files.writeString(file, String.join("\n",
+                Fen.STARTING + " ;D1 20 ;D2 400",
+                Fen.STARTING + " ;Dx 20",
+                Fen.STARTING + " ;D1 twenty",
+                Fen.STARTING + " ;D-1 5",
+                "not a fen ;D1 20",
+                Fen.STARTING + " ;D1 21"));
+        assertThrows(IllegalArgumentException.class, () -> Epd.parse(2, Fen.STARTING + " ;Dx 20"));
+        assertThrows(IllegalArgumentException.class, () -> Epd.parse(3, Fen.STARTING + " ;D1 twenty"));
+        assertThrows(IllegalArgumentException.class, () -> Epd.parse(4, Fen.STARTING + " ;D-1 5"));
+
+        // Every bad line is a failure of its own, the rest of the file still runs
+        final Epd.Report report = Epd.run(file, 2, 2);
+        assertEquals(6, report.positions());
+        assertEquals(4, report.tests());
+        assertEquals(List.of(2, 3, 4, 5, 6), report.failures().stream().map(Epd.Failure::line).toList());
+        for (int i = 0; i < 4; i++) assertEquals(-1, report.failures().get(i).nodes());
+        assertEquals(20, report.failures().get(4).nodes());
+    }
+
+    @Test
+    public void PerftCounters() throws Fen.ParseException {
+        assertCounters(new TestCase("starting", Fen.STARTING, 4, 197281L),
+                new TestCase.Counters(1576, 0, 0, 0, 469, 8));
+        assertCounters(new TestCase("kiwipete", "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", 3, 97862L),
+                new TestCase.Counters(17102, 45, 3162, 0, 993, 1));
+        assertCounters(new TestCase("position 3", "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", 4, 43238L),
+                new TestCase.Counters(3348, 123, 0, 0, 1680, 17));
+        assertCounters(new TestCase("position 4", "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", 3, 9467L),
+                new TestCase.Counters(1021, 4, 0, 120, 38, 22));
+    }
+
+    @Test
+    public void PerftDivide() {
+        final Map<String, Long> divide = TestCase.divide(Position.starting(), 3);
+        assertEquals(20, divide.size());
+        assertEquals(600L, divide.get("e2e4"));
+        assertEquals(380L, divide.get("a2a3"));
+        assertEquals(440L, divide.get("g1f3"));
+        assertEquals(8902L, divide.values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    private static void assertCounters(final TestCase test, final TestCase.Counters expected) throws Fen.ParseException {
+        final TestCase.Result result = TestCase.runWithCounters(test);
+        assertEquals(test.expectedNodes(), result.nodes(), test.name());
+        assertEquals(expected, result.counters(), test.name());
+    }
+
 }
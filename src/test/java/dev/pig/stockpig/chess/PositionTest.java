@@ -1,13 +1,23 @@
 package dev.pig.stockpig.chess;
 
 import dev.pig.stockpig.chess.notation.Fen;
+import dev.pig.stockpig.chess.notation.Uci;
+import dev.pig.stockpig.chess.bitboard.Square;
+import dev.pig.stockpig.chess.perft.Suite;
+import dev.pig.stockpig.chess.perft.TestCase;
 import org.junit.jupiter.api.Test;
 
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
- * Position tests, testing checkmates and stalemates.
+ * Position tests, testing checkmates, stalemates and check detection.
  */
 public final class PositionTest {
 
@@ -43,4 +53,189 @@ public final class PositionTest {
         assertFalse(stale.isCheckmate());
         assertFalse(stale.isDeadPosition());
     }
+
+    @Test
+    public void terminalPseudoLegal() throws Fen.ParseException {
+        final Position checkmate = Position.fromFen("k5qr/8/8/8/8/8/8/7K w k - 0 1");
+        checkmate.setMode(MoveGenerator.Mode.PSEUDO_LEGAL);
+        assertFalse(checkmate.moves().isEmpty());
+        assertTrue(checkmate.isGameOver());
+        assertTrue(checkmate.isCheckmate());
+
+        final Position stalemate = Position.fromFen("k5q1/8/8/1r6/8/8/8/K7 w k - 1 2");
+        stalemate.setMode(MoveGenerator.Mode.PSEUDO_LEGAL);
+        assertFalse(stalemate.moves().isEmpty());
+        assertTrue(stalemate.isGameOver());
+        assertFalse(stalemate.isCheckmate());
+
+        final Position check = Position.fromFen("k6r/8/8/8/8/8/8/7K w k - 0 1");
+        check.setMode(MoveGenerator.Mode.PSEUDO_LEGAL);
+        assertFalse(check.isGameOver());
+        assertFalse(check.isCheckmate());
+    }
+
+    @Test
+    public void givesCheck() throws Fen.ParseException {
+        final String[] fens = {
+                Fen.STARTING,
+                "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+                "r2k4/8/8/8/8/8/8/R3K2R w KQ - 0 1",
+                "3k4/8/8/K1pP3r/8/8/8/8 w - c6 0 1",
+                "1k6/8/8/8/8/8/p7/2K5 b - - 0 1",
+        };
+        final Random random = new Random(7);
+        for (final String fen : fens) {
+            for (int game = 0; game < 20; game++) {
+                final Position pos = Position.fromFen(fen);
+                for (int ply = 0; ply < 60 && !pos.isGameOver(); ply++) {
+                    for (int i = 0; i < pos.moves().size(); i++) {
+                        final int move = pos.moves().get(i);
+                        final String context = pos.toFen() + " " + move;
+                        final boolean givesCheck = pos.givesCheck(move);
+                        pos.makeMove(move);
+                        assertEquals(isKingAttacked(pos), givesCheck, context);
+                        pos.undo();
+                    }
+                    pos.makeMove(pos.moves().get(random.nextInt(pos.moves().size())));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void isValid() throws Fen.ParseException {
+        final String[] fens = {
+                Fen.STARTING,
+                "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        };
+        final Random random = new Random(11);
+        for (final String fen : fens) {
+            for (int game = 0; game < 10; game++) {
+                final Position pos = Position.fromFen(fen);
+                final Set<Integer> seen = new HashSet<>();
+                for (int ply = 0; ply < 60 && !pos.isGameOver(); ply++) {
+                    final Set<Integer> legal = new HashSet<>();
+                    for (int i = 0; i < pos.moves().size(); i++) legal.add(pos.moves().get(i));
+                    seen.addAll(legal);
+
+                    // Moves seen earlier in the game are stale candidates, like hash or killer moves
+                    for (final int move : seen) {
+                        assertEquals(legal.contains(move), pos.isValid(move), pos.toFen() + " " + move);
+                        // Corrupted fields, like a hash collision, must never be valid unless they form a legal move
+                        final int corrupt = move ^ (1 << random.nextInt(24));
+                        assertEquals(legal.contains(corrupt), pos.isValid(corrupt), pos.toFen() + " " + corrupt);
+                    }
+                    pos.makeMove(pos.moves().get(random.nextInt(pos.moves().size())));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void copy() throws Fen.ParseException {
+        final Random random = new Random(3);
+        final Position pos = Position.fromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        for (int ply = 0; ply < 10; ply++) pos.makeMove(pos.moves().get(random.nextInt(pos.moves().size())));
+        final String fen = pos.toFen();
+
+        final Position copy = pos.copy();
+        assertEquals(fen, copy.toFen());
+        assertEquals(pos.zhash(), copy.zhash());
+        assertEquals(pos.moves().size(), copy.moves().size());
+        assertEquals(pos.isCheck(), copy.isCheck());
+
+        // Copies are independent, and carry the history so can be undone to the start
+        copy.makeMove(copy.moves().get(0));
+        assertEquals(fen, pos.toFen());
+        for (int ply = 0; ply < 11; ply++) copy.undo();
+        assertEquals("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", copy.toFen());
+        assertEquals(fen, pos.toFen());
+
+        // Copying into a used position overwrites all of it
+        pos.copyInto(copy);
+        assertEquals(fen, copy.toFen());
+        assertEquals(pos.zhash(), copy.zhash());
+        for (int ply = 0; ply < 10; ply++) copy.undo();
+        assertEquals("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", copy.toFen());
+    }
+
+    @Test
+    public void hashMatchesFen() throws Fen.ParseException {
+        final Random random = new Random(11);
+        for (final TestCase test : Suite.TESTS) {
+            final Position pos = Position.fromFen(test.fen());
+            int plies = 0;
+
+            // The incremental hash matches the hash of the same position parsed from FEN, castling and en passant included
+            while (!pos.moves().isEmpty() && plies < 60) {
+                pos.makeMove(pos.moves().get(random.nextInt(pos.moves().size())));
+                plies++;
+                assertEquals(Position.fromFen(pos.toFen()).zhash(), pos.zhash(), test.name() + " " + pos.toFen());
+            }
+            for (int i = 0; i < plies; i++) {
+                pos.undo();
+                assertEquals(Position.fromFen(pos.toFen()).zhash(), pos.zhash(), test.name() + " " + pos.toFen());
+            }
+        }
+    }
+
+    @Test
+    public void copyMake() throws Fen.ParseException {
+        final Random random = new Random(5);
+        final Position pos = Position.fromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        final CopyMakePosition copyMake = new CopyMakePosition(pos);
+
+        // Copy-make follows make/unmake exactly through random games
+        for (int game = 0; game < 20; game++) {
+            int plies = 0;
+            while (!pos.moves().isEmpty() && plies < 80) {
+                final int move = pos.moves().get(random.nextInt(pos.moves().size()));
+                pos.makeMove(move);
+                copyMake.makeMove(move);
+                plies++;
+                assertEquals(pos.toFen(), copyMake.toFen());
+                assertEquals(pos.zhash(), copyMake.zhash());
+                assertEquals(pos.moves().size(), copyMake.moves().size());
+                assertEquals(pos.isCheck(), copyMake.isCheck());
+            }
+            for (int i = 0; i < plies; i++) {
+                pos.undo();
+                copyMake.undo();
+            }
+            assertEquals(0, copyMake.ply());
+            assertEquals(pos.toFen(), copyMake.toFen());
+            assertEquals(pos.zhash(), copyMake.zhash());
+        }
+    }
+
+    @Test
+    public void copyMakeMaxPly() {
+        // Knights shuffle out and back
+        final Position pos = Position.starting();
+        final int[] shuffle = new int[4];
+        final String[] uci = {"g1f3", "g8f6", "f3g1", "f6g8"};
+        for (int i = 0; i < shuffle.length; i++) {
+            shuffle[i] = Uci.parse(pos, uci[i]);
+            pos.makeMove(shuffle[i]);
+        }
+
+        final CopyMakePosition copyMake = new CopyMakePosition(Position.starting());
+        for (int ply = 0; ply < CopyMakePosition.MAX_PLY; ply++) copyMake.makeMove(shuffle[ply % shuffle.length]);
+        assertEquals(CopyMakePosition.MAX_PLY, copyMake.ply());
+        assertThrows(IllegalStateException.class, () -> copyMake.makeMove(shuffle[0]));
+        assertEquals(CopyMakePosition.MAX_PLY, copyMake.ply());
+
+        copyMake.unmakeMove();
+        copyMake.makeMove(shuffle[3]);
+        assertEquals(pos.zhash(), copyMake.zhash());
+    }
+
+    private static boolean isKingAttacked(final Position pos) {
+        final byte kingSq = Square.ofBitboard(pos.board().pieces(pos.sideToMove(), PieceType.KING));
+        return MoveGenerator.isAttacked(pos, Colour.flip(pos.sideToMove()), kingSq, pos.board().occupied());
+    }
 }
@@ -0,0 +1,82 @@
+package dev.pig.stockpig.chess.notation;
+
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.perft.Suite;
+import dev.pig.stockpig.chess.perft.TestCase;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FEN tests, parsing into new and reused positions and formatting.
+ */
+public final class FenTest {
+
+    @Test
+    public void roundTrip() throws Fen.ParseException {
+        final Position reused = Position.empty();
+        final StringBuilder sb = new StringBuilder();
+        final Random random = new Random(7);
+
+        for (final TestCase test : Suite.TESTS) {
+            final Position pos = Fen.parse(test.fen());
+            assertEquals(test.fen(), Fen.format(pos));
+
+            // Walk a random game, every position must round trip through every parser
+            for (int ply = 0; ply < 40 && !pos.moves().isEmpty(); ply++) {
+                pos.makeMove(pos.moves().get(random.nextInt(pos.moves().size())));
+                final String fen = pos.toFen();
+
+                sb.setLength(0);
+                assertEquals(fen, Fen.formatInto(pos, sb).toString());
+
+                Fen.parseInto(fen, reused);
+                assertEquals(fen, reused.toFen());
+                assertEquals(pos.zhash(), reused.zhash());
+                assertEquals(pos.moves().size(), reused.moves().size());
+
+                final byte[] bytes = ("xx" + fen + "yy").getBytes(StandardCharsets.US_ASCII);
+                Fen.parseInto(bytes, 2, bytes.length - 4, reused);
+                assertEquals(fen, reused.toFen());
+                assertEquals(pos.zhash(), reused.zhash());
+            }
+        }
+    }
+
+    @Test
+    public void invalid() throws Fen.ParseException {
+        final Position reused = Position.empty();
+        final String[] invalid = {
+                "",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1 ",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR  w KQkq - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP w KQkq - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR/8 w KQkq - 0 1",
+                "rnbqkbnr/ppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                "rnbqkbnr/ppppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                "rnbqkbnr/pppppppp/9/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                "rnbqkbnx/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR x KQkq - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkx - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w  - 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq e4 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq i3 0 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - x 1",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1x",
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 12345678901",
+        };
+        for (final String fen : invalid) {
+            assertThrows(Fen.ParseException.class, () -> Fen.parseInto(fen, reused), fen);
+        }
+
+        // A position left unspecified by a failed parse is fully reset by the next parse
+        Fen.parseInto(Fen.STARTING, reused);
+        assertEquals(Fen.STARTING, reused.toFen());
+        assertEquals(Position.starting().zhash(), reused.zhash());
+        assertEquals(20, reused.moves().size());
+    }
+}
@@ -0,0 +1,96 @@
+package dev.pig.stockpig.chess.notation;
+
+import dev.pig.stockpig.chess.Castling;
+import dev.pig.stockpig.chess.Move;
+import dev.pig.stockpig.chess.MoveList;
+import dev.pig.stockpig.chess.PieceType;
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.bitboard.Square;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PGN and SAN tests.
+ */
+public final class PgnTest {
+
+    private static final String PGN = """
+            [Event "Test"]
+            [White "A \\"quoted\\" name"]
+            [Result "1-0"]
+
+            1. e4 {best by test} e5 2. Nf3 (2. f4 exf4 3. Nf3) 2... Nc6 $1 3.Bb5 a6
+            ; a line comment
+            4. Bxc6 dxc6 1-0
+
+            [Event "No result"]
+            % escaped line
+            1. d4 d5
+
+            [Event "Draw"]
+            [FEN "4k3/8/8/8/8/8/8/4K3 w - - 0 1"]
+            1. Kd2 Kd7 1/2-1/2
+            """;
+
+    @Test
+    public void readGames() throws IOException {
+        final Pgn.Reader reader = new Pgn.Reader(new StringReader(PGN));
+
+        final Pgn.Game first = reader.next();
+        assertEquals("Test", first.tags().get("Event"));
+        assertEquals("A \"quoted\" name", first.tags().get("White"));
+        assertEquals(List.of("e4", "e5", "Nf3", "Nc6", "Bb5", "a6", "Bxc6", "dxc6"), first.moves());
+        assertEquals(Pgn.WHITE_WINS, first.result());
+
+        final Pgn.Game second = reader.next();
+        assertEquals(List.of("d4", "d5"), second.moves());
+        assertEquals(Pgn.UNKNOWN, second.result());
+
+        final Pgn.Game third = reader.next();
+        assertEquals("4k3/8/8/8/8/8/8/4K3 w - - 0 1", third.tags().get("FEN"));
+        assertEquals(List.of("Kd2", "Kd7"), third.moves());
+        assertEquals(Pgn.DRAW, third.result());
+
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void parseSan() throws Fen.ParseException {
+        final Position pos = Position.fromFen("r3k2r/1P6/8/3pPN2/8/5N2/8/R3K2R w KQkq d6 0 1");
+        assertEquals(Castling.W_KING_SIDE_MOVE, San.parse(pos, "O-O"));
+        assertEquals(Castling.W_QUEEN_SIDE_MOVE, San.parse(pos, "0-0-0+"));
+        assertEquals(Move.enPassant(Square.E5, Square.D6), San.parse(pos, "exd6"));
+        assertEquals(Move.basic(Square.F3, Square.D4, PieceType.KNIGHT), San.parse(pos, "N3d4!?"));
+        assertEquals(Move.basic(Square.F5, Square.H4, PieceType.KNIGHT), San.parse(pos, "Nf5h4"));
+        assertEquals(Move.addPromotion(Move.capture(Square.B7, Square.A8, PieceType.PAWN, PieceType.ROOK), PieceType.QUEEN), San.parse(pos, "bxa8=Q+"));
+        assertEquals(Move.addPromotion(Move.basic(Square.B7, Square.B8, PieceType.PAWN), PieceType.KNIGHT), San.parse(pos, "b8N"));
+
+        assertThrows(IllegalArgumentException.class, () -> San.parse(pos, "Nd4"));   // ambiguous
+        assertThrows(IllegalArgumentException.class, () -> San.parse(pos, "b8"));    // missing promotion
+        assertThrows(IllegalArgumentException.class, () -> San.parse(pos, "Qd1"));   // no queen
+        assertThrows(IllegalArgumentException.class, () -> San.parse(pos, "Kd3"));   // not a king move
+        assertThrows(IllegalArgumentException.class, () -> San.parse(pos, "z9"));
+    }
+
+    @Test
+    public void sanRoundTrip_RandomGames() {
+        final Random random = new Random(5);
+        for (int game = 0; game < 50; game++) {
+            final Position pos = Position.starting();
+            for (int ply = 0; ply < 200 && !pos.moves().isEmpty(); ply++) {
+                final MoveList moves = new MoveList();
+                pos.moves().cloneInto(moves);
+                for (int i = 0; i < moves.size(); i++) {
+                    assertEquals(moves.get(i), San.parse(pos, San.format(pos, moves.get(i))), pos.toFen());
+                }
+                pos.makeMove(moves.get(random.nextInt(moves.size())));
+            }
+        }
+    }
+}
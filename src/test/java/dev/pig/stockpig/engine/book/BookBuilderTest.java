@@ -0,0 +1,135 @@
+package dev.pig.stockpig.engine.book;
+
+import dev.pig.stockpig.chess.MoveList;
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.notation.Pgn;
+import dev.pig.stockpig.chess.notation.San;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Book builder tests, building books from random games with and without spilling to disk.
+ */
+public final class BookBuilderTest {
+
+    private static final int GAMES = 300;
+    private static final int MAX_PLY = 12;
+
+    @TempDir
+    static Path dir;
+
+    private static PolyglotKey keys;
+    private static String pgn;
+
+    // Score in half points of each first move, from white's point of view
+    private static final Map<Integer, Integer> firstMoves = new HashMap<>();
+
+    @BeforeAll
+    public static void games() {
+        final Random random = new Random(13);
+        keys = PolyglotKeyTest.madeUp();
+
+        final String[] results = {Pgn.WHITE_WINS, Pgn.DRAW, Pgn.BLACK_WINS, Pgn.UNKNOWN};
+        final StringBuilder games = new StringBuilder();
+        for (int game = 0; game < GAMES; game++) {
+            final String result = results[random.nextInt(results.length)];
+            games.append("[Event \"").append(game).append("\"]\n[Result \"").append(result).append("\"]\n\n");
+
+            final Position pos = Position.starting();
+            final MoveList moves = new MoveList();
+            for (int ply = 0; ply < 20 && !pos.moves().isEmpty(); ply++) {
+                pos.moves().cloneInto(moves);
+                // Few distinct openings so that positions repeat across games
+                final int move = moves.get(random.nextInt(ply < 4 ? Math.min(3, moves.size()) : moves.size()));
+                if (ply % 2 == 0) games.append(ply / 2 + 1).append(". ");
+                games.append(San.format(pos, move)).append(' ');
+                if (ply == 0 && !result.equals(Pgn.UNKNOWN)) {
+                    firstMoves.merge(move, result.equals(Pgn.WHITE_WINS) ? 2 : result.equals(Pgn.DRAW) ? 1 : 0, Integer::sum);
+                }
+                pos.makeMove(move);
+            }
+            games.append(result).append("\n\n");
+        }
+        pgn = games.toString();
+    }
+
+    @Test
+    public void spilledRunsMergeToTheSameBook() throws IOException {
+        final Path inMemory = build(1 << 16, 1, "memory.bin");
+        final Path spilled = build(50, 1, "spilled.bin");
+        assertArrayEquals(Files.readAllBytes(inMemory), Files.readAllBytes(spilled));
+        assertFalse(Files.readAllBytes(inMemory).length == 0);
+        try (final var files = Files.list(dir)) {
+            assertEquals(0, files.filter(f -> f.getFileName().toString().startsWith("run-")).count());
+        }
+    }
+
+    @Test
+    public void entriesAreSortedAndScored() throws IOException {
+        final Path file = build(50, 1, "scored.bin");
+        final ByteBuffer book = ByteBuffer.wrap(Files.readAllBytes(file));
+        for (int i = OpeningBook.ENTRY_SIZE; i < book.capacity(); i += OpeningBook.ENTRY_SIZE) {
+            final int c = Long.compareUnsigned(book.getLong(i - OpeningBook.ENTRY_SIZE), book.getLong(i));
+            assertTrue(c < 0 || c == 0 && book.getShort(i - 6) >= book.getShort(i + 10));
+        }
+
+        // First moves, weighted by their score
+        final OpeningBook opening = OpeningBook.open(file, keys);
+        final Position start = Position.starting();
+        final long key = keys.key(start);
+        int found = 0;
+        for (int i = 0; i < book.capacity(); i += OpeningBook.ENTRY_SIZE) {
+            if (book.getLong(i) != key) continue;
+            final int move = moveOf(start, book.getShort(i + 8));
+            assertEquals(firstMoves.get(move), book.getShort(i + 10) & 0xFFFF);
+            found++;
+        }
+        assertEquals(firstMoves.values().stream().filter(score -> score > 0).count(), found);
+
+        final MoveList moves = new MoveList();
+        opening.moves(start, moves);
+        assertEquals(found, moves.size());
+    }
+
+    @Test
+    public void minGames() throws IOException {
+        final BookBuilder all = new BookBuilder(keys, MAX_PLY, 1, 1 << 16, dir);
+        final BookBuilder common = new BookBuilder(keys, MAX_PLY, 5, 1 << 16, dir);
+        all.add(new StringReader(pgn));
+        common.add(new StringReader(pgn));
+        all.write(dir.resolve("all.bin"));
+        common.write(dir.resolve("common.bin"));
+
+        assertEquals(GAMES, all.games() + all.skipped());
+        assertTrue(all.skipped() > 0);
+        assertTrue(common.entries() > 0 && common.entries() < all.entries());
+    }
+
+    private static Path build(final int maxEntries, final int minGames, final String name) throws IOException {
+        final BookBuilder builder = new BookBuilder(keys, MAX_PLY, minGames, maxEntries, dir);
+        builder.add(new StringReader(pgn));
+        final Path book = dir.resolve(name);
+        builder.write(book);
+        assertEquals(maxEntries < 1000, builder.runs() > 1);
+        return book;
+    }
+
+    private static int moveOf(final Position pos, final short polyglot) {
+        for (int i = 0; i < pos.moves().size(); i++) {
+            if (OpeningBook.encode(pos.moves().get(i)) == polyglot) return pos.moves().get(i);
+        }
+        throw new AssertionError("not a legal move");
+    }
+}
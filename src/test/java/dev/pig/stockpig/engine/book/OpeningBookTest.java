@@ -0,0 +1,127 @@
+package dev.pig.stockpig.engine.book;
+
+import dev.pig.stockpig.chess.Castling;
+import dev.pig.stockpig.chess.Move;
+import dev.pig.stockpig.chess.MoveList;
+import dev.pig.stockpig.chess.PieceType;
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.bitboard.Square;
+import dev.pig.stockpig.chess.notation.Fen;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Opening book tests, against a book written with a made up Random64 table since the Polyglot table
+ * is not shipped.
+ */
+public final class OpeningBookTest {
+
+    private static final String CASTLING = "r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1";
+    private static final String PROMOTION = "8/P7/8/8/8/8/8/k6K w - - 0 1";
+
+    @TempDir
+    static Path dir;
+
+    private static PolyglotKey keys;
+    private static OpeningBook book;
+
+    @BeforeAll
+    public static void write() throws IOException, Fen.ParseException {
+        final Random random = new Random(7);
+        keys = PolyglotKeyTest.madeUp();
+
+        final long start = keys.key(Position.starting());
+        final List<long[]> entries = new ArrayList<>();
+        entries.add(new long[]{start, entry(Square.E2, Square.E4, 0), 30});
+        entries.add(new long[]{start, entry(Square.D2, Square.D4, 0), 10});
+        entries.add(new long[]{start, entry(Square.E2, Square.E5, 0), 1000}); // not legal
+        entries.add(new long[]{start, entry(Square.G1, Square.F3, 0), 0});
+        entries.add(new long[]{keys.key(Position.fromFen(CASTLING)), entry(Square.E1, Square.H1, 0), 1});
+        entries.add(new long[]{keys.key(Position.fromFen(CASTLING)), entry(Square.E1, Square.A1, 0), 1});
+        entries.add(new long[]{keys.key(Position.fromFen(PROMOTION)), entry(Square.A7, Square.A8, 4), 2});
+        entries.add(new long[]{keys.key(Position.fromFen(PROMOTION)), entry(Square.A7, Square.A8, 1), 1});
+        for (int i = 0; i < 1000; i++) entries.add(new long[]{random.nextLong(), random.nextInt(1 << 16), random.nextInt(1 << 16)});
+        entries.sort((a, b) -> Long.compareUnsigned(a[0], b[0]));
+
+        final ByteBuffer buffer = ByteBuffer.allocate(entries.size() * OpeningBook.ENTRY_SIZE);
+        for (final long[] entry : entries) buffer.putLong(entry[0]).putShort((short) entry[1]).putShort((short) entry[2]).putInt(0);
+        final Path file = dir.resolve("book.bin");
+        Files.write(file, buffer.array());
+        book = OpeningBook.open(file, keys);
+    }
+
+    @Test
+    public void bestMove() throws Fen.ParseException {
+        assertEquals(1008, book.size());
+        assertEquals(Move.doublePush(Square.E2, Square.E4), book.bestMove(Position.starting()));
+        assertEquals(0, book.bestMove(Position.fromFen("4k3/8/8/8/8/8/8/4K3 w - - 0 1")));
+
+        final MoveList moves = new MoveList();
+        book.moves(Position.starting(), moves);
+        assertEquals(3, moves.size());
+    }
+
+    @Test
+    public void weightedMove() throws Fen.ParseException {
+        final Random random = new Random(3);
+        final Position pos = Position.starting();
+        int e4 = 0;
+        for (int i = 0; i < 4000; i++) {
+            final int move = book.weightedMove(pos, random);
+            if (move == Move.doublePush(Square.E2, Square.E4)) e4++;
+            else assertEquals(Move.doublePush(Square.D2, Square.D4), move);
+        }
+        assertEquals(3000, e4, 100);
+        assertEquals(0, book.weightedMove(Position.fromFen("4k3/8/8/8/8/8/8/4K3 w - - 0 1"), random));
+    }
+
+    @Test
+    public void castlingAndPromotion() throws Fen.ParseException {
+        final MoveList moves = new MoveList();
+        book.moves(Position.fromFen(CASTLING), moves);
+        assertEquals(2, moves.size());
+        assertEquals(Castling.W_KING_SIDE_MOVE, moves.get(0));
+        assertEquals(Castling.W_QUEEN_SIDE_MOVE, moves.get(1));
+
+        final int promotion = book.bestMove(Position.fromFen(PROMOTION));
+        assertTrue(Move.isPromotion(promotion));
+        assertEquals(PieceType.QUEEN, Move.promote(promotion));
+    }
+
+    @Test
+    public void enPassantOnlyHashedWhenCapturable() throws Fen.ParseException {
+        assertEquals(keys.key(Position.fromFen("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1")),
+                keys.key(Position.fromFen("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1")));
+        assertNotEquals(keys.key(Position.fromFen("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq - 0 3")),
+                keys.key(Position.fromFen("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3")));
+    }
+
+    @Test
+    public void loadRejectsOtherTables() throws IOException {
+        final Random random = new Random(11);
+        final StringBuilder table = new StringBuilder();
+        for (int i = 0; i < PolyglotKey.RANDOM_COUNT; i++) table.append(String.format("0x%016XULL,%n", random.nextLong()));
+
+        final Path file = dir.resolve("random64.c");
+        Files.writeString(file, table);
+        assertThrows(IOException.class, () -> PolyglotKey.load(file));
+
+        Files.writeString(file, table.substring(table.indexOf(",") + 1));
+        assertThrows(IOException.class, () -> PolyglotKey.load(file));
+    }
+
+    private static long entry(final byte from, final byte to, final int promotion) {
+        return (promotion << 12) | (from << 6) | to;
+    }
+}
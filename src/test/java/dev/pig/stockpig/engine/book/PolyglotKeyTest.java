@@ -0,0 +1,110 @@
+package dev.pig.stockpig.engine.book;
+
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.notation.Uci;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Polyglot key tests, for the published key vectors when the Random64 table is given with
+ * -Dstockpig.book.keys=file, and for the table entries each move changes with a made up table.
+ */
+public final class PolyglotKeyTest {
+
+    // Polyglot piece kind offsets
+    private static final int BLACK_PAWN = 0;
+    private static final int WHITE_PAWN = 64;
+    private static final int WHITE_ROOK = 7 * 64;
+    private static final int BLACK_KING = 10 * 64;
+    private static final int WHITE_KING = 11 * 64;
+
+    // Made up Random64 table
+    private static final long[] MADE_UP = new long[PolyglotKey.RANDOM_COUNT];
+    static {
+        final Random random = new Random(7);
+        for (int i = 0; i < MADE_UP.length; i++) MADE_UP[i] = random.nextLong();
+    }
+
+    /**
+     * Get a Polyglot key from a made up Random64 table, for tests that only need keys to be consistent.
+     * @return Polyglot key
+     */
+    static PolyglotKey madeUp() {
+        return new PolyglotKey(MADE_UP);
+    }
+
+    @Test
+    public void publishedKeys() throws IOException {
+        final String file = System.getProperty("stockpig.book.keys");
+        assumeTrue(file != null, "-Dstockpig.book.keys not given");
+        final PolyglotKey keys = PolyglotKey.load(Path.of(file));
+
+        assertKey(keys, PolyglotKey.STARTING_POSITION_KEY);
+        assertKey(keys, 0x823C9B50FD114196L, "e2e4");
+        assertKey(keys, 0x0756B94461C50FB0L, "e2e4", "d7d5");
+        assertKey(keys, 0x662FAFB965DB29D4L, "e2e4", "d7d5", "e4e5");
+        assertKey(keys, 0x22A48B5A8E47FF78L, "e2e4", "d7d5", "e4e5", "f7f5");
+        assertKey(keys, 0x652A607CA3F242C1L, "e2e4", "d7d5", "e4e5", "f7f5", "e1e2");
+        assertKey(keys, 0x00FDD303C946BDD9L, "e2e4", "d7d5", "e4e5", "f7f5", "e1e2", "e8f7");
+        assertKey(keys, 0x3C8123EA7B067637L, "a2a4", "b7b5", "h2h4", "b5b4", "c2c4");
+        assertKey(keys, 0x5C3F9B829B279560L, "a2a4", "b7b5", "h2h4", "b5b4", "c2c4", "b4c3", "a1a2");
+    }
+
+    @Test
+    public void tableLayout() {
+        final PolyglotKey keys = madeUp();
+        final Position pos = Position.starting();
+        final int turn = PolyglotKey.TURN_OFFSET;
+        final int ep = PolyglotKey.EP_OFFSET;
+        final int castle = PolyglotKey.CASTLE_OFFSET;
+
+        // The en passant file is only hashed when a pawn can take en passant
+        assertChange(keys, pos, "e2e4", turn, WHITE_PAWN + 12, WHITE_PAWN + 28);
+        assertChange(keys, pos, "d7d5", turn, BLACK_PAWN + 51, BLACK_PAWN + 35);
+        assertChange(keys, pos, "e4e5", turn, WHITE_PAWN + 28, WHITE_PAWN + 36);
+        assertChange(keys, pos, "f7f5", turn, BLACK_PAWN + 53, BLACK_PAWN + 37, ep + 5);
+
+        // Castling rights are lost with the king move
+        assertChange(keys, pos, "e1e2", turn, WHITE_KING + 4, WHITE_KING + 12, ep + 5, castle, castle + 1);
+        assertChange(keys, pos, "e8f7", turn, BLACK_KING + 60, BLACK_KING + 53, castle + 2, castle + 3);
+
+        // En passant capture and a rook move losing one castling right
+        final Position capture = Position.starting();
+        for (final String move : new String[]{"a2a4", "b7b5", "h2h4", "b5b4"}) capture.makeMove(Uci.parse(capture, move));
+        assertChange(keys, capture, "c2c4", turn, WHITE_PAWN + 10, WHITE_PAWN + 26, ep + 2);
+        assertChange(keys, capture, "b4c3", turn, BLACK_PAWN + 25, BLACK_PAWN + 18, WHITE_PAWN + 26, ep + 2);
+        assertChange(keys, capture, "a1a2", turn, WHITE_ROOK, WHITE_ROOK + 8, castle + 1);
+    }
+
+    /**
+     * Assert the Polyglot key of the position after a line from the starting position.
+     * @param keys Polyglot key
+     * @param expected expected key
+     * @param line UCI moves
+     */
+    private static void assertKey(final PolyglotKey keys, final long expected, final String... line) {
+        final Position pos = Position.starting();
+        for (final String move : line) pos.makeMove(Uci.parse(pos, move));
+        assertEquals(expected, keys.key(pos), String.join(" ", line));
+    }
+
+    /**
+     * Make a move and assert the key changes by exactly the given made up table entries.
+     * @param keys Polyglot key from the made up table
+     * @param pos position
+     * @param move UCI move
+     * @param entries Random64 table indexes
+     */
+    private static void assertChange(final PolyglotKey keys, final Position pos, final String move, final int... entries) {
+        long expected = keys.key(pos);
+        for (final int entry : entries) expected ^= MADE_UP[entry];
+        pos.makeMove(Uci.parse(pos, move));
+        assertEquals(expected, keys.key(pos), move);
+    }
+}
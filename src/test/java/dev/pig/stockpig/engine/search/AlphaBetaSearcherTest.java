@@ -0,0 +1,162 @@
+package dev.pig.stockpig.engine.search;
+
+import dev.pig.stockpig.chess.Colour;
+import dev.pig.stockpig.chess.MoveList;
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.notation.Fen;
+import dev.pig.stockpig.engine.bench.Suite;
+import dev.pig.stockpig.engine.bench.TestCase;
+import dev.pig.stockpig.engine.evaluation.PositionEvaluator;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Alpha-beta searcher tests, for principal variations, search with a transposition table and multi-PV search.
+ */
+public final class AlphaBetaSearcherTest {
+
+    private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 10";
+
+    @Test
+    public void principalVariation() throws Fen.ParseException {
+        final AlphaBetaSearcher searcher = new AlphaBetaSearcher();
+        for (final TestCase test : Suite.TESTS) {
+            for (int depth = 1; depth <= 4; depth++) {
+                final int move = searcher.search(Position.fromFen(test.fen()), depth);
+                final MoveList pv = searcher.pv();
+                if (move == 0) {
+                    assertTrue(pv.isEmpty());
+                    continue;
+                }
+                assertEquals(move, pv.get(0), test.name() + " depth " + depth);
+
+                // The line is playable, full length unless the game ends, and its last position has the score
+                final Position pos = Position.fromFen(test.fen());
+                for (int i = 0; i < pv.size(); i++) {
+                    assertTrue(pos.isValid(pv.get(i)), test.name() + " depth " + depth);
+                    pos.makeMove(pv.get(i));
+                }
+                assertTrue(pv.size() == depth || pos.isGameOver(), test.name() + " depth " + depth);
+                assertEquals(searcher.score(), PositionEvaluator.eval(pos, depth - pv.size()), test.name() + " depth " + depth);
+            }
+        }
+    }
+
+    @Test
+    public void maxDepth() {
+        final AlphaBetaSearcher searcher = new AlphaBetaSearcher();
+        assertThrows(IllegalArgumentException.class, () -> searcher.search(Position.starting(), AlphaBetaSearcher.MAX_DEPTH + 1));
+        assertEquals(0, searcher.search(Position.starting(), 0));
+    }
+
+    @Test
+    public void timeLimit() throws Fen.ParseException {
+        final AlphaBetaSearcher searcher = new AlphaBetaSearcher();
+        final Position pos = Position.fromFen(KIWIPETE);
+        final long start = System.nanoTime();
+        final int move = searcher.searchFor(pos, 200);
+        assertTrue(System.nanoTime() - start < 2000000000L);
+        assertTrue(searcher.depth() >= 1 && searcher.depth() < AlphaBetaSearcher.MAX_DEPTH);
+        assertEquals(move, searcher.pv().get(0));
+        assertEquals(KIWIPETE, pos.toFen());
+
+        // The result is that of the last depth completed
+        final AlphaBetaSearcher fixed = new AlphaBetaSearcher();
+        fixed.search(Position.fromFen(KIWIPETE), searcher.depth());
+        assertEquals(fixed.score(), searcher.score());
+        assertEquals(fixed.pv().get(0), move);
+    }
+
+    @Test
+    public void sameValueWithTranspositionTable() throws Fen.ParseException {
+        final AlphaBetaSearcher cached = new AlphaBetaSearcher();
+        cached.setTranspositionTable(new TranspositionTable());
+        for (final TestCase test : Suite.TESTS) {
+            final AlphaBetaSearcher plain = new AlphaBetaSearcher();
+            plain.search(Position.fromFen(test.fen()), 3);
+            cached.search(Position.fromFen(test.fen()), 3);
+            assertEquals(plain.score(), cached.score(), test.name());
+        }
+    }
+
+    @Test
+    public void multiPvLines() throws Fen.ParseException {
+        final AlphaBetaSearcher searcher = new AlphaBetaSearcher();
+        for (final TestCase test : Suite.TESTS) {
+            for (int depth = 1; depth <= 3; depth++) {
+                final AlphaBetaSearcher single = new AlphaBetaSearcher();
+                single.search(Position.fromFen(test.fen()), depth);
+
+                final Position pos = Position.fromFen(test.fen());
+                final List<AlphaBetaSearcher.Line> lines = searcher.searchMultiPv(pos, depth, 3);
+                assertEquals(test.fen(), pos.toFen());
+                if (lines.isEmpty()) {
+                    assertTrue(pos.isGameOver());
+                    continue;
+                }
+                assertEquals(single.score(), lines.get(0).score(), test.name() + " depth " + depth);
+                assertEquals(Math.min(3, pos.moves().size()), lines.size());
+
+                for (int k = 0; k < lines.size(); k++) {
+                    final AlphaBetaSearcher.Line line = lines.get(k);
+                    assertEquals(depth, line.depth());
+                    assertTrue(line.pv().size() >= 1 && line.pv().size() <= depth);
+                    if (k > 0) {
+                        // Best first, every line a different root move
+                        final int previous = lines.get(k-1).score();
+                        assertTrue(pos.sideToMove() == Colour.WHITE ? line.score() <= previous : line.score() >= previous);
+                        for (int j = 0; j < k; j++) assertNotEquals(lines.get(j).pv().get(0), line.pv().get(0));
+                    }
+
+                    // The line's score is the exact value of its root move
+                    final Position child = Position.fromFen(test.fen());
+                    child.makeMove(line.pv().get(0));
+                    if (depth > 1 && !child.isGameOver()) {
+                        final AlphaBetaSearcher reply = new AlphaBetaSearcher();
+                        reply.search(child, depth - 1);
+                        assertEquals(reply.score(), line.score(), test.name() + " depth " + depth + " line " + k);
+                    }
+
+                    // The line is playable
+                    final Position replay = Position.fromFen(test.fen());
+                    final MoveList pv = line.pv();
+                    for (int i = 0; i < pv.size(); i++) {
+                        assertTrue(replay.isValid(pv.get(i)));
+                        replay.makeMove(pv.get(i));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void multiPvSharesTable() throws Fen.ParseException {
+        final AlphaBetaSearcher three = new AlphaBetaSearcher();
+        three.searchMultiPv(Position.fromFen(KIWIPETE), 4, 3);
+
+        // Three lines cost less than three single line searches
+        final AlphaBetaSearcher plain = new AlphaBetaSearcher();
+        plain.search(Position.fromFen(KIWIPETE), 4);
+        assertTrue(three.nodes() < 3 * plain.nodes());
+
+        // A table too small to share anything costs several times more
+        final AlphaBetaSearcher unshared = new AlphaBetaSearcher();
+        unshared.setTranspositionTable(new TranspositionTable(1));
+        unshared.searchMultiPv(Position.fromFen(KIWIPETE), 4, 3);
+        assertTrue(4 * three.nodes() < unshared.nodes());
+
+        // The table is not kept for later searches
+        three.search(Position.fromFen(KIWIPETE), 4);
+        assertEquals(plain.nodes(), three.nodes());
+    }
+
+    @Test
+    public void multiPvNoLegalMoves() throws Fen.ParseException {
+        final AlphaBetaSearcher searcher = new AlphaBetaSearcher();
+        assertTrue(searcher.searchMultiPv(Position.fromFen("7k/7P/6K1/8/3B4/8/8/8 b - - 0 1"), 3, 3).isEmpty());
+        assertTrue(searcher.searchMultiPv(Position.fromFen("7k/8/6K1/8/8/8/8/1Q6 w - - 0 1"), 3, 0).isEmpty());
+    }
+}
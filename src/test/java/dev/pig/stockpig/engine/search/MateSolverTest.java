@@ -0,0 +1,126 @@
+package dev.pig.stockpig.engine.search;
+
+import dev.pig.stockpig.chess.Castling;
+import dev.pig.stockpig.chess.Colour;
+import dev.pig.stockpig.chess.MoveGenerator;
+import dev.pig.stockpig.chess.MoveList;
+import dev.pig.stockpig.chess.PieceType;
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.bitboard.Square;
+import dev.pig.stockpig.chess.notation.Fen;
+import dev.pig.stockpig.engine.tablebase.Generator;
+import dev.pig.stockpig.engine.tablebase.Material;
+import dev.pig.stockpig.engine.tablebase.Tablebases;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Mate solver tests, solving known mates and checking the mate distances of sampled 3 piece positions
+ * against the tablebases.
+ */
+public final class MateSolverTest {
+
+    private static final int TABLE_BITS = 18;
+
+    @TempDir
+    static Path dir;
+
+    @Test
+    public void knownMates() throws Fen.ParseException {
+        assertMate("r2qkb1r/pp2nppp/3p4/2pNN1B1/2BnP3/3P4/PPP2PPP/R2bK2R w KQkq - 1 1", 2);
+        assertMate("r2r1n2/pp2bk2/2p1p2p/3q4/3PN1QP/2P3R1/P4PP1/5RK1 w - - 0 1", 4);
+        assertMate("6k1/3b3r/1p1p4/p1n2p2/1PPNpP1q/P3Q1p1/1R1RB1P1/5K2 b - - 0 1", 5);
+        assertMate("7k/8/6K1/8/8/8/8/1Q6 w - - 0 1", 1);
+        assertMate("1q6/8/8/8/8/6k1/8/7K b - - 0 1", 1);
+
+        // The fastest line is found, though a longer mate is also available
+        final MateSolver solver = new MateSolver(TABLE_BITS);
+        final Position pos = Position.fromFen("r2qkb1r/pp2nppp/3p4/2pNN1B1/2BnP3/3P4/PPP2PPP/R2bK2R w KQkq - 1 1");
+        assertEquals(2, solver.solve(pos, 4));
+        assertEquals("r2qkb1r/pp2nppp/3p4/2pNN1B1/2BnP3/3P4/PPP2PPP/R2bK2R w KQkq - 1 1", pos.toFen());
+    }
+
+    @Test
+    public void noMate() throws Fen.ParseException {
+        final MateSolver solver = new MateSolver(TABLE_BITS);
+        assertEquals(0, solver.solve(Position.starting(), 2));
+        assertTrue(solver.line().isEmpty());
+
+        // Mated, stalemated, and mate only beyond the maximum moves
+        assertEquals(0, solver.solve(Position.fromFen("7k/7P/6K1/8/3B4/8/8/8 b - - 0 1"), 3));
+        assertEquals(0, solver.solve(Position.fromFen("8/8/8/8/8/6k1/6p1/6K1 w - - 0 1"), 3));
+        assertEquals(0, solver.solve(Position.fromFen("6k1/3b3r/1p1p4/p1n2p2/1PPNpP1q/P3Q1p1/1R1RB1P1/5K2 b - - 0 1"), 4));
+
+        // Node limit reached
+        solver.setMaxNodes(100);
+        assertEquals(0, solver.solve(Position.fromFen("r2r1n2/pp2bk2/2p1p2p/3q4/3PN1QP/2P3R1/P4PP1/5RK1 w - - 0 1"), 4));
+    }
+
+    @Test
+    public void agreesWithTablebases() throws IOException {
+        Generator.generate(dir, Material.parse("KQvK"));
+        Generator.generate(dir, Material.parse("KRvK"));
+        final Tablebases tablebases = Tablebases.open(dir);
+
+        final Random random = new Random(29);
+        final MateSolver solver = new MateSolver(TABLE_BITS);
+        final Position pos = Position.empty();
+        int mates = 0, checked = 0;
+        while (checked < 200) {
+            final byte pt = checked % 2 == 0 ? PieceType.QUEEN : PieceType.ROOK;
+            final byte wk = (byte) random.nextInt(64);
+            final byte bk = (byte) random.nextInt(64);
+            final byte sq = (byte) random.nextInt(64);
+            if (wk == bk || wk == sq || bk == sq) continue;
+
+            pos.board().clear();
+            pos.board().addPiece(Colour.WHITE, PieceType.KING, wk);
+            pos.board().addPiece(Colour.BLACK, PieceType.KING, bk);
+            pos.board().addPiece(Colour.WHITE, pt, sq);
+            if (MoveGenerator.isAttacked(pos, Colour.WHITE, bk, pos.board().occupied())) continue;
+            pos.reset(Colour.WHITE, Castling.NONE, Square.EMPTY, 0, 1);
+
+            // Positions won within 3 moves are solved in the same number of moves, all others have no mate
+            final int dtm = tablebases.probeWdl(pos) == Tablebases.WIN ? tablebases.probeDtm(pos) : Integer.MAX_VALUE;
+            final int expected = dtm <= 5 ? (dtm + 1) / 2 : 0;
+            assertEquals(expected, solver.solve(pos, 3), pos.toFen());
+            if (expected > 0) {
+                assertLineMates(pos, solver.line(), expected);
+                mates++;
+            }
+            checked++;
+        }
+        assertTrue(mates > 10);
+    }
+
+    /**
+     * Assert the solver finds a mate in exactly the given moves, with a line that ends in checkmate.
+     * @param fen FEN string
+     * @param mate expected mate in N moves
+     */
+    private static void assertMate(final String fen, final int mate) throws Fen.ParseException {
+        final MateSolver solver = new MateSolver(TABLE_BITS);
+        final Position pos = Position.fromFen(fen);
+        assertEquals(mate, solver.solve(pos, mate + 1), fen);
+        assertEquals(fen, pos.toFen());
+        assertLineMates(pos, solver.line(), mate);
+    }
+
+    private static void assertLineMates(final Position pos, final MoveList line, final int mate) {
+        assertEquals(2 * mate - 1, line.size());
+        final String fen = pos.toFen();
+        for (int i = 0; i < line.size(); i++) {
+            assertTrue(pos.isLegal(line.get(i)), fen);
+            pos.makeMove(line.get(i));
+        }
+        assertTrue(pos.isCheckmate(), fen);
+        for (int i = 0; i < line.size(); i++) pos.undo();
+        assertEquals(fen, pos.toFen());
+    }
+}
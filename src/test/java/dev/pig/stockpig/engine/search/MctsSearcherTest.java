@@ -0,0 +1,109 @@
+package dev.pig.stockpig.engine.search;
+
+import dev.pig.stockpig.chess.Move;
+import dev.pig.stockpig.chess.PieceType;
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.bitboard.Square;
+import dev.pig.stockpig.chess.notation.Fen;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Monte Carlo tree searcher tests, for every selection policy and leaf valuation, single and multi threaded.
+ */
+public final class MctsSearcherTest {
+
+    private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 10";
+
+    @Test
+    public void findsMateAndWinsMaterial() throws Fen.ParseException {
+        for (final MctsSearcher.Selection selection : MctsSearcher.Selection.values()) {
+            for (final MctsSearcher.Leaf leaf : MctsSearcher.Leaf.values()) {
+                final MctsSearcher searcher = new MctsSearcher(1 << 16, 1, selection, leaf);
+                final String config = selection + " " + leaf;
+
+                final Position mate = Position.fromFen("7k/8/6K1/8/8/8/8/1Q6 w - - 0 1");
+                assertEquals(Move.basic(Square.B1, Square.B8, PieceType.QUEEN), searcher.search(mate, 5000), config);
+                assertTrue(searcher.value() > 0.99, config);
+
+                final Position queen = Position.fromFen("rnbqkbnr/pppp1ppp/8/4p3/3Q4/8/PPPPPPPP/RNB1KBNR b KQkq - 0 1");
+                assertEquals(Move.capture(Square.E5, Square.D4, PieceType.PAWN, PieceType.QUEEN), searcher.search(queen, 5000), config);
+                assertEquals("rnbqkbnr/pppp1ppp/8/4p3/3Q4/8/PPPPPPPP/RNB1KBNR b KQkq - 0 1", queen.toFen());
+            }
+        }
+    }
+
+    @Test
+    public void noLegalMoves() throws Fen.ParseException {
+        final MctsSearcher searcher = new MctsSearcher();
+        assertEquals(0, searcher.search(Position.fromFen("7k/7P/6K1/8/3B4/8/8/8 b - - 0 1"), 100));
+        assertEquals(0.5, searcher.value());
+    }
+
+    @Test
+    public void nodeBudget() throws Fen.ParseException {
+        final MctsSearcher searcher = new MctsSearcher(1000, 2, MctsSearcher.Selection.PUCT, MctsSearcher.Leaf.EVAL);
+        searcher.search(Position.fromFen(KIWIPETE), 100000);
+        assertTrue(searcher.nodes() <= 1000);
+        assertTrue(searcher.playouts() < 100000);
+        assertEquals(searcher.playouts(), searcher.rootVisits());
+    }
+
+    @Test
+    public void parallelPlayouts() throws Fen.ParseException {
+        final MctsSearcher searcher = new MctsSearcher(1 << 20, 4, MctsSearcher.Selection.UCT, MctsSearcher.Leaf.ROLLOUT);
+        final Position pos = Position.fromFen(KIWIPETE);
+        assertNotEquals(0, searcher.search(pos, 4000));
+        assertEquals(4000, searcher.playouts());
+
+        // Every virtual loss was removed
+        assertEquals(4000, searcher.rootVisits());
+        assertEquals(KIWIPETE, pos.toFen());
+    }
+
+    @Test
+    public void treeReuse() {
+        final MctsSearcher searcher = new MctsSearcher(1 << 18, 1, MctsSearcher.Selection.PUCT, MctsSearcher.Leaf.EVAL);
+        final Position pos = Position.starting();
+        final int move = searcher.search(pos, 2000);
+        assertEquals(0, searcher.reused());
+        final int nodes = searcher.nodes();
+
+        // Same position, the whole tree is kept
+        searcher.search(pos, 1000);
+        assertEquals(nodes, searcher.reused());
+        assertEquals(3000, searcher.rootVisits());
+
+        // After a move and a reply, the subtree is kept and compacted
+        pos.makeMove(move);
+        pos.makeMove(pos.moves().get(0));
+        searcher.search(pos, 1000);
+        final int reused = searcher.reused();
+        assertTrue(reused > 0 && reused < searcher.nodes());
+        assertTrue(searcher.rootVisits() > 1000);
+
+        // Unrelated position, the tree starts again
+        searcher.search(Position.starting(), 1000);
+        assertEquals(0, searcher.reused());
+        assertEquals(1000, searcher.rootVisits());
+
+        searcher.clear();
+        searcher.search(Position.starting(), 1000);
+        assertEquals(0, searcher.reused());
+    }
+
+    @Test
+    public void treeReuseWhenFull() throws Fen.ParseException {
+        // A budget of a multiple of 64 nodes, filled on every move of a game
+        final MctsSearcher searcher = new MctsSearcher(1 << 12, 2, MctsSearcher.Selection.PUCT, MctsSearcher.Leaf.EVAL);
+        final Position pos = Position.fromFen(KIWIPETE);
+        for (int ply = 0; ply < 12 && !pos.isGameOver(); ply++) {
+            final int move = searcher.search(pos, 100_000);
+            assertTrue(pos.isValid(move));
+            assertTrue(searcher.reused() <= searcher.nodes() && searcher.nodes() <= 1 << 12);
+            assertEquals(ply > 0, searcher.reused() > 0);
+            pos.makeMove(move);
+        }
+    }
+}
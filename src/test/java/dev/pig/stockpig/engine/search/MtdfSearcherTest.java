@@ -0,0 +1,85 @@
+package dev.pig.stockpig.engine.search;
+
+import dev.pig.stockpig.chess.Move;
+import dev.pig.stockpig.chess.PieceType;
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.bitboard.Square;
+import dev.pig.stockpig.chess.notation.Fen;
+import dev.pig.stockpig.engine.bench.Suite;
+import dev.pig.stockpig.engine.bench.TestCase;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MTD(f) searcher tests, comparing values and best moves with fixed depth alpha-beta searches.
+ */
+public final class MtdfSearcherTest {
+
+    @Test
+    public void sameValueAsAlphaBeta() throws Fen.ParseException {
+        final MtdfSearcher mtdf = new MtdfSearcher();
+        for (final TestCase test : Suite.TESTS) {
+            for (int depth = 1; depth <= 3; depth++) {
+                final AlphaBetaSearcher alphaBeta = new AlphaBetaSearcher();
+                alphaBeta.search(Position.fromFen(test.fen()), depth);
+
+                final Position pos = Position.fromFen(test.fen());
+                final int move = mtdf.search(pos, depth);
+                assertEquals(alphaBeta.score(), mtdf.score(), test.name() + " depth " + depth);
+                assertEquals(test.fen(), pos.toFen());
+                if (move == 0) continue;
+
+                // The best move leads to the value
+                pos.makeMove(move);
+                if (depth > 1 && !pos.isGameOver()) {
+                    final AlphaBetaSearcher reply = new AlphaBetaSearcher();
+                    reply.search(pos, depth - 1);
+                    assertEquals(mtdf.score(), reply.score(), test.name() + " depth " + depth);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void fewerNodesThanAlphaBeta() throws Fen.ParseException {
+        final String fen = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 10";
+        final AlphaBetaSearcher alphaBeta = new AlphaBetaSearcher();
+        alphaBeta.search(Position.fromFen(fen), 4);
+        final MtdfSearcher mtdf = new MtdfSearcher();
+        mtdf.search(Position.fromFen(fen), 4);
+        assertEquals(alphaBeta.score(), mtdf.score());
+        assertTrue(mtdf.nodes() < alphaBeta.nodes());
+        assertTrue(mtdf.passes() >= 8);
+    }
+
+    @Test
+    public void findsMate() throws Fen.ParseException {
+        final MtdfSearcher mtdf = new MtdfSearcher();
+        assertEquals(Move.basic(Square.B1, Square.B8, PieceType.QUEEN), mtdf.search(Position.fromFen("7k/8/6K1/8/8/8/8/1Q6 w - - 0 1"), 3));
+        assertEquals(Move.basic(Square.B8, Square.B1, PieceType.QUEEN), mtdf.search(Position.fromFen("1q6/8/8/8/8/6k1/8/7K b - - 0 1"), 3));
+        assertEquals(0, mtdf.search(Position.fromFen("7k/7P/6K1/8/3B4/8/8/8 b - - 0 1"), 3));
+    }
+
+    @Test
+    public void transpositionTable() {
+        final TranspositionTable table = new TranspositionTable(4);
+        final long key = 0x123456789ABCDEFL;
+        assertEquals(-1, table.probe(key));
+
+        table.store(key, 5, -300, TranspositionTable.LOWER, 1234);
+        final int entry = table.probe(key);
+        assertEquals(5, table.depth(entry));
+        assertEquals(-300, table.score(entry));
+        assertEquals(TranspositionTable.LOWER, table.bound(entry));
+        assertEquals(1234, table.move(entry));
+
+        // Same index, different key
+        assertEquals(-1, table.probe(key ^ 1L));
+        table.store(key ^ 1L, 1, 0, TranspositionTable.EXACT, 0);
+        assertEquals(-1, table.probe(key));
+
+        table.clear();
+        assertEquals(-1, table.probe(key ^ 1L));
+    }
+}
@@ -0,0 +1,85 @@
+package dev.pig.stockpig.engine.search;
+
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.notation.Uci;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Ponderer tests, for a ponderhit, a miss and replies that cannot be pondered.
+ */
+public final class PondererTest {
+
+    @Test
+    public void ponderhit() throws InterruptedException {
+        final AlphaBetaSearcher searcher = new AlphaBetaSearcher();
+        searcher.setTranspositionTable(new TranspositionTable());
+        final Ponderer ponderer = new Ponderer(searcher);
+        final Position pos = Position.starting();
+        pos.makeMove(Uci.parse(pos, "e2e4"));
+        final int reply = Uci.parse(pos, "e7e5");
+
+        assertTrue(ponderer.ponder(pos, reply));
+        assertEquals(reply, ponderer.reply());
+        assertFalse(ponderer.isPondering(pos));
+        pos.makeMove(reply);
+        assertTrue(ponderer.isPondering(pos));
+        Thread.sleep(200);
+
+        // The search carries on for the time limit, from the depths pondered
+        final long start = System.nanoTime();
+        final int move = ponderer.ponderhit(100);
+        assertTrue(System.nanoTime() - start < 2000000000L);
+        assertFalse(ponderer.isPondering());
+        assertTrue(pos.isValid(move));
+        assertEquals(move, searcher.pv().get(0));
+        assertTrue(searcher.depth() >= 2);
+        assertEquals(0, ponderer.ponderhit(100));
+    }
+
+    @Test
+    public void miss() throws InterruptedException {
+        final AlphaBetaSearcher searcher = new AlphaBetaSearcher();
+        final Ponderer ponderer = new Ponderer(searcher);
+        final Position pos = Position.starting();
+        pos.makeMove(Uci.parse(pos, "d2d4"));
+
+        assertTrue(ponderer.ponder(pos, Uci.parse(pos, "d7d5")));
+        Thread.sleep(100);
+        final long start = System.nanoTime();
+        ponderer.miss();
+        assertTrue(System.nanoTime() - start < 1000000000L);
+        assertFalse(ponderer.isPondering());
+        assertEquals(0, ponderer.reply());
+
+        // The stop is cleared for the next search
+        pos.makeMove(Uci.parse(pos, "g8f6"));
+        final int move = searcher.search(pos, 3);
+        assertEquals(3, searcher.depth());
+        assertTrue(pos.isValid(move));
+
+        // A miss straight after pondering starts is not lost
+        for (int i = 0; i < 20; i++) {
+            assertTrue(ponderer.ponder(pos, pos.moves().get(i)));
+            ponderer.miss();
+        }
+    }
+
+    @Test
+    public void replyNotPondered() {
+        final Ponderer ponderer = new Ponderer(new AlphaBetaSearcher());
+        final Position pos = Position.starting();
+        assertFalse(ponderer.ponder(pos, 0));
+        final Position black = Position.starting();
+        black.makeMove(Uci.parse(black, "e2e4"));
+        assertFalse(ponderer.ponder(pos, Uci.parse(black, "e7e5")));
+
+        // Fool's mate, the reply ends the game
+        pos.makeMove(Uci.parse(pos, "f2f3"));
+        pos.makeMove(Uci.parse(pos, "e7e5"));
+        pos.makeMove(Uci.parse(pos, "g2g4"));
+        assertFalse(ponderer.ponder(pos, Uci.parse(pos, "d8h4")));
+        assertFalse(ponderer.isPondering());
+    }
+}
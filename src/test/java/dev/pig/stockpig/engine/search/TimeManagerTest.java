@@ -0,0 +1,97 @@
+package dev.pig.stockpig.engine.search;
+
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.notation.Fen;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Time manager tests, for the limits allocated from the clock and the scaling of the soft limit.
+ */
+public final class TimeManagerTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void limits() {
+        // Sudden death
+        final TimeManager suddenDeath = new TimeManager(60020, 0, 0);
+        assertEquals(2000, suddenDeath.softLimit());
+        assertEquals(8000, suddenDeath.hardLimit());
+
+        // Increment and moves to go
+        final TimeManager increment = new TimeManager(10020, 1000, 10);
+        assertEquals(1750, increment.softLimit());
+        assertEquals(7000, increment.hardLimit());
+
+        // Never more than the time left
+        final TimeManager lastMove = new TimeManager(5020, 2000, 1);
+        assertEquals(5000, lastMove.softLimit());
+        assertEquals(5000, lastMove.hardLimit());
+        final TimeManager flagging = new TimeManager(10, 0, 0);
+        assertEquals(0, flagging.softLimit());
+        assertEquals(0, flagging.hardLimit());
+        assertTrue(flagging.hardLimitReached());
+
+        final TimeManager fixed = TimeManager.fixed(300);
+        assertEquals(300, fixed.softLimit());
+        assertEquals(300, fixed.hardLimit());
+        assertFalse(fixed.hardLimitReached());
+    }
+
+    @Test
+    public void stableBestMoveStopsEarly() {
+        final TimeManager time = new TimeManager(60020, 0, 0);
+        // The next depth is started until half the soft limit has gone, a quarter once stable
+        for (int depth = 1; depth <= TimeManager.STABLE_DEPTHS; depth++) {
+            assertFalse(time.stopAfter(1, 100, 700 * MS));
+        }
+        assertTrue(time.stopAfter(1, 100, 700 * MS));
+        assertFalse(time.stopAfter(2, 100, 700 * MS));
+    }
+
+    @Test
+    public void flipOrScoreDropExtends() {
+        final TimeManager time = new TimeManager(60020, 0, 0);
+        assertTrue(time.stopAfter(1, 100, 1000 * MS));
+
+        // Best move changes
+        assertFalse(time.stopAfter(2, 100, 1250 * MS));
+        assertTrue(time.stopAfter(2, 100, 1250 * MS));
+
+        // Score drops, a smaller fall does not extend
+        assertFalse(time.stopAfter(2, 100 - TimeManager.SCORE_DROP, 1250 * MS));
+        assertTrue(time.stopAfter(2, 100 - TimeManager.SCORE_DROP - 1, 1250 * MS));
+
+        // Both
+        assertFalse(time.stopAfter(3, -1000, 2200 * MS));
+        assertTrue(time.stopAfter(4, -2000, 2250 * MS));
+
+        // Never past the hard limit
+        final TimeManager lastMove = new TimeManager(5020, 0, 1);
+        assertFalse(lastMove.stopAfter(1, 100, 2499 * MS));
+        assertFalse(lastMove.stopAfter(2, -1000, 4999 * MS));
+        assertTrue(lastMove.stopAfter(3, -2000, 5000 * MS));
+    }
+
+    @Test
+    public void fixedUsesAllTheTime() {
+        final TimeManager time = TimeManager.fixed(1000);
+        for (int depth = 1; depth <= 2 * TimeManager.STABLE_DEPTHS; depth++) {
+            assertFalse(time.stopAfter(1, 100, 999 * MS));
+        }
+        assertTrue(time.stopAfter(1, 100, 1000 * MS));
+    }
+
+    @Test
+    public void search() throws Fen.ParseException {
+        final AlphaBetaSearcher searcher = new AlphaBetaSearcher();
+        final Position pos = Position.fromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 10");
+        final TimeManager time = new TimeManager(3020, 0, 30);
+        final int move = searcher.search(pos, time);
+        assertTrue(time.elapsed() < time.hardLimit() * MS + 1000 * MS);
+        assertTrue(searcher.depth() >= 1);
+        assertTrue(pos.isValid(move));
+    }
+}
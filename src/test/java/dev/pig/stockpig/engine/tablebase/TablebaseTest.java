@@ -0,0 +1,191 @@
+package dev.pig.stockpig.engine.tablebase;
+
+import dev.pig.stockpig.chess.Castling;
+import dev.pig.stockpig.chess.Colour;
+import dev.pig.stockpig.chess.MoveGenerator;
+import dev.pig.stockpig.chess.MoveList;
+import dev.pig.stockpig.chess.PieceType;
+import dev.pig.stockpig.chess.Position;
+import dev.pig.stockpig.chess.bitboard.Bitboard;
+import dev.pig.stockpig.chess.bitboard.Square;
+import dev.pig.stockpig.chess.notation.Fen;
+import dev.pig.stockpig.engine.search.AlphaBetaSearcher;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tablebase tests, generates the 3 piece tables and checks them against known positions and against
+ * a one ply search of every sampled position, and the one piece a side 4 piece tables for en passant.
+ */
+public final class TablebaseTest {
+
+    @TempDir
+    static Path dir;
+
+    private static Tablebases tablebases;
+
+    @BeforeAll
+    public static void generate() throws IOException {
+        Generator.generate(dir, 3);
+        tablebases = Tablebases.open(dir);
+    }
+
+    @Test
+    public void materials() {
+        final List<Material> all = Material.all(4);
+        assertEquals(35, all.size());
+        assertEquals("KQvK", all.get(0).name());
+        for (final Material material : all) {
+            assertEquals(material.name(), Material.parse(material.name()).name());
+        }
+        assertEquals(5, tablebases.size());
+        assertEquals(3, tablebases.maxPieces());
+    }
+
+    @Test
+    public void knownPositions() throws Fen.ParseException {
+        // Mate in 1, for either colour
+        assertProbe("7k/8/6K1/8/8/8/8/1Q6 w - - 0 1", Tablebases.WIN, 1);
+        assertProbe("1q6/8/8/8/8/6k1/8/7K b - - 0 1", Tablebases.WIN, 1);
+
+        // Checkmate and stalemate
+        assertProbe("Q6k/8/6K1/8/8/8/8/8 b - - 0 1", Tablebases.LOSS, 0);
+        assertProbe("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1", Tablebases.DRAW, 0);
+
+        // Rook wins from afar
+        assertProbe("8/8/8/3k4/8/8/8/K6R w - - 0 1", Tablebases.WIN, -1);
+
+        // King and pawn opposition, winning only if black has to give way
+        assertProbe("8/4k3/8/4K3/4P3/8/8/8 w - - 0 1", Tablebases.DRAW, 0);
+        assertProbe("8/4k3/8/4K3/4P3/8/8/8 b - - 0 1", Tablebases.LOSS, 28);
+        assertProbe("4k3/8/4K3/4P3/8/8/8/8 w - - 0 1", Tablebases.WIN, -1);
+        assertProbe("4K3/8/4k3/4p3/8/8/8/8 b - - 0 1", Tablebases.WIN, -1);
+
+        // En passant target that no pawn can take
+        assertProbe("8/8/8/4P3/8/6k1/8/2K5 b - e6 0 1", Tablebases.LOSS, -1);
+
+        // Not probed
+        assertEquals(Tablebases.DRAW, tablebases.probeWdl(Position.fromFen("4k3/8/8/8/8/8/8/4K3 w - - 0 1")));
+        assertEquals(Tablebases.UNKNOWN, tablebases.probeWdl(Position.fromFen("4k3/8/8/8/8/8/8/R3K3 w Q - 0 1")));
+        assertEquals(Tablebases.UNKNOWN, tablebases.probeWdl(Position.fromFen("4k3/8/8/8/8/8/8/R2QK3 w - - 0 1")));
+    }
+
+    @Test
+    public void consistentWithChildren() {
+        final Random random = new Random(17);
+        final Position pos = Position.empty();
+        final MoveList moves = new MoveList();
+        final byte[][] materials = {{PieceType.PAWN}, {PieceType.ROOK}, {PieceType.QUEEN}};
+
+        int checked = 0;
+        while (checked < 3000) {
+            final byte pt = materials[checked % materials.length][0];
+            final boolean strong = random.nextBoolean();
+            final boolean sideToMove = random.nextBoolean();
+            final byte wk = (byte) random.nextInt(64);
+            final byte bk = (byte) random.nextInt(64);
+            final byte sq = (byte) random.nextInt(64);
+            if (wk == bk || wk == sq || bk == sq) continue;
+            if (pt == PieceType.PAWN && ((sq >>> 3) == 0 || (sq >>> 3) == 7)) continue;
+
+            pos.board().clear();
+            pos.board().addPiece(Colour.WHITE, PieceType.KING, wk);
+            pos.board().addPiece(Colour.BLACK, PieceType.KING, bk);
+            pos.board().addPiece(strong, pt, sq);
+            final byte theirKing = sideToMove == Colour.WHITE ? bk : wk;
+            if (MoveGenerator.isAttacked(pos, sideToMove, theirKing, pos.board().occupied())) continue;
+            pos.reset(sideToMove, Castling.NONE, Square.EMPTY, 0, 1);
+
+            final int probe = tablebases.probe(pos);
+            final int wdl = Tablebases.wdl(probe);
+            final int dtm = Tablebases.dtm(probe);
+            assertEquals(wdl, tablebases.probeWdl(pos));
+            assertEquals(dtm, tablebases.probeDtm(pos));
+
+            // Best child from the side to move's point of view
+            int expectedWdl = pos.moves().isEmpty() ? (pos.isCheck() ? Tablebases.LOSS : Tablebases.DRAW) : Tablebases.LOSS;
+            int expectedDtm = 0;
+            pos.moves().cloneInto(moves);
+            for (int i = 0; i < moves.size(); i++) {
+                pos.makeMove(moves.get(i));
+                final int childWdl = -tablebases.probeWdl(pos);
+                final int childDtm = tablebases.probeDtm(pos) + 1;
+                pos.unmakeMove();
+
+                if (childWdl > expectedWdl) {
+                    expectedWdl = childWdl;
+                    expectedDtm = childWdl == Tablebases.DRAW ? 0 : childDtm;
+                } else if (childWdl == expectedWdl && childWdl == Tablebases.WIN) {
+                    expectedDtm = Math.min(expectedDtm, childDtm);
+                } else if (childWdl == expectedWdl && childWdl == Tablebases.LOSS) {
+                    expectedDtm = Math.max(expectedDtm, childDtm);
+                }
+            }
+
+            final String fen = pos.toFen();
+            assertEquals(expectedWdl, wdl, fen);
+            assertEquals(expectedDtm, dtm, fen);
+            checked++;
+        }
+    }
+
+    @Test
+    public void doublePushTakenEnPassant(@TempDir final Path four) throws IOException, Fen.ParseException {
+        Generator.generate(four, 3);
+        for (final Material material : Material.all(4)) {
+            if (material.white().length == 1 && material.black().length == 1) Generator.generate(four, material);
+        }
+        final Tablebases pawns = Tablebases.open(four);
+
+        // The double push would win, were it not taken en passant
+        final Position pos = Position.fromFen("8/8/8/8/1p6/6k1/P7/K7 w - - 0 1");
+        assertEquals(Tablebases.DRAW, pawns.probeWdl(pos));
+        assertEquals(0, pawns.probeDtm(pos));
+
+        // The position after it is not probed, the same position without the target is lost
+        assertEquals(Tablebases.UNKNOWN, pawns.probeWdl(Position.fromFen("8/8/8/8/Pp6/6k1/8/K7 b - a3 0 1")));
+        assertEquals(Tablebases.LOSS, pawns.probeWdl(Position.fromFen("8/8/8/8/Pp6/6k1/8/K7 b - - 0 1")));
+    }
+
+    @Test
+    public void searchFollowsDistanceToMate() throws Fen.ParseException {
+        final AlphaBetaSearcher searcher = new AlphaBetaSearcher();
+        searcher.setTablebases(tablebases);
+
+        final Position pos = Position.fromFen("8/8/8/3k4/8/8/8/K6R w - - 0 1");
+        int dtm = tablebases.probeDtm(pos);
+        while (dtm > 0) {
+            final int move = searcher.search(pos, 1);
+            pos.makeMove(move);
+            final int reply = searcher.search(pos, 1);
+            if (reply != 0) pos.makeMove(reply);
+            final int next = tablebases.probeDtm(pos);
+            assertEquals(reply == 0 ? 0 : dtm - 2, next, pos.toFen());
+            dtm = reply == 0 ? 0 : next;
+        }
+        assertTrue(pos.isCheckmate());
+    }
+
+    /**
+     * Assert the probe results of a position.
+     * @param fen FEN string
+     * @param wdl expected win/draw/loss
+     * @param dtm expected distance to mate, -1 to only check it is positive
+     */
+    private static void assertProbe(final String fen, final int wdl, final int dtm) throws Fen.ParseException {
+        final Position pos = Position.fromFen(fen);
+        assertEquals(wdl, tablebases.probeWdl(pos), fen);
+        if (dtm >= 0) assertEquals(dtm, tablebases.probeDtm(pos), fen);
+        else assertTrue(tablebases.probeDtm(pos) > 0, fen);
+        assertEquals(Bitboard.count(pos.board().occupied()) <= 3, tablebases.probeWdl(pos) != Tablebases.UNKNOWN);
+        assertEquals(tablebases.probeWdl(pos) != Tablebases.UNKNOWN, tablebases.probe(pos) != Tablebases.UNKNOWN);
+    }
+}